@@ -0,0 +1,102 @@
+package com.integration.james.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integration.james.dto.ActionReport;
+import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.StatusPayload;
+import com.integration.james.publisher.StatusMessage;
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.inmemory.InMemoryId;
+import org.apache.james.mailbox.inmemory.InMemoryMessageId;
+import org.apache.james.mailbox.model.MailboxId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one instruction and encoding one status, the way the pipeline did before {@link InstructionCodec}
+ * ({@code baseline*}) and through it ({@code codec*}). Run with the GC profiler (the default of
+ * {@code BenchmarkRunner}): {@code gc.alloc.rate.norm} is the number of bytes allocated per message.
+ * <p>
+ * The baseline decode copies the body into a {@code String}, binds it with the shared {@link ObjectMapper} and
+ * parses the UID and both mailbox ids where the mailbox calls used to; the codec decode reads the {@code byte[]}
+ * with its prebuilt reader and parses each field once. The baseline encode serializes through
+ * {@link ObjectMapper#writeValueAsBytes}, which allocates its buffer anew for every status.
+ * <p>
+ * The {@code codec*} benchmarks run in every {@link WireFormat}; the {@code baseline*} ones are JSON whatever the
+ * {@code format} parameter, as the former path was.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class InstructionCodecBenchmark {
+
+    @Param({"Trash", "Move"})
+    public String action;
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    public WireFormat format;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MailboxId.Factory mailboxIdFactory = new InMemoryId.Factory();
+    private final InstructionCodec codec = new InstructionCodec(mailboxIdFactory, new InMemoryMessageId.Factory(), "request", false);
+    private byte[] jsonBody;
+    private byte[] body;
+    private StatusPayload status;
+    private StatusMessage statusMessage;
+
+    @Setup
+    public void setUp() throws IOException {
+        String destination = "Move".equals(action) ? InMemoryId.of(2).serialize() : null;
+        IncomingMessagePayload payload = new IncomingMessagePayload(action, InMemoryId.of(1).serialize(), "4242",
+                destination, "0f5e2c1d-benchmark-hash");
+        jsonBody = objectMapper.writeValueAsBytes(payload);
+        body = codec.encode(format, payload);
+        status = StatusPayload.of(payload.getHashID(), "success", ActionReport.NONE);
+        statusMessage = StatusMessage.single(status, format);
+    }
+
+    @Benchmark
+    public void baselineDecode(Blackhole blackhole) throws IOException {
+        IncomingMessagePayload payload = objectMapper.readValue(new String(jsonBody, StandardCharsets.UTF_8), IncomingMessagePayload.class);
+        blackhole.consume(MessageUid.of(Long.parseLong(payload.getSourceMessageID())));
+        blackhole.consume(mailboxIdFactory.fromString(payload.getSourceMailboxID()));
+        if (payload.getDestinationMailboxID() != null) {
+            blackhole.consume(mailboxIdFactory.fromString(payload.getDestinationMailboxID()));
+        }
+    }
+
+    @Benchmark
+    public void codecDecode(Blackhole blackhole) throws IOException {
+        Instruction instruction = codec.compile(codec.readValues(format, body).nextValue());
+        blackhole.consume(MessageUid.of(instruction.getUid()));
+        blackhole.consume(instruction.getSourceMailboxId());
+        blackhole.consume(instruction.getDestinationMailboxId());
+    }
+
+    @Benchmark
+    public byte[] baselineEncode() throws IOException {
+        return objectMapper.writeValueAsBytes(status);
+    }
+
+    @Benchmark
+    public byte[] codecEncode() throws IOException {
+        return codec.encode(statusMessage);
+    }
+}
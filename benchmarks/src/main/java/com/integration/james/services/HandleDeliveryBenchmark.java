@@ -0,0 +1,268 @@
+package com.integration.james.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integration.james.cache.IdempotencyCache;
+import com.integration.james.cache.MailboxMetadataCache;
+import com.integration.james.cache.MailboxSessionPool;
+import com.integration.james.cache.TrashMailboxCache;
+import com.integration.james.codec.InstructionCodec;
+import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.metrics.PipelineMetrics;
+import com.integration.james.pipeline.BackendCircuitBreaker;
+import com.integration.james.pipeline.InstructionDispatcher;
+import com.integration.james.pipeline.PrefetchController;
+import com.integration.james.pipeline.ReactiveInstructionPipeline;
+import com.integration.james.pipeline.RetryLadder;
+import com.integration.james.pipeline.ShardMembership;
+import com.integration.james.pipeline.WorkerLanes;
+import com.integration.james.publisher.StatusOutbox;
+import com.integration.james.services.impl.MailboxActionServiceImpl;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import org.apache.james.core.Username;
+import org.apache.james.filesystem.api.FileSystem;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageManager;
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.inmemory.InMemoryId;
+import org.apache.james.mailbox.inmemory.InMemoryMailboxManager;
+import org.apache.james.mailbox.inmemory.InMemoryMessageId;
+import org.apache.james.mailbox.inmemory.manager.InMemoryIntegrationResources;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.apache.james.metrics.api.NoopGaugeRegistry;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Mono;
+
+import javax.mail.Flags;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Drives {@link RabbitMqIntegrationService#handleDelivery} with synthetic deliveries against James's in-memory
+ * mailbox stack and a {@link StubChannel}. One operation is one instruction, from decode to ack.
+ * <p>
+ * Workloads:
+ * <ul>
+ *     <li>{@code DECODE_ONLY}: redelivered instructions already in the idempotency cache, so decode, status
+ *     publication and ack run without any mailbox work;</li>
+ *     <li>{@code TRASH} and {@code MOVE}: fresh messages are appended before every invocation and moved to Trash
+ *     or to a destination mailbox.</li>
+ * </ul>
+ * {@code mailboxes=1} is the same-mailbox workload (a single lane, maximal batching); {@code mailboxes=64} spreads
+ * instructions over many source mailboxes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class HandleDeliveryBenchmark {
+
+    public enum Workload {
+        DECODE_ONLY,
+        TRASH,
+        MOVE
+    }
+
+    private static final int BATCH = 256;
+    private static final Username USER = Username.of("bench@james.local");
+    private static final String MESSAGE = "Subject: benchmark\r\nFrom: bench@james.local\r\n\r\nbody\r\n";
+
+    @Param({"DECODE_ONLY", "TRASH", "MOVE"})
+    public Workload workload;
+
+    @Param({"1", "64"})
+    public int mailboxes;
+
+    @Param({"blocking", "reactive"})
+    public String pipelineMode;
+
+    /** {@code true}: coalesced acks and statuses packed 25 to a publish; {@code false}: one frame each. */
+    @Param({"false", "true"})
+    public boolean coalesce;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Delivery> deliveries = new ArrayList<>(BATCH);
+    private InMemoryMailboxManager mailboxManager;
+    private MailboxSession session;
+    private List<MailboxId> sources;
+    private MailboxId destination;
+    private IdempotencyCache idempotencyCache;
+    private InstructionDispatcher dispatcher;
+    private RabbitMqIntegrationService integration;
+    private StubChannel channel;
+    private Path outboxDirectory;
+    private long deliveryTag;
+    private long hashCounter;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        InMemoryIntegrationResources resources = InMemoryIntegrationResources.defaultResources();
+        mailboxManager = resources.getMailboxManager();
+        session = mailboxManager.createSystemSession(USER);
+        sources = new ArrayList<>(mailboxes);
+        for (int i = 0; i < mailboxes; i++) {
+            sources.add(mailboxManager.createMailbox(MailboxPath.forUser(USER, "source-" + i), session).orElseThrow());
+        }
+        destination = mailboxManager.createMailbox(MailboxPath.forUser(USER, "destination"), session).orElseThrow();
+
+        GaugeRegistry gauges = new NoopGaugeRegistry();
+        PipelineMetrics metrics = new PipelineMetrics(new NoopMetricFactory(), gauges);
+        // disabled: the benchmark measures the pipeline, a tripping breaker would only skew it
+        BackendCircuitBreaker breaker = new BackendCircuitBreaker(new NoopMetricFactory(), gauges,
+                false, 50, 20, 50, 5_000, 80, 30_000, 5);
+        MailboxActionService service = new MailboxActionServiceImpl(
+                mailboxManager,
+                resources.getMessageIdManager(),
+                new InMemoryId.Factory(),
+                mailboxManager.getMapperFactory(),
+                new MailboxMetadataCache(resources.getEventBus(), gauges, 10_000, 300),
+                new MailboxSessionPool(mailboxManager, gauges, metrics, 300),
+                new TrashMailboxCache(resources.getEventBus(), 10_000, 300),
+                metrics,
+                breaker,
+                500);
+        dispatcher = "reactive".equals(pipelineMode)
+                ? new ReactiveInstructionPipeline(service, gauges, 256, "modulo", 256, 4)
+                : new WorkerLanes(service, gauges, 4, 256, "modulo", 25, 5, 4);
+        idempotencyCache = new IdempotencyCache(gauges, 1 << 20, 3600);
+        outboxDirectory = Files.createTempDirectory("rmq-benchmark-outbox");
+        StatusOutbox outbox = new StatusOutbox(fileSystemAt(outboxDirectory), gauges, "file://outbox", 1 << 20, 1 << 24);
+
+        PrefetchController prefetch = new PrefetchController(new NoopMetricFactory(), gauges,
+                "static", BATCH, BATCH, BATCH, 1, 250, 1_000);
+        integration = new RabbitMqIntegrationService(dispatcher, idempotencyCache, metrics,
+                "localhost", 5672, "guest", "guest",
+                "benchmark.instructions", "benchmark.status", "benchmark.exchange",
+                prefetch, 5_000, 10_000, coalesce ? 25 : 1, 1, coalesce ? "coalesced" : "immediate", 1, 64,
+                "per-item", outbox, 500, breaker, "",
+                false, "benchmark.interactive", 10, 5, true, 5_000, 60_000,
+                new ShardMembership(new NoopMetricFactory(), gauges, "single", 1, "", "", "benchmark", 5_000),
+                new RetryLadder(new NoopMetricFactory(), false, "1000", "benchmark.retry", "benchmark.dead"),
+                new InstructionCodec(new InMemoryId.Factory(), new InMemoryMessageId.Factory(), "request", false), gauges);
+        channel = new StubChannel();
+        integration.attachChannels(channel.channel(), channel.channel());
+
+        if (workload == Workload.DECODE_ONLY) {
+            for (int i = 0; i < BATCH; i++) {
+                String hashID = "decode-" + i;
+                idempotencyCache.record(hashID, true);
+                deliveries.add(delivery(new IncomingMessagePayload("Trash", sources.get(i % mailboxes).serialize(), "1", null, hashID), true));
+            }
+        }
+    }
+
+    /** Appends the messages the next invocation will move; excluded from the measurement. */
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws Exception {
+        if (workload == Workload.DECODE_ONLY) {
+            // fresh delivery tags: a multiple ack only covers tags above the previous one
+            deliveries.replaceAll(delivery -> new Delivery(
+                    new Envelope(++deliveryTag, true, "benchmark.exchange", "benchmark.instructions"),
+                    delivery.getProperties(), delivery.getBody()));
+            return;
+        }
+        deliveries.clear();
+        for (int i = 0; i < BATCH; i++) {
+            MailboxId source = sources.get(i % mailboxes);
+            MessageManager messageManager = mailboxManager.getMailbox(source, session);
+            MessageUid uid = messageManager.appendMessage(MessageManager.AppendCommand.builder().build(MESSAGE), session)
+                    .getId().getUid();
+            String action = workload == Workload.TRASH ? "Trash" : "Move";
+            String destinationID = workload == Workload.MOVE ? destination.serialize() : null;
+            deliveries.add(delivery(new IncomingMessagePayload(action, source.serialize(), String.valueOf(uid.asLong()),
+                    destinationID, "bench-" + hashCounter++), false));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long handleDelivery() {
+        long expectedAcks = channel.acks() + deliveries.size();
+        for (Delivery delivery : deliveries) {
+            integration.handleDelivery("benchmark", delivery);
+        }
+        channel.awaitAcks(expectedAcks);
+        return channel.published();
+    }
+
+    /** Empties the destination mailboxes so memory use stays flat across iterations. */
+    @TearDown(Level.Iteration)
+    public void expungeMovedMessages() throws Exception {
+        expunge(mailboxManager.getMailbox(destination, session));
+        MailboxPath trash = MailboxPath.forUser(USER, "Trash");
+        if (Boolean.TRUE.equals(Mono.from(mailboxManager.mailboxExists(trash, session)).block())) {
+            expunge(mailboxManager.getMailbox(trash, session));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        if (dispatcher instanceof WorkerLanes lanes) {
+            lanes.dispose();
+        } else if (dispatcher instanceof ReactiveInstructionPipeline pipeline) {
+            pipeline.dispose();
+        }
+        integration.dispose();
+        try (Stream<Path> files = Files.walk(outboxDirectory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private void expunge(MessageManager messageManager) throws Exception {
+        messageManager.setFlags(new Flags(Flags.Flag.DELETED), MessageManager.FlagsUpdateMode.ADD, MessageRange.all(), session);
+        messageManager.expunge(MessageRange.all(), session);
+    }
+
+    private Delivery delivery(IncomingMessagePayload payload, boolean redelivered) throws IOException {
+        byte[] body = objectMapper.writeValueAsString(payload).getBytes(StandardCharsets.UTF_8);
+        Envelope envelope = new Envelope(++deliveryTag, redelivered, "benchmark.exchange", "benchmark.instructions");
+        return new Delivery(envelope, new AMQP.BasicProperties(), body);
+    }
+
+    private static FileSystem fileSystemAt(Path directory) {
+        return new FileSystem() {
+            @Override
+            public java.io.InputStream getResource(String url) throws IOException {
+                return Files.newInputStream(getFile(url).toPath());
+            }
+
+            @Override
+            public File getFile(String fileURL) {
+                return directory.toFile();
+            }
+
+            @Override
+            public File getBasedir() {
+                return directory.toFile();
+            }
+        };
+    }
+}
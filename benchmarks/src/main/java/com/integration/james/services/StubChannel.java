@@ -0,0 +1,131 @@
+package com.integration.james.services;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process {@link Channel} for benchmarks: publishes are confirmed synchronously, acked deliveries are counted
+ * (a multiple ack counting every tag it covers), and every other call is a no-op.
+ */
+final class StubChannel implements InvocationHandler {
+
+    private final AtomicLong nextPublishSeqNo = new AtomicLong(1);
+    private final AtomicLong acks = new AtomicLong();
+    private final TreeSet<Long> singleAcks = new TreeSet<>();
+    private long ackedUpTo;
+    private final AtomicLong published = new AtomicLong();
+    private final Channel channel = (Channel) Proxy.newProxyInstance(
+            Channel.class.getClassLoader(), new Class<?>[]{Channel.class}, this);
+    private volatile ConfirmListener confirmListener;
+
+    Channel channel() {
+        return channel;
+    }
+
+    long acks() {
+        return acks.get();
+    }
+
+    long published() {
+        return published.get();
+    }
+
+    /** Parks until at least {@code expected} deliveries have been acked in total. */
+    void awaitAcks(long expected) {
+        while (acks.get() < expected) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "basicAck" -> {
+                ack((Long) args[0], (Boolean) args[1]);
+                return null;
+            }
+            case "getNextPublishSeqNo" -> {
+                return nextPublishSeqNo.get();
+            }
+            case "basicPublish" -> {
+                long sequenceNumber = nextPublishSeqNo.getAndIncrement();
+                published.incrementAndGet();
+                ConfirmListener listener = confirmListener;
+                if (listener != null) {
+                    listener.handleAck(sequenceNumber, false);
+                }
+                return null;
+            }
+            case "addConfirmListener" -> {
+                if (args[0] instanceof ConfirmListener listener) {
+                    confirmListener = listener;
+                }
+                return null;
+            }
+            case "isOpen" -> {
+                return true;
+            }
+            case "hashCode" -> {
+                return System.identityHashCode(proxy);
+            }
+            case "equals" -> {
+                return proxy == args[0];
+            }
+            case "toString" -> {
+                return "StubChannel";
+            }
+            default -> {
+                return defaultValue(method.getReturnType());
+            }
+        }
+    }
+
+    private synchronized void ack(long deliveryTag, boolean multiple) {
+        if (!multiple) {
+            singleAcks.add(deliveryTag);
+            acks.incrementAndGet();
+            return;
+        }
+        // tags below deliveryTag already acked on their own are not counted twice
+        long covered = deliveryTag - ackedUpTo - singleAcks.subSet(ackedUpTo, false, deliveryTag, true).size();
+        singleAcks.headSet(deliveryTag, true).clear();
+        ackedUpTo = deliveryTag;
+        acks.addAndGet(covered);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,75 @@
+package com.integration.james.loadtest;
+
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.SystemConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-process AMQP 0-9-1 broker (Qpid Broker-J, memory store) standing in for RabbitMQ: one port, a
+ * {@code guest/guest} plain authentication provider, and a default virtual host answering connections to {@code /}.
+ */
+final class EmbeddedBroker implements AutoCloseable {
+
+    private static final String INITIAL_CONFIGURATION = """
+            {
+              "name": "loadtest-broker",
+              "modelVersion": "9.0",
+              "authenticationproviders": [{
+                "name": "plain",
+                "type": "Plain",
+                "secureOnlyMechanisms": [],
+                "users": [{ "name": "guest", "type": "managed", "password": "guest" }]
+              }],
+              "ports": [{
+                "name": "AMQP",
+                "port": "%d",
+                "protocols": ["AMQP_0_9_1"],
+                "authenticationProvider": "plain",
+                "virtualhostaliases": [
+                  { "name": "nameAlias", "type": "nameAlias" },
+                  { "name": "defaultAlias", "type": "defaultAlias" }
+                ]
+              }],
+              "virtualhostnodes": [{
+                "name": "default",
+                "type": "Memory",
+                "defaultVirtualHostNode": "true",
+                "virtualHostInitialConfiguration": "{\\"type\\": \\"Memory\\"}"
+              }]
+            }
+            """;
+
+    private final SystemLauncher launcher = new SystemLauncher();
+    private final Path workDirectory;
+
+    private EmbeddedBroker(Path workDirectory) {
+        this.workDirectory = workDirectory;
+    }
+
+    static EmbeddedBroker start(int port, Path workDirectory) throws Exception {
+        Path configuration = workDirectory.resolve("broker-config.json");
+        Files.writeString(configuration, String.format(INITIAL_CONFIGURATION, port), StandardCharsets.UTF_8);
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(SystemConfig.TYPE, "Memory");
+        attributes.put(SystemConfig.INITIAL_CONFIGURATION_LOCATION, configuration.toUri().toString());
+        attributes.put(SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false);
+        attributes.put("context", Map.of("qpid.work_dir", workDirectory.toString()));
+
+        EmbeddedBroker broker = new EmbeddedBroker(workDirectory);
+        broker.launcher.startup(attributes);
+        return broker;
+    }
+
+    @Override
+    public void close() throws IOException {
+        launcher.shutdown();
+        Files.deleteIfExists(workDirectory.resolve("broker-config.json"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.integration.james.loadtest;
+
+import com.google.inject.AbstractModule;
+import org.apache.james.events.EventBus;
+import org.apache.james.filesystem.api.FileSystem;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.MessageIdManager;
+import org.apache.james.mailbox.inmemory.InMemoryId;
+import org.apache.james.mailbox.inmemory.InMemoryMessageId;
+import org.apache.james.mailbox.inmemory.manager.InMemoryIntegrationResources;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MessageId;
+import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.metrics.api.NoopGaugeRegistry;
+import org.apache.james.metrics.api.NoopMetricFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The James bindings {@code CustomIntegrationModule} relies on, backed by the in-memory mailbox stack instead of a
+ * running server. {@code file://var/...} locations resolve under {@code baseDirectory}.
+ */
+final class InMemoryJamesModule extends AbstractModule {
+
+    private static final String FILE_PROTOCOL = "file://";
+
+    private final InMemoryIntegrationResources resources;
+    private final Path baseDirectory;
+
+    InMemoryJamesModule(InMemoryIntegrationResources resources, Path baseDirectory) {
+        this.resources = resources;
+        this.baseDirectory = baseDirectory;
+    }
+
+    @Override
+    protected void configure() {
+        bind(MailboxManager.class).toInstance(resources.getMailboxManager());
+        bind(MailboxSessionMapperFactory.class).toInstance(resources.getMailboxManager().getMapperFactory());
+        bind(MessageIdManager.class).toInstance(resources.getMessageIdManager());
+        bind(MailboxId.Factory.class).toInstance(new InMemoryId.Factory());
+        bind(MessageId.Factory.class).toInstance(new InMemoryMessageId.Factory());
+        bind(EventBus.class).toInstance(resources.getEventBus());
+        bind(MetricFactory.class).toInstance(new NoopMetricFactory());
+        bind(GaugeRegistry.class).toInstance(new NoopGaugeRegistry());
+        bind(FileSystem.class).toInstance(new FileSystem() {
+            @Override
+            public InputStream getResource(String url) throws IOException {
+                return Files.newInputStream(getFile(url).toPath());
+            }
+
+            @Override
+            public File getFile(String fileURL) {
+                String relative = fileURL.startsWith(FILE_PROTOCOL) ? fileURL.substring(FILE_PROTOCOL.length()) : fileURL;
+                return baseDirectory.resolve(relative).toFile();
+            }
+
+            @Override
+            public File getBasedir() {
+                return baseDirectory.toFile();
+            }
+        });
+    }
+}
@@ -0,0 +1,311 @@
+package com.integration.james.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.inject.Guice;
+import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.module.CustomIntegrationModule;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+import org.HdrHistogram.Histogram;
+import org.apache.james.core.Username;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageManager;
+import org.apache.james.mailbox.inmemory.InMemoryMailboxManager;
+import org.apache.james.mailbox.inmemory.manager.InMemoryIntegrationResources;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MailboxPath;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test without Docker: starts an {@link EmbeddedBroker}, wires the extension through
+ * {@link CustomIntegrationModule} on James's in-memory mailbox stack, replays a generated instruction mix at a
+ * fixed rate and measures the latency from publication to receipt of the matching {@code StatusPayload}.
+ * <p>
+ * Latencies are taken from each delivery's scheduled send time, not its actual one, so a stalled pipeline
+ * shows up in the percentiles instead of silently lowering the offered rate.
+ */
+public final class LoadTest {
+
+    private static final String QUEUE = "loadtest.instructions";
+    private static final String EXCHANGE = "loadtest.status";
+    private static final String ROUTING_KEY = "status";
+    private static final String MESSAGE = "Subject: load test\r\nFrom: loadtest@james.local\r\n\r\nbody\r\n";
+    private static final String WARMUP_PREFIX = "w-";
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final LoadTestOptions options;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // hashID -> scheduled publication time, in nanos
+    private final Map<String, Long> scheduled = new ConcurrentHashMap<>();
+    private final Histogram latencies = new Histogram(MAX_LATENCY_MICROS, 3);
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long firstMeasuredNanos;
+    private volatile long lastReceiptNanos;
+
+    private LoadTest(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // per-instruction INFO logs would dominate the run; must be set before the first logger exists
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel",
+                System.getProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn"));
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        new LoadTest(options).run();
+        // the extension keeps non-daemon threads and a recovering connection; nothing left to wait for
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        Path workDirectory = Files.createTempDirectory("rmq-loadtest");
+        try (EmbeddedBroker broker = EmbeddedBroker.start(options.port(), workDirectory)) {
+            InMemoryIntegrationResources resources = InMemoryIntegrationResources.defaultResources();
+            InMemoryMailboxManager mailboxManager = resources.getMailboxManager();
+
+            System.out.printf("Preparing %d instruction(s) over %d mailbox(es)...%n", options.totalInstructions(), options.mailboxes());
+            List<IncomingMessagePayload> plan = plan(mailboxManager);
+
+            startExtension(resources, workDirectory);
+
+            ConnectionFactory factory = new ConnectionFactory();
+            factory.setPort(options.port());
+            try (Connection connection = factory.newConnection("loadtest-driver")) {
+                Channel publisher = connection.createChannel();
+                Channel statusChannel = connection.createChannel();
+                listenForStatuses(statusChannel);
+                awaitConsumer(publisher);
+
+                System.out.printf("Publishing at %d instruction(s)/s for %d s (+%d s warm-up), bulk size %d, %s pipeline%n",
+                        options.rate(), options.duration(), options.warmup(), options.bulkSize(), options.pipeline());
+                publish(publisher, plan);
+                awaitStatuses(TimeUnit.SECONDS.toNanos(60));
+            }
+            report();
+        }
+    }
+
+    /**
+     * Creates users and mailboxes, then draws every instruction and appends the message it targets, so the
+     * measured phase does no setup work.
+     */
+    private List<IncomingMessagePayload> plan(InMemoryMailboxManager mailboxManager) throws Exception {
+        MailboxSession[] sessions = new MailboxSession[options.users()];
+        MailboxId[] archives = new MailboxId[options.users()];
+        for (int u = 0; u < options.users(); u++) {
+            sessions[u] = mailboxManager.createSystemSession(Username.of("user-" + u + "@loadtest.local"));
+            archives[u] = mailboxManager.createMailbox(MailboxPath.forUser(sessions[u].getUser(), "Archive"), sessions[u]).orElseThrow();
+        }
+        MessageManager[] sources = new MessageManager[options.mailboxes()];
+        for (int m = 0; m < options.mailboxes(); m++) {
+            MailboxSession session = sessions[m % options.users()];
+            MailboxId id = mailboxManager.createMailbox(MailboxPath.forUser(session.getUser(), "folder-" + m), session).orElseThrow();
+            sources[m] = mailboxManager.getMailbox(id, session);
+        }
+
+        ZipfSampler mailboxPicker = new ZipfSampler(options.mailboxes(), options.skew());
+        SplittableRandom random = new SplittableRandom(42);
+        List<IncomingMessagePayload> plan = new ArrayList<>(options.totalInstructions());
+        for (int i = 0; i < options.totalInstructions(); i++) {
+            int m = mailboxPicker.sample(random);
+            int owner = m % options.users();
+            long uid = sources[m].appendMessage(MessageManager.AppendCommand.builder().build(MESSAGE), sessions[owner])
+                    .getId().getUid().asLong();
+            boolean trash = random.nextDouble() < options.trashRatio();
+            String hashID = (i < options.warmupInstructions() ? WARMUP_PREFIX : "") + i;
+            plan.add(new IncomingMessagePayload(
+                    trash ? "Trash" : "Move",
+                    sources[m].getId().serialize(),
+                    String.valueOf(uid),
+                    trash ? null : archives[owner].serialize(),
+                    hashID));
+        }
+        return plan;
+    }
+
+    private void startExtension(InMemoryIntegrationResources resources, Path workDirectory) throws IOException {
+        Path configuration = Files.createDirectories(workDirectory.resolve("conf"));
+        String properties = String.join("\n",
+                "rabbitmq.host=localhost",
+                "rabbitmq.port=" + options.port(),
+                "rabbitmq.username=guest",
+                "rabbitmq.password=guest",
+                "rabbitmq.queueName=" + QUEUE,
+                "rabbitmq.exchangeName=" + EXCHANGE,
+                "rabbitmq.routingKey=" + ROUTING_KEY,
+                "rabbitmq.pipeline.mode=" + options.pipeline(),
+                "rabbitmq.consumer.prefetch=" + options.prefetch(),
+                "rabbitmq.consumer.prefetch.mode=" + options.prefetchMode(),
+                "");
+        Files.writeString(configuration.resolve("rabbitmq.properties"), properties, StandardCharsets.UTF_8);
+        System.setProperty("james.configuration.path", configuration.toString());
+        Guice.createInjector(new InMemoryJamesModule(resources, workDirectory), new CustomIntegrationModule());
+    }
+
+    private void listenForStatuses(Channel channel) throws IOException {
+        channel.exchangeDeclare(EXCHANGE, BuiltinExchangeType.DIRECT, true);
+        String queue = channel.queueDeclare().getQueue();
+        channel.queueBind(queue, EXCHANGE, ROUTING_KEY);
+        DeliverCallback onStatus = (tag, delivery) -> {
+            long now = System.nanoTime();
+            JsonNode body = objectMapper.readTree(delivery.getBody());
+            if (body.isArray()) {
+                body.forEach(status -> recordStatus(status, now));
+            } else {
+                recordStatus(body, now);
+            }
+        };
+        channel.basicConsume(queue, true, onStatus, tag -> { });
+    }
+
+    /** Runs on the single status consumer thread, which is the only writer of the histogram. */
+    private void recordStatus(JsonNode status, long now) {
+        String hashID = status.path("hashID").asText();
+        Long sentAt = scheduled.remove(hashID);
+        if (sentAt == null) {
+            return;
+        }
+        if (!"success".equals(status.path("status").asText())) {
+            failed.incrementAndGet();
+        }
+        if (!hashID.startsWith(WARMUP_PREFIX)) {
+            latencies.recordValue(Math.min(MAX_LATENCY_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(now - sentAt))));
+            lastReceiptNanos = now;
+        }
+        received.incrementAndGet();
+    }
+
+    /** The extension connects a few seconds after start-up; its consumer shows up on the shared queue. */
+    private void awaitConsumer(Channel channel) throws Exception {
+        channel.queueDeclare(QUEUE, true, false, false, null);
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+        while (channel.consumerCount(QUEUE) == 0) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("The extension never started consuming " + QUEUE);
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private void publish(Channel channel, List<IncomingMessagePayload> plan) throws IOException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) * options.bulkSize() / options.rate();
+        long start = System.nanoTime();
+        firstMeasuredNanos = start + TimeUnit.SECONDS.toNanos(options.warmup());
+        int bulkSize = Math.max(1, options.bulkSize());
+        for (int from = 0, delivery = 0; from < plan.size(); from += bulkSize, delivery++) {
+            long sendAt = start + delivery * intervalNanos;
+            long wait = sendAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            List<IncomingMessagePayload> items = plan.subList(from, Math.min(plan.size(), from + bulkSize));
+            items.forEach(item -> scheduled.put(item.getHashID(), sendAt));
+            byte[] body = bulkSize == 1
+                    ? objectMapper.writeValueAsBytes(items.get(0))
+                    : objectMapper.writeValueAsBytes(items);
+            channel.basicPublish("", QUEUE, new AMQP.BasicProperties(), body);
+        }
+    }
+
+    private void awaitStatuses(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (!scheduled.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        if (!scheduled.isEmpty()) {
+            System.out.printf("%d status(es) never arrived%n", scheduled.size());
+        }
+    }
+
+    private void report() throws IOException {
+        long measured = latencies.getTotalCount();
+        double seconds = Math.max(1, lastReceiptNanos - firstMeasuredNanos) / 1e9;
+        double throughput = measured / seconds;
+
+        System.out.printf("%nInstructions measured: %d (%d failed status(es) overall, %d missing)%n",
+                measured, failed.get(), scheduled.size());
+        System.out.printf("Sustained throughput:  %.1f instruction(s)/s (offered %d/s)%n", throughput, options.rate());
+        System.out.printf("Latency (ms):          p50 %.2f  p99 %.2f  p999 %.2f  max %.2f%n",
+                percentileMillis(50), percentileMillis(99), percentileMillis(99.9), latencies.getMaxValue() / 1000.0);
+
+        if (options.report().isEmpty()) {
+            return;
+        }
+        ObjectNode json = objectMapper.createObjectNode();
+        ObjectNode config = json.putObject("options");
+        config.put("rate", options.rate())
+                .put("duration", options.duration())
+                .put("warmup", options.warmup())
+                .put("users", options.users())
+                .put("mailboxes", options.mailboxes())
+                .put("skew", options.skew())
+                .put("trashRatio", options.trashRatio())
+                .put("bulkSize", options.bulkSize())
+                .put("pipeline", options.pipeline())
+                .put("prefetch", options.prefetch())
+                .put("prefetchMode", options.prefetchMode());
+        json.put("measured", measured)
+                .put("failed", failed.get())
+                .put("missing", scheduled.size())
+                .put("throughputPerSecond", throughput);
+        ObjectNode latency = json.putObject("latencyMillis");
+        latency.put("p50", percentileMillis(50))
+                .put("p99", percentileMillis(99))
+                .put("p999", percentileMillis(99.9))
+                .put("max", latencies.getMaxValue() / 1000.0);
+        json.put("javaVersion", System.getProperty("java.version"));
+        File file = new File(options.report());
+        if (file.getParentFile() != null) {
+            Files.createDirectories(file.getParentFile().toPath());
+        }
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(file, json);
+        System.out.printf("Report written to %s%n", file.getAbsolutePath());
+    }
+
+    private double percentileMillis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /** Draws ranks in {@code [0, n)} with probability proportional to {@code 1 / (rank + 1)^exponent}. */
+    private static final class ZipfSampler {
+
+        private final double[] cumulative;
+
+        private ZipfSampler(int n, double exponent) {
+            cumulative = new double[n];
+            double total = 0;
+            for (int k = 0; k < n; k++) {
+                total += 1 / Math.pow(k + 1, exponent);
+                cumulative[k] = total;
+            }
+            for (int k = 0; k < n; k++) {
+                cumulative[k] /= total;
+            }
+        }
+
+        private int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+        }
+    }
+}
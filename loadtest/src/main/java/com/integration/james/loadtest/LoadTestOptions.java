@@ -0,0 +1,77 @@
+package com.integration.james.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line of the load test, as {@code key=value} arguments; every key has a default.
+ *
+ * @param rate         instructions published per second
+ * @param duration     measured seconds
+ * @param warmup       seconds published before the measurement starts, excluded from the latencies
+ * @param users        mailbox owners
+ * @param mailboxes    source mailboxes, spread round robin over the users
+ * @param skew         Zipf exponent of the source mailbox popularity; 0 is uniform
+ * @param trashRatio   share of Trash instructions, the rest being Move
+ * @param bulkSize     instructions per delivery; above 1 deliveries are JSON arrays
+ * @param pipeline     {@code rabbitmq.pipeline.mode} of the extension
+ * @param prefetch     {@code rabbitmq.consumer.prefetch} of the extension
+ * @param prefetchMode {@code rabbitmq.consumer.prefetch.mode} of the extension
+ * @param port         port of the embedded broker
+ * @param report       file receiving the JSON report, or empty
+ */
+record LoadTestOptions(int rate,
+                       int duration,
+                       int warmup,
+                       int users,
+                       int mailboxes,
+                       double skew,
+                       double trashRatio,
+                       int bulkSize,
+                       String pipeline,
+                       int prefetch,
+                       String prefetchMode,
+                       int port,
+                       String report) {
+
+    private static final Set<String> KEYS = Set.of("rate", "duration", "warmup", "users", "mailboxes", "skew",
+            "trashRatio", "bulkSize", "pipeline", "prefetch", "prefetchMode", "port", "report");
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got '" + arg + "'");
+            }
+            String key = arg.substring(0, separator).trim();
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown option '" + key + "', expected one of " + KEYS);
+            }
+            values.put(key, arg.substring(separator + 1).trim());
+        }
+        return new LoadTestOptions(
+                Integer.parseInt(values.getOrDefault("rate", "1000")),
+                Integer.parseInt(values.getOrDefault("duration", "60")),
+                Integer.parseInt(values.getOrDefault("warmup", "10")),
+                Integer.parseInt(values.getOrDefault("users", "10")),
+                Integer.parseInt(values.getOrDefault("mailboxes", "200")),
+                Double.parseDouble(values.getOrDefault("skew", "1.0")),
+                Double.parseDouble(values.getOrDefault("trashRatio", "0.5")),
+                Integer.parseInt(values.getOrDefault("bulkSize", "1")),
+                values.getOrDefault("pipeline", "blocking"),
+                Integer.parseInt(values.getOrDefault("prefetch", "250")),
+                values.getOrDefault("prefetchMode", "static"),
+                Integer.parseInt(values.getOrDefault("port", "5673")),
+                values.getOrDefault("report", "target/loadtest-report.json"));
+    }
+
+    int totalInstructions() {
+        return rate * (warmup + duration);
+    }
+
+    int warmupInstructions() {
+        return rate * warmup;
+    }
+}
@@ -0,0 +1,150 @@
+package com.integration.james.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the outcome of recently completed instructions by {@code hashID}, so that a redelivered instruction
+ * can be answered from memory instead of being executed again.
+ * <p>
+ * Each entry is a single {@code long} packing a 39-bit fingerprint of the hashID, a 24-bit completion time in
+ * seconds and the success bit; no {@code String} is retained. The table is set-associative with buckets of
+ * {@value #BUCKET_SIZE} slots (one cache line) kept newest first: an insert updates the same fingerprint in place,
+ * or else pushes out the oldest entry of its bucket. A million entries therefore take 8 MB.
+ * <p>
+ * Fingerprints can collide, with a probability around {@code 2^-36} per lookup; the cache is only consulted for
+ * deliveries the broker flags as redelivered.
+ */
+@Singleton
+public class IdempotencyCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyCache.class);
+
+    private static final int BUCKET_SIZE = 8;
+    private static final int STRIPES = 64;
+    private static final int FINGERPRINT_SHIFT = 25;
+    private static final int TIME_SHIFT = 1;
+    private static final long TIME_MASK = (1L << 24) - 1;
+    private static final long SUCCESS_BIT = 1L;
+
+    private final long[] entries;
+    private final int bucketMask;
+    private final long ttlSeconds;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+    private final Object[] stripes = new Object[STRIPES];
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Inject
+    public IdempotencyCache(GaugeRegistry gaugeRegistry,
+                            @Named("rabbitmq.dedup.capacity") int capacity,
+                            @Named("rabbitmq.dedup.ttlSeconds") long ttlSeconds) {
+        this(gaugeRegistry, capacity, ttlSeconds, System::nanoTime);
+    }
+
+    /** {@code nanoClock} stands for {@link System#nanoTime()}. */
+    @VisibleForTesting
+    IdempotencyCache(GaugeRegistry gaugeRegistry, int capacity, long ttlSeconds, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+        int buckets = Integer.highestOneBit(Math.max(BUCKET_SIZE, capacity) / BUCKET_SIZE);
+        this.entries = new long[buckets * BUCKET_SIZE];
+        this.bucketMask = buckets - 1;
+        this.ttlSeconds = Math.min(ttlSeconds, TIME_MASK / 2);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        gaugeRegistry.register("rabbitmq.dedup.hits", hits::get);
+        gaugeRegistry.register("rabbitmq.dedup.misses", misses::get);
+        LOGGER.info("Idempotency cache: {} entries ({} KB), TTL {} s", entries.length, entries.length / 128, this.ttlSeconds);
+    }
+
+    /** Records the outcome of a completed instruction. */
+    public void record(String hashID, boolean success) {
+        if (hashID == null) {
+            return;
+        }
+        long hash = hash(hashID);
+        long fingerprint = fingerprint(hash);
+        long now = now();
+        long entry = (fingerprint << FINGERPRINT_SHIFT) | (now << TIME_SHIFT) | (success ? SUCCESS_BIT : 0);
+        int base = bucket(hash);
+        synchronized (stripes[base / BUCKET_SIZE & (STRIPES - 1)]) {
+            for (int slot = base; slot < base + BUCKET_SIZE; slot++) {
+                if (entries[slot] >>> FINGERPRINT_SHIFT == fingerprint) {
+                    entries[slot] = entry;
+                    return;
+                }
+            }
+            // newest first: shifting the bucket down drops its oldest (or an empty) slot
+            System.arraycopy(entries, base, entries, base + 1, BUCKET_SIZE - 1);
+            entries[base] = entry;
+        }
+    }
+
+    /** Returns the recorded outcome of {@code hashID} if it completed within the TTL. */
+    public Optional<Boolean> lookup(String hashID) {
+        if (hashID == null) {
+            return Optional.empty();
+        }
+        long hash = hash(hashID);
+        long fingerprint = fingerprint(hash);
+        long now = now();
+        int base = bucket(hash);
+        synchronized (stripes[base / BUCKET_SIZE & (STRIPES - 1)]) {
+            for (int slot = base; slot < base + BUCKET_SIZE; slot++) {
+                long current = entries[slot];
+                if (current != 0 && current >>> FINGERPRINT_SHIFT == fingerprint && age(current, now) <= ttlSeconds) {
+                    hits.incrementAndGet();
+                    return Optional.of((current & SUCCESS_BIT) != 0);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    private int bucket(long hash) {
+        return (int) (hash & bucketMask) * BUCKET_SIZE;
+    }
+
+    private long now() {
+        return TimeUnit.NANOSECONDS.toSeconds(nanoClock.getAsLong() - startNanos) & TIME_MASK;
+    }
+
+    /** Age in seconds, tolerant of the 24-bit clock wrapping (about every 194 days). */
+    private static long age(long entry, long now) {
+        return (now - ((entry >>> TIME_SHIFT) & TIME_MASK)) & TIME_MASK;
+    }
+
+    /** The top 39 bits of the hash; never zero, so an empty slot cannot match. */
+    private static long fingerprint(long hash) {
+        long fingerprint = hash >>> FINGERPRINT_SHIFT;
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /** FNV-1a over the UTF-16 chars, finished with the SplitMix64 mixer so that low bits index well. */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 30;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 27;
+        h *= 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
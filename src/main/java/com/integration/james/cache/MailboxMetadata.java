@@ -0,0 +1,13 @@
+package com.integration.james.cache;
+
+import org.apache.james.core.Username;
+import org.apache.james.mailbox.model.Mailbox;
+import org.apache.james.mailbox.model.MailboxPath;
+
+/** The part of a {@link Mailbox} needed to execute an instruction: where it lives and who owns it. */
+public record MailboxMetadata(MailboxPath path, Username owner) {
+
+    public static MailboxMetadata from(Mailbox mailbox) {
+        return new MailboxMetadata(mailbox.generateAssociatedPath(), mailbox.getUser());
+    }
+}
@@ -0,0 +1,109 @@
+package com.integration.james.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.apache.james.events.Event;
+import org.apache.james.events.EventBus;
+import org.apache.james.events.EventListener;
+import org.apache.james.events.Group;
+import org.apache.james.mailbox.events.MailboxEvents;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded, TTL-evicted cache of {@link MailboxId} to {@link MailboxMetadata}, so that hot mailboxes are resolved
+ * without a mapper round trip.
+ * <p>
+ * Entries are dropped as soon as James's mailbox event bus reports the mailbox deleted or renamed. The bus
+ * delivers group events once per cluster, so on multi-node deployments the TTL bounds staleness on other nodes.
+ */
+@Singleton
+public class MailboxMetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailboxMetadataCache.class);
+
+    private final Cache<MailboxId, MailboxMetadata> cache;
+
+    @Inject
+    public MailboxMetadataCache(EventBus eventBus,
+                                GaugeRegistry gaugeRegistry,
+                                @Named("rabbitmq.cache.mailbox.maxSize") long maxSize,
+                                @Named("rabbitmq.cache.mailbox.ttlSeconds") long ttlSeconds) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+
+        eventBus.register(new Invalidator());
+        gaugeRegistry.register("rabbitmq.cache.mailbox.hits", () -> cache.stats().hitCount());
+        gaugeRegistry.register("rabbitmq.cache.mailbox.misses", () -> cache.stats().missCount());
+        gaugeRegistry.register("rabbitmq.cache.mailbox.evictions", () -> cache.stats().evictionCount());
+        gaugeRegistry.register("rabbitmq.cache.mailbox.size", cache::size);
+        LOGGER.info("Mailbox metadata cache: up to {} entries, TTL {} s", maxSize, ttlSeconds);
+    }
+
+    /** Returns the cached metadata, calling {@code loader} on a miss. */
+    public MailboxMetadata get(MailboxId mailboxId, Callable<MailboxMetadata> loader) throws MailboxException {
+        try {
+            return cache.get(mailboxId, loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof MailboxException mailboxException) {
+                throw mailboxException;
+            }
+            throw new MailboxException("Cannot resolve mailbox " + mailboxId.serialize(), e.getCause());
+        }
+    }
+
+    /** Non-loading lookup, for callers resolving misses asynchronously. */
+    public Optional<MailboxMetadata> getIfPresent(MailboxId mailboxId) {
+        return Optional.ofNullable(cache.getIfPresent(mailboxId));
+    }
+
+    public void put(MailboxId mailboxId, MailboxMetadata metadata) {
+        cache.put(mailboxId, metadata);
+    }
+
+    public void invalidate(MailboxId mailboxId) {
+        cache.invalidate(mailboxId);
+    }
+
+    public static class InvalidatorGroup extends Group {
+    }
+
+    private class Invalidator implements EventListener.GroupEventListener {
+
+        private final Group group = new InvalidatorGroup();
+
+        @Override
+        public Group getDefaultGroup() {
+            return group;
+        }
+
+        @Override
+        public boolean isHandling(Event event) {
+            return event instanceof MailboxEvents.MailboxDeletion || event instanceof MailboxEvents.MailboxRenamed;
+        }
+
+        @Override
+        public void event(Event event) {
+            if (event instanceof MailboxEvents.MailboxDeletion deletion) {
+                invalidate(deletion.getMailboxId());
+            } else if (event instanceof MailboxEvents.MailboxRenamed renamed) {
+                invalidate(renamed.getMailboxId());
+            }
+        }
+    }
+}
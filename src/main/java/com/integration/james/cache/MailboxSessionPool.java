@@ -0,0 +1,164 @@
+package com.integration.james.cache;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.integration.james.metrics.PipelineMetrics;
+import org.apache.james.core.Username;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Reuses system {@link MailboxSession}s per {@link Username} instead of creating one per instruction.
+ * <p>
+ * A session is handed to one caller at a time: mapper factories keep per-session state (a JPA entity manager,
+ * for instance) between {@code startProcessingRequest} and {@code endProcessingRequest}, so concurrent lanes
+ * working for the same user borrow distinct sessions. Sessions idle for longer than
+ * {@code rabbitmq.cache.session.idleSeconds} are logged out.
+ */
+@Singleton
+public class MailboxSessionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailboxSessionPool.class);
+
+    @FunctionalInterface
+    public interface SessionWork<T> {
+        T execute(MailboxSession session) throws MailboxException;
+    }
+
+    private final MailboxManager mailboxManager;
+    private final PipelineMetrics pipelineMetrics;
+    private final long idleTimeoutNanos;
+    private final ConcurrentHashMap<Username, Deque<IdleSession>> idleSessions = new ConcurrentHashMap<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final ScheduledExecutorService reaper =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "rmq-session-reaper"));
+
+    @Inject
+    public MailboxSessionPool(MailboxManager mailboxManager,
+                              GaugeRegistry gaugeRegistry,
+                              PipelineMetrics pipelineMetrics,
+                              @Named("rabbitmq.cache.session.idleSeconds") long idleSeconds) {
+        this.mailboxManager = mailboxManager;
+        this.pipelineMetrics = pipelineMetrics;
+        this.idleTimeoutNanos = Duration.ofSeconds(idleSeconds).toNanos();
+        long sweepSeconds = Math.max(1, idleSeconds / 2);
+        reaper.scheduleWithFixedDelay(this::logoutIdleSessions, sweepSeconds, sweepSeconds, TimeUnit.SECONDS);
+        gaugeRegistry.register("rabbitmq.cache.session.idle", idleCount::get);
+    }
+
+    /** Runs {@code work} in a session of {@code user}, bracketed by start/endProcessingRequest. */
+    public <T> T execute(Username user, SessionWork<T> work) throws MailboxException {
+        MailboxSession session = open(user);
+        try {
+            return work.execute(session);
+        } finally {
+            mailboxManager.endProcessingRequest(session);
+            release(user, session);
+        }
+    }
+
+    /**
+     * Reactive variant of {@link #execute}: the session is borrowed on subscription and returned to the pool
+     * once the {@link Mono} returned by {@code work} terminates or is cancelled.
+     */
+    public <T> Mono<T> executeReactive(Username user, Function<MailboxSession, Mono<T>> work) {
+        return Mono.usingWhen(
+                Mono.fromCallable(() -> open(user)),
+                work,
+                session -> Mono.fromRunnable(() -> {
+                    mailboxManager.endProcessingRequest(session);
+                    release(user, session);
+                }));
+    }
+
+    private MailboxSession open(Username user) {
+        long start = System.nanoTime();
+        MailboxSession session = borrow(user);
+        mailboxManager.startProcessingRequest(session);
+        pipelineMetrics.record(PipelineMetrics.Stage.SESSION, start);
+        return session;
+    }
+
+    private MailboxSession borrow(Username user) {
+        Deque<IdleSession> idle = idleSessions.get(user);
+        IdleSession reused = idle == null ? null : idle.pollFirst();
+        if (reused != null) {
+            idleCount.decrementAndGet();
+            return reused.session();
+        }
+        return mailboxManager.createSystemSession(user);
+    }
+
+    private void release(Username user, MailboxSession session) {
+        // added under the map's lock, so the sweep cannot drop the deque in between
+        idleSessions.compute(user, (u, idle) -> {
+            Deque<IdleSession> deque = idle == null ? new ConcurrentLinkedDeque<>() : idle;
+            deque.addFirst(new IdleSession(session, System.nanoTime()));
+            return deque;
+        });
+        idleCount.incrementAndGet();
+    }
+
+    private void logoutIdleSessions() {
+        long now = System.nanoTime();
+        int loggedOut = 0;
+        for (Map.Entry<Username, Deque<IdleSession>> entry : idleSessions.entrySet()) {
+            Deque<IdleSession> idle = entry.getValue();
+            // most recently released sessions are at the head, so expired ones sit at the tail
+            Iterator<IdleSession> oldestFirst = idle.descendingIterator();
+            while (oldestFirst.hasNext()) {
+                IdleSession candidate = oldestFirst.next();
+                if (now - candidate.idleSince() < idleTimeoutNanos) {
+                    break;
+                }
+                if (idle.removeLastOccurrence(candidate)) {
+                    idleCount.decrementAndGet();
+                    logoutQuietly(candidate.session());
+                    loggedOut++;
+                }
+            }
+            // users seen once must not stay in the map forever
+            idleSessions.computeIfPresent(entry.getKey(), (user, deque) -> deque.isEmpty() ? null : deque);
+        }
+        if (loggedOut > 0) {
+            LOGGER.debug("Logged out {} idle mailbox session(s)", loggedOut);
+        }
+    }
+
+    private void logoutQuietly(MailboxSession session) {
+        try {
+            mailboxManager.logout(session);
+        } catch (Exception e) {
+            LOGGER.warn("Logging out idle session of {} failed: {}", session.getUser(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void dispose() {
+        reaper.shutdownNow();
+        idleSessions.values().forEach(idle -> idle.forEach(s -> logoutQuietly(s.session())));
+        idleSessions.clear();
+    }
+
+    private record IdleSession(MailboxSession session, long idleSince) {
+    }
+}
@@ -0,0 +1,79 @@
+package com.integration.james.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.apache.james.core.Username;
+import org.apache.james.events.Event;
+import org.apache.james.events.EventBus;
+import org.apache.james.events.EventListener;
+import org.apache.james.events.Group;
+import org.apache.james.mailbox.events.MailboxEvents;
+import org.apache.james.mailbox.model.MailboxPath;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Remembers, per user, the Trash mailbox already known to exist, so trashing does not check for its existence
+ * on every instruction. An entry is dropped when the event bus reports that mailbox deleted or renamed, or when
+ * a caller finds it missing after all.
+ * <p>
+ * The bus delivers group events once per cluster, so on multi-node deployments the TTL bounds how long other
+ * nodes keep a Trash that no longer exists.
+ */
+@Singleton
+public class TrashMailboxCache {
+
+    private final Cache<Username, MailboxPath> existingTrash;
+
+    @Inject
+    public TrashMailboxCache(EventBus eventBus,
+                             @Named("rabbitmq.cache.trash.maxSize") long maxSize,
+                             @Named("rabbitmq.cache.trash.ttlSeconds") long ttlSeconds) {
+        this.existingTrash = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        eventBus.register(new Invalidator());
+    }
+
+    public Optional<MailboxPath> get(Username owner) {
+        return Optional.ofNullable(existingTrash.getIfPresent(owner));
+    }
+
+    public void put(Username owner, MailboxPath trashPath) {
+        existingTrash.put(owner, trashPath);
+    }
+
+    public void invalidate(Username owner) {
+        existingTrash.invalidate(owner);
+    }
+
+    public static class InvalidatorGroup extends Group {
+    }
+
+    private class Invalidator implements EventListener.GroupEventListener {
+
+        private final Group group = new InvalidatorGroup();
+
+        @Override
+        public Group getDefaultGroup() {
+            return group;
+        }
+
+        @Override
+        public boolean isHandling(Event event) {
+            return event instanceof MailboxEvents.MailboxDeletion || event instanceof MailboxEvents.MailboxRenamed;
+        }
+
+        @Override
+        public void event(Event event) {
+            // both events carry the path the mailbox had before the change
+            MailboxPath path = ((MailboxEvents.MailboxEvent) event).getMailboxPath();
+            existingTrash.asMap().remove(path.getUser(), path);
+        }
+    }
+}
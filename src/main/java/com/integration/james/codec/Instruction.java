@@ -0,0 +1,153 @@
+package com.integration.james.codec;
+
+import com.integration.james.dto.IncomingMessagePayload;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MessageId;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * An instruction as the pipeline executes it: the wire payload, with the fields every stage needs parsed once by
+ * {@link InstructionCodec} at decode time instead of again by each stage.
+ * <p>
+ * Malformed fields are kept as absent ({@link Action#UNKNOWN}, {@link #NO_UID}, {@code null} mailbox and message
+ * ids) rather than rejected, so that the instruction still fails on its own with a status, as before.
+ */
+public final class Instruction {
+
+    /** Marks a {@code sourceMessageID} that is not a single UID: malformed, or the UID set of a range action. */
+    public static final long NO_UID = -1;
+
+    public enum Action {
+        TRASH("Trash"),
+        MOVE("Move"),
+        TRASH_RANGE(IncomingMessagePayload.TRASH_RANGE_ACTION),
+        MOVE_RANGE(IncomingMessagePayload.MOVE_RANGE_ACTION),
+        TRASH_QUERY(IncomingMessagePayload.TRASH_QUERY_ACTION),
+        MOVE_QUERY(IncomingMessagePayload.MOVE_QUERY_ACTION),
+        TRASH_BY_ID(IncomingMessagePayload.TRASH_BY_ID_ACTION),
+        MOVE_BY_ID(IncomingMessagePayload.MOVE_BY_ID_ACTION),
+        UNKNOWN(null);
+
+        private static final Map<String, Action> BY_WIRE_NAME = Arrays.stream(values())
+                .filter(action -> action.wireName != null)
+                .collect(Collectors.toUnmodifiableMap(action -> action.wireName, Function.identity()));
+
+        private final String wireName;
+
+        Action(String wireName) {
+            this.wireName = wireName;
+        }
+
+        public static Action of(String wireName) {
+            return wireName == null ? UNKNOWN : BY_WIRE_NAME.getOrDefault(wireName, UNKNOWN);
+        }
+
+        /** Range, query and by-id actions: they may touch many messages and carry no single UID. */
+        public boolean isMultiMessage() {
+            return this != TRASH && this != MOVE && this != UNKNOWN;
+        }
+
+        /** Actions addressing messages by {@link MessageId} rather than by mailbox and UID. */
+        public boolean isById() {
+            return this == TRASH_BY_ID || this == MOVE_BY_ID;
+        }
+    }
+
+    private final IncomingMessagePayload payload;
+    private final Action action;
+    private final long uid;
+    private final MailboxId sourceMailboxId;
+    private final MailboxId destinationMailboxId;
+    private final List<MessageId> messageIds;
+    private final List<MailboxId> destinationMailboxIds;
+
+    Instruction(IncomingMessagePayload payload, Action action, long uid, MailboxId sourceMailboxId, MailboxId destinationMailboxId) {
+        this(payload, action, uid, sourceMailboxId, destinationMailboxId, null, null);
+    }
+
+    Instruction(IncomingMessagePayload payload,
+                Action action,
+                long uid,
+                MailboxId sourceMailboxId,
+                MailboxId destinationMailboxId,
+                List<MessageId> messageIds,
+                List<MailboxId> destinationMailboxIds) {
+        this.payload = payload;
+        this.action = action;
+        this.uid = uid;
+        this.sourceMailboxId = sourceMailboxId;
+        this.destinationMailboxId = destinationMailboxId;
+        this.messageIds = messageIds;
+        this.destinationMailboxIds = destinationMailboxIds;
+    }
+
+    public IncomingMessagePayload getPayload() {
+        return payload;
+    }
+
+    public String getHashID() {
+        return payload.getHashID();
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public boolean hasUid() {
+        return uid != NO_UID;
+    }
+
+    /** The UID of a single-message action, or {@link #NO_UID}. */
+    public long getUid() {
+        return uid;
+    }
+
+    /** {@code null} when missing or malformed. */
+    public MailboxId getSourceMailboxId() {
+        return sourceMailboxId;
+    }
+
+    /** @throws IllegalArgumentException if {@code sourceMailboxID} was missing or malformed. */
+    public MailboxId requireSourceMailboxId() {
+        if (sourceMailboxId == null) {
+            throw new IllegalArgumentException("Missing or malformed sourceMailboxID: '" + payload.getSourceMailboxID() + "'");
+        }
+        return sourceMailboxId;
+    }
+
+    /** {@code null} when missing (Trash actions) or malformed. */
+    public MailboxId getDestinationMailboxId() {
+        return destinationMailboxId;
+    }
+
+    /** The messages of a by-id action; {@code null} when missing, empty, or when any of them is malformed. */
+    public List<MessageId> getMessageIds() {
+        return messageIds;
+    }
+
+    /**
+     * The mailboxes the messages of a {@code MoveById} end up in: {@code destinationMailboxIDs}, or else
+     * {@code destinationMailboxID} alone. {@code null} when missing, or when any of them is malformed.
+     */
+    public List<MailboxId> getDestinationMailboxIds() {
+        return destinationMailboxIds;
+    }
+
+    @Override
+    public String toString() {
+        return "Instruction{" +
+                "action=" + action +
+                ", uid=" + uid +
+                ", sourceMailboxId=" + sourceMailboxId +
+                ", destinationMailboxId=" + destinationMailboxId +
+                (messageIds == null ? "" : ", messageIds=" + messageIds.size()) +
+                (destinationMailboxIds == null ? "" : ", destinationMailboxIds=" + destinationMailboxIds) +
+                ", hashID='" + payload.getHashID() + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,240 @@
+package com.integration.james.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.StatusPayload;
+import com.integration.james.publisher.StatusMessage;
+import com.rabbitmq.client.AMQP;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MessageId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Turns delivery bodies into {@link Instruction}s and statuses into publish bodies, with as little garbage per
+ * message as Jackson allows.
+ * <ul>
+ *     <li>Bodies are read straight from the delivery {@code byte[]} by a reader built once, never through a
+ *     {@code String}.</li>
+ *     <li>The action, the UID and the mailbox and message ids are parsed once here, so the lanes and the mailbox calls do not
+ *     parse them again.</li>
+ *     <li>Statuses are written by writers built once into a per-thread buffer that is reset, not reallocated,
+ *     between messages; only the final body is copied out.</li>
+ * </ul>
+ * Every {@link WireFormat} has its own readers and writers. Statuses are encoded in the format of the instruction
+ * they answer, unless {@code rabbitmq.wire.statusFormat} names a fixed one. Deliveries of an unknown content type are
+ * read as JSON, unless {@code rabbitmq.wire.strictContentType} is set.
+ */
+@Singleton
+public class InstructionCodec {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstructionCodec.class);
+    private static final String SAME_AS_REQUEST = "request";
+    // a status is ~100 bytes, a bulk envelope a few KB: the buffer grows once to the largest and stays there
+    private static final int INITIAL_BUFFER_SIZE = 512;
+
+    private final MailboxId.Factory mailboxIdFactory;
+    private final MessageId.Factory messageIdFactory;
+    // null: answer in the format of the instruction
+    private final WireFormat statusFormat;
+    private final boolean strictContentType;
+    // all indexed by WireFormat ordinal
+    private final ObjectReader[] payloadReaders;
+    private final ObjectWriter[] payloadWriters;
+    private final ObjectWriter[] statusWriters;
+    private final ObjectWriter[] bulkStatusWriters;
+    private final ObjectReader[] statusReaders;
+    private final AMQP.BasicProperties[] statusProperties;
+    private final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(() -> new ByteArrayBuilder(INITIAL_BUFFER_SIZE));
+
+    @Inject
+    public InstructionCodec(MailboxId.Factory mailboxIdFactory,
+                            MessageId.Factory messageIdFactory,
+                            @Named("rabbitmq.wire.statusFormat") String statusFormat,
+                            @Named("rabbitmq.wire.strictContentType") boolean strictContentType) {
+        this.mailboxIdFactory = mailboxIdFactory;
+        this.messageIdFactory = messageIdFactory;
+        this.statusFormat = SAME_AS_REQUEST.equalsIgnoreCase(statusFormat.trim()) ? null : WireFormat.parse(statusFormat);
+        this.strictContentType = strictContentType;
+        WireFormat[] formats = WireFormat.values();
+        this.payloadReaders = new ObjectReader[formats.length];
+        this.payloadWriters = new ObjectWriter[formats.length];
+        this.statusWriters = new ObjectWriter[formats.length];
+        this.bulkStatusWriters = new ObjectWriter[formats.length];
+        this.statusReaders = new ObjectReader[formats.length];
+        this.statusProperties = new AMQP.BasicProperties[formats.length];
+        TypeReference<List<StatusPayload>> statusList = new TypeReference<>() { };
+        for (WireFormat format : formats) {
+            ObjectMapper objectMapper = new ObjectMapper(factoryOf(format));
+            payloadReaders[format.ordinal()] = objectMapper.readerFor(IncomingMessagePayload.class);
+            payloadWriters[format.ordinal()] = objectMapper.writerFor(IncomingMessagePayload.class);
+            statusWriters[format.ordinal()] = objectMapper.writerFor(StatusPayload.class);
+            bulkStatusWriters[format.ordinal()] = objectMapper.writerFor(statusList);
+            statusReaders[format.ordinal()] = objectMapper.readerFor(StatusPayload.class);
+            statusProperties[format.ordinal()] = new AMQP.BasicProperties.Builder().contentType(format.getContentType()).build();
+        }
+        LOGGER.info("Statuses encoded {}", this.statusFormat == null ? "in the format of their instruction" : "as " + this.statusFormat);
+    }
+
+    /** A single document, an array or a sequence of documents: items are decoded one at a time. */
+    public MappingIterator<IncomingMessagePayload> readValues(WireFormat format, byte[] body) throws IOException {
+        return payloadReaders[format.ordinal()].readValues(body);
+    }
+
+    /**
+     * The format of a delivery with the given content type. Producers commonly label JSON {@code text/plain} or
+     * {@code application/octet-stream}, so any content type that is not Smile nor CBOR is read as JSON, and a body
+     * that is not JSON fails to decode as usual.
+     *
+     * @return empty for a content type no codec handles, in strict mode only.
+     */
+    public Optional<WireFormat> formatOf(String contentType) {
+        Optional<WireFormat> format = WireFormat.forContentType(contentType);
+        return strictContentType ? format : Optional.of(format.orElse(WireFormat.JSON));
+    }
+
+    /** The format of the statuses answering an instruction received in {@code request}. */
+    public WireFormat statusFormat(WireFormat request) {
+        return statusFormat == null ? request : statusFormat;
+    }
+
+    /** The properties of a status publish: its content type. Shared, never modified. */
+    public AMQP.BasicProperties statusProperties(WireFormat format) {
+        return statusProperties[format.ordinal()];
+    }
+
+    /** Parses the typed fields of a decoded payload; never throws, malformed fields are left absent. */
+    public Instruction compile(IncomingMessagePayload payload) {
+        Instruction.Action action = Instruction.Action.of(payload.getAction());
+        long uid = action.isMultiMessage() ? Instruction.NO_UID : parseUid(payload.getSourceMessageID());
+        MailboxId destinationMailboxId = parseMailboxId(payload.getDestinationMailboxID());
+        if (!action.isById()) {
+            return new Instruction(payload, action, uid, parseMailboxId(payload.getSourceMailboxID()), destinationMailboxId);
+        }
+        List<MailboxId> destinationMailboxIds = payload.getDestinationMailboxIDs() != null && !payload.getDestinationMailboxIDs().isEmpty()
+                ? parseAll(payload.getDestinationMailboxIDs(), this::parseMailboxId)
+                : destinationMailboxId == null ? null : List.of(destinationMailboxId);
+        return new Instruction(payload, action, uid,
+                parseMailboxId(payload.getSourceMailboxID()),
+                destinationMailboxId,
+                parseAll(payload.getMessageIDs(), this::parseMessageId),
+                destinationMailboxIds);
+    }
+
+    /** The properties of a reply to an RPC caller: content type and the caller's correlation ID. */
+    public AMQP.BasicProperties replyProperties(WireFormat format, String correlationId) {
+        return statusProperties[format.ordinal()].builder().correlationId(correlationId).build();
+    }
+
+    /** Reads back a status message published earlier, e.g. a reply returned by the broker. */
+    public StatusMessage decodeStatus(WireFormat format, byte[] body) throws IOException {
+        MappingIterator<StatusPayload> items = statusReaders[format.ordinal()].readValues(body);
+        StatusPayload first = items.nextValue();
+        if (!items.getParser().getParsingContext().inArray()) {
+            return StatusMessage.single(first, format);
+        }
+        List<StatusPayload> statuses = new ArrayList<>();
+        statuses.add(first);
+        while (items.hasNextValue()) {
+            statuses.add(items.nextValue());
+        }
+        return StatusMessage.bulk(statuses, format);
+    }
+
+    public byte[] encode(StatusMessage message) throws IOException {
+        int format = message.getFormat().ordinal();
+        return message.isBulk()
+                ? write(bulkStatusWriters[format], message.getStatuses())
+                : write(statusWriters[format], message.getStatuses().get(0));
+    }
+
+    public byte[] encode(WireFormat format, IncomingMessagePayload payload) throws IOException {
+        return write(payloadWriters[format.ordinal()], payload);
+    }
+
+    private byte[] write(ObjectWriter writer, Object value) throws IOException {
+        ByteArrayBuilder buffer = buffers.get();
+        try {
+            writer.writeValue(buffer, value);
+            return buffer.toByteArray();
+        } finally {
+            // keeps the current block for the next message
+            buffer.reset();
+        }
+    }
+
+    private static JsonFactory factoryOf(WireFormat format) {
+        return switch (format) {
+            case JSON -> new JsonFactory();
+            case SMILE -> new SmileFactory();
+            case CBOR -> new CBORFactory();
+        };
+    }
+
+    private static long parseUid(String sourceMessageID) {
+        if (sourceMessageID == null) {
+            return Instruction.NO_UID;
+        }
+        try {
+            long uid = Long.parseLong(sourceMessageID);
+            return uid > 0 ? uid : Instruction.NO_UID;
+        } catch (NumberFormatException e) {
+            return Instruction.NO_UID;
+        }
+    }
+
+    /** @return {@code null} when the list is missing or empty, or when any of its items does not parse. */
+    private static <T> List<T> parseAll(List<String> serialized, Function<String, T> parser) {
+        if (serialized == null || serialized.isEmpty()) {
+            return null;
+        }
+        List<T> parsed = new ArrayList<>(serialized.size());
+        for (String item : serialized) {
+            T value = parser.apply(item);
+            if (value == null) {
+                return null;
+            }
+            parsed.add(value);
+        }
+        return parsed;
+    }
+
+    private MessageId parseMessageId(String serialized) {
+        if (serialized == null || serialized.isBlank()) {
+            return null;
+        }
+        try {
+            return messageIdFactory.fromString(serialized);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private MailboxId parseMailboxId(String serialized) {
+        if (serialized == null || serialized.isBlank()) {
+            return null;
+        }
+        try {
+            return mailboxIdFactory.fromString(serialized);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
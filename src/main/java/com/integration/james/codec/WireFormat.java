@@ -0,0 +1,50 @@
+package com.integration.james.codec;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Encodings of instructions and statuses on the wire, selected by the AMQP {@code contentType} property. Smile and
+ * CBOR carry the same documents as JSON, in Jackson's binary formats: smaller bodies, cheaper to parse.
+ */
+public enum WireFormat {
+
+    JSON("application/json"),
+    SMILE("application/x-jackson-smile"),
+    CBOR("application/cbor");
+
+    private final String contentType;
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * The format of a delivery with the given content type; parameters such as {@code charset} are ignored.
+     * Deliveries without a content type are JSON, as they always were.
+     *
+     * @return empty for a content type no codec handles.
+     */
+    public static Optional<WireFormat> forContentType(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return Optional.of(JSON);
+        }
+        int parameters = contentType.indexOf(';');
+        String mimeType = (parameters < 0 ? contentType : contentType.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+        return switch (mimeType) {
+            case "application/json", "text/json" -> Optional.of(JSON);
+            case "application/x-jackson-smile", "application/smile" -> Optional.of(SMILE);
+            case "application/cbor" -> Optional.of(CBOR);
+            default -> mimeType.endsWith("+json") ? Optional.of(JSON) : Optional.empty();
+        };
+    }
+
+    /** A format named in the configuration: {@code json}, {@code smile} or {@code cbor}. */
+    public static WireFormat parse(String name) {
+        return WireFormat.valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,95 @@
+package com.integration.james.dto;
+
+import java.util.List;
+
+/**
+ * What an action touching more than one message did, reported next to its status: per-range results for range
+ * actions, matched/moved counts and chunks for query and by-id actions. Single-message actions report {@link #NONE}.
+ */
+public class ActionReport {
+
+    public static final ActionReport NONE = new ActionReport(false, false, null, null, null, null);
+
+    private final boolean success;
+    private final boolean retryable;
+    private final Long matched;
+    private final Long moved;
+    private final Integer chunks;
+    private final List<RangeResult> ranges;
+
+    private ActionReport(boolean success, boolean retryable, Long matched, Long moved, Integer chunks, List<RangeResult> ranges) {
+        this.success = success;
+        this.retryable = retryable;
+        this.matched = matched;
+        this.moved = moved;
+        this.chunks = chunks;
+        this.ranges = ranges;
+    }
+
+    /**
+     * A range action succeeded when it was attempted and none of its ranges failed. It may be retried when a range
+     * failed on the backend: ranges already moved are no longer in the source and are skipped by the next run.
+     */
+    public static ActionReport ofRanges(List<RangeResult> ranges) {
+        boolean success = RangeResult.allSucceeded(ranges);
+        boolean retryable = !success && ranges.stream().anyMatch(RangeResult::isRetryable);
+        return new ActionReport(success, retryable, null, RangeResult.totalMoved(ranges), null, List.copyOf(ranges));
+    }
+
+    /**
+     * Counts of a query action so far, or in total once it is over. By-id actions report the same way, matched being
+     * the listed messages found and accessible to the owner.
+     */
+    public static ActionReport ofQuery(boolean success, long matched, long moved, int chunks) {
+        return new ActionReport(success, false, matched, moved, chunks, null);
+    }
+
+    /** The same failed report, for an action stopped by the backend: a new run picks up where it stopped. */
+    public ActionReport asRetryable() {
+        return new ActionReport(false, true, matched, moved, chunks, ranges);
+    }
+
+    public boolean isNone() {
+        return this == NONE;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    public Outcome getOutcome() {
+        return success ? Outcome.SUCCEEDED : retryable ? Outcome.RETRYABLE : Outcome.FAILED;
+    }
+
+    public Long getMatched() {
+        return matched;
+    }
+
+    public Long getMoved() {
+        return moved;
+    }
+
+    public Integer getChunks() {
+        return chunks;
+    }
+
+    public List<RangeResult> getRanges() {
+        return ranges;
+    }
+
+    @Override
+    public String toString() {
+        return "ActionReport{" +
+                "success=" + success +
+                ", retryable=" + retryable +
+                ", matched=" + matched +
+                ", moved=" + moved +
+                ", chunks=" + chunks +
+                ", ranges=" + ranges +
+                '}';
+    }
+}
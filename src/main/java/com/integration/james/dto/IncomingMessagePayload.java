@@ -1,29 +1,68 @@
 package com.integration.james.dto;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.List;
 import java.util.Objects;
 
 public class IncomingMessagePayload {
 
+    public static final String MOVE_RANGE_ACTION = "MoveRange";
+    public static final String TRASH_RANGE_ACTION = "TrashRange";
+    public static final String MOVE_QUERY_ACTION = "MoveQuery";
+    public static final String TRASH_QUERY_ACTION = "TrashQuery";
+    public static final String MOVE_BY_ID_ACTION = "MoveById";
+    public static final String TRASH_BY_ID_ACTION = "TrashById";
+
     private final String action;
     private final String sourceMailboxID;
-    private final String sourceMessageID; // Expected to be a message UID
+    private final String sourceMessageID; // Expected to be a message UID; a UID set ("1:100,205,300:*") for range actions
     private final String destinationMailboxID; // nullable for TRASH
     private final String hashID;
+    private final String priority; // nullable: "interactive" or "bulk"
+    private final InstructionQuery query; // query actions only
+    private final List<String> messageIDs; // by-id actions only: James MessageIds
+    private final List<String> destinationMailboxIDs; // MoveById only, when the messages go to several mailboxes
+
+    public IncomingMessagePayload(String action,
+                                  String sourceMailboxID,
+                                  String sourceMessageID,
+                                  String destinationMailboxID,
+                                  String hashID) {
+        this(action, sourceMailboxID, sourceMessageID, destinationMailboxID, hashID, null, null);
+    }
+
+    public IncomingMessagePayload(String action,
+                                  String sourceMailboxID,
+                                  String sourceMessageID,
+                                  String destinationMailboxID,
+                                  String hashID,
+                                  String priority,
+                                  InstructionQuery query) {
+        this(action, sourceMailboxID, sourceMessageID, destinationMailboxID, hashID, priority, query, null, null);
+    }
 
     @JsonCreator
     public IncomingMessagePayload(@JsonProperty("action") String action,
                                   @JsonProperty("sourceMailboxID") String sourceMailboxID,
                                   @JsonProperty("sourceMessageID") String sourceMessageID,
                                   @JsonProperty("destinationMailboxID") String destinationMailboxID,
-                                  @JsonProperty("hashID") String hashID) {
+                                  @JsonProperty("hashID") String hashID,
+                                  @JsonProperty("priority") String priority,
+                                  @JsonProperty("query") InstructionQuery query,
+                                  @JsonProperty("messageIDs") List<String> messageIDs,
+                                  @JsonProperty("destinationMailboxIDs") List<String> destinationMailboxIDs) {
         this.action = action;
         this.sourceMailboxID = sourceMailboxID;
         this.sourceMessageID = sourceMessageID;
         this.destinationMailboxID = destinationMailboxID;
         this.hashID = hashID;
+        this.priority = priority;
+        this.query = query;
+        this.messageIDs = messageIDs;
+        this.destinationMailboxIDs = destinationMailboxIDs;
     }
 
     public String getAction() {
@@ -46,6 +85,43 @@ public class IncomingMessagePayload {
         return hashID;
     }
 
+    public String getPriority() {
+        return priority;
+    }
+
+    public InstructionQuery getQuery() {
+        return query;
+    }
+
+    public List<String> getMessageIDs() {
+        return messageIDs;
+    }
+
+    public List<String> getDestinationMailboxIDs() {
+        return destinationMailboxIDs;
+    }
+
+    /** Range actions move every message of the UID set in {@code sourceMessageID}. */
+    @JsonIgnore
+    public boolean isRangeAction() {
+        return MOVE_RANGE_ACTION.equals(action) || TRASH_RANGE_ACTION.equals(action);
+    }
+
+    /** Query actions move every message of the source mailbox matching {@code query}; sourceMessageID is unused. */
+    @JsonIgnore
+    public boolean isQueryAction() {
+        return MOVE_QUERY_ACTION.equals(action) || TRASH_QUERY_ACTION.equals(action);
+    }
+
+    /**
+     * By-id actions move the messages listed in {@code messageIDs}, wherever they are, to the destination mailbox(es)
+     * or to the owner's Trash; sourceMessageID is unused.
+     */
+    @JsonIgnore
+    public boolean isByIdAction() {
+        return MOVE_BY_ID_ACTION.equals(action) || TRASH_BY_ID_ACTION.equals(action);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -55,12 +131,16 @@ public class IncomingMessagePayload {
                 Objects.equals(sourceMailboxID, that.sourceMailboxID) &&
                 Objects.equals(sourceMessageID, that.sourceMessageID) &&
                 Objects.equals(destinationMailboxID, that.destinationMailboxID) &&
-                Objects.equals(hashID, that.hashID);
+                Objects.equals(hashID, that.hashID) &&
+                Objects.equals(priority, that.priority) &&
+                Objects.equals(query, that.query) &&
+                Objects.equals(messageIDs, that.messageIDs) &&
+                Objects.equals(destinationMailboxIDs, that.destinationMailboxIDs);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(action, sourceMailboxID, sourceMessageID, destinationMailboxID, hashID);
+        return Objects.hash(action, sourceMailboxID, sourceMessageID, destinationMailboxID, hashID, priority, query, messageIDs, destinationMailboxIDs);
     }
 
     @Override
@@ -71,6 +151,10 @@ public class IncomingMessagePayload {
                 ", sourceMessageID='" + sourceMessageID + '\'' +
                 ", destinationMailboxID='" + destinationMailboxID + '\'' +
                 ", hashID='" + hashID + '\'' +
+                ", priority='" + priority + '\'' +
+                ", query=" + query +
+                ", messageIDs=" + messageIDs +
+                ", destinationMailboxIDs=" + destinationMailboxIDs +
                 '}';
     }
 }
\ No newline at end of file
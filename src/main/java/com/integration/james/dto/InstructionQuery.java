@@ -0,0 +1,85 @@
+package com.integration.james.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Selection criteria of a query action; every criterion given must match, an empty query matches the whole mailbox.
+ * Dates are ISO-8601 instants compared with the internal (received) date; flags are IMAP flag names, system flags
+ * with their backslash ({@code "\\Seen"}), anything else being a user flag.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class InstructionQuery {
+
+    private final String receivedBefore;
+    private final String receivedAfter;
+    private final List<String> flagsSet;
+    private final List<String> flagsUnset;
+    private final Map<String, String> headers; // header name -> substring the header must contain
+
+    @JsonCreator
+    public InstructionQuery(@JsonProperty("receivedBefore") String receivedBefore,
+                            @JsonProperty("receivedAfter") String receivedAfter,
+                            @JsonProperty("flagsSet") List<String> flagsSet,
+                            @JsonProperty("flagsUnset") List<String> flagsUnset,
+                            @JsonProperty("headers") Map<String, String> headers) {
+        this.receivedBefore = receivedBefore;
+        this.receivedAfter = receivedAfter;
+        this.flagsSet = flagsSet;
+        this.flagsUnset = flagsUnset;
+        this.headers = headers;
+    }
+
+    public String getReceivedBefore() {
+        return receivedBefore;
+    }
+
+    public String getReceivedAfter() {
+        return receivedAfter;
+    }
+
+    public List<String> getFlagsSet() {
+        return flagsSet;
+    }
+
+    public List<String> getFlagsUnset() {
+        return flagsUnset;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        InstructionQuery that = (InstructionQuery) o;
+        return Objects.equals(receivedBefore, that.receivedBefore) &&
+                Objects.equals(receivedAfter, that.receivedAfter) &&
+                Objects.equals(flagsSet, that.flagsSet) &&
+                Objects.equals(flagsUnset, that.flagsUnset) &&
+                Objects.equals(headers, that.headers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(receivedBefore, receivedAfter, flagsSet, flagsUnset, headers);
+    }
+
+    @Override
+    public String toString() {
+        return "InstructionQuery{" +
+                "receivedBefore='" + receivedBefore + '\'' +
+                ", receivedAfter='" + receivedAfter + '\'' +
+                ", flagsSet=" + flagsSet +
+                ", flagsUnset=" + flagsUnset +
+                ", headers=" + headers +
+                '}';
+    }
+}
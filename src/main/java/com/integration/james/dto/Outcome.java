@@ -0,0 +1,18 @@
+package com.integration.james.dto;
+
+/** How an instruction ended, telling failures caused by the instruction from those caused by the backend. */
+public enum Outcome {
+    SUCCEEDED,
+    /** The instruction itself is at fault (unknown mailbox, malformed ID, message gone): retrying cannot help. */
+    FAILED,
+    /** The backend failed (timeout, lock contention, unavailable store): the same instruction may succeed later. */
+    RETRYABLE;
+
+    public static Outcome of(boolean success) {
+        return success ? SUCCEEDED : FAILED;
+    }
+
+    public boolean isSuccess() {
+        return this == SUCCEEDED;
+    }
+}
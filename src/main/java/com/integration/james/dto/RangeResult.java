@@ -0,0 +1,99 @@
+package com.integration.james.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+import java.util.Objects;
+
+/** Outcome of one UID range of a range action: how many messages it actually moved. */
+public class RangeResult {
+
+    private final String uids; // "12", "12:40" or "12:*"
+    private final long moved;
+    private final String status; // "success" or "failed"
+    private final boolean retryable; // failed on the backend, not on the range itself; not serialized
+
+    @JsonCreator
+    public RangeResult(@JsonProperty("uids") String uids,
+                       @JsonProperty("moved") long moved,
+                       @JsonProperty("status") String status) {
+        this(uids, moved, status, false);
+    }
+
+    private RangeResult(String uids, long moved, String status, boolean retryable) {
+        this.uids = uids;
+        this.moved = moved;
+        this.status = status;
+        this.retryable = retryable;
+    }
+
+    public static RangeResult success(String uids, long moved) {
+        return new RangeResult(uids, moved, "success");
+    }
+
+    public static RangeResult failed(String uids) {
+        return new RangeResult(uids, 0, "failed");
+    }
+
+    /** A range not moved because the backend failed; running the action again may move it. */
+    public static RangeResult failed(String uids, boolean retryable) {
+        return new RangeResult(uids, 0, "failed", retryable);
+    }
+
+    /** A range action succeeded when it was attempted and none of its ranges failed. */
+    public static boolean allSucceeded(List<RangeResult> results) {
+        return !results.isEmpty() && results.stream().allMatch(RangeResult::isSuccess);
+    }
+
+    public static long totalMoved(List<RangeResult> results) {
+        return results.stream().mapToLong(RangeResult::getMoved).sum();
+    }
+
+    public String getUids() {
+        return uids;
+    }
+
+    public long getMoved() {
+        return moved;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    @JsonIgnore
+    public boolean isSuccess() {
+        return "success".equals(status);
+    }
+
+    @JsonIgnore
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RangeResult that = (RangeResult) o;
+        return moved == that.moved &&
+                Objects.equals(uids, that.uids) &&
+                Objects.equals(status, that.status);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(uids, moved, status);
+    }
+
+    @Override
+    public String toString() {
+        return "RangeResult{" +
+                "uids='" + uids + '\'' +
+                ", moved=" + moved +
+                ", status='" + status + '\'' +
+                '}';
+    }
+}
@@ -1,20 +1,58 @@
 package com.integration.james.dto;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.List;
 import java.util.Objects;
 
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class StatusPayload {
 
     private final String hashID;
-    private final String status; // "success" or "failed"
+    private final String status; // "success", "failed", or "progress" while a query action runs
+    private final Long matched; // query and by-id actions only
+    private final Long moved; // range, query and by-id actions only
+    private final Integer chunks; // query and by-id actions only
+    private final List<RangeResult> ranges; // range actions only
+    private final String error; // only when the instruction could not even be read
+
+    public StatusPayload(String hashID, String status) {
+        this(hashID, status, null, null, null, null, null);
+    }
+
+    public StatusPayload(String hashID, String status, Long matched, Long moved, Integer chunks, List<RangeResult> ranges) {
+        this(hashID, status, matched, moved, chunks, ranges, null);
+    }
 
     @JsonCreator
     public StatusPayload(@JsonProperty("hashID") String hashID,
-                         @JsonProperty("status") String status) {
+                         @JsonProperty("status") String status,
+                         @JsonProperty("matched") Long matched,
+                         @JsonProperty("moved") Long moved,
+                         @JsonProperty("chunks") Integer chunks,
+                         @JsonProperty("ranges") List<RangeResult> ranges,
+                         @JsonProperty("error") String error) {
         this.hashID = hashID;
         this.status = status;
+        this.matched = matched;
+        this.moved = moved;
+        this.chunks = chunks;
+        this.ranges = ranges;
+        this.error = error;
+    }
+
+    /** The status of an action, with what it reported about the messages it touched. */
+    public static StatusPayload of(String hashID, String status, ActionReport report) {
+        return report.isNone()
+                ? new StatusPayload(hashID, status)
+                : new StatusPayload(hashID, status, report.getMatched(), report.getMoved(), report.getChunks(), report.getRanges());
+    }
+
+    /** A failed status explaining why the instruction was rejected unread. */
+    public static StatusPayload rejected(String hashID, String error) {
+        return new StatusPayload(hashID, "failed", null, null, null, null, error);
     }
 
     public String getHashID() {
@@ -25,18 +63,43 @@ public class StatusPayload {
         return status;
     }
 
+    public Long getMatched() {
+        return matched;
+    }
+
+    public Long getMoved() {
+        return moved;
+    }
+
+    public Integer getChunks() {
+        return chunks;
+    }
+
+    public List<RangeResult> getRanges() {
+        return ranges;
+    }
+
+    public String getError() {
+        return error;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         StatusPayload that = (StatusPayload) o;
         return Objects.equals(hashID, that.hashID) &&
-                Objects.equals(status, that.status);
+                Objects.equals(status, that.status) &&
+                Objects.equals(matched, that.matched) &&
+                Objects.equals(moved, that.moved) &&
+                Objects.equals(chunks, that.chunks) &&
+                Objects.equals(ranges, that.ranges) &&
+                Objects.equals(error, that.error);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(hashID, status);
+        return Objects.hash(hashID, status, matched, moved, chunks, ranges, error);
     }
 
     @Override
@@ -44,6 +107,11 @@ public class StatusPayload {
         return "StatusPayload{" +
                 "hashID='" + hashID + '\'' +
                 ", status='" + status + '\'' +
+                ", matched=" + matched +
+                ", moved=" + moved +
+                ", chunks=" + chunks +
+                ", ranges=" + ranges +
+                ", error='" + error + '\'' +
                 '}';
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,333 @@
+package com.integration.james.metrics;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.integration.james.codec.Instruction;
+import com.integration.james.pipeline.Priority;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stage latencies, per-action outcomes and unacked deliveries, exported through James's {@link MetricFactory}
+ * and {@link GaugeRegistry}.
+ * <p>
+ * James's {@code TimeMetric} allocates a context per measurement, so stages are timed with {@link System#nanoTime()}
+ * instead and recorded into pre-registered objects only: a call count and a total in microseconds (both James
+ * counters, from which rates and mean latency follow), plus a power-of-two histogram exposing p50/p99 gauges.
+ * Recording never allocates.
+ * <p>
+ * The gauges cover the whole uptime; {@link #recentLatencies()} and {@link #getAckedPerSecond()} cover the last minute
+ * or two only, for the WebAdmin pipeline route.
+ */
+@Singleton
+public class PipelineMetrics {
+
+    public enum Stage {
+        DECODE("decode"),
+        RESOLUTION("resolution"),
+        SESSION("session"),
+        MOVE_MESSAGES("moveMessages"),
+        SERIALIZE("serialize"),
+        PUBLISH("publish"),
+        CONFIRM("confirm"),
+        ACK("ack");
+
+        private final String metricName;
+
+        Stage(String metricName) {
+            this.metricName = metricName;
+        }
+    }
+
+    private final StageTimer[] timers = new StageTimer[Stage.values().length];
+    private final StageTimer[] completions = new StageTimer[Priority.values().length];
+    private final StageTimer rpcRoundTrip;
+    private final LongAdder ackedDeliveries = new LongAdder();
+    private final RateWindow ackRate = new RateWindow();
+    private final Metric trashSuccess;
+    private final Metric trashFailure;
+    private final Metric moveSuccess;
+    private final Metric moveFailure;
+    private final Metric trashRangeSuccess;
+    private final Metric trashRangeFailure;
+    private final Metric moveRangeSuccess;
+    private final Metric moveRangeFailure;
+    private final Metric rangeMoved;
+    private final Metric trashQuerySuccess;
+    private final Metric trashQueryFailure;
+    private final Metric moveQuerySuccess;
+    private final Metric moveQueryFailure;
+    private final Metric queryMoved;
+    private final Metric trashByIdSuccess;
+    private final Metric trashByIdFailure;
+    private final Metric moveByIdSuccess;
+    private final Metric moveByIdFailure;
+    private final Metric byIdMoved;
+    private final Metric otherFailure;
+    private final Metric unsupportedContentType;
+    private final Metric rpcFallbacks;
+    private final AtomicInteger unacked = new AtomicInteger();
+
+    @Inject
+    public PipelineMetrics(MetricFactory metricFactory, GaugeRegistry gaugeRegistry) {
+        for (Stage stage : Stage.values()) {
+            timers[stage.ordinal()] = new StageTimer(metricFactory, gaugeRegistry, "rabbitmq.stage." + stage.metricName);
+        }
+        for (Priority priority : Priority.values()) {
+            completions[priority.ordinal()] = new StageTimer(metricFactory, gaugeRegistry, "rabbitmq.priority." + priority.label());
+        }
+        this.rpcRoundTrip = new StageTimer(metricFactory, gaugeRegistry, "rabbitmq.rpc.roundTrip");
+        this.trashSuccess = metricFactory.generate("rabbitmq.action.trash.success");
+        this.trashFailure = metricFactory.generate("rabbitmq.action.trash.failure");
+        this.moveSuccess = metricFactory.generate("rabbitmq.action.move.success");
+        this.moveFailure = metricFactory.generate("rabbitmq.action.move.failure");
+        this.trashRangeSuccess = metricFactory.generate("rabbitmq.action.trashRange.success");
+        this.trashRangeFailure = metricFactory.generate("rabbitmq.action.trashRange.failure");
+        this.moveRangeSuccess = metricFactory.generate("rabbitmq.action.moveRange.success");
+        this.moveRangeFailure = metricFactory.generate("rabbitmq.action.moveRange.failure");
+        this.rangeMoved = metricFactory.generate("rabbitmq.action.range.moved");
+        this.trashQuerySuccess = metricFactory.generate("rabbitmq.action.trashQuery.success");
+        this.trashQueryFailure = metricFactory.generate("rabbitmq.action.trashQuery.failure");
+        this.moveQuerySuccess = metricFactory.generate("rabbitmq.action.moveQuery.success");
+        this.moveQueryFailure = metricFactory.generate("rabbitmq.action.moveQuery.failure");
+        this.queryMoved = metricFactory.generate("rabbitmq.action.query.moved");
+        this.trashByIdSuccess = metricFactory.generate("rabbitmq.action.trashById.success");
+        this.trashByIdFailure = metricFactory.generate("rabbitmq.action.trashById.failure");
+        this.moveByIdSuccess = metricFactory.generate("rabbitmq.action.moveById.success");
+        this.moveByIdFailure = metricFactory.generate("rabbitmq.action.moveById.failure");
+        this.byIdMoved = metricFactory.generate("rabbitmq.action.byId.moved");
+        this.otherFailure = metricFactory.generate("rabbitmq.action.unknown.failure");
+        this.unsupportedContentType = metricFactory.generate("rabbitmq.wire.unsupportedContentType");
+        this.rpcFallbacks = metricFactory.generate("rabbitmq.rpc.fallbacks");
+        gaugeRegistry.register("rabbitmq.deliveries.unacked", unacked::get);
+    }
+
+    /** Records the time elapsed since {@code startNanos}, a value previously read from {@link System#nanoTime()}. */
+    public void record(Stage stage, long startNanos) {
+        timers[stage.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /** Records the time from delivery to ack of a delivery of the given priority. */
+    public void recordCompletion(Priority priority, long receivedAtNanos) {
+        completions[priority.ordinal()].record(System.nanoTime() - receivedAtNanos);
+    }
+
+    /** Records the time from delivery to the publication of the final reply of an RPC instruction. */
+    public void recordRpcRoundTrip(long receivedAtNanos) {
+        rpcRoundTrip.record(System.nanoTime() - receivedAtNanos);
+    }
+
+    /** Counts an RPC reply returned as unroutable, hence published on the status exchange instead. */
+    public void rpcFallback() {
+        rpcFallbacks.increment();
+    }
+
+    /** Counts the outcome of an executed instruction; replays of an already completed instruction are not counted. */
+    public void recordOutcome(Instruction.Action action, boolean success) {
+        switch (action) {
+            case TRASH -> (success ? trashSuccess : trashFailure).increment();
+            case MOVE -> (success ? moveSuccess : moveFailure).increment();
+            case TRASH_RANGE -> (success ? trashRangeSuccess : trashRangeFailure).increment();
+            case MOVE_RANGE -> (success ? moveRangeSuccess : moveRangeFailure).increment();
+            case TRASH_QUERY -> (success ? trashQuerySuccess : trashQueryFailure).increment();
+            case MOVE_QUERY -> (success ? moveQuerySuccess : moveQueryFailure).increment();
+            case TRASH_BY_ID -> (success ? trashByIdSuccess : trashByIdFailure).increment();
+            case MOVE_BY_ID -> (success ? moveByIdSuccess : moveByIdFailure).increment();
+            default -> otherFailure.increment();
+        }
+    }
+
+    /** Counts the messages moved by one range of a range action. */
+    public void rangeMoved(long messages) {
+        rangeMoved.add((int) Math.min(messages, Integer.MAX_VALUE));
+    }
+
+    /** Counts the messages moved by one chunk of a query action. */
+    public void queryMoved(long messages) {
+        queryMoved.add((int) Math.min(messages, Integer.MAX_VALUE));
+    }
+
+    /** Counts the messages moved by one chunk of a by-id action. */
+    public void byIdMoved(long messages) {
+        byIdMoved.add((int) Math.min(messages, Integer.MAX_VALUE));
+    }
+
+    public int getUnacked() {
+        return unacked.get();
+    }
+
+    /** Counts a delivery rejected before decoding: no codec reads its content type. */
+    public void unsupportedContentType() {
+        unsupportedContentType.increment();
+    }
+
+    public void delivered() {
+        unacked.incrementAndGet();
+    }
+
+    public void acked(int deliveries) {
+        ackedDeliveries.add(deliveries);
+        ackRate.add(deliveries);
+        // acks for deliveries of a channel closed in the meantime must not drive the gauge negative
+        int current;
+        do {
+            current = unacked.get();
+        } while (!unacked.compareAndSet(current, Math.max(0, current - deliveries)));
+    }
+
+    /** Deliveries acked since startup. */
+    public long getAckedTotal() {
+        return ackedDeliveries.sum();
+    }
+
+    /** Deliveries acked per second, averaged over the last minute. */
+    public double getAckedPerSecond() {
+        return ackRate.perSecond();
+    }
+
+    /**
+     * Latency percentiles of every stage, priority and of RPC round trips over the current and the previous minute,
+     * keyed by the name of their metric without its {@code rabbitmq.} prefix.
+     */
+    public Map<String, LatencySnapshot> recentLatencies() {
+        Map<String, LatencySnapshot> latencies = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            latencies.put("stage." + stage.metricName, timers[stage.ordinal()].recent());
+        }
+        for (Priority priority : Priority.values()) {
+            latencies.put("priority." + priority.label(), completions[priority.ordinal()].recent());
+        }
+        latencies.put("rpc.roundTrip", rpcRoundTrip.recent());
+        return latencies;
+    }
+
+    /** Measurements of the last minute or two; percentiles are the upper bounds of their histogram bucket. */
+    public record LatencySnapshot(long count, long p50Micros, long p99Micros) {
+    }
+
+    /** Unacked deliveries are requeued by the broker when their channel closes. */
+    public void channelClosed() {
+        unacked.set(0);
+    }
+
+    private static final class StageTimer {
+
+        // bucket i holds durations below 2^i microseconds; 40 buckets reach beyond 12 days
+        private static final int BUCKETS = 40;
+
+        private final Metric count;
+        private final Metric totalMicros;
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+        // the same histogram for even and odd minutes; a slot is cleared by the first record of its next minute
+        private final AtomicLongArray[] recent = {new AtomicLongArray(BUCKETS), new AtomicLongArray(BUCKETS)};
+        private final AtomicLongArray recentMinutes = new AtomicLongArray(2);
+
+        private StageTimer(MetricFactory metricFactory, GaugeRegistry gaugeRegistry, String name) {
+            this.count = metricFactory.generate(name + ".count");
+            this.totalMicros = metricFactory.generate(name + ".totalMicros");
+            gaugeRegistry.register(name + ".p50Micros", () -> percentile(histogram, 0.50));
+            gaugeRegistry.register(name + ".p99Micros", () -> percentile(histogram, 0.99));
+        }
+
+        private void record(long elapsedNanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, elapsedNanos));
+            count.increment();
+            totalMicros.add((int) Math.min(micros, Integer.MAX_VALUE));
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            histogram.incrementAndGet(bucket);
+            long minute = currentMinute();
+            int slot = (int) (minute & 1);
+            long slotMinute = recentMinutes.get(slot);
+            // records racing with the reset may be lost: these are statistics, not accounting
+            if (slotMinute != minute && recentMinutes.compareAndSet(slot, slotMinute, minute)) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    recent[slot].set(i, 0);
+                }
+            }
+            recent[slot].incrementAndGet(bucket);
+        }
+
+        /** The current and the previous minute merged. */
+        private LatencySnapshot recent() {
+            long minute = currentMinute();
+            AtomicLongArray merged = new AtomicLongArray(BUCKETS);
+            for (int slot = 0; slot < 2; slot++) {
+                long age = minute - recentMinutes.get(slot);
+                if (age == 0 || age == 1) {
+                    for (int i = 0; i < BUCKETS; i++) {
+                        merged.addAndGet(i, recent[slot].get(i));
+                    }
+                }
+            }
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += merged.get(i);
+            }
+            return new LatencySnapshot(total, percentile(merged, 0.50), percentile(merged, 0.99));
+        }
+
+        private static long currentMinute() {
+            return TimeUnit.NANOSECONDS.toMinutes(System.nanoTime());
+        }
+
+        /** Upper bound, in microseconds, of the bucket of {@code buckets} holding the given quantile. */
+        private static long percentile(AtomicLongArray buckets, double quantile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (BUCKETS - 1);
+        }
+    }
+
+    /** Events per second over the last minute: one counter per second, reused a minute later. */
+    private static final class RateWindow {
+
+        private static final int SECONDS = 60;
+
+        private final AtomicLongArray counts = new AtomicLongArray(SECONDS);
+        private final AtomicLongArray seconds = new AtomicLongArray(SECONDS);
+
+        private void add(long events) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            int slot = (int) Math.floorMod(second, (long) SECONDS);
+            long slotSecond = seconds.get(slot);
+            if (slotSecond != second && seconds.compareAndSet(slot, slotSecond, second)) {
+                counts.set(slot, 0);
+            }
+            counts.addAndGet(slot, events);
+        }
+
+        /** The current second is still running, hence left out. */
+        private double perSecond() {
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            long events = 0;
+            for (int slot = 0; slot < SECONDS; slot++) {
+                long age = second - seconds.get(slot);
+                if (age >= 1 && age <= SECONDS) {
+                    events += counts.get(slot);
+                }
+            }
+            return (double) events / SECONDS;
+        }
+    }
+}
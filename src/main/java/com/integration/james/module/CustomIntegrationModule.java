@@ -1,9 +1,25 @@
 package com.integration.james.module;
 
 import com.google.inject.PrivateModule;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import com.integration.james.cache.IdempotencyCache;
+import com.integration.james.cache.MailboxMetadataCache;
+import com.integration.james.cache.MailboxSessionPool;
+import com.integration.james.cache.TrashMailboxCache;
+import com.integration.james.codec.InstructionCodec;
+import com.integration.james.metrics.PipelineMetrics;
+import com.integration.james.pipeline.BackendCircuitBreaker;
+import com.integration.james.pipeline.InstructionDispatcher;
+import com.integration.james.pipeline.PipelineMode;
+import com.integration.james.pipeline.PrefetchController;
+import com.integration.james.pipeline.ReactiveInstructionPipeline;
+import com.integration.james.pipeline.RetryLadder;
+import com.integration.james.pipeline.ShardMembership;
+import com.integration.james.pipeline.WorkerLanes;
+import com.integration.james.publisher.StatusOutbox;
 import com.integration.james.services.MailboxActionService;
 import com.integration.james.services.impl.MailboxActionServiceImpl;
 import com.integration.james.services.RabbitMqIntegrationService;
@@ -34,7 +50,22 @@ public class CustomIntegrationModule extends PrivateModule {
         LOGGER.info("Loading CustomIntegrationModule for RabbitMQ integration...");
 
         bind(MailboxActionService.class).to(MailboxActionServiceImpl.class).in(Singleton.class);
+        bind(WorkerLanes.class).in(Singleton.class);
+        bind(ReactiveInstructionPipeline.class).in(Singleton.class);
+        bind(MailboxMetadataCache.class).in(Singleton.class);
+        bind(MailboxSessionPool.class).in(Singleton.class);
+        bind(TrashMailboxCache.class).in(Singleton.class);
+        bind(StatusOutbox.class).in(Singleton.class);
+        bind(IdempotencyCache.class).in(Singleton.class);
+        bind(PipelineMetrics.class).in(Singleton.class);
+        bind(PrefetchController.class).in(Singleton.class);
+        bind(BackendCircuitBreaker.class).in(Singleton.class);
+        bind(ShardMembership.class).in(Singleton.class);
+        bind(RetryLadder.class).in(Singleton.class);
+        bind(InstructionCodec.class).in(Singleton.class);
         bind(RabbitMqIntegrationService.class).asEagerSingleton();
+        // for the WebAdmin routes, which James instantiates outside this module
+        expose(RabbitMqIntegrationService.class);
 
 
         try {
@@ -52,6 +83,94 @@ public class CustomIntegrationModule extends PrivateModule {
     }
 
 
+    /**
+     * The blocking worker lanes stay the default; only the selected dispatcher is ever instantiated.
+     */
+    @Provides
+    @Singleton
+    InstructionDispatcher provideInstructionDispatcher(@Named("rabbitmq.pipeline.mode") String mode,
+                                                       Provider<WorkerLanes> workerLanes,
+                                                       Provider<ReactiveInstructionPipeline> reactivePipeline) {
+        PipelineMode pipelineMode = PipelineMode.parse(mode);
+        LOGGER.info("RabbitMQ instruction pipeline mode: {}", pipelineMode);
+        return switch (pipelineMode) {
+            case BLOCKING -> workerLanes.get();
+            case REACTIVE -> reactivePipeline.get();
+        };
+    }
+
+    /**
+     * Defaults for the optional tuning properties, so that an existing {@code rabbitmq.properties}
+     * keeps working. Any value present in the file overrides these.
+     */
+    private static Properties defaultProperties() {
+        Properties defaults = new Properties();
+        defaults.setProperty("rabbitmq.batch.size", "25");
+        defaults.setProperty("rabbitmq.batch.lingerMs", "5");
+        defaults.setProperty("rabbitmq.workers.count", "4");
+        defaults.setProperty("rabbitmq.workers.laneQueueDepth", "256");
+        defaults.setProperty("rabbitmq.workers.laneSelection", "modulo");
+        defaults.setProperty("rabbitmq.pipeline.mode", "blocking");
+        defaults.setProperty("rabbitmq.pipeline.concurrency", "256");
+        defaults.setProperty("rabbitmq.consumer.prefetch", "25");
+        defaults.setProperty("rabbitmq.consumer.prefetch.mode", "static");
+        defaults.setProperty("rabbitmq.consumer.prefetch.min", "10");
+        defaults.setProperty("rabbitmq.consumer.prefetch.max", "1000");
+        defaults.setProperty("rabbitmq.consumer.prefetch.step", "10");
+        defaults.setProperty("rabbitmq.consumer.prefetch.targetLatencyMs", "250");
+        defaults.setProperty("rabbitmq.consumer.prefetch.intervalMs", "1000");
+        defaults.setProperty("rabbitmq.breaker.enabled", "true");
+        defaults.setProperty("rabbitmq.breaker.windowSize", "50");
+        defaults.setProperty("rabbitmq.breaker.minimumCalls", "20");
+        defaults.setProperty("rabbitmq.breaker.failureRateThreshold", "50");
+        defaults.setProperty("rabbitmq.breaker.slowCallThresholdMs", "5000");
+        defaults.setProperty("rabbitmq.breaker.slowCallRateThreshold", "80");
+        defaults.setProperty("rabbitmq.breaker.openDurationMs", "30000");
+        defaults.setProperty("rabbitmq.breaker.halfOpenProbes", "5");
+        defaults.setProperty("rabbitmq.breaker.eventRoutingKey", "breaker");
+        defaults.setProperty("rabbitmq.priority.enabled", "false");
+        defaults.setProperty("rabbitmq.priority.interactive.queueName", "james.instruction.interactive");
+        defaults.setProperty("rabbitmq.priority.interactive.prefetch", "10");
+        defaults.setProperty("rabbitmq.priority.interactiveThreshold", "5");
+        defaults.setProperty("rabbitmq.priority.interactiveWeight", "4");
+        defaults.setProperty("rabbitmq.query.chunkSize", "500");
+        defaults.setProperty("rabbitmq.topology.mode", "single");
+        defaults.setProperty("rabbitmq.shards.count", "8");
+        defaults.setProperty("rabbitmq.shards.exchange", "james.instruction.sharded");
+        defaults.setProperty("rabbitmq.shards.membershipExchange", "james.instruction.members");
+        defaults.setProperty("rabbitmq.shards.nodeId", "");
+        defaults.setProperty("rabbitmq.shards.heartbeatMs", "5000");
+        defaults.setProperty("rabbitmq.retry.enabled", "true");
+        defaults.setProperty("rabbitmq.retry.delaysMs", "1000,10000,60000");
+        defaults.setProperty("rabbitmq.retry.exchange", "james.instruction.retry");
+        defaults.setProperty("rabbitmq.retry.deadLetterQueue", "james.instruction.dead");
+        defaults.setProperty("rabbitmq.wire.statusFormat", "request");
+        defaults.setProperty("rabbitmq.wire.strictContentType", "false");
+        defaults.setProperty("rabbitmq.rpc.enabled", "true");
+        defaults.setProperty("rabbitmq.reconnect.initialDelayMs", "5000");
+        defaults.setProperty("rabbitmq.reconnect.maxDelayMs", "60000");
+        defaults.setProperty("rabbitmq.cache.mailbox.maxSize", "10000");
+        defaults.setProperty("rabbitmq.cache.mailbox.ttlSeconds", "300");
+        defaults.setProperty("rabbitmq.cache.session.idleSeconds", "300");
+        defaults.setProperty("rabbitmq.cache.trash.maxSize", "10000");
+        defaults.setProperty("rabbitmq.cache.trash.ttlSeconds", "300");
+        defaults.setProperty("rabbitmq.dedup.capacity", "1048576");
+        defaults.setProperty("rabbitmq.dedup.ttlSeconds", "3600");
+        defaults.setProperty("rabbitmq.publisher.confirmTimeoutMs", "5000");
+        defaults.setProperty("rabbitmq.publisher.maxInFlightConfirms", "1000");
+        defaults.setProperty("rabbitmq.publisher.batch.size", "1");
+        defaults.setProperty("rabbitmq.publisher.batch.lingerMs", "5");
+        defaults.setProperty("rabbitmq.ack.mode", "immediate");
+        defaults.setProperty("rabbitmq.ack.lingerMs", "5");
+        defaults.setProperty("rabbitmq.ack.batchSize", "100");
+        defaults.setProperty("rabbitmq.bulk.statusMode", "per-item");
+        defaults.setProperty("rabbitmq.outbox.directory", "file://var/rabbitmq-status-outbox");
+        defaults.setProperty("rabbitmq.outbox.segmentBytes", String.valueOf(16 * 1024 * 1024));
+        defaults.setProperty("rabbitmq.outbox.maxBytes", String.valueOf(1024L * 1024 * 1024));
+        defaults.setProperty("rabbitmq.outbox.drainBatchSize", "500");
+        return defaults;
+    }
+
     /**
      * Loads RabbitMQ properties from the James configuration directory.
      * It expects the file to be located at {@code <james.configuration.path>/rabbitmq.properties}
@@ -61,7 +180,7 @@ public class CustomIntegrationModule extends PrivateModule {
      * @throws IOException if the file cannot be found or read.
      */
     private Properties loadRabbitMqProperties() throws IOException {
-        Properties properties = new Properties();
+        Properties properties = new Properties(defaultProperties());
 
         // Determine the configuration directory.
         // Defaults to "conf" relative to the James server's working directory
@@ -0,0 +1,167 @@
+package com.integration.james.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns per-delivery acknowledgements into as few {@code basic.ack} frames as possible.
+ * <p>
+ * Every delivery is {@linkplain #register registered} on arrival and {@linkplain #completed completed} once settled,
+ * in any order. Flushes happen after the linger time, or as soon as {@code batchSize} completions are waiting, and
+ * ack the completed tags preceding the lowest pending one with a single {@code multiple=true} frame. A completed tag
+ * behind a pending one cannot be covered that way; once it has waited a full linger it is acked on its own, so one
+ * slow instruction does not hold back the rest of the prefetch window.
+ * <p>
+ * A delivery leaving without an ack (requeued) must be {@linkplain #forget forgotten} only after its nack was sent,
+ * otherwise a multiple ack could cover it first.
+ * <p>
+ * In immediate mode nothing is tracked and every completion is acked on the spot, as before.
+ */
+public class AckCoalescer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AckCoalescer.class);
+    private static final long PENDING = Long.MIN_VALUE;
+
+    /** Selected by {@code rabbitmq.ack.mode}. */
+    public enum Mode {
+        IMMEDIATE,
+        COALESCED;
+
+        public static Mode parse(String value) {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /** Sends one ack frame covering {@code count} deliveries. */
+    public interface AckSink {
+        void ack(long deliveryTag, boolean multiple, int count) throws IOException;
+    }
+
+    private final boolean coalescing;
+    private final long lingerNanos;
+    private final int batchSize;
+    private final AckSink sink;
+    private final ScheduledExecutorService scheduler;
+
+    // delivery tag -> completion time, or PENDING
+    private final TreeMap<Long, Long> unacked = new TreeMap<>();
+    private int completedCount;
+    private boolean flushScheduled;
+
+    public AckCoalescer(Mode mode, long lingerMs, int batchSize, AckSink sink, ScheduledExecutorService scheduler) {
+        this.coalescing = mode == Mode.COALESCED;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, lingerMs));
+        this.batchSize = Math.max(1, batchSize);
+        this.sink = sink;
+        this.scheduler = scheduler;
+    }
+
+    public void register(long deliveryTag) {
+        if (!coalescing) {
+            return;
+        }
+        synchronized (this) {
+            unacked.put(deliveryTag, PENDING);
+        }
+    }
+
+    public void completed(long deliveryTag) {
+        if (!coalescing) {
+            send(deliveryTag, false, 1);
+            return;
+        }
+        synchronized (this) {
+            if (unacked.replace(deliveryTag, System.nanoTime()) == null) {
+                // never registered: do not let a multiple ack guess about it
+                send(deliveryTag, false, 1);
+                return;
+            }
+            if (++completedCount >= batchSize) {
+                flush(System.nanoTime());
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(this::lingerElapsed, lingerNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public void forget(long deliveryTag) {
+        if (!coalescing) {
+            return;
+        }
+        synchronized (this) {
+            Long completedAt = unacked.remove(deliveryTag);
+            if (completedAt != null && completedAt != PENDING) {
+                completedCount--;
+            }
+        }
+    }
+
+    /** Acks every completed delivery now, e.g. before shutting down. */
+    public synchronized void flush() {
+        if (completedCount > 0) {
+            flush(System.nanoTime() + lingerNanos);
+        }
+    }
+
+    /** Completed deliveries waiting for their ack frame. */
+    public synchronized int getWaitingCount() {
+        return completedCount;
+    }
+
+    private synchronized void lingerElapsed() {
+        flushScheduled = false;
+        flush(System.nanoTime());
+        if (completedCount > 0) {
+            // stragglers behind a pending tag get their own frame at the next round
+            flushScheduled = true;
+            scheduler.schedule(this::lingerElapsed, lingerNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush(long now) {
+        int prefix = 0;
+        long last = 0;
+        Iterator<Map.Entry<Long, Long>> entries = unacked.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, Long> entry = entries.next();
+            if (entry.getValue() == PENDING) {
+                break;
+            }
+            last = entry.getKey();
+            entries.remove();
+            prefix++;
+        }
+        if (prefix > 0) {
+            completedCount -= prefix;
+            send(last, prefix > 1, prefix);
+        }
+        while (entries.hasNext()) {
+            Map.Entry<Long, Long> entry = entries.next();
+            // read before remove(): TreeMap may recycle the removed entry for its successor
+            long deliveryTag = entry.getKey();
+            long completedAt = entry.getValue();
+            if (completedAt != PENDING && now - completedAt >= lingerNanos) {
+                entries.remove();
+                completedCount--;
+                send(deliveryTag, false, 1);
+            }
+        }
+    }
+
+    private void send(long deliveryTag, boolean multiple, int count) {
+        try {
+            sink.ack(deliveryTag, multiple, count);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Ack of {} delivery(ies) up to tag {} failed", count, deliveryTag, e);
+        }
+    }
+}
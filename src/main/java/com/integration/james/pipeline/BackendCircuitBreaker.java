@@ -0,0 +1,268 @@
+package com.integration.james.pipeline;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker guarding the mailbox backend.
+ * <p>
+ * Backend calls report their outcome and start time. Over the last {@code rabbitmq.breaker.windowSize} calls, once
+ * at least {@code minimumCalls} were seen, the breaker opens when the share of failed calls reaches
+ * {@code failureRateThreshold} percent, or the share of calls slower than {@code slowCallThresholdMs} reaches
+ * {@code slowCallRateThreshold} percent. Only backend failures are reported as such: an instruction failing on its
+ * own (unknown UID, missing mailbox) is a successful call.
+ * <p>
+ * While open, calls are not permitted. After {@code openDurationMs} the breaker goes half-open and waits for
+ * {@code halfOpenProbes} successful calls before closing again; a single failed or slow probe opens it again.
+ * Listeners are told about every transition and decide what pausing means; they are called under the breaker lock
+ * and must not block.
+ */
+@Singleton
+public class BackendCircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BackendCircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    public interface Listener {
+        void onTransition(State from, State to, String reason);
+    }
+
+    private final boolean enabled;
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallThresholdNanos;
+    private final long openDurationMs;
+    private final int halfOpenProbes;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Metric opened;
+    private final Metric halfOpened;
+    private final Metric closed;
+    private final Metric rejected;
+    private final Metric requeued;
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "rmq-breaker-timer"));
+
+    private volatile State state = State.CLOSED;
+    // sliding window, guarded by this
+    private int next;
+    private int recorded;
+    private int failureCount;
+    private int slowCount;
+    // half-open bookkeeping, guarded by this
+    private int requiredProbes;
+    private int probeSuccesses;
+
+    @Inject
+    public BackendCircuitBreaker(MetricFactory metricFactory,
+                                 GaugeRegistry gaugeRegistry,
+                                 @Named("rabbitmq.breaker.enabled") boolean enabled,
+                                 @Named("rabbitmq.breaker.windowSize") int windowSize,
+                                 @Named("rabbitmq.breaker.minimumCalls") int minimumCalls,
+                                 @Named("rabbitmq.breaker.failureRateThreshold") int failureRateThreshold,
+                                 @Named("rabbitmq.breaker.slowCallThresholdMs") long slowCallThresholdMs,
+                                 @Named("rabbitmq.breaker.slowCallRateThreshold") int slowCallRateThreshold,
+                                 @Named("rabbitmq.breaker.openDurationMs") long openDurationMs,
+                                 @Named("rabbitmq.breaker.halfOpenProbes") int halfOpenProbes) {
+        this.enabled = enabled;
+        int window = Math.max(1, windowSize);
+        this.failures = new boolean[window];
+        this.slowCalls = new boolean[window];
+        this.minimumCalls = Math.min(window, Math.max(1, minimumCalls));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallThresholdNanos = Duration.ofMillis(slowCallThresholdMs).toNanos();
+        this.openDurationMs = Math.max(0, openDurationMs);
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+        this.opened = metricFactory.generate("rabbitmq.breaker.opened");
+        this.halfOpened = metricFactory.generate("rabbitmq.breaker.halfOpened");
+        this.closed = metricFactory.generate("rabbitmq.breaker.closed");
+        this.rejected = metricFactory.generate("rabbitmq.breaker.rejected");
+        this.requeued = metricFactory.generate("rabbitmq.breaker.requeued");
+        gaugeRegistry.register("rabbitmq.breaker.state", () -> state.ordinal());
+        gaugeRegistry.register("rabbitmq.breaker.failureRate", this::getFailureRate);
+        gaugeRegistry.register("rabbitmq.breaker.slowCallRate", this::getSlowCallRate);
+        if (enabled) {
+            LOGGER.info("Backend circuit breaker: window {} call(s), opens at {}% failures or {}% calls over {} ms, "
+                            + "half-open after {} ms with {} probe(s)", window, failureRateThreshold,
+                    slowCallRateThreshold, slowCallThresholdMs, openDurationMs, this.halfOpenProbes);
+        } else {
+            LOGGER.info("Backend circuit breaker disabled");
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    /** Whether a backend call may be attempted; {@code false} only while open. */
+    public boolean permitsCalls() {
+        return state != State.OPEN;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    /** Records {@code count} calls turned away because the breaker was open. */
+    public void rejected(int count) {
+        rejected.add(count);
+    }
+
+    /** Records a delivery put back in the queue instead of being reported as failed. */
+    public void requeued() {
+        requeued.increment();
+    }
+
+    public void onSuccess(long startNanos) {
+        record(false, System.nanoTime() - startNanos);
+    }
+
+    public void onFailure(long startNanos) {
+        record(true, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Lowers the number of probes needed to close a half-open breaker to the number actually handed out, which is
+     * smaller when the queue ran dry. With no probe at all there is no traffic to protect and the breaker closes.
+     */
+    public synchronized void expectProbes(int count) {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        requiredProbes = Math.min(requiredProbes, Math.max(0, count));
+        if (probeSuccesses >= requiredProbes) {
+            transition(State.CLOSED, count == 0 ? "no message to probe with" : probeSuccesses + " probe(s) succeeded");
+        }
+    }
+
+    private synchronized void record(boolean failure, long elapsedNanos) {
+        if (!enabled) {
+            return;
+        }
+        boolean slow = elapsedNanos > slowCallThresholdNanos;
+        switch (state) {
+            case CLOSED -> {
+                slide(failure, slow);
+                if (recorded < minimumCalls) {
+                    return;
+                }
+                if (failureCount * 100 >= failureRateThreshold * recorded) {
+                    transition(State.OPEN, failureCount + " of the last " + recorded + " call(s) failed");
+                } else if (slowCount * 100 >= slowCallRateThreshold * recorded) {
+                    transition(State.OPEN, slowCount + " of the last " + recorded + " call(s) took over "
+                            + TimeUnit.NANOSECONDS.toMillis(slowCallThresholdNanos) + " ms");
+                }
+            }
+            case HALF_OPEN -> {
+                if (failure || slow) {
+                    transition(State.OPEN, "a probe " + (failure ? "failed" : "took " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms"));
+                } else if (++probeSuccesses >= requiredProbes) {
+                    transition(State.CLOSED, probeSuccesses + " probe(s) succeeded");
+                }
+            }
+            case OPEN -> {
+                // a call started before the breaker opened; the window restarts when it closes
+            }
+        }
+    }
+
+    private void slide(boolean failure, boolean slow) {
+        if (recorded == failures.length) {
+            failureCount -= failures[next] ? 1 : 0;
+            slowCount -= slowCalls[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failures[next] = failure;
+        slowCalls[next] = slow;
+        failureCount += failure ? 1 : 0;
+        slowCount += slow ? 1 : 0;
+        next = (next + 1) % failures.length;
+    }
+
+    private void transition(State to, String reason) {
+        State from = state;
+        state = to;
+        switch (to) {
+            case OPEN -> {
+                opened.increment();
+                timer.schedule(this::halfOpen, openDurationMs, TimeUnit.MILLISECONDS);
+            }
+            case HALF_OPEN -> {
+                halfOpened.increment();
+                requiredProbes = halfOpenProbes;
+                probeSuccesses = 0;
+            }
+            case CLOSED -> {
+                closed.increment();
+                next = 0;
+                recorded = 0;
+                failureCount = 0;
+                slowCount = 0;
+            }
+        }
+        LOGGER.warn("Backend circuit breaker {} -> {}: {}", from, to, reason);
+        for (Listener listener : listeners) {
+            try {
+                listener.onTransition(from, to, reason);
+            } catch (RuntimeException e) {
+                LOGGER.error("Circuit breaker listener failed on {} -> {}", from, to, e);
+            }
+        }
+    }
+
+    private synchronized void halfOpen() {
+        if (state == State.OPEN) {
+            transition(State.HALF_OPEN, "open for " + openDurationMs + " ms");
+        }
+    }
+
+    private synchronized int getFailureRate() {
+        return recorded == 0 ? 0 : failureCount * 100 / recorded;
+    }
+
+    private synchronized int getSlowCallRate() {
+        return recorded == 0 ? 0 : slowCount * 100 / recorded;
+    }
+
+    /** Name of a state as used in transition events. */
+    public static String describe(State state) {
+        return state.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    @PreDestroy
+    public void dispose() {
+        timer.shutdownNow();
+    }
+}
@@ -0,0 +1,72 @@
+package com.integration.james.pipeline;
+
+import com.integration.james.dto.StatusPayload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Settlement bookkeeping for a delivery carrying several instructions. Items are registered while the envelope
+ * is being decoded; the completion callback runs once the envelope is sealed and every item has settled.
+ * <p>
+ * In envelope mode the item statuses are collected and handed to the completion callback, otherwise the
+ * callback receives an empty list and items are expected to report their own status.
+ * <p>
+ * An item may also be {@linkplain #requeue() handed back} unsettled; the delivery is then put back in the queue
+ * as a whole and the statuses collected so far are dropped, redelivered items that completed being answered from
+ * the idempotency cache.
+ */
+public class BulkDelivery {
+
+    public interface Completion {
+        void completed(List<StatusPayload> statuses, boolean requeue);
+    }
+
+    private final boolean collectStatuses;
+    private final List<StatusPayload> statuses;
+    private final Completion completion;
+    // starts at one so the delivery cannot complete while items are still being decoded
+    private final AtomicInteger unsettled = new AtomicInteger(1);
+    private volatile boolean requeue;
+
+    public BulkDelivery(boolean collectStatuses, Completion completion) {
+        this.collectStatuses = collectStatuses;
+        this.statuses = collectStatuses ? Collections.synchronizedList(new ArrayList<>()) : List.of();
+        this.completion = completion;
+    }
+
+    public boolean collectsStatuses() {
+        return collectStatuses;
+    }
+
+    /** Registers one more item; must be called before the item is handed to a worker. */
+    public void expect() {
+        unsettled.incrementAndGet();
+    }
+
+    public void settled(StatusPayload status) {
+        if (collectStatuses && status != null) {
+            statuses.add(status);
+        }
+        release();
+    }
+
+    /** Gives an item back without a status: the whole delivery will be requeued. */
+    public void requeue() {
+        requeue = true;
+        release();
+    }
+
+    /** Marks the end of decoding: no further item will be registered. */
+    public void seal() {
+        release();
+    }
+
+    private void release() {
+        if (unsettled.decrementAndGet() == 0) {
+            completion.completed(requeue ? List.of() : statuses, requeue);
+        }
+    }
+}
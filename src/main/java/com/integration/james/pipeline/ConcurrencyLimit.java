@@ -0,0 +1,156 @@
+package com.integration.james.pipeline;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How many lanes of a dispatcher may execute instructions at once, adjustable at runtime between 1 and the number
+ * of lanes. Lanes keep their mailboxes, so lowering the limit never reorders the instructions of a mailbox: lanes
+ * beyond it simply wait for a free slot before their next group.
+ * <p>
+ * {@link WorkerLanes} threads block in {@link #acquire()}; the reactive pipeline waits without a thread through
+ * {@link #limit(Mono)}.
+ */
+public final class ConcurrencyLimit {
+
+    private final int max;
+    private final Deque<Waiter> waiting = new ArrayDeque<>();  // guarded by this
+    private int limit;   // guarded by this
+    private int active;  // guarded by this
+
+    public ConcurrencyLimit(int max) {
+        this.max = Math.max(1, max);
+        this.limit = this.max;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    /**
+     * Takes effect for the next group of every lane: a lower limit lets running groups finish, a higher one wakes
+     * waiting lanes right away.
+     *
+     * @throws IllegalArgumentException outside {@code [1, max]}
+     */
+    public void setLimit(int newLimit) {
+        if (newLimit < 1 || newLimit > max) {
+            throw new IllegalArgumentException("concurrency must be between 1 and " + max + ", got " + newLimit);
+        }
+        List<Waiter> granted;
+        synchronized (this) {
+            limit = newLimit;
+            granted = grantWaiting();
+            notifyAll();
+        }
+        granted.forEach(Waiter::grant);
+    }
+
+    /** Blocks until a slot is free. */
+    public void acquire() throws InterruptedException {
+        synchronized (this) {
+            while (active >= limit) {
+                wait();
+            }
+            active++;
+        }
+    }
+
+    public void release() {
+        List<Waiter> granted;
+        synchronized (this) {
+            active--;
+            granted = grantWaiting();
+            notifyAll();
+        }
+        granted.forEach(Waiter::grant);
+    }
+
+    /**
+     * Subscribes to {@code work} once a slot is free, and frees it when {@code work} terminates. Cancelled while
+     * waiting, it leaves the queue, or gives back the slot it was granted meanwhile.
+     */
+    public <T> Mono<T> limit(Mono<T> work) {
+        return Mono.defer(() -> {
+            Waiter waiter = new Waiter();
+            return Mono.<Boolean>create(sink -> {
+                        waiter.sink = sink;
+                        sink.onCancel(() -> cancel(waiter));
+                        whenAvailable(waiter);
+                    })
+                    .flatMap(slot -> waiter.compareAndSet(Waiter.GRANTED, Waiter.RUNNING)
+                            ? work.doFinally(signal -> release())
+                            : Mono.<T>empty());
+        });
+    }
+
+    private void whenAvailable(Waiter waiter) {
+        synchronized (this) {
+            if (waiter.get() == Waiter.CANCELLED) {
+                return;
+            }
+            if (active >= limit) {
+                waiting.add(waiter);
+                return;
+            }
+            active++;
+        }
+        waiter.grant();
+    }
+
+    private void cancel(Waiter waiter) {
+        synchronized (this) {
+            if (waiting.remove(waiter)) {
+                return;
+            }
+        }
+        // granted, or about to be: whoever sees the other state gives the slot back
+        if (!waiter.compareAndSet(Waiter.WAITING, Waiter.CANCELLED) && waiter.compareAndSet(Waiter.GRANTED, Waiter.CANCELLED)) {
+            release();
+        }
+    }
+
+    // callers run the grants outside the lock: they resume a whole reactive chain
+    private List<Waiter> grantWaiting() {
+        List<Waiter> granted = new ArrayList<>();
+        while (active < limit && !waiting.isEmpty()) {
+            active++;
+            granted.add(waiting.poll());
+        }
+        return granted;
+    }
+
+    /** A reactive subscriber waiting for a slot; its state decides who frees the slot on cancellation. */
+    private final class Waiter extends AtomicInteger {
+
+        static final int WAITING = 0;
+        static final int GRANTED = 1;
+        static final int RUNNING = 2;
+        static final int CANCELLED = 3;
+
+        private volatile MonoSink<Boolean> sink;
+
+        /** Called with a slot counted as active. */
+        private void grant() {
+            if (compareAndSet(WAITING, GRANTED)) {
+                sink.success(Boolean.TRUE);
+            } else {
+                release();
+            }
+        }
+    }
+}
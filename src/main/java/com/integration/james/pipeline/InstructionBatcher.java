@@ -0,0 +1,195 @@
+package com.integration.james.pipeline;
+
+import com.integration.james.codec.Instruction;
+import com.integration.james.dto.ActionReport;
+import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.Outcome;
+import com.integration.james.services.MailboxActionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * One serial worker lane: collects pending instructions for up to the linger time (or until the batch size
+ * is reached) and executes each group sharing action, source and destination mailbox as one
+ * {@link MailboxActionService#processMessageActions(List)} call.
+ * <p>
+ * The mailbox owner is derived from the source mailbox, so grouping by source mailbox also groups by owner.
+ * A batch is closed early when an instruction targets a UID already present in it, so that grouping never
+ * reorders two instructions on the same message. Every instruction is still completed individually, so each
+ * delivery keeps its own status and ack.
+ * <p>
+ * Range, query and by-id actions are always a batch of their own, executed through
+ * {@link MailboxActionService#processRangeAction}, {@link MailboxActionService#processQueryAction} or
+ * {@link MailboxActionService#processByIdAction}: the messages they touch may overlap any other instruction of the
+ * batch.
+ * <p>
+ * Pending instructions wait in a {@link WeightedInstructionQueue}, so interactive instructions overtake bulk ones
+ * queued for other mailboxes, while instructions for one mailbox still leave the queue in arrival order.
+ * A closed batch then waits for a slot of the shared {@link ConcurrencyLimit}.
+ */
+public class InstructionBatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstructionBatcher.class);
+
+    private final MailboxActionService mailboxActionService;
+    private final int batchSize;
+    private final long lingerNanos;
+
+    private final WeightedInstructionQueue pending;
+    private final ExecutorService worker;
+    private final ConcurrencyLimit concurrencyLimit;
+    private volatile int executing;
+
+    public InstructionBatcher(String name,
+                              MailboxActionService mailboxActionService,
+                              int batchSize,
+                              long lingerMs,
+                              int queueDepth,
+                              int interactiveWeight,
+                              ConcurrencyLimit concurrencyLimit) {
+        this.mailboxActionService = mailboxActionService;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMs));
+        this.pending = new WeightedInstructionQueue(queueDepth, interactiveWeight);
+        this.concurrencyLimit = concurrencyLimit;
+        this.worker = Executors.newSingleThreadExecutor(r -> new Thread(r, name));
+        worker.execute(this::drainLoop);
+    }
+
+    /** Enqueues an instruction, blocking while the lane queue of its priority is full. */
+    public void submit(PendingInstruction instruction) throws InterruptedException {
+        pending.put(instruction);
+    }
+
+    public int getQueueDepth() {
+        return pending.size();
+    }
+
+    /** Instructions of the batch being executed. */
+    public int getExecutingCount() {
+        return executing;
+    }
+
+    private void drainLoop() {
+        List<PendingInstruction> batch = new ArrayList<>(batchSize);
+        Set<MessageKey> messagesInBatch = new HashSet<>();
+        PendingInstruction carried = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                PendingInstruction first = carried != null ? carried : pending.take();
+                carried = null;
+                batch.add(first);
+                messagesInBatch.add(MessageKey.of(first));
+                // an interactive instruction only takes along what is already queued
+                long deadline = System.nanoTime() + (first.getPriority() == Priority.INTERACTIVE ? 0 : lingerNanos);
+                while (!first.isMultiMessageAction() && batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingInstruction next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next.isMultiMessageAction() || !messagesInBatch.add(MessageKey.of(next))) {
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                executing = batch.size();
+                concurrencyLimit.acquire();
+                try {
+                    flush(batch);
+                } finally {
+                    concurrencyLimit.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executing = 0;
+                batch.clear();
+                messagesInBatch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingInstruction> batch) {
+        Map<BatchKey, List<PendingInstruction>> groups = batch.stream()
+                .collect(Collectors.groupingBy(i -> BatchKey.of(i.getInstruction()), LinkedHashMap::new, Collectors.toList()));
+        groups.values().forEach(this::execute);
+    }
+
+    private void execute(List<PendingInstruction> group) {
+        if (group.get(0).isMultiMessageAction()) {
+            executeMultiMessage(group.get(0));
+            return;
+        }
+        List<Instruction> instructions = group.stream()
+                .map(PendingInstruction::getInstruction)
+                .collect(Collectors.toList());
+        List<Outcome> results;
+        try {
+            results = mailboxActionService.processMessageActions(instructions);
+        } catch (Exception e) {
+            LOGGER.error("Error while processing a group of {} instruction(s): {}", group.size(), e.getMessage(), e);
+            results = Collections.nCopies(group.size(), Outcome.FAILED);
+        }
+        for (int i = 0; i < group.size(); i++) {
+            try {
+                group.get(i).complete(results.get(i));
+            } catch (Exception e) {
+                LOGGER.error("Completing hashID '{}' failed", group.get(i).getPayload().getHashID(), e);
+            }
+        }
+    }
+
+    private void executeMultiMessage(PendingInstruction instruction) {
+        IncomingMessagePayload payload = instruction.getPayload();
+        ActionReport report;
+        try {
+            if (payload.isRangeAction()) {
+                report = ActionReport.ofRanges(mailboxActionService.processRangeAction(payload));
+            } else if (payload.isByIdAction()) {
+                report = mailboxActionService.processByIdAction(instruction.getInstruction(), instruction::progress);
+            } else {
+                report = mailboxActionService.processQueryAction(payload, instruction::progress);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error while processing hashID '{}': {}", payload.getHashID(), e.getMessage(), e);
+            report = ActionReport.NONE;
+        }
+        try {
+            instruction.complete(report);
+        } catch (Exception e) {
+            LOGGER.error("Completing hashID '{}' failed", instruction.getPayload().getHashID(), e);
+        }
+    }
+
+    public void dispose() {
+        worker.shutdownNow();
+    }
+
+    private record MessageKey(String sourceMailboxID, String sourceMessageID) {
+        static MessageKey of(PendingInstruction instruction) {
+            IncomingMessagePayload payload = instruction.getPayload();
+            return new MessageKey(payload.getSourceMailboxID(), payload.getSourceMessageID());
+        }
+    }
+
+    private record BatchKey(Instruction.Action action, String sourceMailboxID, String destinationMailboxID) {
+        static BatchKey of(Instruction instruction) {
+            IncomingMessagePayload payload = instruction.getPayload();
+            return new BatchKey(instruction.getAction(), payload.getSourceMailboxID(), payload.getDestinationMailboxID());
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.integration.james.pipeline;
+
+/**
+ * Accepts decoded instructions from the AMQP consumer and executes them, completing each one exactly once.
+ * Implementations keep instructions for the same source mailbox in order.
+ */
+public interface InstructionDispatcher {
+
+    /** Hands the instruction over; may block while the dispatcher is saturated. */
+    void submit(PendingInstruction instruction) throws InterruptedException;
+
+    /** Instructions handed over and not completed yet. */
+    int getInFlight();
+
+    /** How many lanes may execute instructions at once; adjustable at runtime up to the number of lanes. */
+    ConcurrencyLimit getConcurrencyLimit();
+}
@@ -0,0 +1,39 @@
+package com.integration.james.pipeline;
+
+import com.google.common.hash.Hashing;
+
+import java.util.Locale;
+
+/**
+ * How an instruction's source mailbox is mapped onto a worker lane. Both strategies are deterministic,
+ * so every instruction for a given mailbox lands on the same lane and keeps its order.
+ */
+public enum LaneSelection {
+
+    /** Spread hash of the mailbox id modulo the lane count. */
+    MODULO {
+        @Override
+        int select(String sourceMailboxID, int lanes) {
+            return Math.floorMod(spread(sourceMailboxID), lanes);
+        }
+    },
+
+    /** Jump consistent hash: changing the lane count only moves the minimal share of mailboxes. */
+    CONSISTENT {
+        @Override
+        int select(String sourceMailboxID, int lanes) {
+            return Hashing.consistentHash(spread(sourceMailboxID), lanes);
+        }
+    };
+
+    abstract int select(String sourceMailboxID, int lanes);
+
+    public static LaneSelection parse(String value) {
+        return LaneSelection.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private static int spread(String sourceMailboxID) {
+        int h = sourceMailboxID == null ? 0 : sourceMailboxID.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
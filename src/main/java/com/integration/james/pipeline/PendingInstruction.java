@@ -0,0 +1,69 @@
+package com.integration.james.pipeline;
+
+import com.integration.james.codec.Instruction;
+import com.integration.james.dto.ActionReport;
+import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.Outcome;
+
+import java.util.function.Consumer;
+
+/**
+ * A decoded instruction waiting to be executed, together with what must happen once its outcome is known
+ * (publishing the status and acknowledging the delivery), and, for long-running actions, with each step.
+ */
+public class PendingInstruction {
+
+    /** Receives the outcome; {@code report} is {@link ActionReport#NONE} for single-message actions. */
+    public interface Completion {
+        void completed(Outcome outcome, ActionReport report);
+    }
+
+    private final Instruction instruction;
+    private final Priority priority;
+    private final Completion completion;
+    private final Consumer<ActionReport> progress;
+
+    public PendingInstruction(Instruction instruction, Priority priority, Completion completion) {
+        this(instruction, priority, completion, report -> { });
+    }
+
+    public PendingInstruction(Instruction instruction,
+                              Priority priority,
+                              Completion completion,
+                              Consumer<ActionReport> progress) {
+        this.instruction = instruction;
+        this.priority = priority;
+        this.completion = completion;
+        this.progress = progress;
+    }
+
+    public Instruction getInstruction() {
+        return instruction;
+    }
+
+    public IncomingMessagePayload getPayload() {
+        return instruction.getPayload();
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /** Whether this instruction may touch many messages (range, query or by-id action), hence runs on its own. */
+    public boolean isMultiMessageAction() {
+        return instruction.getAction().isMultiMessage();
+    }
+
+    /** Reports intermediate counts of a long-running action. */
+    public void progress(ActionReport report) {
+        progress.accept(report);
+    }
+
+    public void complete(Outcome outcome) {
+        completion.completed(outcome, ActionReport.NONE);
+    }
+
+    public void complete(ActionReport report) {
+        completion.completed(report.getOutcome(), report);
+    }
+}
@@ -0,0 +1,17 @@
+package com.integration.james.pipeline;
+
+import java.util.Locale;
+
+/** Which {@link InstructionDispatcher} executes instructions, selected by {@code rabbitmq.pipeline.mode}. */
+public enum PipelineMode {
+
+    /** {@link WorkerLanes}: serial batching lanes on dedicated threads, calling the blocking mailbox API. */
+    BLOCKING,
+
+    /** {@link ReactiveInstructionPipeline}: non-blocking mailbox calls with bounded {@code flatMap} concurrency. */
+    REACTIVE;
+
+    public static PipelineMode parse(String value) {
+        return PipelineMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,193 @@
+package com.integration.james.pipeline;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chooses the consumer prefetch.
+ * <p>
+ * In {@code static} mode it is {@code rabbitmq.consumer.prefetch}, as before. In {@code adaptive} mode an AIMD loop
+ * re-evaluates it every {@code rabbitmq.consumer.prefetch.intervalMs}, from the mean delivery-to-ack latency of the
+ * interval and the queue backlog:
+ * <ul>
+ *     <li>latency above {@code targetLatencyMs}: the pipeline holds more than it can turn around, the prefetch is
+ *     multiplied by {@value #DECREASE_FACTOR};</li>
+ *     <li>latency on target, messages waiting in the queue and the prefetch window nearly full: the consumer is
+ *     starved, the prefetch grows by {@code step};</li>
+ *     <li>otherwise it is left alone.</li>
+ * </ul>
+ * The result always stays within {@code [min, max]}. An operator can also set it at runtime with
+ * {@link #setPrefetch}; in adaptive mode the loop carries on from the new value.
+ */
+@Singleton
+public class PrefetchController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrefetchController.class);
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final double SATURATION = 0.9;
+
+    /** The consumer the prefetch applies to. */
+    public interface QosTarget {
+        void applyPrefetch(int prefetch) throws IOException;
+
+        /** Messages ready in the queue. */
+        long backlog() throws IOException;
+
+        /** Deliveries received and not yet acked. */
+        int unacked();
+    }
+
+    private enum Mode {
+        STATIC,
+        ADAPTIVE
+    }
+
+    private final Mode mode;
+    private final int min;
+    private final int max;
+    private final int step;
+    private final long targetLatencyNanos;
+    private final long intervalMs;
+    private final LongAdder completions = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final Metric increases;
+    private final Metric decreases;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "rmq-prefetch"));
+    private volatile int prefetch;
+    private volatile long lastMeanLatencyMicros;
+    private ScheduledFuture<?> adjustment;
+
+    @Inject
+    public PrefetchController(MetricFactory metricFactory,
+                              GaugeRegistry gaugeRegistry,
+                              @Named("rabbitmq.consumer.prefetch.mode") String mode,
+                              @Named("rabbitmq.consumer.prefetch") int staticPrefetch,
+                              @Named("rabbitmq.consumer.prefetch.min") int min,
+                              @Named("rabbitmq.consumer.prefetch.max") int max,
+                              @Named("rabbitmq.consumer.prefetch.step") int step,
+                              @Named("rabbitmq.consumer.prefetch.targetLatencyMs") long targetLatencyMs,
+                              @Named("rabbitmq.consumer.prefetch.intervalMs") long intervalMs) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.min = Math.max(1, min);
+        this.max = Math.max(this.min, max);
+        this.step = Math.max(1, step);
+        this.targetLatencyNanos = Duration.ofMillis(targetLatencyMs).toNanos();
+        this.intervalMs = Math.max(100, intervalMs);
+        this.prefetch = this.mode == Mode.ADAPTIVE
+                ? Math.min(this.max, Math.max(this.min, staticPrefetch))
+                : Math.max(1, staticPrefetch);
+        this.increases = metricFactory.generate("rabbitmq.consumer.prefetch.increases");
+        this.decreases = metricFactory.generate("rabbitmq.consumer.prefetch.decreases");
+        gaugeRegistry.register("rabbitmq.consumer.prefetch", () -> prefetch);
+        gaugeRegistry.register("rabbitmq.consumer.prefetch.latencyMicros", () -> lastMeanLatencyMicros);
+        LOGGER.info("Consumer prefetch: {} mode, starting at {}{}", this.mode, prefetch,
+                this.mode == Mode.ADAPTIVE ? " (bounds " + this.min + ".." + this.max + ", target " + targetLatencyMs + " ms)" : "");
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Applies {@code prefetch} to {@code target} now, then records it.
+     *
+     * @throws IllegalArgumentException when not positive, or outside {@code [min, max]} in adaptive mode
+     * @throws IOException when the broker refused it; the previous prefetch is kept
+     */
+    public synchronized void setPrefetch(int prefetch, QosTarget target) throws IOException {
+        if (prefetch < 1 || (mode == Mode.ADAPTIVE && (prefetch < min || prefetch > max))) {
+            throw new IllegalArgumentException("prefetch must be " + (mode == Mode.ADAPTIVE
+                    ? "between " + min + " and " + max + " in adaptive mode" : "positive") + ", got " + prefetch);
+        }
+        target.applyPrefetch(prefetch);
+        LOGGER.info("Prefetch {} -> {} (set at runtime)", this.prefetch, prefetch);
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Whether the prefetch changes at runtime. Such a prefetch must be set channel-wide: RabbitMQ applies a new
+     * per-consumer limit to consumers created afterwards only.
+     */
+    public boolean isAdaptive() {
+        return mode == Mode.ADAPTIVE;
+    }
+
+    /** Starts adjusting {@code target}, replacing any previous one (after a reconnection, for instance). */
+    public synchronized void start(QosTarget target) {
+        if (mode != Mode.ADAPTIVE) {
+            return;
+        }
+        if (adjustment != null) {
+            adjustment.cancel(false);
+        }
+        adjustment = scheduler.scheduleWithFixedDelay(() -> adjust(target), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Records the delivery-to-ack time of a delivery received at {@code receivedAtNanos}. */
+    public void recordCompletion(long receivedAtNanos) {
+        completions.increment();
+        latencyNanos.add(System.nanoTime() - receivedAtNanos);
+    }
+
+    /** One step of the AIMD loop. */
+    @VisibleForTesting
+    synchronized void adjust(QosTarget target) {
+        long count = completions.sumThenReset();
+        long total = latencyNanos.sumThenReset();
+        if (count == 0) {
+            // nothing completed: either idle, or stuck behind the backend, where more prefetch cannot help
+            return;
+        }
+        long meanLatencyNanos = total / count;
+        lastMeanLatencyMicros = TimeUnit.NANOSECONDS.toMicros(meanLatencyNanos);
+        int current = prefetch;
+        int next = current;
+        try {
+            if (meanLatencyNanos > targetLatencyNanos) {
+                next = Math.max(min, (int) (current * DECREASE_FACTOR));
+            } else if (target.unacked() >= current * SATURATION && target.backlog() > 0) {
+                next = Math.min(max, current + step);
+            }
+            if (next == current) {
+                return;
+            }
+            target.applyPrefetch(next);
+            prefetch = next;
+            (next > current ? increases : decreases).increment();
+            LOGGER.debug("Prefetch {} -> {} (mean latency {} us over {} ack(s))", current, next, lastMeanLatencyMicros, count);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Cannot adjust the consumer prefetch: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void dispose() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,28 @@
+package com.integration.james.pipeline;
+
+import java.util.Locale;
+
+/**
+ * Scheduling class of an instruction. Interactive instructions (a user moving one mail) are taken ahead of bulk ones
+ * (retention sweeps) by the dispatchers, in the proportion given by {@code rabbitmq.priority.interactiveWeight}.
+ */
+public enum Priority {
+
+    INTERACTIVE("interactive"),
+    BULK("bulk");
+
+    private final String label;
+
+    Priority(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    /** {@code interactive} (any case) is interactive; anything else, including nothing, is bulk. */
+    public static Priority parse(String value) {
+        return value != null && INTERACTIVE.label.equals(value.trim().toLowerCase(Locale.ROOT)) ? INTERACTIVE : BULK;
+    }
+}
@@ -0,0 +1,185 @@
+package com.integration.james.pipeline;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.integration.james.dto.ActionReport;
+import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.Outcome;
+import com.integration.james.services.MailboxActionService;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking alternative to {@link WorkerLanes}: instructions are executed through
+ * {@link MailboxActionService#processMessageActionReactive}, so instructions waiting on mailbox I/O hold no thread.
+ * <p>
+ * Instructions are spread over {@code rabbitmq.pipeline.concurrency} virtual lanes using the configured
+ * {@link LaneSelection}; each lane runs its instructions one after the other, so the same mailbox keeps its order
+ * while up to {@code concurrency} mailboxes are worked on at once. Lowering the {@link ConcurrencyLimit} at runtime
+ * lets fewer bulk lanes run at once.
+ * <p>
+ * Like a {@link WorkerLanes} queue, each lane holds at most {@code rabbitmq.workers.laneQueueDepth} instructions of
+ * each priority, and {@link #submit} blocks while that is reached. The channel prefetch alone would not bound them:
+ * a bulk envelope is a single delivery whose items are decoded and submitted one after the other, so a full lane
+ * holds back its decoding.
+ * <p>
+ * Both priorities share the lanes. Each lane holds its pending instructions in a {@link WeightedInstructionQueue},
+ * as a {@link WorkerLanes} thread does: interactive instructions overtake bulk ones of other mailboxes, never an
+ * earlier one of their own mailbox. A lane is drained by whichever thread completed its previous instruction, or
+ * submitted into it while idle.
+ */
+@Singleton
+public class ReactiveInstructionPipeline implements InstructionDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReactiveInstructionPipeline.class);
+
+    private final MailboxActionService mailboxActionService;
+    private final LaneSelection laneSelection;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Lane[] lanes;
+    private volatile boolean disposed;
+
+    @Inject
+    public ReactiveInstructionPipeline(MailboxActionService mailboxActionService,
+                                       GaugeRegistry gaugeRegistry,
+                                       @Named("rabbitmq.pipeline.concurrency") int concurrency,
+                                       @Named("rabbitmq.workers.laneSelection") String laneSelection,
+                                       @Named("rabbitmq.workers.laneQueueDepth") int laneQueueDepth,
+                                       @Named("rabbitmq.priority.interactiveWeight") int interactiveWeight) {
+        this.mailboxActionService = mailboxActionService;
+        this.laneSelection = LaneSelection.parse(laneSelection);
+        this.lanes = new Lane[Math.max(1, concurrency)];
+        this.concurrencyLimit = new ConcurrencyLimit(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(new WeightedInstructionQueue(laneQueueDepth, interactiveWeight));
+        }
+
+        gaugeRegistry.register("rabbitmq.pipeline.inFlight", inFlight::get);
+        LOGGER.info("Started reactive pipeline ({} lane(s), {} selection, queue depth {})", lanes.length, this.laneSelection,
+                laneQueueDepth);
+    }
+
+    /** Routes the instruction to its mailbox's lane, blocking while that lane's queue for its priority is full. */
+    @Override
+    public void submit(PendingInstruction instruction) throws InterruptedException {
+        Lane lane = lanes[laneSelection.select(instruction.getPayload().getSourceMailboxID(), lanes.length)];
+        // counted before it can run, so the gauge never goes negative
+        inFlight.incrementAndGet();
+        try {
+            lane.pending.put(instruction);
+        } catch (InterruptedException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+        lane.drain();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /** Limits bulk instructions only: lowering it never holds back an interactive instruction waiting for a slot. */
+    @Override
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    private Mono<?> execute(PendingInstruction instruction) {
+        if (instruction.isMultiMessageAction()) {
+            IncomingMessagePayload payload = instruction.getPayload();
+            Mono<ActionReport> report;
+            if (payload.isRangeAction()) {
+                report = mailboxActionService.processRangeActionReactive(payload).map(ActionReport::ofRanges);
+            } else if (payload.isByIdAction()) {
+                report = mailboxActionService.processByIdActionReactive(instruction.getInstruction(), instruction::progress);
+            } else {
+                report = mailboxActionService.processQueryActionReactive(payload, instruction::progress);
+            }
+            return report
+                    .onErrorResume(e -> {
+                        LOGGER.error("Error while processing hashID '{}': {}", payload.getHashID(), e.getMessage(), e);
+                        return Mono.just(ActionReport.NONE);
+                    })
+                    .defaultIfEmpty(ActionReport.NONE)
+                    .doOnNext(result -> complete(instruction, () -> instruction.complete(result)));
+        }
+        return mailboxActionService.processMessageActionReactive(instruction.getInstruction())
+                .onErrorResume(e -> {
+                    LOGGER.error("Error while processing hashID '{}': {}", instruction.getPayload().getHashID(), e.getMessage(), e);
+                    return Mono.just(Outcome.FAILED);
+                })
+                .defaultIfEmpty(Outcome.FAILED)
+                .doOnNext(outcome -> complete(instruction, () -> instruction.complete(outcome)));
+    }
+
+    private void complete(PendingInstruction instruction, Runnable completion) {
+        inFlight.decrementAndGet();
+        try {
+            completion.run();
+        } catch (Exception e) {
+            LOGGER.error("Completing hashID '{}' failed", instruction.getPayload().getHashID(), e);
+        }
+    }
+
+    @PreDestroy
+    public void dispose() {
+        disposed = true;
+        for (Lane lane : lanes) {
+            Disposable current = lane.current;
+            if (current != null) {
+                current.dispose();
+            }
+        }
+    }
+
+    /** One virtual lane: runs at most one instruction at a time, taking them from its weighted queue. */
+    private final class Lane {
+
+        private final WeightedInstructionQueue pending;
+        // drain requests; the caller moving it from zero drains, later requests make it loop again
+        private final AtomicInteger drainRequests = new AtomicInteger();
+        private volatile boolean running;
+        private volatile Disposable current;
+
+        private Lane(WeightedInstructionQueue pending) {
+            this.pending = pending;
+        }
+
+        /** Starts the next instruction unless one is running; an instruction completing synchronously loops here. */
+        private void drain() {
+            if (drainRequests.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                if (!running && !disposed) {
+                    PendingInstruction next = pending.poll();
+                    if (next != null) {
+                        running = true;
+                        start(next);
+                    }
+                }
+            } while (drainRequests.decrementAndGet() != 0);
+        }
+
+        private void start(PendingInstruction instruction) {
+            Mono<?> execution = instruction.getPriority() == Priority.INTERACTIVE
+                    ? execute(instruction)
+                    : concurrencyLimit.limit(execute(instruction));
+            current = execution
+                    .doFinally(signal -> {
+                        running = false;
+                        drain();
+                    })
+                    .subscribe(ignored -> { }, e -> LOGGER.error("Reactive lane failed", e));
+        }
+    }
+}
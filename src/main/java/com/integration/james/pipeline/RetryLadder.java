@@ -0,0 +1,158 @@
+package com.integration.james.pipeline;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Delayed retries of instructions that failed on the backend, without holding a consumer thread or a prefetch slot
+ * while they wait.
+ * <p>
+ * A transiently failed instruction is published to the delay queue of its next attempt and its delivery acked. Delay
+ * queues have a message TTL of one rung of {@code rabbitmq.retry.delaysMs} each and dead-letter expired messages
+ * through the default exchange, under their original routing key: the queue the instruction was consumed from.
+ * They are bound to a headers exchange, so the routing key stays free to carry that return address. The attempt
+ * number travels in the {@value #ATTEMPT_HEADER} header; an instruction failing its last attempt gets its final
+ * status and is parked in {@code rabbitmq.retry.deadLetterQueue}.
+ */
+@Singleton
+public class RetryLadder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryLadder.class);
+    public static final String ATTEMPT_HEADER = "x-retry-attempt";
+    private static final String DELAY_HEADER = "x-retry-delay";
+
+    private final boolean enabled;
+    private final List<Long> delaysMs;
+    private final String exchange;
+    private final String deadLetterQueue;
+    private final Metric scheduled;
+    private final Metric deadLettered;
+    private final Metric publishFailures;
+
+    @Inject
+    public RetryLadder(MetricFactory metricFactory,
+                       @Named("rabbitmq.retry.enabled") boolean enabled,
+                       @Named("rabbitmq.retry.delaysMs") String delaysMs,
+                       @Named("rabbitmq.retry.exchange") String exchange,
+                       @Named("rabbitmq.retry.deadLetterQueue") String deadLetterQueue) {
+        this.delaysMs = Arrays.stream(delaysMs.split(","))
+                .map(String::trim)
+                .filter(delay -> !delay.isEmpty())
+                .map(Long::parseLong)
+                .toList();
+        if (this.delaysMs.stream().anyMatch(delay -> delay <= 0)) {
+            throw new IllegalArgumentException("rabbitmq.retry.delaysMs must be positive: '" + delaysMs + "'");
+        }
+        this.enabled = enabled && !this.delaysMs.isEmpty();
+        this.exchange = exchange.trim();
+        this.deadLetterQueue = deadLetterQueue.trim();
+        this.scheduled = metricFactory.generate("rabbitmq.retry.scheduled");
+        this.deadLettered = metricFactory.generate("rabbitmq.retry.deadLettered");
+        this.publishFailures = metricFactory.generate("rabbitmq.retry.publishFailures");
+        if (this.enabled) {
+            LOGGER.info("Transient failures retried after {} ms, then parked in '{}'", this.delaysMs, this.deadLetterQueue);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getDeadLetterQueue() {
+        return deadLetterQueue;
+    }
+
+    /** Declares the headers exchange, one delay queue per rung and the dead-letter queue; idempotent. */
+    public void declare(Channel channel) throws IOException {
+        channel.exchangeDeclare(exchange, BuiltinExchangeType.HEADERS, true);
+        for (long delay : delaysMs) {
+            String queue = delayQueue(delay);
+            // named after the delay: changing the ladder declares new queues instead of clashing with the old TTLs
+            channel.queueDeclare(queue, true, false, false, Map.of(
+                    "x-message-ttl", delay,
+                    "x-dead-letter-exchange", ""));
+            channel.queueBind(queue, exchange, "", Map.of("x-match", "all", DELAY_HEADER, Long.toString(delay)));
+        }
+        channel.queueDeclare(deadLetterQueue, true, false, false, null);
+    }
+
+    /** Attempts already made before the delivery, 0 for an instruction never retried. */
+    public static int attempts(AMQP.BasicProperties properties) {
+        Object attempts = properties == null || properties.getHeaders() == null
+                ? null : properties.getHeaders().get(ATTEMPT_HEADER);
+        if (attempts instanceof Number number) {
+            return number.intValue();
+        }
+        try {
+            return attempts == null ? 0 : Integer.parseInt(attempts.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Whether an instruction that failed after {@code attempts} earlier attempts goes down the ladder once more. */
+    public boolean hasAttemptLeft(int attempts) {
+        return enabled && attempts < delaysMs.size();
+    }
+
+    public long delayOf(int attempts) {
+        return delaysMs.get(attempts);
+    }
+
+    /** The properties of the delivery, for its next attempt; priority, content type and the like are kept. */
+    public AMQP.BasicProperties nextAttempt(AMQP.BasicProperties properties, int attempts) {
+        return withHeader(properties, attempts + 1, Long.toString(delaysMs.get(attempts)));
+    }
+
+    /** The properties of a delivery parked in the dead-letter queue after its last attempt. */
+    public AMQP.BasicProperties lastAttempt(AMQP.BasicProperties properties, int attempts) {
+        return withHeader(properties, attempts + 1, null);
+    }
+
+    public void scheduled() {
+        scheduled.increment();
+    }
+
+    public void deadLettered() {
+        deadLettered.increment();
+    }
+
+    public void publishFailed() {
+        publishFailures.increment();
+    }
+
+    private static AMQP.BasicProperties withHeader(AMQP.BasicProperties properties, int attempt, String delay) {
+        AMQP.BasicProperties original = properties == null ? new AMQP.BasicProperties() : properties;
+        Map<String, Object> headers = original.getHeaders() == null ? new HashMap<>() : new HashMap<>(original.getHeaders());
+        headers.put(ATTEMPT_HEADER, attempt);
+        if (delay == null) {
+            headers.remove(DELAY_HEADER);
+        } else {
+            headers.put(DELAY_HEADER, delay);
+        }
+        // a per-message TTL would cut the delay short
+        return original.builder().headers(headers).expiration(null).build();
+    }
+
+    private String delayQueue(long delay) {
+        return exchange + "." + delay + "ms";
+    }
+}
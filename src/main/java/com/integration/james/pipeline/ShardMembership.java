@@ -0,0 +1,273 @@
+package com.integration.james.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides which instruction shards this node consumes when {@code rabbitmq.topology.mode} is {@code sharded}.
+ * <p>
+ * Nodes announce themselves with a heartbeat every {@code rabbitmq.shards.heartbeatMs} on a fanout exchange, and
+ * each one keeps the set of nodes heard from within three heartbeats. Every shard is owned by the live node ranking
+ * highest for it under rendezvous hashing, so all nodes sharing the same view agree on the owners without talking
+ * to each other, and a node joining or leaving only moves the shards it gains or held. A leaving node says so, and
+ * a crashed one expires.
+ * <p>
+ * Views differ for a heartbeat or so while membership changes. The shard queues are declared with
+ * {@code x-single-active-consumer}, so even then at most one node consumes a shard: a new owner's consumer only
+ * becomes active once the previous owner cancelled its own.
+ */
+@Singleton
+public class ShardMembership {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardMembership.class);
+    private static final int EXPIRY_HEARTBEATS = 3;
+
+    /** Selected by {@code rabbitmq.topology.mode}. */
+    public enum Mode {
+        SINGLE,
+        SHARDED;
+
+        public static Mode parse(String value) {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /** Told about the shards this node owns whenever they change; called on the membership thread. */
+    public interface Listener {
+        void onAssignment(List<Integer> ownedShards);
+    }
+
+    private final Mode mode;
+    private final int shardCount;
+    private final String nodeId;
+    private final String exchange;
+    private final String membershipExchange;
+    private final long heartbeatMs;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    // node id -> last heartbeat, System.nanoTime()
+    private final Map<String, Long> members = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final Metric rebalances;
+    private final ScheduledExecutorService timer =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "rmq-shards"));
+
+    private volatile Channel channel;
+    private volatile String consumerTag;
+    private volatile Listener listener;
+    private volatile List<Integer> ownedShards = List.of();
+
+    @Inject
+    public ShardMembership(MetricFactory metricFactory,
+                           GaugeRegistry gaugeRegistry,
+                           @Named("rabbitmq.topology.mode") String mode,
+                           @Named("rabbitmq.shards.count") int shardCount,
+                           @Named("rabbitmq.shards.exchange") String exchange,
+                           @Named("rabbitmq.shards.membershipExchange") String membershipExchange,
+                           @Named("rabbitmq.shards.nodeId") String nodeId,
+                           @Named("rabbitmq.shards.heartbeatMs") long heartbeatMs) {
+        this.mode = Mode.parse(mode);
+        this.shardCount = Math.max(1, shardCount);
+        this.exchange = exchange.trim();
+        this.membershipExchange = membershipExchange.trim();
+        this.nodeId = nodeId.isBlank() ? defaultNodeId() : nodeId.trim();
+        this.heartbeatMs = Math.max(100, heartbeatMs);
+        this.rebalances = metricFactory.generate("rabbitmq.shards.rebalances");
+        gaugeRegistry.register("rabbitmq.shards.owned", () -> ownedShards.size());
+        gaugeRegistry.register("rabbitmq.shards.members", members::size);
+        if (isSharded()) {
+            LOGGER.info("Sharded topology: {} shard(s) behind '{}', node '{}'", this.shardCount, this.exchange, this.nodeId);
+        }
+    }
+
+    public boolean isSharded() {
+        return mode == Mode.SHARDED;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public List<Integer> getOwnedShards() {
+        return ownedShards;
+    }
+
+    /** The queue of one shard of {@code baseQueue}. */
+    public static String shardQueue(String baseQueue, int shard) {
+        return baseQueue + ".shard-" + shard;
+    }
+
+    /**
+     * Joins the cluster on the given channel, which must not be in confirm mode. Shards are assigned once the other
+     * nodes had one heartbeat to answer, so a joining node does not grab every shard for a moment.
+     */
+    public void start(Channel channel, Listener listener) throws IOException {
+        this.channel = channel;
+        this.listener = listener;
+        channel.exchangeDeclare(membershipExchange, BuiltinExchangeType.FANOUT, true);
+        // server-named and exclusive: recreated and rebound by topology recovery
+        String queue = channel.queueDeclare().getQueue();
+        channel.queueBind(queue, membershipExchange, "");
+        consumerTag = channel.basicConsume(queue, true,
+                (tag, delivery) -> onAnnouncement(delivery.getBody()),
+                tag -> LOGGER.warn("Membership consumer {} cancelled", tag));
+        members.put(nodeId, System.nanoTime());
+        announce("heartbeat");
+        if (started.compareAndSet(false, true)) {
+            timer.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Announces the departure, so the other nodes take over this node's shards without waiting for expiry, then
+     * stops listening to theirs.
+     */
+    public void stop() {
+        timer.shutdownNow();
+        announce("leave");
+        Channel current = channel;
+        String tag = consumerTag;
+        if (current == null || tag == null || !current.isOpen()) {
+            return;
+        }
+        try {
+            current.basicCancel(tag);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Cannot cancel membership consumer {}: {}", tag, e.getMessage());
+        }
+    }
+
+    private void heartbeat() {
+        try {
+            announce("heartbeat");
+            members.put(nodeId, System.nanoTime());
+            long expiry = TimeUnit.MILLISECONDS.toNanos(heartbeatMs * EXPIRY_HEARTBEATS);
+            long now = System.nanoTime();
+            members.entrySet().removeIf(member -> {
+                boolean expired = !member.getKey().equals(nodeId) && now - member.getValue() > expiry;
+                if (expired) {
+                    LOGGER.warn("Node '{}' missed {} heartbeat(s) – taking over its shards", member.getKey(), EXPIRY_HEARTBEATS);
+                }
+                return expired;
+            });
+            rebalance();
+        } catch (RuntimeException e) {
+            LOGGER.error("Shard membership round failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void onAnnouncement(byte[] body) {
+        try {
+            JsonNode announcement = objectMapper.readTree(body);
+            String node = announcement.path("node").asText("");
+            if (node.isEmpty() || node.equals(nodeId)) {
+                return;
+            }
+            boolean changed = "leave".equals(announcement.path("event").asText())
+                    ? members.remove(node) != null
+                    : members.put(node, System.nanoTime()) == null;
+            if (changed) {
+                LOGGER.info("Node '{}' {} – {} node(s) now", node, members.containsKey(node) ? "joined" : "left", members.size());
+                // membership changes are applied on the timer thread, one at a time
+                timer.execute(this::rebalance);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring malformed membership announcement: {}", e.getMessage());
+        }
+    }
+
+    private void rebalance() {
+        List<String> live = new ArrayList<>(new TreeSet<>(members.keySet()));
+        List<Integer> owned = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (nodeId.equals(owner(shard, live))) {
+                owned.add(shard);
+            }
+        }
+        if (owned.equals(ownedShards)) {
+            return;
+        }
+        LOGGER.info("Node '{}' owns {} of {} shard(s) across {} node(s): {}", nodeId, owned.size(), shardCount, live.size(), owned);
+        ownedShards = List.copyOf(owned);
+        rebalances.increment();
+        Listener current = listener;
+        if (current != null) {
+            current.onAssignment(ownedShards);
+        }
+    }
+
+    /** Rendezvous hashing: the node with the highest weight for the shard owns it. */
+    private static String owner(int shard, List<String> nodes) {
+        String owner = null;
+        long best = Long.MIN_VALUE;
+        for (String node : nodes) {
+            long weight = Hashing.murmur3_128().newHasher()
+                    .putString(node, StandardCharsets.UTF_8)
+                    .putInt(shard)
+                    .hash()
+                    .asLong();
+            if (owner == null || weight > best) {
+                owner = node;
+                best = weight;
+            }
+        }
+        return owner;
+    }
+
+    private void announce(String event) {
+        Channel current = channel;
+        if (current == null || !current.isOpen()) {
+            return;
+        }
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(Map.of("node", nodeId, "event", event));
+            current.basicPublish(membershipExchange, "", null, body);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Cannot announce {} of node '{}': {}", event, nodeId, e.getMessage());
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "james";
+        }
+        // a restarted node must not be mistaken for its previous incarnation still being alive
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
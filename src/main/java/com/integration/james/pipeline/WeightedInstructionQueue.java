@@ -0,0 +1,155 @@
+package com.integration.james.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The queue of one worker lane: a bounded FIFO per {@link Priority}, drained by weighted round robin. While both
+ * hold instructions, up to {@code interactiveWeight} interactive ones are taken for each bulk one, so interactive
+ * latency stays low without starving bulk work.
+ * <p>
+ * Each priority has its own capacity, so a consumer blocked on a full bulk queue never holds back interactive
+ * submissions. Order is kept per source mailbox across both priorities: an instruction is only handed out once
+ * every earlier instruction for its mailbox has been, so an interactive instruction never overtakes a queued bulk
+ * one on the same mailbox. Instructions for other mailboxes are still served by priority.
+ */
+class WeightedInstructionQueue {
+
+    private final ArrayDeque<Entry> interactive = new ArrayDeque<>();
+    private final ArrayDeque<Entry> bulk = new ArrayDeque<>();
+    /** Sequence numbers of the queued instructions of each source mailbox, oldest first. */
+    private final Map<String, ArrayDeque<Long>> queuedByMailbox = new HashMap<>();
+    private final int capacity;
+    private final int interactiveWeight;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition interactiveNotFull = lock.newCondition();
+    private final Condition bulkNotFull = lock.newCondition();
+    private int interactiveStreak;
+    private long nextSequence;
+
+    WeightedInstructionQueue(int capacity, int interactiveWeight) {
+        this.capacity = Math.max(1, capacity);
+        this.interactiveWeight = Math.max(1, interactiveWeight);
+    }
+
+    /** Enqueues an instruction, blocking while the queue of its priority is full. */
+    void put(PendingInstruction instruction) throws InterruptedException {
+        boolean isInteractive = instruction.getPriority() == Priority.INTERACTIVE;
+        ArrayDeque<Entry> queue = isInteractive ? interactive : bulk;
+        Condition notFull = isInteractive ? interactiveNotFull : bulkNotFull;
+        lock.lockInterruptibly();
+        try {
+            while (queue.size() >= capacity) {
+                notFull.await();
+            }
+            Entry entry = new Entry(nextSequence++, instruction);
+            queue.addLast(entry);
+            queuedByMailbox.computeIfAbsent(entry.mailbox(), mailbox -> new ArrayDeque<>()).addLast(entry.sequence());
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    PendingInstruction take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (interactive.isEmpty() && bulk.isEmpty()) {
+                notEmpty.await();
+            }
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Like {@link #take()}, giving up with {@code null} after the timeout; a zero timeout does not wait. */
+    PendingInstruction poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (interactive.isEmpty() && bulk.isEmpty()) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Takes the next instruction if there is one, without waiting. */
+    PendingInstruction poll() {
+        lock.lock();
+        try {
+            return interactive.isEmpty() && bulk.isEmpty() ? null : next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return interactive.size() + bulk.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes from the priority the round robin prefers, falling back to the other one when every instruction of
+     * the preferred priority waits behind an older one of its mailbox. The oldest queued instruction is always
+     * eligible, so one of both queues yields.
+     */
+    private PendingInstruction next() {
+        boolean preferInteractive = !interactive.isEmpty()
+                && (bulk.isEmpty() || interactiveStreak < interactiveWeight);
+        Entry entry = pollEligible(preferInteractive ? interactive : bulk);
+        boolean tookInteractive = preferInteractive;
+        if (entry == null) {
+            entry = pollEligible(preferInteractive ? bulk : interactive);
+            tookInteractive = !preferInteractive;
+        }
+        if (tookInteractive) {
+            interactiveStreak++;
+            interactiveNotFull.signal();
+        } else {
+            interactiveStreak = 0;
+            bulkNotFull.signal();
+        }
+        ArrayDeque<Long> sequences = queuedByMailbox.get(entry.mailbox());
+        sequences.pollFirst();
+        if (sequences.isEmpty()) {
+            queuedByMailbox.remove(entry.mailbox());
+        }
+        return entry.instruction();
+    }
+
+    /** Removes the first instruction that is the oldest queued one of its mailbox. */
+    private Entry pollEligible(ArrayDeque<Entry> queue) {
+        Iterator<Entry> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (queuedByMailbox.get(entry.mailbox()).peekFirst() == entry.sequence()) {
+                iterator.remove();
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private record Entry(long sequence, PendingInstruction instruction) {
+        String mailbox() {
+            return instruction.getPayload().getSourceMailboxID();
+        }
+    }
+}
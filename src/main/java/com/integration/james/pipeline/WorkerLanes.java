@@ -0,0 +1,77 @@
+package com.integration.james.pipeline;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.integration.james.services.MailboxActionService;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * Pool of serial {@link InstructionBatcher} lanes. Instructions are routed by {@code sourceMailboxID}, so
+ * different mailboxes are processed in parallel while instructions for the same mailbox keep their order.
+ * Every lane serves interactive instructions ahead of bulk ones, weighted by {@code rabbitmq.priority.interactiveWeight}.
+ */
+@Singleton
+public class WorkerLanes implements InstructionDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WorkerLanes.class);
+
+    private final InstructionBatcher[] lanes;
+    private final LaneSelection laneSelection;
+    private final ConcurrencyLimit concurrencyLimit;
+
+    @Inject
+    public WorkerLanes(MailboxActionService mailboxActionService,
+                       GaugeRegistry gaugeRegistry,
+                       @Named("rabbitmq.workers.count") int workerCount,
+                       @Named("rabbitmq.workers.laneQueueDepth") int laneQueueDepth,
+                       @Named("rabbitmq.workers.laneSelection") String laneSelection,
+                       @Named("rabbitmq.batch.size") int batchSize,
+                       @Named("rabbitmq.batch.lingerMs") long lingerMs,
+                       @Named("rabbitmq.priority.interactiveWeight") int interactiveWeight) {
+        this.laneSelection = LaneSelection.parse(laneSelection);
+        this.lanes = new InstructionBatcher[Math.max(1, workerCount)];
+        this.concurrencyLimit = new ConcurrencyLimit(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            InstructionBatcher lane = new InstructionBatcher("rmq-lane-" + i, mailboxActionService, batchSize, lingerMs, laneQueueDepth,
+                    interactiveWeight, concurrencyLimit);
+            lanes[i] = lane;
+            gaugeRegistry.register("rabbitmq.lanes." + i + ".queueDepth", lane::getQueueDepth);
+        }
+        LOGGER.info("Started {} worker lane(s) ({} selection, queue depth {}, batches of up to {} instruction(s), linger {} ms)",
+                lanes.length, this.laneSelection, laneQueueDepth, batchSize, lingerMs);
+    }
+
+    /** Routes the instruction to its mailbox's lane, blocking while that lane's queue for its priority is full. */
+    @Override
+    public void submit(PendingInstruction instruction) throws InterruptedException {
+        lanes[laneSelection.select(instruction.getPayload().getSourceMailboxID(), lanes.length)].submit(instruction);
+    }
+
+    /** Queued in the lanes, or in the batches they execute. */
+    @Override
+    public int getInFlight() {
+        int inFlight = 0;
+        for (InstructionBatcher lane : lanes) {
+            inFlight += lane.getQueueDepth() + lane.getExecutingCount();
+        }
+        return inFlight;
+    }
+
+    /** At most {@code rabbitmq.workers.count}: lanes are threads, created once. */
+    @Override
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    @PreDestroy
+    public void dispose() {
+        for (InstructionBatcher lane : lanes) {
+            lane.dispose();
+        }
+    }
+}
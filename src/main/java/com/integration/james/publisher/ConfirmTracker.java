@@ -0,0 +1,171 @@
+package com.integration.james.publisher;
+
+import com.integration.james.metrics.PipelineMetrics;
+import com.rabbitmq.client.ConfirmListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Tracks status messages published on a confirm-mode channel until the broker confirms them.
+ * <p>
+ * Entries are keyed by publish sequence number. Acks settle them; nacked entries and entries left
+ * unconfirmed for longer than the confirm timeout are handed back to the republisher. Consumers may call
+ * {@link #awaitCapacity()} to hold back new work while the number of in-flight confirms is at the high-water mark.
+ */
+public class ConfirmTracker implements ConfirmListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfirmTracker.class);
+
+    private final ConcurrentNavigableMap<Long, Outstanding> outstanding = new ConcurrentSkipListMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Object capacityMonitor = new Object();
+
+    private final int highWaterMark;
+    private volatile long confirmTimeoutNanos;
+    private final Consumer<StatusMessage> republisher;
+    private final PipelineMetrics pipelineMetrics;
+
+    public ConfirmTracker(int highWaterMark, Duration confirmTimeout, Consumer<StatusMessage> republisher,
+                          PipelineMetrics pipelineMetrics) {
+        this.highWaterMark = Math.max(1, highWaterMark);
+        this.confirmTimeoutNanos = confirmTimeout.toNanos();
+        this.republisher = republisher;
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /** Registers a publish; must be called with the sequence number obtained right before {@code basicPublish}. */
+    public void track(long sequenceNumber, StatusMessage status) {
+        outstanding.put(sequenceNumber, new Outstanding(status, System.nanoTime()));
+        inFlight.incrementAndGet();
+    }
+
+    /** Forgets a publish that never reached the broker (e.g. {@code basicPublish} threw). */
+    public void untrack(long sequenceNumber) {
+        if (outstanding.remove(sequenceNumber) != null) {
+            released(1);
+        }
+    }
+
+    public Duration getConfirmTimeout() {
+        return Duration.ofNanos(confirmTimeoutNanos);
+    }
+
+    /** Applies from the next expiry check on, to the publishes already waiting as well. */
+    public void setConfirmTimeout(Duration confirmTimeout) {
+        this.confirmTimeoutNanos = confirmTimeout.toNanos();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /** Blocks the caller while the number of unconfirmed status messages is at or above the high-water mark. */
+    public void awaitCapacity() throws InterruptedException {
+        if (inFlight.get() < highWaterMark) {
+            return;
+        }
+        LOGGER.warn("{} status confirm(s) outstanding (high-water mark {}) – pausing consumption", inFlight.get(), highWaterMark);
+        synchronized (capacityMonitor) {
+            while (inFlight.get() >= highWaterMark) {
+                capacityMonitor.wait(1_000);
+            }
+        }
+    }
+
+    // ---------- ConfirmListener ----------
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        settle(deliveryTag, multiple).forEach(StatusMessage::confirmed);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        List<StatusMessage> nacked = settle(deliveryTag, multiple);
+        LOGGER.warn("Broker nacked {} status message(s) – republishing", nacked.size());
+        nacked.forEach(republisher);
+    }
+
+    /**
+     * Republishes every entry unconfirmed for longer than the confirm timeout.
+     * Sequence numbers grow with time, so the scan stops at the first entry still within its deadline.
+     */
+    public void republishExpired() {
+        long now = System.nanoTime();
+        List<StatusMessage> expired = new ArrayList<>();
+        for (Map.Entry<Long, Outstanding> entry : outstanding.entrySet()) {
+            if (now - entry.getValue().publishedAt() < confirmTimeoutNanos) {
+                break;
+            }
+            if (outstanding.remove(entry.getKey(), entry.getValue())) {
+                expired.add(entry.getValue().status());
+            }
+        }
+        if (!expired.isEmpty()) {
+            released(expired.size());
+            LOGGER.warn("{} status message(s) unconfirmed after {} ms – republishing",
+                    expired.size(), Duration.ofNanos(confirmTimeoutNanos).toMillis());
+            expired.forEach(republisher);
+        }
+    }
+
+    /**
+     * Removes and returns everything still outstanding. Used after a channel recovery, where sequence
+     * numbers restart and confirms for the old channel will never arrive.
+     */
+    public List<StatusMessage> drain() {
+        List<StatusMessage> drained = new ArrayList<>();
+        Map.Entry<Long, Outstanding> entry;
+        while ((entry = outstanding.pollFirstEntry()) != null) {
+            drained.add(entry.getValue().status());
+        }
+        released(drained.size());
+        return drained;
+    }
+
+    private List<StatusMessage> settle(long deliveryTag, boolean multiple) {
+        List<StatusMessage> settled = new ArrayList<>();
+        if (multiple) {
+            ConcurrentNavigableMap<Long, Outstanding> confirmed = outstanding.headMap(deliveryTag, true);
+            Map.Entry<Long, Outstanding> entry;
+            while ((entry = confirmed.pollFirstEntry()) != null) {
+                pipelineMetrics.record(PipelineMetrics.Stage.CONFIRM, entry.getValue().publishedAt());
+                settled.add(entry.getValue().status());
+            }
+        } else {
+            Outstanding removed = outstanding.remove(deliveryTag);
+            if (removed != null) {
+                pipelineMetrics.record(PipelineMetrics.Stage.CONFIRM, removed.publishedAt());
+                settled.add(removed.status());
+            }
+        }
+        released(settled.size());
+        return settled;
+    }
+
+    private void released(int count) {
+        if (count == 0) {
+            return;
+        }
+        if (inFlight.addAndGet(-count) < highWaterMark) {
+            synchronized (capacityMonitor) {
+                capacityMonitor.notifyAll();
+            }
+        }
+    }
+
+    private record Outstanding(StatusMessage status, long publishedAt) {
+    }
+}
@@ -0,0 +1,142 @@
+package com.integration.james.publisher;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Republishes instructions (to a retry delay queue or the dead-letter queue) on a confirm-mode channel of its own,
+ * so that their original delivery is only acked once the broker holds the copy. Unlike {@link ConfirmTracker},
+ * nothing is republished here: the caller decides what to do with a copy that was nacked or never confirmed,
+ * typically putting the original delivery back in its queue.
+ * <p>
+ * Callbacks run on the given executor, never on a broker thread nor on the caller's.
+ */
+public class RetryPublisher implements ConfirmListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryPublisher.class);
+
+    private final ConcurrentNavigableMap<Long, Outstanding> outstanding = new ConcurrentSkipListMap<>();
+    private final Object publishLock = new Object();
+    private volatile long confirmTimeoutNanos;
+    private final Executor callbacks;
+    private volatile Channel channel;
+
+    public RetryPublisher(Duration confirmTimeout, Executor callbacks) {
+        this.confirmTimeoutNanos = confirmTimeout.toNanos();
+        this.callbacks = callbacks;
+    }
+
+    /** Switches to the given channel and puts it in confirm mode. */
+    public void attach(Channel channel) throws IOException {
+        channel.confirmSelect();
+        channel.addConfirmListener(this);
+        this.channel = channel;
+    }
+
+    public Duration getConfirmTimeout() {
+        return Duration.ofNanos(confirmTimeoutNanos);
+    }
+
+    /** Applies from the next expiry check on, to the publishes already waiting as well. */
+    public void setConfirmTimeout(Duration confirmTimeout) {
+        this.confirmTimeoutNanos = confirmTimeout.toNanos();
+    }
+
+    public int getInFlightCount() {
+        return outstanding.size();
+    }
+
+    /** Publishes a copy; exactly one of {@code confirmed} and {@code failed} runs, later. */
+    public void publish(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body,
+                        Runnable confirmed, Runnable failed) {
+        Channel current = channel;
+        if (current == null || !current.isOpen()) {
+            LOGGER.warn("Retry channel is not open – cannot publish to '{}'", exchange.isEmpty() ? routingKey : exchange);
+            callbacks.execute(failed);
+            return;
+        }
+        synchronized (publishLock) {
+            long sequenceNumber = current.getNextPublishSeqNo();
+            outstanding.put(sequenceNumber, new Outstanding(confirmed, failed, System.nanoTime()));
+            try {
+                current.basicPublish(exchange, routingKey, properties, body);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Cannot publish to '{}': {}", exchange.isEmpty() ? routingKey : exchange, e.getMessage());
+                if (outstanding.remove(sequenceNumber) != null) {
+                    callbacks.execute(failed);
+                }
+            }
+        }
+    }
+
+    // ---------- ConfirmListener ----------
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        settle(deliveryTag, multiple).forEach(settled -> callbacks.execute(settled.confirmed()));
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        List<Outstanding> nacked = settle(deliveryTag, multiple);
+        LOGGER.warn("Broker nacked {} retried instruction(s)", nacked.size());
+        nacked.forEach(settled -> callbacks.execute(settled.failed()));
+    }
+
+    /** Fails every copy unconfirmed for longer than the confirm timeout. */
+    public void failExpired() {
+        long now = System.nanoTime();
+        List<Outstanding> expired = new ArrayList<>();
+        for (Map.Entry<Long, Outstanding> entry : outstanding.entrySet()) {
+            if (now - entry.getValue().publishedAt() < confirmTimeoutNanos) {
+                break;
+            }
+            if (outstanding.remove(entry.getKey(), entry.getValue())) {
+                expired.add(entry.getValue());
+            }
+        }
+        if (!expired.isEmpty()) {
+            LOGGER.warn("{} retried instruction(s) unconfirmed after {} ms", expired.size(), Duration.ofNanos(confirmTimeoutNanos).toMillis());
+            expired.forEach(settled -> callbacks.execute(settled.failed()));
+        }
+    }
+
+    /** Fails everything outstanding; after a channel recovery, confirms for the old channel will never arrive. */
+    public void failAll() {
+        Map.Entry<Long, Outstanding> entry;
+        while ((entry = outstanding.pollFirstEntry()) != null) {
+            callbacks.execute(entry.getValue().failed());
+        }
+    }
+
+    private List<Outstanding> settle(long deliveryTag, boolean multiple) {
+        List<Outstanding> settled = new ArrayList<>();
+        if (multiple) {
+            ConcurrentNavigableMap<Long, Outstanding> confirmed = outstanding.headMap(deliveryTag, true);
+            Map.Entry<Long, Outstanding> entry;
+            while ((entry = confirmed.pollFirstEntry()) != null) {
+                settled.add(entry.getValue());
+            }
+        } else {
+            Outstanding removed = outstanding.remove(deliveryTag);
+            if (removed != null) {
+                settled.add(removed);
+            }
+        }
+        return settled;
+    }
+
+    private record Outstanding(Runnable confirmed, Runnable failed, long publishedAt) {
+    }
+}
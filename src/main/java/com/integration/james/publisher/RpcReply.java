@@ -0,0 +1,51 @@
+package com.integration.james.publisher;
+
+import com.rabbitmq.client.AMQP;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The reply address of an instruction sent with the AMQP {@code replyTo} property: its statuses go straight to the
+ * caller, through the default exchange, carrying its {@code correlationId}, instead of to the status exchange. Works
+ * with named reply queues as well as with RabbitMQ's direct reply-to ({@code amq.rabbitmq.reply-to}).
+ */
+public final class RpcReply {
+
+    private final String replyTo;
+    private final String correlationId;
+    private final long receivedAt;
+    private final AtomicBoolean answered = new AtomicBoolean();
+
+    private RpcReply(String replyTo, String correlationId, long receivedAt) {
+        this.replyTo = replyTo;
+        this.correlationId = correlationId;
+        this.receivedAt = receivedAt;
+    }
+
+    /** @return {@code null} when the delivery has no {@code replyTo}: its statuses take the status exchange. */
+    public static RpcReply of(AMQP.BasicProperties properties, long receivedAtNanos) {
+        if (properties == null || properties.getReplyTo() == null || properties.getReplyTo().isBlank()) {
+            return null;
+        }
+        return new RpcReply(properties.getReplyTo(), properties.getCorrelationId(), receivedAtNanos);
+    }
+
+    public String getReplyTo() {
+        return replyTo;
+    }
+
+    /** May be {@code null}: callers with one request in flight per reply queue need none. */
+    public String getCorrelationId() {
+        return correlationId;
+    }
+
+    /** When the instruction was received, as read from {@link System#nanoTime()}. */
+    public long getReceivedAt() {
+        return receivedAt;
+    }
+
+    /** {@code true} the first time only, so that a republished reply is not measured twice. */
+    public boolean firstAnswer() {
+        return answered.compareAndSet(false, true);
+    }
+}
@@ -0,0 +1,106 @@
+package com.integration.james.publisher;
+
+import com.integration.james.codec.WireFormat;
+import com.integration.james.dto.StatusPayload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Packs single statuses into bulk status messages (the array also used for bulk envelopes) of up to
+ * {@code batchSize} entries. A batch is published when full, or once the first status in it has waited the linger
+ * time. The publisher is the pipelined one: batches are tracked by {@link ConfirmTracker} like any other message.
+ * <p>
+ * A batch holds statuses of one {@link WireFormat}: a status in another format publishes the batch so far first.
+ * <p>
+ * With a batch size of 1 every status is published on its own, as a single object.
+ */
+public class StatusBatcher {
+
+    private final int batchSize;
+    private final long lingerMs;
+    private final Consumer<StatusMessage> publisher;
+    private final ScheduledExecutorService scheduler;
+
+    private List<StatusPayload> batch;
+    private WireFormat batchFormat = WireFormat.JSON;
+    // bumped whenever a batch leaves, so a linger timer never flushes the batch started after its own
+    private long generation;
+
+    public StatusBatcher(int batchSize, long lingerMs, Consumer<StatusMessage> publisher, ScheduledExecutorService scheduler) {
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerMs = Math.max(0, lingerMs);
+        this.publisher = publisher;
+        this.scheduler = scheduler;
+        this.batch = new ArrayList<>(this.batchSize);
+    }
+
+    public boolean isBatching() {
+        return batchSize > 1;
+    }
+
+    public void add(StatusPayload status, WireFormat format) {
+        if (!isBatching()) {
+            publisher.accept(StatusMessage.single(status, format));
+            return;
+        }
+        StatusMessage other = null;
+        StatusMessage full = null;
+        synchronized (this) {
+            if (format != batchFormat) {
+                other = batch.isEmpty() ? null : take();
+                batchFormat = format;
+            }
+            batch.add(status);
+            if (batch.size() >= batchSize) {
+                full = take();
+            } else if (batch.size() == 1) {
+                long scheduledFor = generation;
+                scheduler.schedule(() -> lingerElapsed(scheduledFor), lingerMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        // published outside the lock: publishing may block on the channel
+        if (other != null) {
+            publisher.accept(other);
+        }
+        if (full != null) {
+            publisher.accept(full);
+        }
+    }
+
+    /** Publishes whatever is waiting, e.g. before shutting down. */
+    public void flush() {
+        StatusMessage pending;
+        synchronized (this) {
+            pending = batch.isEmpty() ? null : take();
+        }
+        if (pending != null) {
+            publisher.accept(pending);
+        }
+    }
+
+    public synchronized int getWaitingCount() {
+        return batch.size();
+    }
+
+    private void lingerElapsed(long scheduledFor) {
+        StatusMessage pending;
+        synchronized (this) {
+            if (scheduledFor != generation || batch.isEmpty()) {
+                return;
+            }
+            pending = take();
+        }
+        publisher.accept(pending);
+    }
+
+    private StatusMessage take() {
+        StatusMessage taken = StatusMessage.bulk(batch, batchFormat);
+        batch = new ArrayList<>(batchSize);
+        generation++;
+        return taken;
+    }
+}
@@ -0,0 +1,105 @@
+package com.integration.james.publisher;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.integration.james.codec.WireFormat;
+import com.integration.james.dto.StatusPayload;
+
+import java.util.List;
+
+/**
+ * One outgoing status publish: either a single {@link StatusPayload} object, or a bulk envelope
+ * (an array of them) answering a bulk instruction delivery, in the {@link WireFormat} it will be published in.
+ * <p>
+ * Messages replayed from the {@link StatusOutbox} carry the receipt of their record, so that the broker confirm
+ * (or a failed publish) is reported back to the outbox instead of persisting the message a second time.
+ * <p>
+ * Messages answering an RPC caller carry its {@link RpcReply}. The outbox does not keep it: by the time a record is
+ * replayed the caller has given up, so replays take the status exchange.
+ */
+public class StatusMessage {
+
+    private final List<StatusPayload> statuses;
+    private final boolean bulk;
+    private final WireFormat format;
+    private final RpcReply reply;
+    private final StatusOutbox.Receipt receipt;
+
+    private StatusMessage(List<StatusPayload> statuses, boolean bulk, WireFormat format, RpcReply reply, StatusOutbox.Receipt receipt) {
+        this.statuses = statuses;
+        this.bulk = bulk;
+        this.format = format;
+        this.reply = reply;
+        this.receipt = receipt;
+    }
+
+    public static StatusMessage single(StatusPayload status, WireFormat format) {
+        return new StatusMessage(List.of(status), false, format, null, null);
+    }
+
+    public static StatusMessage bulk(List<StatusPayload> statuses, WireFormat format) {
+        return new StatusMessage(List.copyOf(statuses), true, format, null, null);
+    }
+
+    /** The same message, sent to the caller instead of the status exchange; unchanged for a {@code null} reply. */
+    public StatusMessage withReply(RpcReply reply) {
+        return reply == null ? this : new StatusMessage(statuses, bulk, format, reply, receipt);
+    }
+
+    StatusMessage withReceipt(StatusOutbox.Receipt receipt) {
+        return new StatusMessage(statuses, bulk, format, null, receipt);
+    }
+
+    /** Whether this message is already persisted in the outbox. */
+    public boolean isFromOutbox() {
+        return receipt != null;
+    }
+
+    /** Called once the broker confirmed the publish. */
+    public void confirmed() {
+        if (receipt != null) {
+            receipt.confirmed();
+        }
+    }
+
+    /** Called when publishing failed; an outbox record becomes eligible for the next drain. */
+    public void released() {
+        if (receipt != null) {
+            receipt.release();
+        }
+    }
+
+    public List<StatusPayload> getStatuses() {
+        return statuses;
+    }
+
+    public boolean isBulk() {
+        return bulk;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    /** {@code null} unless this message answers an RPC caller. */
+    public RpcReply getReply() {
+        return reply;
+    }
+
+    /** Whether this is an intermediate report of a query action rather than an instruction's final status. */
+    public boolean isProgress() {
+        return !bulk && "progress".equals(statuses.get(0).getStatus());
+    }
+
+    public byte[] toBody(ObjectMapper objectMapper) throws JsonProcessingException {
+        return bulk ? objectMapper.writeValueAsBytes(statuses) : objectMapper.writeValueAsBytes(statuses.get(0));
+    }
+
+    /** Short description for logs; bulk envelopes are not spelled out. */
+    public String describe() {
+        String description = bulk
+                ? "bulk envelope of " + statuses.size() + " status(es)"
+                : "hashID '" + statuses.get(0).getHashID() + "'";
+        return reply == null ? description : description + " (reply to '" + reply.getReplyTo() + "')";
+    }
+}
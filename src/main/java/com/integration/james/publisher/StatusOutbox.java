@@ -0,0 +1,391 @@
+package com.integration.james.publisher;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.integration.james.codec.WireFormat;
+import com.integration.james.dto.StatusPayload;
+import org.apache.james.filesystem.api.FileSystem;
+import org.apache.james.metrics.api.GaugeRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Durable, append-only store for status messages that could not be published, so that a broker outage costs
+ * neither heap nor results.
+ * <p>
+ * Records live in fixed-size memory-mapped segment files under the James {@code var} directory. A record is
+ * {@code [int length][byte state][byte flags][body]}, the flags holding the bulk bit and the {@link WireFormat}
+ * the message is to be published in; bodies are stored as JSON whatever that format. The length is written last so
+ * a torn append is never read back. A record is marked consumed once the broker confirms its republication, and a segment holding no pending
+ * record is deleted as soon as it is no longer the one being appended to. Total size is capped by
+ * {@code rabbitmq.outbox.maxBytes}; beyond it new records are dropped and logged.
+ * <p>
+ * Segments are deleted whole, never rewritten: a record that stays pending, because its republication keeps
+ * failing, holds its segment against {@code maxBytes} until it is confirmed. A record that cannot be read back is
+ * not retried: the segment is copied aside as {@code .corrupt} for inspection, and the records from it to the end
+ * of the segment are given up.
+ */
+@Singleton
+public class StatusOutbox {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StatusOutbox.class);
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String QUARANTINE_SUFFIX = ".corrupt";
+    private static final int HEADER_BYTES = Integer.BYTES + 2;
+    private static final byte PENDING = 0;
+    private static final byte CONSUMED = 1;
+    private static final byte BULK = 1;
+    private static final TypeReference<List<StatusPayload>> STATUS_LIST = new TypeReference<>() { };
+
+    /** Receives pending records in order; returning {@code false} stops the drain. */
+    @FunctionalInterface
+    public interface BatchPublisher {
+        boolean publish(List<StatusMessage> batch) throws InterruptedException;
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    // records handed out for publication and not yet confirmed or released
+    private final Set<Receipt> inFlight = new HashSet<>();
+    private Path directory;
+    private Segment active;
+    private long pendingRecords;
+
+    @Inject
+    public StatusOutbox(FileSystem fileSystem,
+                        GaugeRegistry gaugeRegistry,
+                        @Named("rabbitmq.outbox.directory") String directoryUrl,
+                        @Named("rabbitmq.outbox.segmentBytes") int segmentBytes,
+                        @Named("rabbitmq.outbox.maxBytes") long maxBytes) {
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        try {
+            File location = fileSystem.getFile(directoryUrl);
+            this.directory = Files.createDirectories(location.toPath());
+            openExistingSegments();
+            LOGGER.info("Status outbox at {}: {} pending record(s) in {} segment(s)", directory, pendingRecords, segments.size());
+        } catch (IOException e) {
+            LOGGER.error("Status outbox unavailable at '{}' – unpublished statuses will be dropped", directoryUrl, e);
+            this.directory = null;
+        }
+        gaugeRegistry.register("rabbitmq.outbox.pending", this::getPendingRecords);
+        gaugeRegistry.register("rabbitmq.outbox.segments", this::getSegmentCount);
+    }
+
+    public synchronized long getPendingRecords() {
+        return pendingRecords;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /** Persists a message that could not be published. Returns {@code false} if it had to be dropped. */
+    public synchronized boolean append(StatusMessage message) {
+        if (directory == null) {
+            return false;
+        }
+        try {
+            byte[] body = message.toBody(objectMapper);
+            int recordBytes = HEADER_BYTES + body.length;
+            if (recordBytes > segmentBytes) {
+                LOGGER.error("Status outbox: {} exceeds the segment size ({} bytes) – dropped", message.describe(), segmentBytes);
+                return false;
+            }
+            if (active == null || active.writePosition + recordBytes > segmentBytes) {
+                if ((long) (segments.size() + 1) * segmentBytes > maxBytes) {
+                    LOGGER.error("Status outbox full ({} bytes) – dropped {}", maxBytes, message.describe());
+                    return false;
+                }
+                rotate();
+            }
+            int position = active.writePosition;
+            ByteBuffer buffer = active.buffer.duplicate();
+            buffer.position(position + Integer.BYTES);
+            buffer.put(PENDING);
+            buffer.put(flags(message));
+            buffer.put(body);
+            active.buffer.putInt(position, body.length);
+            active.writePosition += recordBytes;
+            active.pending++;
+            pendingRecords++;
+            return true;
+        } catch (IOException e) {
+            LOGGER.error("Status outbox: cannot persist {} – dropped", message.describe(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Walks every pending record not currently in flight and hands them out in batches of {@code batchSize}.
+     * Each message carries a receipt: confirming it marks the record consumed, releasing it makes it eligible
+     * for the next drain.
+     */
+    public void drain(int batchSize, BatchPublisher publisher) throws InterruptedException {
+        Long segmentId = null;
+        int position = 0;
+        boolean exhausted = false;
+        while (!exhausted) {
+            List<StatusMessage> batch = new ArrayList<>(batchSize);
+            synchronized (this) {
+                try {
+                    Long current = segmentId != null ? segmentId : segments.isEmpty() ? null : segments.firstKey();
+                    while (current != null && batch.size() < batchSize) {
+                        Segment segment = segments.get(current);
+                        if (segment == null) {
+                            current = segments.higherKey(current);
+                            position = 0;
+                            continue;
+                        }
+                        while (position < segment.writePosition && batch.size() < batchSize) {
+                            int length = segment.buffer.getInt(position);
+                            if (length <= 0 || position + HEADER_BYTES + length > segment.writePosition) {
+                                quarantine(segment, position, "invalid record length " + length);
+                                break;
+                            }
+                            if (segment.buffer.get(position + Integer.BYTES) == PENDING) {
+                                Receipt receipt = new Receipt(segment.id, position);
+                                if (!inFlight.contains(receipt)) {
+                                    try {
+                                        batch.add(read(segment, position, length, receipt));
+                                    } catch (IOException | RuntimeException e) {
+                                        quarantine(segment, position, e.toString());
+                                        break;
+                                    }
+                                    inFlight.add(receipt);
+                                }
+                            }
+                            position += HEADER_BYTES + length;
+                        }
+                        if (position >= segment.writePosition && batch.size() < batchSize) {
+                            current = segments.higherKey(current);
+                            position = 0;
+                        }
+                    }
+                    segmentId = current;
+                    exhausted = current == null;
+                } catch (RuntimeException e) {
+                    // nothing of this batch is published: its records must not stay in flight
+                    batch.forEach(StatusMessage::released);
+                    throw e;
+                }
+            }
+            if (batch.isEmpty() || !publisher.publish(batch)) {
+                return;
+            }
+        }
+    }
+
+    private StatusMessage read(Segment segment, int position, int length, Receipt receipt) throws IOException {
+        byte[] body = new byte[length];
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(position + HEADER_BYTES);
+        buffer.get(body);
+        byte flags = segment.buffer.get(position + Integer.BYTES + 1);
+        // records written before formats were recorded have no format bits: JSON
+        WireFormat format = WireFormat.values()[Math.min((flags & 0xFF) >> 1, WireFormat.values().length - 1)];
+        StatusMessage message = (flags & BULK) != 0
+                ? StatusMessage.bulk(objectMapper.readValue(body, STATUS_LIST), format)
+                : StatusMessage.single(objectMapper.readValue(body, StatusPayload.class), format);
+        return message.withReceipt(receipt);
+    }
+
+    /**
+     * Gives up the records of {@code segment} from {@code position} on, which cannot be read back: the segment is
+     * copied aside first, then ends at {@code position}, so that neither this run nor the next one reads past it.
+     * Appends move on to a new segment, so that no receipt in flight ever points to a reused position.
+     */
+    private void quarantine(Segment segment, int position, String cause) {
+        Path copy = directory.resolve(segment.path.getFileName() + QUARANTINE_SUFFIX);
+        try {
+            segment.buffer.force();
+            Files.copy(segment.path, copy, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot copy corrupted outbox segment {} aside", segment.path, e);
+        }
+        int before = segment.pending;
+        segment.buffer.putInt(position, 0);
+        segment.scan();
+        pendingRecords -= before - segment.pending;
+        LOGGER.error("Corrupted status outbox record in {} at {} ({}): {} pending record(s) given up, segment copied to {}",
+                segment.path, position, cause, before - segment.pending, copy);
+        if (segment == active) {
+            active = null;
+        }
+        compact(segment);
+    }
+
+    private static byte flags(StatusMessage message) {
+        return (byte) (message.getFormat().ordinal() << 1 | (message.isBulk() ? BULK : 0));
+    }
+
+    private synchronized void consumed(Receipt receipt) {
+        inFlight.remove(receipt);
+        Segment segment = segments.get(receipt.segmentId());
+        if (segment == null || segment.buffer.get(receipt.position() + Integer.BYTES) != PENDING) {
+            return;
+        }
+        segment.buffer.put(receipt.position() + Integer.BYTES, CONSUMED);
+        segment.pending--;
+        pendingRecords--;
+        compact(segment);
+    }
+
+    private synchronized void released(Receipt receipt) {
+        inFlight.remove(receipt);
+    }
+
+    /** Deletes a sealed segment once none of its records is pending any more. */
+    private void compact(Segment segment) {
+        if (segment.pending > 0 || segment == active) {
+            return;
+        }
+        segments.remove(segment.id);
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot delete drained outbox segment {}", segment.path, e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (active != null) {
+            active.buffer.force();
+            Segment sealed = active;
+            active = null;
+            compact(sealed);
+        }
+        long id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        Path path = directory.resolve(SEGMENT_PREFIX + String.format("%019d", id) + SEGMENT_SUFFIX);
+        active = new Segment(id, path, map(path, segmentBytes));
+        segments.put(id, active);
+    }
+
+    private void openExistingSegments() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                long id;
+                try {
+                    id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    // a stray or renamed file must not keep the outbox, hence the service, from starting
+                    LOGGER.warn("Ignoring {} in the status outbox: not a segment name", path);
+                    continue;
+                }
+                Segment segment = new Segment(id, path, map(path, (int) Files.size(path)));
+                segment.scan();
+                segments.put(id, segment);
+                pendingRecords += segment.pending;
+            }
+        }
+        for (Segment segment : List.copyOf(segments.values())) {
+            compact(segment);
+        }
+        // appends resume in a fresh segment; recovered ones are only drained
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void dispose() {
+        segments.values().forEach(segment -> segment.buffer.force());
+    }
+
+    /** Identifies one record; handed out with drained messages. */
+    final class Receipt {
+        private final long segmentId;
+        private final int position;
+
+        private Receipt(long segmentId, int position) {
+            this.segmentId = segmentId;
+            this.position = position;
+        }
+
+        long segmentId() {
+            return segmentId;
+        }
+
+        int position() {
+            return position;
+        }
+
+        /** The republished message was confirmed by the broker. */
+        void confirmed() {
+            consumed(this);
+        }
+
+        /** Republication failed; the record stays pending for the next drain. */
+        void release() {
+            released(this);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Receipt other && other.segmentId == segmentId && other.position == position;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(segmentId) * 31 + position;
+        }
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int pending;
+
+        private Segment(long id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        /** Rebuilds the write position and pending count of a segment left by a previous run, or cut short. */
+        private void scan() {
+            int position = 0;
+            pending = 0;
+            while (position + HEADER_BYTES <= buffer.capacity()) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + HEADER_BYTES + length > buffer.capacity()) {
+                    break;
+                }
+                if (buffer.get(position + Integer.BYTES) == PENDING) {
+                    pending++;
+                }
+                position += HEADER_BYTES + length;
+            }
+            writePosition = position;
+        }
+    }
+}
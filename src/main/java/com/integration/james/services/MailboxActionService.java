@@ -1,9 +1,73 @@
 package com.integration.james.services;
+import com.integration.james.codec.Instruction;
+import com.integration.james.dto.ActionReport;
 import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.Outcome;
+import com.integration.james.dto.RangeResult;
 import org.apache.james.mailbox.exception.MailboxException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Consumer;
 
 public interface MailboxActionService {
 
-    boolean processMessageAction(IncomingMessagePayload payload) throws MailboxException;
+    Outcome processMessageAction(Instruction instruction) throws MailboxException;
+
+    /**
+     * Executes several instructions sharing the same action, source mailbox and destination mailbox
+     * in one mailbox session, merging their UIDs into as few {@code moveMessages} calls as possible.
+     *
+     * @return one result per instruction, in the order of {@code instructions}; a backend failure fails the instructions
+     *         not moved yet as {@link Outcome#RETRYABLE}, a fault of the instruction as {@link Outcome#FAILED}.
+     */
+    List<Outcome> processMessageActions(List<Instruction> instructions) throws MailboxException;
+
+    /**
+     * Non-blocking counterpart of {@link #processMessageAction(Instruction)}: nothing happens until
+     * subscription, and no thread is held while waiting on the mailbox backend.
+     *
+     * @return a {@link Mono} emitting the outcome; failures are reported as outcomes, not as errors.
+     */
+    Mono<Outcome> processMessageActionReactive(Instruction instruction);
+
+    /**
+     * Executes a range action ({@code MoveRange} or {@code TrashRange}): the UID set is reduced to as few ranges as
+     * possible, each moved with one {@code moveMessages} call, all in one mailbox session.
+     *
+     * @return one result per range, in UID order; empty when nothing could be attempted (malformed UID set,
+     *         missing destination, open circuit breaker). Failures are reported in the results, not thrown.
+     */
+    List<RangeResult> processRangeAction(IncomingMessagePayload payload);
+
+    /** Non-blocking counterpart of {@link #processRangeAction(IncomingMessagePayload)}. */
+    Mono<List<RangeResult>> processRangeActionReactive(IncomingMessagePayload payload);
+
+    /**
+     * Executes a query action ({@code MoveQuery} or {@code TrashQuery}): the UIDs of the source mailbox matching the
+     * query are streamed from {@code MessageManager.search} and moved in chunks of {@code rabbitmq.query.chunkSize},
+     * so memory stays bounded whatever the size of the mailbox.
+     *
+     * @param progress receives the running counts after every chunk
+     * @return the final counts; failures are reported in it, not thrown.
+     */
+    ActionReport processQueryAction(IncomingMessagePayload payload, Consumer<ActionReport> progress);
+
+    /** Non-blocking counterpart of {@link #processQueryAction(IncomingMessagePayload, Consumer)}. */
+    Mono<ActionReport> processQueryActionReactive(IncomingMessagePayload payload, Consumer<ActionReport> progress);
+
+    /**
+     * Executes a by-id action ({@code MoveById} or {@code TrashById}): each listed {@code MessageId} is put in the
+     * destination mailbox(es), or in the owner's Trash, with {@code MessageIdManager.setInMailboxes}, wherever it
+     * currently is. No mailbox path nor UID is resolved; messages are handled in chunks of
+     * {@code rabbitmq.query.chunkSize}, all in one mailbox session.
+     *
+     * @param progress receives the running counts after every chunk
+     * @return the final counts; failures are reported in it, not thrown.
+     */
+    ActionReport processByIdAction(Instruction instruction, Consumer<ActionReport> progress);
+
+    /** Non-blocking counterpart of {@link #processByIdAction(Instruction, Consumer)}. */
+    Mono<ActionReport> processByIdActionReactive(Instruction instruction, Consumer<ActionReport> progress);
 
 }
@@ -0,0 +1,43 @@
+package com.integration.james.services;
+
+/**
+ * The settings of a running {@link RabbitMqIntegrationService} that can be changed without reconnecting, through
+ * {@link RabbitMqIntegrationService#tune}. They start from {@code rabbitmq.properties}; changes are not written back,
+ * so a restart returns to the configured values.
+ *
+ * @param prefetch            prefetch of the main consumer; within the bounds of the adaptive loop in adaptive mode,
+ *                            which carries on from it
+ * @param interactivePrefetch prefetch of the interactive consumer, when priority lanes are enabled
+ * @param concurrency         how many worker lanes may execute instructions at once, at most their number
+ * @param confirmTimeoutMs    how long a status or a retried instruction may wait for its publisher confirm
+ * @param paused              no instruction is consumed; in-flight ones still complete
+ */
+public record PipelineSettings(int prefetch,
+                               int interactivePrefetch,
+                               int concurrency,
+                               long confirmTimeoutMs,
+                               long reconnectInitialDelayMs,
+                               long reconnectMaxDelayMs,
+                               boolean paused) {
+
+    // basic.qos carries the prefetch count as an unsigned short
+    private static final int MAX_PREFETCH = 65535;
+
+    /** @throws IllegalArgumentException when a value is out of range */
+    public PipelineSettings {
+        check(prefetch >= 1 && prefetch <= MAX_PREFETCH, "prefetch must be between 1 and " + MAX_PREFETCH + ", got " + prefetch);
+        check(interactivePrefetch >= 1 && interactivePrefetch <= MAX_PREFETCH,
+                "interactivePrefetch must be between 1 and " + MAX_PREFETCH + ", got " + interactivePrefetch);
+        check(concurrency >= 1, "concurrency must be positive, got " + concurrency);
+        check(confirmTimeoutMs >= 1, "confirmTimeoutMs must be positive, got " + confirmTimeoutMs);
+        check(reconnectInitialDelayMs >= 1, "reconnectInitialDelayMs must be positive, got " + reconnectInitialDelayMs);
+        check(reconnectMaxDelayMs >= reconnectInitialDelayMs,
+                "reconnectMaxDelayMs must be at least reconnectInitialDelayMs (" + reconnectInitialDelayMs + "), got " + reconnectMaxDelayMs);
+    }
+
+    private static void check(boolean valid, String message) {
+        if (!valid) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.integration.james.services;
+
+import com.integration.james.metrics.PipelineMetrics.LatencySnapshot;
+
+import java.util.List;
+import java.util.Map;
+
+/** A point-in-time view of a running {@link RabbitMqIntegrationService}, as served by the WebAdmin pipeline route. */
+public record PipelineStats(ConnectionState connection,
+                            List<ConsumerState> consumers,
+                            String breaker,
+                            InFlight inFlight,
+                            Throughput throughput,
+                            Map<String, LatencySnapshot> latencies,
+                            PipelineSettings settings) {
+
+    public record ConnectionState(String host, int port, boolean open) {
+    }
+
+    /** {@code consumers} is the number of queues actually consumed: 0 while paused or while the breaker is open. */
+    public record ConsumerState(String priority, List<String> queues, int consumers, int prefetch) {
+    }
+
+    /**
+     * @param unackedDeliveries deliveries received and not acked yet
+     * @param instructions      instructions handed to the worker lanes and not completed yet
+     * @param executingLanes    slots of the concurrency limit in use, at most {@code settings.concurrency}
+     * @param unconfirmedStatuses statuses published and not confirmed by the broker yet
+     * @param unconfirmedRetries retried instructions published and not confirmed yet
+     * @param waitingAcks       acks held back by the ack coalescer
+     * @param waitingStatuses   statuses held back by the status batcher
+     */
+    public record InFlight(int unackedDeliveries,
+                           int instructions,
+                           int executingLanes,
+                           int unconfirmedStatuses,
+                           int unconfirmedRetries,
+                           int waitingAcks,
+                           int waitingStatuses) {
+    }
+
+    /** Deliveries acked since startup, and per second over the last minute. */
+    public record Throughput(long ackedTotal, double ackedPerSecond) {
+    }
+}
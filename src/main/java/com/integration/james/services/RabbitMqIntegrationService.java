@@ -1,32 +1,70 @@
 package com.integration.james.services;
 
+import com.integration.james.cache.IdempotencyCache;
+import com.integration.james.codec.Instruction;
+import com.integration.james.codec.InstructionCodec;
+import com.integration.james.codec.WireFormat;
 import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.ActionReport;
+import com.integration.james.dto.Outcome;
 import com.integration.james.dto.StatusPayload;
+import com.integration.james.pipeline.AckCoalescer;
+import com.integration.james.pipeline.BackendCircuitBreaker;
+import com.integration.james.pipeline.BulkDelivery;
+import com.integration.james.pipeline.PendingInstruction;
+import com.integration.james.metrics.PipelineMetrics;
+import com.integration.james.pipeline.InstructionDispatcher;
+import com.integration.james.pipeline.PrefetchController;
+import com.integration.james.pipeline.Priority;
+import com.integration.james.pipeline.RetryLadder;
+import com.integration.james.pipeline.ShardMembership;
+import com.integration.james.publisher.ConfirmTracker;
+import com.integration.james.publisher.RetryPublisher;
+import com.integration.james.publisher.RpcReply;
+import com.integration.james.publisher.StatusBatcher;
+import com.integration.james.publisher.StatusMessage;
+import com.integration.james.publisher.StatusOutbox;
 import com.rabbitmq.client.*;
 import org.apache.james.lifecycle.api.Startable;
+import org.apache.james.metrics.api.GaugeRegistry;
 
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 
 import javax.annotation.PreDestroy;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
 @Singleton
 public class RabbitMqIntegrationService implements Startable, RecoveryListener, ShutdownListener {
 
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RabbitMqIntegrationService.class);
+    private static final String STATUS_MODE_HEADER = "x-status-mode";
+    private static final String STATUS_MODE_ENVELOPE = "envelope";
 
 
-    private final MailboxActionService  mailboxActionService;
+    private final InstructionDispatcher instructionDispatcher;
+    private final IdempotencyCache idempotencyCache;
+    private final PipelineMetrics pipelineMetrics;
     private final String rabbitMqHost;
     private final int rabbitMqPort;
     private final String rabbitMqUsername;
@@ -34,31 +72,98 @@ public class RabbitMqIntegrationService implements Startable, RecoveryListener,
     private final String rabbitMqQueueName;
     private final String rabbitMqExchangeName;
     private final String rabbitMqRoutingKey;
+    private final String bulkStatusMode;
+    private final PrefetchController prefetchController;
+    private final BackendCircuitBreaker circuitBreaker;
+    private final String breakerEventRoutingKey;
+    private final boolean priorityEnabled;
+    private volatile int interactivePrefetch;
+    private final int interactivePriorityThreshold;
+    private final boolean rpcEnabled;
+    private final ShardMembership shardMembership;
+    private final RetryLadder retryLadder;
 
     private volatile  Connection connection;
-    private volatile  Channel consumerChannel;
     private volatile  Channel   publisherChannel;
+    // heartbeats of the sharded topology, outside the consumer channels so a blocked lane cannot delay them
+    private volatile  Channel   membershipChannel;
+    // copies of retried instructions; its own confirm sequence, apart from the status confirms
+    private volatile  Channel   retryChannel;
+    private final Object consumerLock = new Object();
+    // set by an operator through tune(): no consumer runs, whatever the circuit breaker says
+    private volatile boolean paused;
+    // serializes tune() calls
+    private final Object settingsLock = new Object();
+    // the main queue first, then the interactive one when priority lanes are enabled
+    private final List<ConsumerLane> consumerLanes = new ArrayList<>();
+    private final ConsumerLane mainLane;
+    private final ConsumerQos mainQos;
+
+    private final ConfirmTracker confirmTracker;
+    private final RetryPublisher retryPublisher;
+    private final StatusBatcher statusBatcher;
+    private final StatusOutbox statusOutbox;
+    private final int outboxDrainBatchSize;
+    private final AtomicBoolean drainingOutbox = new AtomicBoolean();
+    private final ExecutorService outboxDrainer =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "rmq-outbox-drain"));
+    private final Object publishLock = new Object();
 
     private final ObjectMapper objectMapper;
+    private final InstructionCodec codec;
     private final ScheduledExecutorService scheduler =
             Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "rmq-retry"));
+    // linger timers of the ack coalescer and the status batcher; never blocked by a reconnection
+    private final ScheduledExecutorService lingerTimer =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "rmq-linger"));
+    // breaker transitions pause, probe and resume the consumer with channel RPCs, off the lane threads
+    private final ExecutorService breakerActions =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "rmq-breaker"));
 
 
-    private static final Duration INITIAL_RETRY_DELAY = Duration.ofSeconds(5);
-    private static final Duration MAX_RETRY_DELAY     = Duration.ofMinutes(1);
+    private volatile Duration reconnectInitialDelay;
+    private volatile Duration reconnectMaxDelay;
 
 
     @Inject
-    public RabbitMqIntegrationService(MailboxActionService  mailboxActionService,
+    public RabbitMqIntegrationService(InstructionDispatcher instructionDispatcher,
+                                      IdempotencyCache idempotencyCache,
+                                      PipelineMetrics pipelineMetrics,
                                       @Named("rabbitmq.host") String rabbitMqHost,
                                       @Named("rabbitmq.port") int rabbitMqPort,
                                       @Named("rabbitmq.username") String rabbitMqUsername,
                                       @Named("rabbitmq.password") String rabbitMqPassword,
                                       @Named("rabbitmq.queueName") String rabbitMqQueueName,
                                       @Named("rabbitmq.routingKey") String rabbitMqRoutingKey,
-                                      @Named("rabbitmq.exchangeName") String rabbitMqExchangeName ) {
+                                      @Named("rabbitmq.exchangeName") String rabbitMqExchangeName,
+                                      PrefetchController prefetchController,
+                                      @Named("rabbitmq.publisher.confirmTimeoutMs") long confirmTimeoutMs,
+                                      @Named("rabbitmq.publisher.maxInFlightConfirms") int maxInFlightConfirms,
+                                      @Named("rabbitmq.publisher.batch.size") int statusBatchSize,
+                                      @Named("rabbitmq.publisher.batch.lingerMs") long statusBatchLingerMs,
+                                      @Named("rabbitmq.ack.mode") String ackMode,
+                                      @Named("rabbitmq.ack.lingerMs") long ackLingerMs,
+                                      @Named("rabbitmq.ack.batchSize") int ackBatchSize,
+                                      @Named("rabbitmq.bulk.statusMode") String bulkStatusMode,
+                                      StatusOutbox statusOutbox,
+                                      @Named("rabbitmq.outbox.drainBatchSize") int outboxDrainBatchSize,
+                                      BackendCircuitBreaker circuitBreaker,
+                                      @Named("rabbitmq.breaker.eventRoutingKey") String breakerEventRoutingKey,
+                                      @Named("rabbitmq.priority.enabled") boolean priorityEnabled,
+                                      @Named("rabbitmq.priority.interactive.queueName") String interactiveQueueName,
+                                      @Named("rabbitmq.priority.interactive.prefetch") int interactivePrefetch,
+                                      @Named("rabbitmq.priority.interactiveThreshold") int interactivePriorityThreshold,
+                                      @Named("rabbitmq.rpc.enabled") boolean rpcEnabled,
+                                      @Named("rabbitmq.reconnect.initialDelayMs") long reconnectInitialDelayMs,
+                                      @Named("rabbitmq.reconnect.maxDelayMs") long reconnectMaxDelayMs,
+                                      ShardMembership shardMembership,
+                                      RetryLadder retryLadder,
+                                      InstructionCodec codec,
+                                      GaugeRegistry gaugeRegistry) {
 
-        this.mailboxActionService = mailboxActionService;
+        this.instructionDispatcher = instructionDispatcher;
+        this.idempotencyCache = idempotencyCache;
+        this.pipelineMetrics = pipelineMetrics;
         this.rabbitMqHost = rabbitMqHost;
         this.rabbitMqPort = rabbitMqPort;
         this.rabbitMqUsername = rabbitMqUsername;
@@ -66,7 +171,43 @@ public class RabbitMqIntegrationService implements Startable, RecoveryListener,
         this.rabbitMqQueueName = rabbitMqQueueName;
         this.rabbitMqExchangeName = rabbitMqExchangeName;
         this.rabbitMqRoutingKey = rabbitMqRoutingKey;
+        this.prefetchController = prefetchController;
+        this.bulkStatusMode = bulkStatusMode;
+        this.statusOutbox = statusOutbox;
+        this.outboxDrainBatchSize = Math.max(1, outboxDrainBatchSize);
+        this.circuitBreaker = circuitBreaker;
+        this.breakerEventRoutingKey = breakerEventRoutingKey.trim();
+        this.priorityEnabled = priorityEnabled;
+        this.interactivePrefetch = Math.max(1, interactivePrefetch);
+        this.interactivePriorityThreshold = interactivePriorityThreshold;
+        this.rpcEnabled = rpcEnabled;
+        this.reconnectInitialDelay = Duration.ofMillis(Math.max(1, reconnectInitialDelayMs));
+        this.reconnectMaxDelay = Duration.ofMillis(Math.max(this.reconnectInitialDelay.toMillis(), reconnectMaxDelayMs));
+        this.shardMembership = shardMembership;
+        this.retryLadder = retryLadder;
         this.objectMapper = new ObjectMapper();
+        this.codec = codec;
+        this.confirmTracker = new ConfirmTracker(maxInFlightConfirms, Duration.ofMillis(confirmTimeoutMs),
+                status -> scheduler.execute(() -> publish(status)), pipelineMetrics);
+        this.retryPublisher = new RetryPublisher(Duration.ofMillis(confirmTimeoutMs), scheduler);
+        AckCoalescer.Mode acks = AckCoalescer.Mode.parse(ackMode);
+        // sharded: the main lane consumes no queue until this node was assigned its shards
+        this.mainLane = new ConsumerLane(Priority.BULK,
+                shardMembership.isSharded() ? List.of() : List.of(rabbitMqQueueName), acks, ackLingerMs, ackBatchSize);
+        this.mainQos = new ConsumerQos(mainLane);
+        consumerLanes.add(mainLane);
+        if (priorityEnabled) {
+            consumerLanes.add(new ConsumerLane(Priority.INTERACTIVE, List.of(interactiveQueueName.trim()), acks, ackLingerMs, ackBatchSize));
+            LOGGER.info("Priority lanes: interactive instructions from '{}' (prefetch {}) or with an AMQP priority of at least {}",
+                    interactiveQueueName.trim(), this.interactivePrefetch, interactivePriorityThreshold);
+        }
+        this.statusBatcher = new StatusBatcher(statusBatchSize, statusBatchLingerMs, this::publish, lingerTimer);
+        gaugeRegistry.register("rabbitmq.publisher.confirms.inFlight", confirmTracker::getInFlightCount);
+        gaugeRegistry.register("rabbitmq.acks.waiting",
+                () -> consumerLanes.stream().mapToInt(lane -> lane.acks.getWaitingCount()).sum());
+        gaugeRegistry.register("rabbitmq.publisher.batch.waiting", statusBatcher::getWaitingCount);
+        gaugeRegistry.register("rabbitmq.retry.inFlight", retryPublisher::getInFlightCount);
+        circuitBreaker.addListener((from, to, reason) -> breakerActions.execute(() -> onBreakerTransition(from, to, reason)));
         LOGGER.info("Constructor RabbitMqIntegrationService...");
 
     }
@@ -75,7 +216,11 @@ public class RabbitMqIntegrationService implements Startable, RecoveryListener,
     @Inject
     public void init() {
         LOGGER.info("Initializing RabbitMqIntegrationService...");
-        connectWithRetry(INITIAL_RETRY_DELAY);
+        connectWithRetry(reconnectInitialDelay);
+        scheduler.scheduleWithFixedDelay(confirmTracker::republishExpired, 1, 1, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(retryPublisher::failExpired, 1, 1, TimeUnit.SECONDS);
+        // statuses parked by a transient publish failure do not wait for a full connection recovery
+        scheduler.scheduleWithFixedDelay(() -> outboxDrainer.execute(this::drainOutbox), 30, 30, TimeUnit.SECONDS);
     }
 
     /** Try to establish the connection; on failure, schedule itself again. */
@@ -84,11 +229,17 @@ public class RabbitMqIntegrationService implements Startable, RecoveryListener,
             try {
                 establishConnection();              // throws if it fails
                 LOGGER.info("RabbitMQ connection established.");
+                // statuses left in the outbox by a previous run
+                outboxDrainer.execute(this::drainOutbox);
             } catch (Exception e) {
-                LOGGER.warn("Cannot connect to RabbitMQ ({}). Retrying in {} s",
-                        e.getMessage(), delay.toSeconds());
-                Duration nextDelay = delay.multipliedBy(2).compareTo(MAX_RETRY_DELAY) < 0
-                        ? delay.multipliedBy(2) : MAX_RETRY_DELAY;
+                LOGGER.warn("Cannot connect to RabbitMQ ({}). Retrying in {} ms",
+                        e.getMessage(), delay.toMillis());
+                // the next attempt opens a new connection: do not leak what this one opened
+                closeChannels();
+                closeSafely(connection);
+                Duration maxDelay = reconnectMaxDelay;
+                Duration nextDelay = delay.multipliedBy(2).compareTo(maxDelay) < 0
+                        ? delay.multipliedBy(2) : maxDelay;
                 connectWithRetry(nextDelay);
             }
         }, delay.toMillis(), TimeUnit.MILLISECONDS);
@@ -114,96 +265,984 @@ public class RabbitMqIntegrationService implements Startable, RecoveryListener,
         ((Recoverable) this.connection).addRecoveryListener(this);
 
         // ------------ channels ------------
-        this.consumerChannel  = connection.createChannel();
-        this.publisherChannel = connection.createChannel();
-        publisherChannel.confirmSelect();
+        // one channel per consumer: the client dispatches a channel's deliveries one at a time, so a bulk consumer
+        // blocked on full worker lanes would otherwise hold back interactive deliveries
+        attachChannels(connection.createChannel(), connection.createChannel());
+        for (ConsumerLane lane : consumerLanes) {
+            if (lane != mainLane) {
+                lane.channel = connection.createChannel();
+            }
+        }
 
-        // declare infra idempotently on BOTH channels
-        declareInfra(consumerChannel);
+        // declare infra idempotently on every channel
+        for (ConsumerLane lane : consumerLanes) {
+            declareInfra(lane.channel);
+        }
         declareInfra(publisherChannel);
+        if (retryLadder.isEnabled()) {
+            retryChannel = connection.createChannel();
+            retryLadder.declare(retryChannel);
+            retryPublisher.attach(retryChannel);
+        }
 
-        // QoS & consumer
-        consumerChannel.basicQos(25);
-        consumerChannel.basicConsume(
-                rabbitMqQueueName,
-                false,
-                this::handleDelivery,
-                consumerTag -> LOGGER.warn("Consumer {} cancelled", consumerTag));
+        // QoS & consumers
+        Channel mainChannel = mainLane.channel;
+        if (prefetchController.isAdaptive()) {
+            mainChannel.basicQos(prefetchController.getPrefetch(), true);
+            prefetchController.start(mainQos);
+        } else {
+            mainChannel.basicQos(prefetchController.getPrefetch());
+        }
+        for (ConsumerLane lane : consumerLanes) {
+            if (lane != mainLane) {
+                lane.channel.basicQos(interactivePrefetch);
+            }
+        }
+        synchronized (consumerLock) {
+            consumerLanes.forEach(lane -> lane.consumerTags.clear());
+        }
+        resumeConsumption();
+        if (shardMembership.isSharded()) {
+            membershipChannel = connection.createChannel();
+            shardMembership.start(membershipChannel, this::onShardAssignment);
+        }
+    }
+
+    /** Starts every consumer not running yet, unless the circuit breaker or an operator keeps them paused. */
+    private void resumeConsumption() throws IOException {
+        synchronized (consumerLock) {
+            if (paused || !circuitBreaker.isClosed()) {
+                return;
+            }
+            for (ConsumerLane lane : consumerLanes) {
+                lane.resume();
+            }
+        }
+    }
+
+    /**
+     * Consumes the shard queues this node was just assigned and cancels the consumers of those it lost; their
+     * in-flight deliveries still settle on the channel. Nothing is consumed while the circuit breaker is open or an
+     * operator paused consumption.
+     */
+    private void onShardAssignment(List<Integer> ownedShards) {
+        List<String> queues = ownedShards.stream()
+                .map(shard -> ShardMembership.shardQueue(rabbitMqQueueName, shard))
+                .toList();
+        synchronized (consumerLock) {
+            try {
+                mainLane.assign(queues, !paused && circuitBreaker.isClosed());
+            } catch (IOException e) {
+                LOGGER.error("Cannot consume the shard queues {}: {}", queues, e.getMessage(), e);
+            }
+        }
+    }
+
+    /** Cancels the consumers: new messages stay in the queues, in-flight deliveries still settle. */
+    private void pauseConsumption() throws IOException {
+        synchronized (consumerLock) {
+            for (ConsumerLane lane : consumerLanes) {
+                lane.pause();
+            }
+        }
+    }
+
+    // ---------- runtime tuning ----------
+    /** The settings in effect; the prefetch is the current one, which the adaptive loop may have moved. */
+    public PipelineSettings getSettings() {
+        return new PipelineSettings(prefetchController.getPrefetch(),
+                interactivePrefetch,
+                instructionDispatcher.getConcurrencyLimit().getLimit(),
+                confirmTracker.getConfirmTimeout().toMillis(),
+                reconnectInitialDelay.toMillis(),
+                reconnectMaxDelay.toMillis(),
+                paused);
+    }
+
+    /**
+     * Applies the settings {@code change} derives from the current ones to the running pipeline, without reconnecting:
+     * only the settings that differ are touched, and either all of them change or none does.
+     *
+     * @return the settings now in effect
+     * @throws IllegalArgumentException when a setting is out of range; nothing was changed
+     * @throws IOException when the broker refused a change; the previous settings were applied again
+     */
+    public PipelineSettings tune(UnaryOperator<PipelineSettings> change) throws IOException {
+        synchronized (settingsLock) {
+            PipelineSettings previous = getSettings();
+            PipelineSettings target = change.apply(previous);
+            int maxConcurrency = instructionDispatcher.getConcurrencyLimit().getMax();
+            if (target.concurrency() > maxConcurrency) {
+                throw new IllegalArgumentException("concurrency cannot exceed the " + maxConcurrency + " configured worker lanes, got "
+                        + target.concurrency());
+            }
+            if (prefetchController.isAdaptive()
+                    && (target.prefetch() < prefetchController.getMin() || target.prefetch() > prefetchController.getMax())) {
+                throw new IllegalArgumentException("prefetch must be between " + prefetchController.getMin() + " and "
+                        + prefetchController.getMax() + " in adaptive mode, got " + target.prefetch());
+            }
+            try {
+                apply(previous, target);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Cannot apply pipeline settings {}, restoring {}: {}", target, previous, e.getMessage(), e);
+                try {
+                    apply(target, previous);
+                } catch (IOException | RuntimeException rollback) {
+                    LOGGER.error("Cannot restore pipeline settings {}: {}", previous, rollback.getMessage(), rollback);
+                }
+                throw e;
+            }
+            LOGGER.info("Pipeline settings {} -> {}", previous, target);
+            return getSettings();
+        }
+    }
+
+    /** Sets what differs between {@code from} and {@code to}, broker-facing changes last. */
+    private void apply(PipelineSettings from, PipelineSettings to) throws IOException {
+        reconnectInitialDelay = Duration.ofMillis(to.reconnectInitialDelayMs());
+        reconnectMaxDelay = Duration.ofMillis(to.reconnectMaxDelayMs());
+        if (to.confirmTimeoutMs() != from.confirmTimeoutMs()) {
+            confirmTracker.setConfirmTimeout(Duration.ofMillis(to.confirmTimeoutMs()));
+            retryPublisher.setConfirmTimeout(Duration.ofMillis(to.confirmTimeoutMs()));
+        }
+        if (to.concurrency() != from.concurrency()) {
+            instructionDispatcher.getConcurrencyLimit().setLimit(to.concurrency());
+        }
+        if (to.prefetch() != from.prefetch()) {
+            prefetchController.setPrefetch(to.prefetch(), mainQos);
+        }
+        if (to.interactivePrefetch() != from.interactivePrefetch()) {
+            interactivePrefetch = to.interactivePrefetch();
+            for (ConsumerLane lane : consumerLanes) {
+                if (lane != mainLane) {
+                    lane.applyPrefetch(to.interactivePrefetch());
+                }
+            }
+        }
+        // last: a refused prefetch leaves consumption as it was
+        if (to.paused() != from.paused()) {
+            paused = to.paused();
+            if (paused) {
+                pauseConsumption();
+            } else {
+                resumeConsumption();
+            }
+        }
+    }
+
+    /** A snapshot of the connection, the consumers, what is in flight, throughput and recent latencies. */
+    public PipelineStats stats() {
+        Connection current = connection;
+        List<PipelineStats.ConsumerState> consumers = new ArrayList<>();
+        synchronized (consumerLock) {
+            for (ConsumerLane lane : consumerLanes) {
+                consumers.add(new PipelineStats.ConsumerState(lane.priority.label(), lane.queues, lane.consumerTags.size(),
+                        lane == mainLane ? prefetchController.getPrefetch() : interactivePrefetch));
+            }
+        }
+        return new PipelineStats(
+                new PipelineStats.ConnectionState(rabbitMqHost, rabbitMqPort, current != null && current.isOpen()),
+                consumers,
+                BackendCircuitBreaker.describe(circuitBreaker.getState()),
+                new PipelineStats.InFlight(pipelineMetrics.getUnacked(),
+                        instructionDispatcher.getInFlight(),
+                        instructionDispatcher.getConcurrencyLimit().getActive(),
+                        confirmTracker.getInFlightCount(),
+                        retryPublisher.getInFlightCount(),
+                        consumerLanes.stream().mapToInt(lane -> lane.acks.getWaitingCount()).sum(),
+                        statusBatcher.getWaitingCount()),
+                new PipelineStats.Throughput(pipelineMetrics.getAckedTotal(), pipelineMetrics.getAckedPerSecond()),
+                pipelineMetrics.recentLatencies(),
+                getSettings());
+    }
+
+    /**
+     * Switches to the given channels and puts the publisher one in confirm mode. Benchmarks call it with stub
+     * channels to drive {@link #handleDelivery} without a broker.
+     */
+    @VisibleForTesting
+    void attachChannels(Channel consumerChannel, Channel publisherChannel) throws IOException {
+        this.mainLane.channel = consumerChannel;
+        this.publisherChannel = publisherChannel;
+        publisherChannel.confirmSelect();
+        publisherChannel.addConfirmListener(confirmTracker);
+        publisherChannel.addReturnListener(this::onReturn);
     }
 
     private void declareInfra(Channel ch) throws IOException {
-        ch.queueDeclare(rabbitMqQueueName, true, false, false, null);
+        for (ConsumerLane lane : consumerLanes) {
+            if (lane != mainLane || !shardMembership.isSharded()) {
+                for (String queue : lane.queues) {
+                    ch.queueDeclare(queue, true, false, false, null);
+                }
+            }
+        }
+        if (shardMembership.isSharded()) {
+            declareShards(ch);
+        }
         ch.exchangeDeclare(rabbitMqExchangeName, BuiltinExchangeType.DIRECT, true);
     }
 
+    /**
+     * The consistent-hash exchange producers publish to, with the source mailbox id as routing key, so all the
+     * instructions of a mailbox land in the same shard queue, in order. Single active consumer keeps two nodes from
+     * consuming a shard at once while they disagree on its owner.
+     */
+    private void declareShards(Channel ch) throws IOException {
+        ch.exchangeDeclare(shardMembership.getExchange(), "x-consistent-hash", true);
+        Map<String, Object> arguments = Map.of("x-single-active-consumer", true);
+        for (int shard = 0; shard < shardMembership.getShardCount(); shard++) {
+            String queue = ShardMembership.shardQueue(rabbitMqQueueName, shard);
+            ch.queueDeclare(queue, true, false, false, arguments);
+            // the binding key of a consistent-hash exchange is the weight of the queue
+            ch.queueBind(queue, shardMembership.getExchange(), "1");
+        }
+    }
+
     // ---------- delivery handler ----------
-    private void handleDelivery(String tag, Delivery delivery) {
-        String body = new String(delivery.getBody(), StandardCharsets.UTF_8);
-        boolean ok = false;
-        String hash = null;
+    /** Handles a delivery of the main queue. */
+    @VisibleForTesting
+    void handleDelivery(String tag, Delivery delivery) {
+        handleDelivery(mainLane, rabbitMqQueueName, delivery);
+    }
 
+    private void handleDelivery(ConsumerLane lane, String queue, Delivery delivery) {
+        pipelineMetrics.delivered();
         try {
-            IncomingMessagePayload p = objectMapper.readValue(body, IncomingMessagePayload.class);
-            hash = p.getHashID();
-            LOGGER.info("Processing action '{}' for hashID '{}'", p.getAction(), hash);
-            ok = mailboxActionService.processMessageAction(p);
+            // backpressure: stop taking new work while too many statuses wait for a broker confirm
+            confirmTracker.awaitCapacity();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] body = delivery.getBody();
+        long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+        Optional<WireFormat> format = codec.formatOf(contentType(delivery));
+        long receivedAt = System.nanoTime();
+        Inbound inbound = new Inbound(lane, queue, deliveryTag, receivedAt, deliveryPriority(lane, delivery),
+                format.orElse(WireFormat.JSON), rpcEnabled ? RpcReply.of(delivery.getProperties(), receivedAt) : null);
+        lane.acks.register(deliveryTag);
+        if (format.isEmpty()) {
+            rejectUnsupported(delivery, inbound);
+            return;
+        }
+
+        MappingIterator<IncomingMessagePayload> items;
+        Instruction p;
+        long decodeStart = System.nanoTime();
+        try {
+            items = codec.readValues(inbound.format(), body);
+            p = codec.compile(items.nextValue());
+            pipelineMetrics.record(PipelineMetrics.Stage.DECODE, decodeStart);
         } catch (Exception ex) {
             LOGGER.error("Error while processing message: {}", ex.getMessage(), ex);
-        } finally {
-            sendStatus(hash, ok ? "success" : "failed");
-            try {
-                consumerChannel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
-            } catch (IOException io) {
-                LOGGER.error("Ack failed", io);
+            settle(null, false, inbound);
+            return;
+        }
+
+        if (isBulk(items)) {
+            handleBulkDelivery(delivery, p, items, inbound);
+            return;
+        }
+
+        String hash = p.getHashID();
+        Optional<Boolean> completed = alreadyCompleted(delivery, hash);
+        if (completed.isPresent()) {
+            LOGGER.info("hashID '{}' was redelivered after completing – republishing its status", hash);
+            settle(hash, completed.get(), inbound);
+            return;
+        }
+        Inbound instruction = inbound.withPriority(itemPriority(inbound, p.getPayload()));
+        LOGGER.info("Processing action '{}' for hashID '{}' ({})", p.getPayload().getAction(), hash, instruction.priority().label());
+        // status and ack are issued by the mailbox's worker lane once the instruction's group has run
+        try {
+            instructionDispatcher.submit(new PendingInstruction(p, instruction.priority(), (outcome, report) -> {
+                boolean ok = outcome.isSuccess();
+                if (!ok && !circuitBreaker.isClosed()) {
+                    requeue(instruction, hash);
+                    return;
+                }
+                int attempts = RetryLadder.attempts(delivery.getProperties());
+                if (outcome == Outcome.RETRYABLE && retryLadder.hasAttemptLeft(attempts)) {
+                    // no status yet: only the last attempt reports one
+                    retry(instruction.queue(), delivery.getProperties(), body, attempts, hash,
+                            () -> ack(instruction), () -> putBack(instruction));
+                    return;
+                }
+                pipelineMetrics.recordOutcome(p.getAction(), ok);
+                idempotencyCache.record(hash, ok);
+                sendStatus(status(hash, ok, report), instruction);
+                if (outcome == Outcome.RETRYABLE && retryLadder.isEnabled()) {
+                    deadLetter(delivery.getProperties(), body, attempts, hash, () -> ack(instruction));
+                } else {
+                    ack(instruction);
+                }
+            }, progress(hash, instruction)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while queuing hashID '{}' – leaving it unacked for redelivery", hash);
+        }
+    }
+
+    /**
+     * Streams the items of a bulk envelope into the worker lanes as they are decoded, so the envelope never
+     * exists on the heap as a whole. The delivery is acked once, after every item has settled.
+     */
+    private void handleBulkDelivery(Delivery delivery,
+                                    Instruction first,
+                                    MappingIterator<IncomingMessagePayload> items,
+                                    Inbound inbound) {
+        long deliveryTag = inbound.deliveryTag();
+        boolean envelope = statusEnvelopeRequested(delivery);
+        BulkDelivery bulk = new BulkDelivery(envelope, (statuses, requeue) -> {
+            if (requeue) {
+                requeue(inbound, "bulk delivery " + deliveryTag);
+                return;
+            }
+            if (!statuses.isEmpty()) {
+                publish(StatusMessage.bulk(statuses, statusFormat(inbound)).withReply(inbound.reply()));
+            }
+            ack(inbound);
+        });
+
+        int queued = 0;
+        try {
+            Instruction item = first;
+            while (item != null) {
+                submitBulkItem(bulk, item, itemPriority(inbound, item.getPayload()), inbound, delivery);
+                queued++;
+                item = items.hasNextValue() ? codec.compile(items.nextValue()) : null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted after queuing {} item(s) of bulk delivery {} – leaving it unacked for redelivery", queued, deliveryTag);
+            return;
+        } catch (Exception ex) {
+            LOGGER.error("Bulk delivery {}: decoding stopped after {} item(s), failing the rest: {}",
+                    deliveryTag, queued, ex.getMessage(), ex);
+            rejectRemainder(bulk, delivery, inbound, "decoding stopped after " + queued + " item(s): " + ex.getMessage());
+        }
+        bulk.seal();
+        LOGGER.info("Queued {} instruction(s) from bulk delivery {} ({} status)", queued, deliveryTag,
+                envelope ? "envelope" : "per-item");
+    }
+
+    /**
+     * Answers the items of a bulk envelope that could not be decoded with one failed status, keyed by the messageId
+     * of the delivery since their hashIDs are unknown. With the retry ladder enabled, the raw envelope is also parked
+     * in the dead-letter queue so they can be recovered; the delivery is only acked once it is.
+     */
+    private void rejectRemainder(BulkDelivery bulk, Delivery delivery, Inbound inbound, String error) {
+        AMQP.BasicProperties properties = delivery.getProperties();
+        String messageId = properties == null ? null : properties.getMessageId();
+        StatusPayload status = StatusPayload.rejected(messageId, error);
+        bulk.expect();
+        Runnable settle = () -> {
+            if (!bulk.collectsStatuses()) {
+                sendStatus(status, inbound);
+            }
+            bulk.settled(status);
+        };
+        if (retryLadder.isEnabled()) {
+            deadLetter(properties, delivery.getBody(), RetryLadder.attempts(properties), messageId, settle);
+        } else {
+            settle.run();
+        }
+    }
+
+    private void submitBulkItem(BulkDelivery bulk, Instruction item, Priority priority, Inbound inbound, Delivery delivery)
+            throws InterruptedException {
+        String hash = item.getHashID();
+        bulk.expect();
+        Optional<Boolean> completed = alreadyCompleted(delivery, hash);
+        if (completed.isPresent()) {
+            LOGGER.debug("hashID '{}' was redelivered after completing – reusing its status (bulk)", hash);
+            settleBulkItem(bulk, hash, completed.get(), inbound);
+            return;
+        }
+        LOGGER.debug("Processing action '{}' for hashID '{}' (bulk)", item.getPayload().getAction(), hash);
+        instructionDispatcher.submit(new PendingInstruction(item, priority, (outcome, report) -> {
+            boolean ok = outcome.isSuccess();
+            if (!ok && !circuitBreaker.isClosed()) {
+                bulk.requeue();
+                return;
             }
+            int attempts = RetryLadder.attempts(delivery.getProperties());
+            if (outcome == Outcome.RETRYABLE && retryLadder.hasAttemptLeft(attempts)) {
+                retryBulkItem(bulk, item, report, inbound, delivery, attempts);
+                return;
+            }
+            settleBulkItem(bulk, item, ok, report, inbound);
+        }, progress(hash, inbound)));
+    }
+
+    /**
+     * Retries one item of a bulk delivery on its own, as a single instruction: its status will come alone, after
+     * its last attempt, and it is left out of the envelope. The bulk delivery is acked once the copy is confirmed.
+     */
+    private void retryBulkItem(BulkDelivery bulk, Instruction item, ActionReport report,
+                               Inbound inbound, Delivery delivery, int attempts) {
+        byte[] body;
+        try {
+            // the copy keeps the content type of the delivery
+            body = codec.encode(inbound.format(), item.getPayload());
+        } catch (IOException e) {
+            LOGGER.error("Cannot encode hashID '{}' for a retry: {}", item.getHashID(), e.getMessage(), e);
+            settleBulkItem(bulk, item, false, report, inbound);
+            return;
+        }
+        retry(inbound.queue(), delivery.getProperties(), body, attempts, item.getHashID(),
+                () -> bulk.settled(null), () -> settleBulkItem(bulk, item, false, report, inbound));
+    }
+
+    private void settleBulkItem(BulkDelivery bulk, Instruction item, boolean ok, ActionReport report, Inbound inbound) {
+        String hash = item.getHashID();
+        pipelineMetrics.recordOutcome(item.getAction(), ok);
+        idempotencyCache.record(hash, ok);
+        settleBulkItem(bulk, hash, status(hash, ok, report), inbound);
+    }
+
+    private void settleBulkItem(BulkDelivery bulk, String hash, boolean ok, Inbound inbound) {
+        settleBulkItem(bulk, hash, status(hash, ok, ActionReport.NONE), inbound);
+    }
+
+    private void settleBulkItem(BulkDelivery bulk, String hash, StatusPayload status, Inbound inbound) {
+        if (!bulk.collectsStatuses()) {
+            sendStatus(status, inbound);
+        }
+        bulk.settled(hash == null ? null : status);
+    }
+
+    /**
+     * Deliveries of the interactive queue are interactive; on the main queue, so are deliveries whose AMQP priority
+     * reaches {@code rabbitmq.priority.interactiveThreshold}.
+     */
+    private Priority deliveryPriority(ConsumerLane lane, Delivery delivery) {
+        if (lane.priority == Priority.INTERACTIVE) {
+            return Priority.INTERACTIVE;
         }
+        Integer amqpPriority = delivery.getProperties() == null ? null : delivery.getProperties().getPriority();
+        return priorityEnabled && amqpPriority != null && amqpPriority >= interactivePriorityThreshold
+                ? Priority.INTERACTIVE
+                : Priority.BULK;
+    }
+
+    /** The {@code priority} field of an instruction can only raise the priority of its delivery. */
+    private Priority itemPriority(Inbound inbound, IncomingMessagePayload item) {
+        return inbound.priority() == Priority.INTERACTIVE || !priorityEnabled
+                ? inbound.priority()
+                : Priority.parse(item.getPriority());
+    }
+
+    /** Only redelivered messages are looked up: a first delivery cannot have completed before. */
+    private Optional<Boolean> alreadyCompleted(Delivery delivery, String hash) {
+        return delivery.getEnvelope().isRedeliver() ? idempotencyCache.lookup(hash) : Optional.empty();
+    }
+
+    private static boolean isBulk(MappingIterator<IncomingMessagePayload> items) {
+        // the first item was read from inside an array: whatever the format, the parser is back in its context
+        if (items.getParser().getParsingContext().inArray()) {
+            return true;
+        }
+        try {
+            return items.hasNextValue();
+        } catch (IOException e) {
+            // trailing garbage after a single object was always ignored
+            return false;
+        }
+    }
+
+    private static String contentType(Delivery delivery) {
+        return delivery.getProperties() == null ? null : delivery.getProperties().getContentType();
+    }
+
+    /**
+     * Fails a delivery no codec can read without retrying it: the same bytes would fail again. This only happens in
+     * {@code rabbitmq.wire.strictContentType} mode; otherwise unknown content types are read as JSON. As its hashID
+     * cannot be read either, the status goes to the AMQP {@code messageId}, if the producer set one; the delivery
+     * itself is parked in the dead-letter queue when retries are enabled.
+     */
+    private void rejectUnsupported(Delivery delivery, Inbound inbound) {
+        String contentType = contentType(delivery);
+        String messageId = delivery.getProperties().getMessageId();
+        LOGGER.error("Unsupported content type '{}' (messageId '{}') – instructions must be JSON, Smile or CBOR", contentType, messageId);
+        pipelineMetrics.unsupportedContentType();
+        sendStatus(StatusPayload.rejected(messageId, "unsupported content type '" + contentType + "'"), inbound);
+        if (retryLadder.isEnabled()) {
+            AMQP.BasicProperties properties = delivery.getProperties();
+            deadLetter(properties, delivery.getBody(), RetryLadder.attempts(properties), messageId, () -> ack(inbound));
+        } else {
+            ack(inbound);
+        }
+    }
+
+    /** The {@value #STATUS_MODE_HEADER} header overrides {@code rabbitmq.bulk.statusMode} for one delivery. */
+    private boolean statusEnvelopeRequested(Delivery delivery) {
+        Map<String, Object> headers = delivery.getProperties() == null ? null : delivery.getProperties().getHeaders();
+        Object requested = headers == null ? null : headers.get(STATUS_MODE_HEADER);
+        String mode = requested == null ? bulkStatusMode : requested.toString();
+        return STATUS_MODE_ENVELOPE.equalsIgnoreCase(mode.trim());
+    }
+
+    /**
+     * Puts a delivery back in the queue, without status: it failed while the circuit breaker was not closed,
+     * so the backend, not the instruction, is presumably at fault.
+     */
+    private void requeue(Inbound inbound, String description) {
+        if (putBack(inbound)) {
+            circuitBreaker.requeued();
+            LOGGER.debug("Circuit breaker {} – {} requeued", BackendCircuitBreaker.describe(circuitBreaker.getState()), description);
+        }
+    }
+
+    private boolean putBack(Inbound inbound) {
+        ConsumerLane lane = inbound.lane();
+        try {
+            synchronized (lane.ackLock) {
+                lane.channel.basicNack(inbound.deliveryTag(), false, true);
+            }
+            // only now: until the nack is out, a multiple ack must not run past this tag
+            lane.acks.forget(inbound.deliveryTag());
+            pipelineMetrics.acked(1);
+            return true;
+        } catch (IOException io) {
+            LOGGER.error("Requeue failed", io);
+            return false;
+        }
+    }
+
+    // ---------- retries ----------
+    /**
+     * Publishes a transiently failed instruction to the delay queue of its next attempt, from which it returns to
+     * {@code queue}. The original delivery is settled by {@code confirmed} once the broker holds the copy; a copy
+     * that cannot be published leaves it to {@code failed}, which usually puts it back right away instead.
+     */
+    private void retry(String queue, AMQP.BasicProperties properties, byte[] body, int attempts, String hash,
+                       Runnable confirmed, Runnable failed) {
+        LOGGER.info("hashID '{}' failed on the backend – attempt {} in {} ms", hash, attempts + 2, retryLadder.delayOf(attempts));
+        retryLadder.scheduled();
+        retryPublisher.publish(retryLadder.getExchange(), queue, retryLadder.nextAttempt(properties, attempts), body, confirmed, () -> {
+            retryLadder.publishFailed();
+            LOGGER.warn("Cannot schedule the retry of hashID '{}' – retrying it without delay", hash);
+            failed.run();
+        });
+    }
+
+    /** Parks an instruction that failed its last attempt; its final status is already out. */
+    private void deadLetter(AMQP.BasicProperties properties, byte[] body, int attempts, String hash, Runnable done) {
+        LOGGER.warn("hashID '{}' failed {} attempt(s) – parking it in '{}'", hash, attempts + 1, retryLadder.getDeadLetterQueue());
+        retryLadder.deadLettered();
+        retryPublisher.publish("", retryLadder.getDeadLetterQueue(), retryLadder.lastAttempt(properties, attempts), body, done, () -> {
+            retryLadder.publishFailed();
+            LOGGER.error("Cannot park hashID '{}' in '{}' – dropping it after its final status", hash, retryLadder.getDeadLetterQueue());
+            done.run();
+        });
+    }
+
+    private void settle(String hash, boolean ok, Inbound inbound) {
+        idempotencyCache.record(hash, ok);
+        sendStatus(status(hash, ok, ActionReport.NONE), inbound);
+        ack(inbound);
+    }
+
+    private void ack(Inbound inbound) {
+        if (inbound.lane() == mainLane) {
+            // the adaptive prefetch only governs the main queue
+            prefetchController.recordCompletion(inbound.receivedAt());
+        }
+        pipelineMetrics.recordCompletion(inbound.priority(), inbound.receivedAt());
+        inbound.lane().acks.completed(inbound.deliveryTag());
     }
 
 
     // ---------- result publisher ----------
-    private void sendStatus(String hashID, String status) {
-        if (hashID == null)  {
+    /** Range and query actions also report what they moved; a replayed status only carries the outcome. */
+    private static StatusPayload status(String hashID, boolean ok, ActionReport report) {
+        return StatusPayload.of(hashID, ok ? "success" : "failed", report);
+    }
+
+    /** Query actions report their running counts after every chunk, ahead of the final status. */
+    private Consumer<ActionReport> progress(String hashID, Inbound inbound) {
+        return report -> sendStatus(StatusPayload.of(hashID, "progress", report), inbound);
+    }
+
+    /** Statuses answer in the format of their delivery, unless {@code rabbitmq.wire.statusFormat} fixes one. */
+    private WireFormat statusFormat(Inbound inbound) {
+        return codec.statusFormat(inbound.format());
+    }
+
+    /** Statuses of an RPC instruction go to the caller at once: it is waiting, and they are never batched. */
+    private void sendStatus(StatusPayload status, Inbound inbound) {
+        if (inbound.reply() != null) {
+            // addressed by the correlation ID: even an instruction that could not be read gets its answer
+            publish(StatusMessage.single(status, statusFormat(inbound)).withReply(inbound.reply()));
+            return;
+        }
+        if (status.getHashID() == null)  {
             LOGGER.warn("Cannot send status update because hashID is unknown (likely due to parsing error of incoming message).");
             return;
         }
+        statusBatcher.add(status, statusFormat(inbound));
+    }
+
+    /**
+     * Publishes without waiting for the broker: the confirm is settled asynchronously by {@link ConfirmTracker},
+     * which hands nacked or timed-out statuses back here.
+     */
+    private boolean publish(StatusMessage statusMessage) {
+        Channel channel = publisherChannel;
+        try {
+            long serializeStart = System.nanoTime();
+            byte[] body = codec.encode(statusMessage);
+            pipelineMetrics.record(PipelineMetrics.Stage.SERIALIZE, serializeStart);
+
+            if (channel == null || !channel.isOpen()) {
+                throw new IOException("publisher channel is not open");
+            }
+            long publishStart = System.nanoTime();
+            RpcReply reply = statusMessage.getReply();
+            // sequence number and publish must not interleave with another thread's publish
+            synchronized (publishLock) {
+                long sequenceNumber = channel.getNextPublishSeqNo();
+                confirmTracker.track(sequenceNumber, statusMessage);
+                try {
+                    if (reply == null) {
+                        channel.basicPublish(rabbitMqExchangeName, rabbitMqRoutingKey, codec.statusProperties(statusMessage.getFormat()), body);
+                    } else {
+                        // mandatory: a reply nobody can receive comes back to onReturn instead of vanishing
+                        channel.basicPublish("", reply.getReplyTo(), true,
+                                codec.replyProperties(statusMessage.getFormat(), reply.getCorrelationId()), body);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    confirmTracker.untrack(sequenceNumber);
+                    throw e;
+                }
+            }
+            pipelineMetrics.record(PipelineMetrics.Stage.PUBLISH, publishStart);
+            if (reply != null && !statusMessage.isProgress() && reply.firstAnswer()) {
+                pipelineMetrics.recordRpcRoundTrip(reply.getReceivedAt());
+            }
+            LOGGER.info("Published status for {}", statusMessage.describe());
+            return true;
+        } catch (Exception e) {
+            if (statusMessage.isFromOutbox()) {
+                statusMessage.released();
+                LOGGER.warn("Republishing {} from the outbox failed – kept for the next recovery: {}", statusMessage.describe(), e.getMessage());
+            } else if (statusOutbox.append(statusMessage)) {
+                LOGGER.warn("Status publish failed – {} kept in the outbox until the next recovery: {}", statusMessage.describe(), e.getMessage());
+            } else {
+                LOGGER.error("Status publish failed – {} is lost: {}", statusMessage.describe(), e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A reply returned as unroutable (its caller or its reply queue is gone) falls back to the status exchange, so
+     * that the status still reaches whoever consumes it there.
+     */
+    private void onReturn(Return returned) {
+        if (!returned.getExchange().isEmpty()) {
+            return;
+        }
+        pipelineMetrics.rpcFallback();
+        WireFormat format = WireFormat.forContentType(returned.getProperties().getContentType()).orElse(WireFormat.JSON);
+        try {
+            StatusMessage fallback = codec.decodeStatus(format, returned.getBody());
+            LOGGER.warn("Reply to '{}' returned ({}) – publishing {} on the status exchange instead",
+                    returned.getRoutingKey(), returned.getReplyText(), fallback.describe());
+            scheduler.execute(() -> publish(fallback));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Reply to '{}' returned and unreadable – status lost: {}", returned.getRoutingKey(), e.getMessage());
+        }
+    }
+
+    /**
+     * Replays the outbox in pipelined batches: a whole batch is published back to back, then the drain only waits
+     * for confirm capacity. Records are marked consumed by the broker confirms, not by the publish itself.
+     */
+    private void drainOutbox() {
+        Channel channel = publisherChannel;
+        if (channel == null || !channel.isOpen() || statusOutbox.getPendingRecords() == 0
+                || !drainingOutbox.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            StatusPayload statusPayload = new StatusPayload(hashID, status);
-            String jsonStatus = objectMapper.writeValueAsString(statusPayload);
+            LOGGER.info("Draining {} status message(s) from the outbox", statusOutbox.getPendingRecords());
+            statusOutbox.drain(outboxDrainBatchSize, batch -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    if (!publish(batch.get(i))) {
+                        batch.subList(i + 1, batch.size()).forEach(StatusMessage::released);
+                        return false;
+                    }
+                }
+                confirmTracker.awaitCapacity();
+                return true;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.error("Outbox drain aborted: {}", e.getMessage(), e);
+        } finally {
+            drainingOutbox.set(false);
+        }
+    }
 
-            if (publisherChannel != null && publisherChannel.isOpen()) {
-                publisherChannel.basicPublish(rabbitMqExchangeName, rabbitMqRoutingKey, null, jsonStatus.getBytes(StandardCharsets.UTF_8));
-                LOGGER.info("Published status for hashID '{}': {}", hashID, jsonStatus);
+    // ---------- circuit breaker ----------
+    private void onBreakerTransition(BackendCircuitBreaker.State from, BackendCircuitBreaker.State to, String reason) {
+        try {
+            switch (to) {
+                case OPEN -> pauseConsumption();
+                case HALF_OPEN -> probeBackend();
+                case CLOSED -> resumeConsumption();
             }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Cannot apply circuit breaker transition {} -> {}: {}", from, to, e.getMessage(), e);
+        }
+        publishBreakerEvent(from, to, reason);
+    }
 
-            publisherChannel.waitForConfirmsOrDie(5_000);
-        } catch (Exception e) {
-            LOGGER.error("Status publish failed – will retry on next recovery: {}", e.getMessage());
-            // you may push the payload in an in-memory queue here and flush on recovery()
+    /**
+     * Pulls up to {@code rabbitmq.breaker.halfOpenProbes} messages with {@code basic.get} and runs them as usual;
+     * their outcome closes the breaker, which resumes the consumer, or opens it again. Nothing is pulled while an
+     * operator paused consumption: the breaker closes, and the first instructions after resuming judge the backend.
+     */
+    private void probeBackend() throws IOException {
+        int fetched = 0;
+        try {
+            // interactive queue first: its instructions are the ones a user is waiting for
+            for (int i = consumerLanes.size() - 1; i >= 0; i--) {
+                ConsumerLane lane = consumerLanes.get(i);
+                for (String queue : lane.queues) {
+                    while (!paused && fetched < circuitBreaker.getHalfOpenProbes()
+                            && circuitBreaker.getState() == BackendCircuitBreaker.State.HALF_OPEN) {
+                        GetResponse response = lane.channel.basicGet(queue, false);
+                        if (response == null) {
+                            break;
+                        }
+                        fetched++;
+                        handleDelivery(lane, queue, new Delivery(response.getEnvelope(), response.getProps(), response.getBody()));
+                    }
+                }
+            }
+        } finally {
+            LOGGER.info("Circuit breaker half-open: probing the backend with {} message(s)", fetched);
+            circuitBreaker.expectProbes(fetched);
+        }
+    }
+
+    /** Best effort, unconfirmed: nobody is expected to retry a lost transition event. */
+    private void publishBreakerEvent(BackendCircuitBreaker.State from, BackendCircuitBreaker.State to, String reason) {
+        Channel channel = publisherChannel;
+        if (breakerEventRoutingKey.isEmpty() || channel == null || !channel.isOpen()) {
+            return;
+        }
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", "circuitBreaker");
+        event.put("from", BackendCircuitBreaker.describe(from));
+        event.put("to", BackendCircuitBreaker.describe(to));
+        event.put("reason", reason);
+        event.put("timestamp", Instant.now().toString());
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(event);
+            synchronized (publishLock) {
+                channel.basicPublish(rabbitMqExchangeName, breakerEventRoutingKey, null, body);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Cannot publish circuit breaker event {} -> {}: {}", from, to, e.getMessage());
+        }
+    }
+
+    /**
+     * The queues of one priority, with their own channel, prefetch, consumers and ack bookkeeping. A lane consumes
+     * one queue, except the main lane of a sharded topology, which consumes the shards this node owns.
+     */
+    private final class ConsumerLane {
+
+        private final Priority priority;
+        private final AckCoalescer acks;
+        // lanes ack concurrently; serializes the frames on the channel
+        private final Object ackLock = new Object();
+        private volatile Channel channel;
+        private volatile List<String> queues;  // written under consumerLock
+        private final Map<String, String> consumerTags = new HashMap<>();  // queue -> tag, guarded by consumerLock
+
+        private ConsumerLane(Priority priority, List<String> queues, AckCoalescer.Mode ackMode, long ackLingerMs, int ackBatchSize) {
+            this.priority = priority;
+            this.queues = queues;
+            this.acks = new AckCoalescer(ackMode, ackLingerMs, ackBatchSize, this::sendAck, lingerTimer);
+        }
+
+        private void resume() throws IOException {
+            if (channel == null) {
+                // not connected yet: establishConnection() starts the consumers
+                return;
+            }
+            for (String queue : queues) {
+                if (!consumerTags.containsKey(queue)) {
+                    consumerTags.put(queue, channel.basicConsume(queue, false,
+                            (tag, delivery) -> handleDelivery(this, queue, delivery),
+                            tag -> LOGGER.warn("Consumer {} of '{}' cancelled", tag, queue)));
+                }
+            }
+        }
+
+        private void pause() throws IOException {
+            for (String queue : List.copyOf(consumerTags.keySet())) {
+                channel.basicCancel(consumerTags.remove(queue));
+            }
+        }
+
+        /**
+         * Sets the per-consumer prefetch of the channel. RabbitMQ applies it to consumers created afterwards only, so
+         * the running consumers are restarted, without closing the channel: their unacked deliveries still settle.
+         */
+        private void applyPrefetch(int prefetch) throws IOException {
+            if (channel == null) {
+                return;
+            }
+            synchronized (consumerLock) {
+                synchronized (ackLock) {
+                    channel.basicQos(prefetch);
+                }
+                if (!consumerTags.isEmpty()) {
+                    pause();
+                    resume();
+                }
+            }
+        }
+
+        /** Switches to the given queues, consuming the new ones right away when {@code consume} is set. */
+        private void assign(List<String> assigned, boolean consume) throws IOException {
+            queues = List.copyOf(assigned);
+            for (String queue : List.copyOf(consumerTags.keySet())) {
+                if (!assigned.contains(queue)) {
+                    channel.basicCancel(consumerTags.remove(queue));
+                }
+            }
+            if (consume && channel != null) {
+                resume();
+            }
+        }
+
+        private void sendAck(long deliveryTag, boolean multiple, int count) throws IOException {
+            long start = System.nanoTime();
+            synchronized (ackLock) {
+                channel.basicAck(deliveryTag, multiple);
+            }
+            pipelineMetrics.acked(count);
+            pipelineMetrics.record(PipelineMetrics.Stage.ACK, start);
+        }
+    }
+
+    /**
+     * Where a delivery came from and when, for its ack and its retries; {@code priority} is also the one of its
+     * instruction(s). {@code reply} is {@code null} unless the delivery came from an RPC caller.
+     */
+    private record Inbound(ConsumerLane lane, String queue, long deliveryTag, long receivedAt, Priority priority, WireFormat format,
+                           RpcReply reply) {
+        Inbound withPriority(Priority other) {
+            return other == priority ? this : new Inbound(lane, queue, deliveryTag, receivedAt, other, format, reply);
+        }
+    }
+
+    /**
+     * The main consumer lane as seen by {@link PrefetchController}; QoS frames share the ack lock with the acks. In
+     * static mode the prefetch only changes through {@link #tune}, which restarts the consumers to apply it.
+     */
+    private final class ConsumerQos implements PrefetchController.QosTarget {
+
+        private final ConsumerLane lane;
+
+        private ConsumerQos(ConsumerLane lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void applyPrefetch(int prefetch) throws IOException {
+            if (!prefetchController.isAdaptive()) {
+                lane.applyPrefetch(prefetch);
+                return;
+            }
+            if (lane.channel == null) {
+                return;
+            }
+            synchronized (lane.ackLock) {
+                lane.channel.basicQos(prefetch, true);
+            }
+        }
+
+        @Override
+        public long backlog() throws IOException {
+            long backlog = 0;
+            for (String queue : lane.queues) {
+                backlog += lane.channel.messageCount(queue);
+            }
+            return backlog;
+        }
+
+        @Override
+        public int unacked() {
+            return pipelineMetrics.getUnacked();
         }
     }
 
     // ---------- RecoveryListener ----------
     @Override public void handleRecovery(Recoverable r) {
         LOGGER.info("RabbitMQ connection recovered – flushing pending status messages");
-        // if you queued failed publishes, flush them here
+        // confirms for the pre-recovery channel will never arrive: publish those statuses again
+        confirmTracker.drain().forEach(status -> scheduler.execute(() -> publish(status)));
+        retryPublisher.failAll();
+        outboxDrainer.execute(this::drainOutbox);
+        // the breaker may have closed while the connection was down
+        breakerActions.execute(() -> {
+            try {
+                resumeConsumption();
+            } catch (IOException e) {
+                LOGGER.error("Cannot resume consumption after recovery: {}", e.getMessage(), e);
+            }
+        });
     }
     @Override public void handleRecoveryStarted(Recoverable r) { }
 
     // ---------- ShutdownListener ----------
     @Override public void shutdownCompleted(ShutdownSignalException cause) {
         LOGGER.warn("RabbitMQ shutdown: {}", cause.getMessage());
+        pipelineMetrics.channelClosed();
     }
 
     @PreDestroy
     public void dispose() throws IOException, TimeoutException {
+        statusBatcher.flush();
+        consumerLanes.forEach(lane -> lane.acks.flush());
+        lingerTimer.shutdownNow();
         scheduler.shutdownNow();
-        closeSafely(publisherChannel);
-        closeSafely(consumerChannel);
+        outboxDrainer.shutdownNow();
+        breakerActions.shutdownNow();
+        if (shardMembership.isSharded()) {
+            shardMembership.stop();
+        }
+        closeChannels();
         closeSafely(connection);
     }
 
-    private void closeSafely(AutoCloseable c) { /* helper intentionally omitted */ }
-
-
+    /** Closes every channel, then the connection, which only closes channels it still knows about. */
+    private void closeChannels() {
+        closeSafely(membershipChannel);
+        closeSafely(publisherChannel);
+        closeSafely(retryChannel);
+        consumerLanes.forEach(lane -> closeSafely(lane.channel));
+    }
 
+    private void closeSafely(AutoCloseable c) {
+        if (c == null) {
+            return;
+        }
+        try {
+            c.close();
+        } catch (AlreadyClosedException e) {
+            LOGGER.debug("{} already closed", c);
+        } catch (Exception e) {
+            LOGGER.warn("Cannot close {}: {}", c, e.getMessage(), e);
+        }
+    }
 }
\ No newline at end of file
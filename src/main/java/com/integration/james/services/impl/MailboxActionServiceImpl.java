@@ -1,10 +1,24 @@
 package com.integration.james.services.impl;
 
+import com.integration.james.cache.MailboxMetadata;
+import com.integration.james.cache.MailboxMetadataCache;
+import com.integration.james.cache.MailboxSessionPool;
+import com.integration.james.cache.TrashMailboxCache;
+import com.integration.james.codec.Instruction;
+import com.integration.james.dto.ActionReport;
 import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.Outcome;
+import com.integration.james.dto.RangeResult;
+import com.integration.james.metrics.PipelineMetrics;
+import com.integration.james.metrics.PipelineMetrics.Stage;
+import com.integration.james.pipeline.BackendCircuitBreaker;
 import com.integration.james.services.MailboxActionService;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import org.apache.james.core.Username;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageIdManager;
 import org.apache.james.mailbox.MessageManager;
 import org.apache.james.mailbox.MessageUid;
 import org.apache.james.mailbox.exception.MailboxException;
@@ -18,133 +32,622 @@ import org.slf4j.LoggerFactory;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Singleton
 public class MailboxActionServiceImpl implements MailboxActionService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MailboxActionServiceImpl.class);
-    private static final String TRASH_ACTION = "Trash";
-    private static final String MOVE_ACTION = "Move";
     private static final String DEFAULT_TRASH_FOLDER_NAME = "Trash";
 
     // This should be configurable or confirmed with the client
     private static final String ADMIN_USERNAME_FOR_SESSION = "admin@james.local"; // IMPORTANT: Placeholder!
+    private static final Username ADMIN_USER = Username.of(ADMIN_USERNAME_FOR_SESSION);
 
 
     private final MailboxManager mailboxManager;
+    private final MessageIdManager messageIdManager;
     private final MailboxId.Factory mailboxIdFactory;
     private final MailboxSessionMapperFactory mapperFactory;
+    private final MailboxMetadataCache mailboxMetadataCache;
+    private final MailboxSessionPool sessionPool;
+    private final TrashMailboxCache trashMailboxCache;
+    private final PipelineMetrics pipelineMetrics;
+    private final BackendCircuitBreaker circuitBreaker;
+    private final int queryChunkSize;
 
 
     @Inject
-    public MailboxActionServiceImpl(MailboxManager mailboxManager, MailboxId.Factory mailboxIdFactory, MailboxSessionMapperFactory mapperFactory)
+    public MailboxActionServiceImpl(MailboxManager mailboxManager, MessageIdManager messageIdManager, MailboxId.Factory mailboxIdFactory, MailboxSessionMapperFactory mapperFactory,
+                                    MailboxMetadataCache mailboxMetadataCache, MailboxSessionPool sessionPool,
+                                    TrashMailboxCache trashMailboxCache, PipelineMetrics pipelineMetrics,
+                                    BackendCircuitBreaker circuitBreaker,
+                                    @Named("rabbitmq.query.chunkSize") int queryChunkSize)
     {
         this.mailboxManager = mailboxManager;
+        this.messageIdManager = messageIdManager;
         this.mailboxIdFactory = mailboxIdFactory;
         this.mapperFactory = mapperFactory;
+        this.mailboxMetadataCache = mailboxMetadataCache;
+        this.sessionPool = sessionPool;
+        this.trashMailboxCache = trashMailboxCache;
+        this.pipelineMetrics = pipelineMetrics;
+        this.circuitBreaker = circuitBreaker;
+        this.queryChunkSize = Math.max(1, queryChunkSize);
         LOGGER.info("Constructor MailboxActionServiceImpl...");
 
     }
 
     @Override
-    public boolean processMessageAction(IncomingMessagePayload payload) throws MailboxException {
-        MailboxSession operationSession  = null;
+    public Outcome processMessageAction(Instruction instruction) throws MailboxException {
+        return processMessageActions(List.of(instruction)).get(0);
+    }
+
+    @Override
+    public List<Outcome> processMessageActions(List<Instruction> instructions) throws MailboxException {
+        // null until known, so that a failure part way through never overrides an instruction already done
+        List<Outcome> results = new ArrayList<>(Collections.nCopies(instructions.size(), (Outcome) null));
+        if (instructions.isEmpty()) {
+            return results;
+        }
+        Instruction head = instructions.get(0);
+        if (!circuitBreaker.permitsCalls()) {
+            LOGGER.debug("Circuit breaker open – hashID={} ({} instruction(s)) not attempted", head.getHashID(), instructions.size());
+            circuitBreaker.rejected(instructions.size());
+            Collections.fill(results, Outcome.FAILED);
+            return results;
+        }
+        long callStart = System.nanoTime();
         try {
 
-            MailboxId srcId  = mailboxIdFactory.fromString(payload.getSourceMailboxID());
-            MessageUid uid   = MessageUid.of(Long.parseLong(payload.getSourceMessageID()));
-            MailboxPath srcPath;
-            Username owner;
+            MailboxId srcId  = head.requireSourceMailboxId();
+            MessageUid[] uids = parseUids(instructions);
+            for (int i = 0; i < uids.length; i++) {
+                if (uids[i] == null) {
+                    results.set(i, Outcome.FAILED);
+                }
+            }
+            long resolutionStart = System.nanoTime();
+            MailboxMetadata source = mailboxMetadataCache.get(srcId, () -> findMailboxAsAdmin(srcId));
+            pipelineMetrics.record(Stage.RESOLUTION, resolutionStart);
+            MailboxPath srcPath = source.path();
+            Username owner = source.owner();
 
-            MailboxSession adminLookupSession = null;
+            sessionPool.execute(owner, operationSession -> {
+                switch (head.getAction()) {
+                    case TRASH -> trashMessages(operationSession, owner, srcPath, instructions, uids, results);
+                    case MOVE -> {
+                        Optional<MailboxPath> destPath = resolveDestination(operationSession, owner, srcPath, head);
+                        if (destPath.isPresent()) {
+                            moveMessages(operationSession, srcPath, destPath.get(), instructions, uids, results);
+                        }
+                    }
+                    default -> LOGGER.warn("Unknown action '{}' – hashID={}", head.getPayload().getAction(), head.getHashID());
+                }
+                return null;
+            });
+            circuitBreaker.onSuccess(callStart);
+            fillUnset(results, Outcome.FAILED);
 
-            try {
-                 Username adminUser = Username.of(ADMIN_USERNAME_FOR_SESSION);
-                 adminLookupSession = mailboxManager.createSystemSession(adminUser);
-                 mailboxManager.startProcessingRequest(adminLookupSession);
+        } catch (MailboxException me) {
+            LOGGER.error("Mailbox error while processing hashID={} ({} instruction(s)): {}", head.getHashID(), instructions.size(), me.getMessage(), me);
+            recordFailure(callStart, me);
+            fillUnset(results, failureOf(me));
+        } catch (Exception e) {
+            LOGGER.error("Unexpected error while processing hashID={} ({} instruction(s)): {}", head.getHashID(), instructions.size(), e.getMessage(), e);
+            recordFailure(callStart, e);
+            fillUnset(results, failureOf(e));
+        }
+        return results;
+    }
 
-                Mailbox mailbox = mapperFactory.getMailboxMapper(adminLookupSession)
-                        .findMailboxById(srcId)
-                        .switchIfEmpty(Mono.error(new MailboxNotFoundException(srcId)))
-                        .block();
-                if (mailbox == null) {
-                    throw new MailboxNotFoundException("Source Mailbox ID " + srcId + " resolved to null");
-                }
-                srcPath = mailbox.generateAssociatedPath();
-                owner   = mailbox.getUser();
+    /** Gives the outcome to every instruction that has none yet: those already moved keep SUCCEEDED. */
+    private static void fillUnset(List<Outcome> results, Outcome outcome) {
+        results.replaceAll(result -> result == null ? outcome : result);
+    }
 
-            } finally {
-                if (adminLookupSession != null) {
-                    mailboxManager.endProcessingRequest(adminLookupSession);
+    @Override
+    public Mono<Outcome> processMessageActionReactive(Instruction instruction) {
+        return Mono.defer(() -> {
+                    if (!instruction.hasUid()) {
+                        LOGGER.error("sourceMessageID is not a valid UID: '{}' – hashID={}",
+                                instruction.getPayload().getSourceMessageID(), instruction.getHashID());
+                        return Mono.just(Outcome.FAILED);
+                    }
+                    if (!circuitBreaker.permitsCalls()) {
+                        LOGGER.debug("Circuit breaker open – hashID={} not attempted", instruction.getHashID());
+                        circuitBreaker.rejected(1);
+                        return Mono.just(Outcome.FAILED);
+                    }
+                    long callStart = System.nanoTime();
+                    MailboxId srcId = instruction.requireSourceMailboxId();
+                    MessageUid uid = MessageUid.of(instruction.getUid());
+                    return resolveSourceReactive(srcId)
+                            .flatMap(source -> sessionPool.executeReactive(source.owner(), operationSession ->
+                                    switch (instruction.getAction()) {
+                                        case TRASH -> trashMessageReactive(operationSession, source, uid, instruction.getHashID());
+                                        case MOVE -> moveMessageReactive(operationSession, source, uid, instruction);
+                                        default -> {
+                                            LOGGER.warn("Unknown action '{}' – hashID={}", instruction.getPayload().getAction(), instruction.getHashID());
+                                            yield Mono.just(Boolean.FALSE);
+                                        }
+                                    }))
+                            .map(Outcome::of)
+                            .doOnSuccess(outcome -> circuitBreaker.onSuccess(callStart))
+                            .doOnError(e -> recordFailure(callStart, e));
+                })
+                .onErrorResume(MailboxException.class, me -> {
+                    LOGGER.error("Mailbox error while processing hashID={}: {}", instruction.getHashID(), me.getMessage(), me);
+                    return Mono.just(failureOf(me));
+                })
+                .onErrorResume(e -> {
+                    LOGGER.error("Unexpected error while processing hashID={}: {}", instruction.getHashID(), e.getMessage(), e);
+                    return Mono.just(failureOf(e));
+                });
+    }
+
+    @Override
+    public List<RangeResult> processRangeAction(IncomingMessagePayload payload) {
+        List<MessageRange> ranges;
+        try {
+            ranges = UidSet.parse(payload.getSourceMessageID());
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("sourceMessageID is not a valid UID set: '{}' – hashID={}", payload.getSourceMessageID(), payload.getHashID(), e);
+            return List.of();
+        }
+        if (!circuitBreaker.permitsCalls()) {
+            LOGGER.debug("Circuit breaker open – hashID={} not attempted", payload.getHashID());
+            circuitBreaker.rejected(1);
+            return List.of();
+        }
+        List<RangeResult> results = new ArrayList<>(ranges.size());
+        long callStart = System.nanoTime();
+        try {
+            MailboxId srcId = mailboxIdFactory.fromString(payload.getSourceMailboxID());
+            long resolutionStart = System.nanoTime();
+            MailboxMetadata source = mailboxMetadataCache.get(srcId, () -> findMailboxAsAdmin(srcId));
+            pipelineMetrics.record(Stage.RESOLUTION, resolutionStart);
+            MailboxPath srcPath = source.path();
+            Username owner = source.owner();
+
+            sessionPool.execute(owner, operationSession -> {
+                Optional<MailboxPath> destPath = resolveTarget(operationSession, owner, srcPath, payload);
+                if (destPath.isEmpty()) {
+                    return null;
                 }
-            }
+                try {
+                    for (MessageRange range : ranges) {
+                        results.add(moveRange(operationSession, srcPath, destPath.get(), range));
+                    }
+                } catch (MailboxNotFoundException e) {
+                    invalidateTrash(payload, owner);
+                    throw e;
+                }
+                LOGGER.info("{} action (hashID: {}): moved {} message(s) in {} range(s) from {} to {}.", payload.getAction(),
+                        payload.getHashID(), RangeResult.totalMoved(results), results.size(), srcPath, destPath.get());
+                return null;
+            });
+            circuitBreaker.onSuccess(callStart);
 
-            operationSession = mailboxManager.createSystemSession(owner);
-            mailboxManager.startProcessingRequest(operationSession);
+        } catch (Exception e) {
+            LOGGER.error("Error while processing hashID={} after {} of {} range(s): {}",
+                    payload.getHashID(), results.size(), ranges.size(), e.getMessage(), e);
+            recordFailure(callStart, e);
+            // ranges moved before the failure are kept; the failed one and those not reached are reported failed
+            boolean retryable = failureOf(e) == Outcome.RETRYABLE;
+            ranges.subList(results.size(), ranges.size())
+                    .forEach(range -> results.add(RangeResult.failed(UidSet.describe(range), retryable)));
+        }
+        return results;
+    }
 
+    @Override
+    public Mono<List<RangeResult>> processRangeActionReactive(IncomingMessagePayload payload) {
+        return Mono.defer(() -> {
+                    List<MessageRange> ranges = UidSet.parse(payload.getSourceMessageID());
+                    if (!circuitBreaker.permitsCalls()) {
+                        LOGGER.debug("Circuit breaker open – hashID={} not attempted", payload.getHashID());
+                        circuitBreaker.rejected(1);
+                        return Mono.just(List.<RangeResult>of());
+                    }
+                    long callStart = System.nanoTime();
+                    MailboxId srcId = mailboxIdFactory.fromString(payload.getSourceMailboxID());
+                    List<RangeResult> results = new ArrayList<>(ranges.size());
+                    return resolveSourceReactive(srcId)
+                            .flatMap(source -> sessionPool.executeReactive(source.owner(), operationSession ->
+                                    resolveTargetReactive(operationSession, source, payload)
+                                            .flatMap(destPath -> Flux.fromIterable(ranges)
+                                                    // one range after the other, like the blocking path
+                                                    .concatMap(range -> moveRangeReactive(operationSession, source.path(), destPath, range))
+                                                    .doOnNext(results::add)
+                                                    .then(Mono.just(results)))
+                                            // same as the blocking path: a vanished Trash is recreated by the next instruction
+                                            .doOnError(MailboxNotFoundException.class, e -> invalidateTrash(payload, source.owner()))))
+                            .doOnSuccess(done -> circuitBreaker.onSuccess(callStart))
+                            .doOnError(e -> recordFailure(callStart, e))
+                            .onErrorResume(MailboxException.class, me -> {
+                                LOGGER.error("Mailbox error while processing hashID={} after {} of {} range(s): {}",
+                                        payload.getHashID(), results.size(), ranges.size(), me.getMessage(), me);
+                                boolean retryable = failureOf(me) == Outcome.RETRYABLE;
+                                ranges.subList(results.size(), ranges.size())
+                                        .forEach(range -> results.add(RangeResult.failed(UidSet.describe(range), retryable)));
+                                return Mono.just(results);
+                            })
+                            .defaultIfEmpty(List.of());
+                })
+                .onErrorResume(IllegalArgumentException.class, iae -> {
+                    LOGGER.error("sourceMessageID is not a valid UID set: '{}' – hashID={}", payload.getSourceMessageID(), payload.getHashID(), iae);
+                    return Mono.just(List.of());
+                })
+                .onErrorResume(e -> {
+                    LOGGER.error("Unexpected error while processing hashID={}: {}", payload.getHashID(), e.getMessage(), e);
+                    return Mono.just(List.of());
+                });
+    }
 
+    @Override
+    public ActionReport processQueryAction(IncomingMessagePayload payload, Consumer<ActionReport> progress) {
+        SearchQuery query;
+        try {
+            query = QueryCriteria.toSearchQuery(payload.getQuery());
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Invalid query {} – hashID={}", payload.getQuery(), payload.getHashID(), e);
+            return ActionReport.ofQuery(false, 0, 0, 0);
+        }
+        if (!circuitBreaker.permitsCalls()) {
+            LOGGER.debug("Circuit breaker open – hashID={} not attempted", payload.getHashID());
+            circuitBreaker.rejected(1);
+            return ActionReport.ofQuery(false, 0, 0, 0);
+        }
+        QueryCounts counts = new QueryCounts();
+        long callStart = System.nanoTime();
+        try {
+            MailboxId srcId = mailboxIdFactory.fromString(payload.getSourceMailboxID());
+            long resolutionStart = System.nanoTime();
+            MailboxMetadata source = mailboxMetadataCache.get(srcId, () -> findMailboxAsAdmin(srcId));
+            pipelineMetrics.record(Stage.RESOLUTION, resolutionStart);
+            MailboxPath srcPath = source.path();
+            Username owner = source.owner();
 
-            switch (payload.getAction()) {
-                case TRASH_ACTION -> {
-                    return trashMessage(operationSession, owner, srcPath, uid, payload.getHashID());
+            boolean completed = sessionPool.execute(owner, operationSession -> {
+                Optional<MailboxPath> destPath = resolveTarget(operationSession, owner, srcPath, payload);
+                if (destPath.isEmpty()) {
+                    return false;
                 }
-                case MOVE_ACTION -> {
-                    if (payload.getDestinationMailboxID() == null || payload.getDestinationMailboxID().isBlank()) {
-                        LOGGER.error("Missing destinationMailboxID for MOVE – hashID={}", payload.getHashID());
+                MessageManager srcMM = mailboxManager.getMailbox(srcPath, operationSession);
+                // at most one chunk is moved while the next one is read: memory does not grow with the mailbox
+                Iterable<List<MessageUid>> chunks = Flux.from(srcMM.search(query, operationSession))
+                        .buffer(queryChunkSize)
+                        .toIterable(1);
+                for (List<MessageUid> chunk : chunks) {
+                    if (!circuitBreaker.permitsCalls()) {
+                        LOGGER.warn("{} action (hashID: {}): circuit breaker opened after {} chunk(s) – stopping",
+                                payload.getAction(), payload.getHashID(), counts.chunks);
                         return false;
                     }
-                    MailboxId destId = mailboxIdFactory.fromString(payload.getDestinationMailboxID());
-                    Mailbox destMailBox = mapperFactory.getMailboxMapper(operationSession)
-                            .findMailboxById(destId)
-                            .switchIfEmpty(Mono.error(new MailboxNotFoundException(destId)))
-                            .block();
-                    if (destMailBox == null) {
-                        throw new MailboxNotFoundException("Destination Mailbox ID " + destId + " resolved to null");
+                    long chunkStart = System.nanoTime();
+                    try {
+                        counts.chunkMoved(chunk.size(), moveChunk(operationSession, srcPath, destPath.get(), chunk));
+                    } catch (MailboxNotFoundException e) {
+                        invalidateTrash(payload, owner);
+                        throw e;
                     }
-                    MailboxPath destPath = destMailBox.generateAssociatedPath();
-                    if(!destMailBox.getUser().equals(owner)) {
+                    // each chunk counts as one call: the whole query may legitimately take minutes
+                    circuitBreaker.onSuccess(chunkStart);
+                    progress.accept(counts.report(true));
+                }
+                LOGGER.info("{} action (hashID: {}): moved {} of {} matching message(s) in {} chunk(s) from {} to {}.",
+                        payload.getAction(), payload.getHashID(), counts.moved, counts.matched, counts.chunks, srcPath, destPath.get());
+                return true;
+            });
+            if (counts.chunks == 0) {
+                circuitBreaker.onSuccess(callStart);
+            }
+            return counts.report(completed);
 
-                        LOGGER.warn("Cross-user mailbox move initiated by source owner {}. " +
-                                        "Source Mailbox: {} (Owner: {}), Destination Mailbox: {} (Owner: {}). hashID={}",
-                                owner, srcPath.getName(), owner, destPath.getName(), destMailBox.getUser(), payload.getHashID());
+        } catch (Exception e) {
+            LOGGER.error("Error while processing hashID={} after {} chunk(s): {}", payload.getHashID(), counts.chunks, e.getMessage(), e);
+            recordFailure(callStart, e);
+            return failureOf(e) == Outcome.RETRYABLE ? counts.report(false).asRetryable() : counts.report(false);
+        }
+    }
+
+    @Override
+    public Mono<ActionReport> processQueryActionReactive(IncomingMessagePayload payload, Consumer<ActionReport> progress) {
+        return Mono.defer(() -> {
+                    SearchQuery query = QueryCriteria.toSearchQuery(payload.getQuery());
+                    if (!circuitBreaker.permitsCalls()) {
+                        LOGGER.debug("Circuit breaker open – hashID={} not attempted", payload.getHashID());
+                        circuitBreaker.rejected(1);
+                        return Mono.just(ActionReport.ofQuery(false, 0, 0, 0));
                     }
+                    QueryCounts counts = new QueryCounts();
+                    long callStart = System.nanoTime();
+                    MailboxId srcId = mailboxIdFactory.fromString(payload.getSourceMailboxID());
+                    return resolveSourceReactive(srcId)
+                            .flatMap(source -> sessionPool.executeReactive(source.owner(), operationSession ->
+                                    resolveTargetReactive(operationSession, source, payload)
+                                            .flatMap(destPath -> Mono.fromCallable(() -> mailboxManager.getMailbox(source.path(), operationSession))
+                                                    .flatMapMany(srcMM -> Mono.fromCallable(() -> srcMM.search(query, operationSession))
+                                                            .flatMapMany(Flux::from))
+                                                    .buffer(queryChunkSize)
+                                                    .takeWhile(chunk -> permitsNextChunk(payload.getAction(), payload.getHashID(), counts))
+                                                    // chunks are requested one at a time, as in the blocking path
+                                                    .concatMap(chunk -> moveChunkReactive(operationSession, source.path(), destPath, chunk)
+                                                            .doOnNext(moved -> {
+                                                                counts.chunkMoved(chunk.size(), moved);
+                                                                progress.accept(counts.report(true));
+                                                            }), 1)
+                                                    .then(Mono.fromCallable(() -> counts.report(!counts.stopped))))
+                                            .doOnError(MailboxNotFoundException.class, e -> invalidateTrash(payload, source.owner()))))
+                            .doOnSuccess(done -> {
+                                if (counts.chunks == 0) {
+                                    circuitBreaker.onSuccess(callStart);
+                                }
+                            })
+                            .doOnError(e -> recordFailure(callStart, e))
+                            .onErrorResume(MailboxException.class, me -> {
+                                LOGGER.error("Mailbox error while processing hashID={} after {} chunk(s): {}",
+                                        payload.getHashID(), counts.chunks, me.getMessage(), me);
+                                return Mono.just(failureOf(me) == Outcome.RETRYABLE ? counts.report(false).asRetryable() : counts.report(false));
+                            })
+                            .switchIfEmpty(Mono.fromCallable(() -> counts.report(false)));
+                })
+                .onErrorResume(IllegalArgumentException.class, iae -> {
+                    LOGGER.error("Invalid query {} – hashID={}", payload.getQuery(), payload.getHashID(), iae);
+                    return Mono.just(ActionReport.ofQuery(false, 0, 0, 0));
+                })
+                .onErrorResume(e -> {
+                    LOGGER.error("Unexpected error while processing hashID={}: {}", payload.getHashID(), e.getMessage(), e);
+                    return Mono.just(ActionReport.ofQuery(false, 0, 0, 0));
+                });
+    }
 
-                    return moveMessage(operationSession, srcPath, destPath, uid, payload.getHashID());
-                }
-                default -> {
-                    LOGGER.warn("Unknown action '{}' – hashID={}", payload.getAction(), payload.getHashID());
+    @Override
+    public ActionReport processByIdAction(Instruction instruction, Consumer<ActionReport> progress) {
+        List<MessageId> messageIds = requestedMessageIds(instruction);
+        MailboxId accountId = accountMailboxOf(instruction);
+        if (messageIds.isEmpty() || accountId == null) {
+            return ActionReport.ofQuery(false, 0, 0, 0);
+        }
+        if (!circuitBreaker.permitsCalls()) {
+            LOGGER.debug("Circuit breaker open – hashID={} not attempted", instruction.getHashID());
+            circuitBreaker.rejected(1);
+            return ActionReport.ofQuery(false, 0, 0, 0);
+        }
+        QueryCounts counts = new QueryCounts();
+        long callStart = System.nanoTime();
+        try {
+            long resolutionStart = System.nanoTime();
+            MailboxMetadata account = mailboxMetadataCache.get(accountId, () -> findMailboxAsAdmin(accountId));
+            pipelineMetrics.record(Stage.RESOLUTION, resolutionStart);
+            Username owner = account.owner();
+
+            boolean completed = sessionPool.execute(owner, operationSession -> {
+                Optional<List<MailboxId>> targets = resolveTargetIds(operationSession, owner, instruction);
+                if (targets.isEmpty()) {
                     return false;
                 }
+                for (List<MessageId> chunk : Lists.partition(messageIds, queryChunkSize)) {
+                    if (!circuitBreaker.permitsCalls()) {
+                        LOGGER.warn("{} action (hashID: {}): circuit breaker opened after {} chunk(s) – stopping",
+                                instruction.getAction(), instruction.getHashID(), counts.chunks);
+                        return false;
+                    }
+                    long chunkStart = System.nanoTime();
+                    try {
+                        counts.chunkMoved(chunk.size(), setInMailboxes(operationSession, chunk, targets.get()));
+                    } catch (MailboxNotFoundException e) {
+                        invalidateTrash(instruction.getPayload(), owner);
+                        throw e;
+                    }
+                    circuitBreaker.onSuccess(chunkStart);
+                    progress.accept(counts.report(true));
+                }
+                LOGGER.info("{} action (hashID: {}): moved {} of {} message(s) to {} for user {}.",
+                        instruction.getAction(), instruction.getHashID(), counts.moved, messageIds.size(), targets.get(), owner);
+                return true;
+            });
+            if (counts.chunks == 0) {
+                circuitBreaker.onSuccess(callStart);
             }
+            // a listed message that is not found, or not accessible to the owner, fails the action for good
+            return counts.report(completed && counts.moved == messageIds.size());
 
-        } catch (NumberFormatException nfe) {
-            LOGGER.error("sourceMessageID is not a valid UID: '{}' – hashID={}", payload.getSourceMessageID(), payload.getHashID(), nfe);
-            return false;
-        } catch (MailboxException me) {
-            LOGGER.error("Mailbox error while processing hashID={}: {}", payload.getHashID(), me.getMessage(), me);
-            return false;
         } catch (Exception e) {
-            LOGGER.error("Unexpected error while processing hashID={}: {}", payload.getHashID(), e.getMessage(), e);
-            return false;
-        } finally {
-            if (operationSession != null) {
-                mailboxManager.endProcessingRequest(operationSession);
-            }
+            LOGGER.error("Error while processing hashID={} after {} chunk(s): {}", instruction.getHashID(), counts.chunks, e.getMessage(), e);
+            recordFailure(callStart, e);
+            return failureOf(e) == Outcome.RETRYABLE ? counts.report(false).asRetryable() : counts.report(false);
         }
     }
 
+    @Override
+    public Mono<ActionReport> processByIdActionReactive(Instruction instruction, Consumer<ActionReport> progress) {
+        return Mono.defer(() -> {
+                    List<MessageId> messageIds = requestedMessageIds(instruction);
+                    MailboxId accountId = accountMailboxOf(instruction);
+                    if (messageIds.isEmpty() || accountId == null) {
+                        return Mono.just(ActionReport.ofQuery(false, 0, 0, 0));
+                    }
+                    if (!circuitBreaker.permitsCalls()) {
+                        LOGGER.debug("Circuit breaker open – hashID={} not attempted", instruction.getHashID());
+                        circuitBreaker.rejected(1);
+                        return Mono.just(ActionReport.ofQuery(false, 0, 0, 0));
+                    }
+                    QueryCounts counts = new QueryCounts();
+                    long callStart = System.nanoTime();
+                    return resolveSourceReactive(accountId)
+                            .flatMap(account -> sessionPool.executeReactive(account.owner(), operationSession ->
+                                    resolveTargetIdsReactive(operationSession, account.owner(), instruction)
+                                            .flatMap(targets -> Flux.fromIterable(Lists.partition(messageIds, queryChunkSize))
+                                                    .takeWhile(chunk -> permitsNextChunk(instruction.getPayload().getAction(), instruction.getHashID(), counts))
+                                                    // chunks one at a time, as in the blocking path
+                                                    .concatMap(chunk -> setInMailboxesReactive(operationSession, chunk, targets)
+                                                            .doOnNext(moved -> {
+                                                                counts.chunkMoved(chunk.size(), moved);
+                                                                progress.accept(counts.report(true));
+                                                            }), 1)
+                                                    .then(Mono.fromCallable(() -> counts.report(!counts.stopped && counts.moved == messageIds.size()))))
+                                            .doOnError(MailboxNotFoundException.class, e -> invalidateTrash(instruction.getPayload(), account.owner()))))
+                            .doOnSuccess(done -> {
+                                if (counts.chunks == 0) {
+                                    circuitBreaker.onSuccess(callStart);
+                                }
+                            })
+                            .doOnError(e -> recordFailure(callStart, e))
+                            .onErrorResume(MailboxException.class, me -> {
+                                LOGGER.error("Mailbox error while processing hashID={} after {} chunk(s): {}",
+                                        instruction.getHashID(), counts.chunks, me.getMessage(), me);
+                                return Mono.just(failureOf(me) == Outcome.RETRYABLE ? counts.report(false).asRetryable() : counts.report(false));
+                            })
+                            .switchIfEmpty(Mono.fromCallable(() -> counts.report(false)));
+                })
+                .onErrorResume(e -> {
+                    LOGGER.error("Unexpected error while processing hashID={}: {}", instruction.getHashID(), e.getMessage(), e);
+                    return Mono.just(ActionReport.ofQuery(false, 0, 0, 0));
+                });
+    }
+
 // ---------- helpers ----------------------------------------------------
 
-    private boolean trashMessage(MailboxSession session,
-                                 Username owner,
-                                 MailboxPath srcPath,
-                                 MessageUid uid,
-                                 String hashID) throws MailboxException {
+    /**
+     * Reports a failed call to the circuit breaker when it is {@linkplain #isTransient transient}; other failures
+     * (unknown mailbox, malformed ID, programming errors) say nothing about the health of the backend.
+     */
+    private void recordFailure(long callStart, Throwable failure) {
+        if (isTransient(failure)) {
+            circuitBreaker.onFailure(callStart);
+        } else {
+            circuitBreaker.onSuccess(callStart);
+        }
+    }
+
+    /** Only backend failures are worth retrying later; anything else would fail the same way on every attempt. */
+    @VisibleForTesting
+    static Outcome failureOf(Throwable failure) {
+        return isTransient(failure) ? Outcome.RETRYABLE : Outcome.FAILED;
+    }
+
+    /**
+     * Mailbox errors other than an unknown mailbox, timeouts and I/O errors, possibly wrapped (blocking on a
+     * {@link Mono} wraps checked exceptions). Everything else, including NPEs and illegal states, is permanent.
+     */
+    private static boolean isTransient(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MailboxNotFoundException) {
+                return false;
+            }
+            if (cause instanceof MailboxException || cause instanceof TimeoutException || cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Source mailboxes are looked up before the owner is known, hence through an admin session. */
+    private MailboxMetadata findMailboxAsAdmin(MailboxId srcId) throws MailboxException {
+        return sessionPool.execute(ADMIN_USER, adminLookupSession -> findMailbox(srcId, adminLookupSession, "Source"));
+    }
+
+    /** Reads a mailbox through the mapper; only reached on a {@link MailboxMetadataCache} miss. */
+    private MailboxMetadata findMailbox(MailboxId mailboxId, MailboxSession session, String role) throws MailboxException {
+        Mailbox mailbox = mapperFactory.getMailboxMapper(session)
+                .findMailboxById(mailboxId)
+                .switchIfEmpty(Mono.error(new MailboxNotFoundException(mailboxId)))
+                .block();
+        if (mailbox == null) {
+            throw new MailboxNotFoundException(role + " Mailbox ID " + mailboxId + " resolved to null");
+        }
+        return MailboxMetadata.from(mailbox);
+    }
+
+    /** An instruction without a valid UID leaves a {@code null} slot and fails only on its own. */
+    private MessageUid[] parseUids(List<Instruction> instructions) {
+        MessageUid[] uids = new MessageUid[instructions.size()];
+        for (int i = 0; i < uids.length; i++) {
+            Instruction instruction = instructions.get(i);
+            if (instruction.hasUid()) {
+                uids[i] = MessageUid.of(instruction.getUid());
+            } else {
+                LOGGER.error("sourceMessageID is not a valid UID: '{}' – hashID={}", instruction.getPayload().getSourceMessageID(), instruction.getHashID());
+            }
+        }
+        return uids;
+    }
+
+    private void trashMessages(MailboxSession session,
+                               Username owner,
+                               MailboxPath srcPath,
+                               List<Instruction> instructions,
+                               MessageUid[] uids,
+                               List<Outcome> results) throws MailboxException {
+
+        Optional<MailboxPath> trash = resolveTrash(session, owner, instructions.get(0).getHashID(), instructions.size());
+        if (trash.isEmpty()) {
+            return;
+        }
+        try {
+            moveToTrash(session, owner, srcPath, trash.get(), instructions, uids, results);
+        } catch (MailboxNotFoundException e) {
+            // the cached Trash may have been deleted through another node, whose events never reach this cache
+            trashMailboxCache.invalidate(owner);
+            LOGGER.warn("TRASH action (hashID: {}): {} not found, resolving the Trash of user {} again", instructions.get(0).getHashID(), trash.get(), owner);
+            trash = resolveTrash(session, owner, instructions.get(0).getHashID(), instructions.size());
+            if (trash.isEmpty()) {
+                return;
+            }
+            moveToTrash(session, owner, srcPath, trash.get(), instructions, unsetUids(uids, results), results);
+        }
+        markMissing(uids, results, i -> LOGGER.warn("UID {} not found in {} – nothing trashed", uids[i], srcPath));
+    }
+
+    private void moveToTrash(MailboxSession session,
+                             Username owner,
+                             MailboxPath srcPath,
+                             MailboxPath trashPath,
+                             List<Instruction> instructions,
+                             MessageUid[] uids,
+                             List<Outcome> results) throws MailboxException {
+        moveUids(session, srcPath, trashPath, uids, moved -> markMoved(moved, uids, results, i ->
+                LOGGER.info("TRASH action (hashID: {}): Successfully moved UID {} to Trash for user {}.", instructions.get(i).getHashID(), uids[i], owner)));
+    }
+
+    /** The UIDs of the instructions without an outcome yet, at their indexes; null elsewhere. */
+    private static MessageUid[] unsetUids(MessageUid[] uids, List<Outcome> results) {
+        MessageUid[] unset = new MessageUid[uids.length];
+        for (int i = 0; i < uids.length; i++) {
+            if (results.get(i) == null) {
+                unset[i] = uids[i];
+            }
+        }
+        return unset;
+    }
+
+    /** Returns the owner's Trash, creating it if needed; existence is only checked until it is cached. */
+    private Optional<MailboxPath> resolveTrash(MailboxSession session,
+                                               Username owner,
+                                               String hashID,
+                                               int instructionCount) throws MailboxException {
+        Optional<MailboxPath> cached = trashMailboxCache.get(owner);
+        if (cached.isPresent()) {
+            return cached;
+        }
 
         MailboxPath trashPath = MailboxPath.forUser(owner, DEFAULT_TRASH_FOLDER_NAME);
 
@@ -153,41 +656,504 @@ public class MailboxActionServiceImpl implements MailboxActionService {
         if (Boolean.FALSE.equals(exists.block())) {
             Optional<MailboxId> created = mailboxManager.createMailbox(trashPath, MailboxManager.CreateOption.NONE, session);
             if (created.isEmpty()) {
-                LOGGER.error("TRASH action (hashID: {}): Failed to create Trash mailbox {} for user {}. UID {} not trashed.", hashID, trashPath, owner, uid);
-                return false;
+                LOGGER.error("TRASH action (hashID: {}): Failed to create Trash mailbox {} for user {}. {} UID(s) not trashed.",
+                        hashID, trashPath, owner, instructionCount);
+                return Optional.empty();
             }
             LOGGER.info("TRASH action (hashID: {}): Created Trash mailbox {} for user {}.", hashID, trashPath, owner);
         }
+        trashMailboxCache.put(owner, trashPath);
+        return Optional.of(trashPath);
+    }
+
+    /** Where a range or query action moves messages to: the owner's Trash, or the destination mailbox. */
+    private Optional<MailboxPath> resolveTarget(MailboxSession session,
+                                                Username owner,
+                                                MailboxPath srcPath,
+                                                IncomingMessagePayload payload) throws MailboxException {
+        return switch (payload.getAction()) {
+            case IncomingMessagePayload.TRASH_RANGE_ACTION, IncomingMessagePayload.TRASH_QUERY_ACTION ->
+                    resolveTrash(session, owner, payload.getHashID(), 1);
+            case IncomingMessagePayload.MOVE_RANGE_ACTION, IncomingMessagePayload.MOVE_QUERY_ACTION ->
+                    resolveDestination(session, owner, srcPath, payload);
+            default -> {
+                LOGGER.warn("Unknown action '{}' – hashID={}", payload.getAction(), payload.getHashID());
+                yield Optional.empty();
+            }
+        };
+    }
+
+    /** A vanished Trash is forgotten, so that the next instruction recreates it. */
+    private void invalidateTrash(IncomingMessagePayload payload, Username owner) {
+        if (IncomingMessagePayload.TRASH_RANGE_ACTION.equals(payload.getAction())
+                || IncomingMessagePayload.TRASH_QUERY_ACTION.equals(payload.getAction())
+                || IncomingMessagePayload.TRASH_BY_ID_ACTION.equals(payload.getAction())) {
+            trashMailboxCache.invalidate(owner);
+        }
+    }
 
-        List<MessageRange> moved = mailboxManager.moveMessages(MessageRange.one(uid), srcPath, trashPath, session);
+    /** The distinct messages of a by-id action; empty, after logging why, when they are missing or malformed. */
+    private static List<MessageId> requestedMessageIds(Instruction instruction) {
+        if (instruction.getMessageIds() == null) {
+            LOGGER.error("Missing or malformed messageIDs {} for {} – hashID={}",
+                    instruction.getPayload().getMessageIDs(), instruction.getAction(), instruction.getHashID());
+            return List.of();
+        }
+        return instruction.getMessageIds().stream().distinct().collect(Collectors.toList());
+    }
 
-        boolean success = !moved.isEmpty();
-        if (success) {
+    /**
+     * A by-id action names no source mailbox, so the session is opened for the owner of {@code sourceMailboxID} when
+     * given (any mailbox of the account), else of the first destination; {@code null}, after logging why, when there
+     * is neither.
+     */
+    private static MailboxId accountMailboxOf(Instruction instruction) {
+        if (instruction.getSourceMailboxId() != null) {
+            return instruction.getSourceMailboxId();
+        }
+        if (instruction.getAction() == Instruction.Action.MOVE_BY_ID && instruction.getDestinationMailboxIds() != null) {
+            return instruction.getDestinationMailboxIds().get(0);
+        }
+        LOGGER.error("{} needs a valid sourceMailboxID to identify the account ('{}') – hashID={}",
+                instruction.getAction(), instruction.getPayload().getSourceMailboxID(), instruction.getHashID());
+        return null;
+    }
 
-            LOGGER.info("TRASH action (hashID: {}): Successfully moved UID {} to Trash for user {}.", hashID, uid, owner);
-            return true;
+    /** The mailboxes the messages of a by-id action end up in: the owner's Trash, or the destination mailboxes. */
+    private Optional<List<MailboxId>> resolveTargetIds(MailboxSession session,
+                                                       Username owner,
+                                                       Instruction instruction) throws MailboxException {
+        if (instruction.getAction() == Instruction.Action.TRASH_BY_ID) {
+            Optional<MailboxPath> trash = resolveTrash(session, owner, instruction.getHashID(), 1);
+            if (trash.isEmpty()) {
+                return Optional.empty();
+            }
+            long resolutionStart = System.nanoTime();
+            MailboxId trashId = mailboxManager.getMailbox(trash.get(), session).getId();
+            pipelineMetrics.record(Stage.RESOLUTION, resolutionStart);
+            return Optional.of(List.of(trashId));
+        }
+        if (instruction.getDestinationMailboxIds() == null) {
+            LOGGER.error("Missing or malformed destinationMailboxIDs {} / destinationMailboxID '{}' for MoveById – hashID={}",
+                    instruction.getPayload().getDestinationMailboxIDs(), instruction.getPayload().getDestinationMailboxID(), instruction.getHashID());
+            return Optional.empty();
         }
-        LOGGER.warn("UID {} not found in {} – nothing trashed", uid, srcPath);
+        return Optional.of(instruction.getDestinationMailboxIds());
+    }
 
+    /**
+     * Puts the messages of one chunk of a by-id action in {@code targets}. Messages unknown to the owner's session are
+     * listed first, in one call, and skipped.
+     *
+     * @return the number of messages moved.
+     */
+    private long setInMailboxes(MailboxSession session, List<MessageId> chunk, List<MailboxId> targets) throws MailboxException {
+        Set<MessageId> accessible = messageIdManager.accessibleMessages(chunk, session);
+        long moved = 0;
+        for (MessageId messageId : chunk) {
+            if (!isAccessible(accessible, messageId, targets)) {
+                continue;
+            }
+            long moveStart = System.nanoTime();
+            messageIdManager.setInMailboxes(messageId, targets, session);
+            pipelineMetrics.record(Stage.MOVE_MESSAGES, moveStart);
+            moved++;
+        }
+        pipelineMetrics.byIdMoved(moved);
+        return moved;
+    }
+
+    private static boolean isAccessible(Set<MessageId> accessible, MessageId messageId, List<MailboxId> targets) {
+        if (accessible.contains(messageId)) {
+            return true;
+        }
+        LOGGER.warn("MessageId {} not found or not accessible – nothing moved to {}", messageId.serialize(), targets);
         return false;
     }
 
-    private boolean moveMessage(MailboxSession session,
-                                MailboxPath srcPath,
-                                MailboxPath destPath,
-                                MessageUid uid,
-                                String hashID) throws MailboxException {
+    /** Resolves the destination of a move, warning about moves across owners; empty when none was given. */
+    private Optional<MailboxPath> resolveDestination(MailboxSession session,
+                                                     Username owner,
+                                                     MailboxPath srcPath,
+                                                     IncomingMessagePayload payload) throws MailboxException {
+        if (payload.getDestinationMailboxID() == null || payload.getDestinationMailboxID().isBlank()) {
+            LOGGER.error("Missing destinationMailboxID for {} – hashID={}", payload.getAction(), payload.getHashID());
+            return Optional.empty();
+        }
+        return resolveDestination(session, owner, srcPath, mailboxIdFactory.fromString(payload.getDestinationMailboxID()), payload.getHashID());
+    }
+
+    /** Same as above, for a single-message move whose destination was parsed at decode time. */
+    private Optional<MailboxPath> resolveDestination(MailboxSession session,
+                                                     Username owner,
+                                                     MailboxPath srcPath,
+                                                     Instruction instruction) throws MailboxException {
+        if (instruction.getDestinationMailboxId() == null) {
+            LOGGER.error("Missing or malformed destinationMailboxID '{}' for Move – hashID={}",
+                    instruction.getPayload().getDestinationMailboxID(), instruction.getHashID());
+            return Optional.empty();
+        }
+        return resolveDestination(session, owner, srcPath, instruction.getDestinationMailboxId(), instruction.getHashID());
+    }
+
+    private Optional<MailboxPath> resolveDestination(MailboxSession session,
+                                                     Username owner,
+                                                     MailboxPath srcPath,
+                                                     MailboxId destId,
+                                                     String hashID) throws MailboxException {
+        long destResolutionStart = System.nanoTime();
+        MailboxMetadata destination = mailboxMetadataCache.get(destId,
+                () -> findMailbox(destId, session, "Destination"));
+        pipelineMetrics.record(Stage.RESOLUTION, destResolutionStart);
+        MailboxPath destPath = destination.path();
+        if (!destination.owner().equals(owner)) {
+            LOGGER.warn("Cross-user mailbox move initiated by source owner {}. " +
+                            "Source Mailbox: {} (Owner: {}), Destination Mailbox: {} (Owner: {}). hashID={}",
+                    owner, srcPath.getName(), owner, destPath.getName(), destination.owner(), hashID);
+        }
+        return Optional.of(destPath);
+    }
+
+    /**
+     * Moves one range of a range action. Unlike {@link #moveUids}, absent UIDs are not looked up first: the count
+     * of messages created in the destination is the number actually moved.
+     */
+    private RangeResult moveRange(MailboxSession session,
+                                  MailboxPath srcPath,
+                                  MailboxPath destPath,
+                                  MessageRange range) throws MailboxException {
+        long moveStart = System.nanoTime();
+        List<MessageRange> moved = mailboxManager.moveMessages(range, srcPath, destPath, session);
+        pipelineMetrics.record(Stage.MOVE_MESSAGES, moveStart);
+        long count = countUids(moved);
+        pipelineMetrics.rangeMoved(count);
+        return RangeResult.success(UidSet.describe(range), count);
+    }
+
+    /** Moves one chunk of UIDs matched by a query action, one {@code moveMessages} call per contiguous run. */
+    private long moveChunk(MailboxSession session,
+                           MailboxPath srcPath,
+                           MailboxPath destPath,
+                           List<MessageUid> chunk) throws MailboxException {
+        long moved = 0;
+        for (MessageRange range : MessageRange.toRanges(sorted(chunk))) {
+            long moveStart = System.nanoTime();
+            moved += countUids(mailboxManager.moveMessages(range, srcPath, destPath, session));
+            pipelineMetrics.record(Stage.MOVE_MESSAGES, moveStart);
+        }
+        pipelineMetrics.queryMoved(moved);
+        return moved;
+    }
+
+    private static List<MessageUid> sorted(List<MessageUid> uids) {
+        List<MessageUid> sorted = new ArrayList<>(uids);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private void moveMessages(MailboxSession session,
+                              MailboxPath srcPath,
+                              MailboxPath destPath,
+                              List<Instruction> instructions,
+                              MessageUid[] uids,
+                              List<Outcome> results) throws MailboxException {
+
+        moveUids(session, srcPath, destPath, uids, moved -> markMoved(moved, uids, results, i ->
+                LOGGER.info("MOVE action (hashID: {}): Successfully moved UID {} from {} to {}.", instructions.get(i).getHashID(), uids[i], srcPath, destPath)));
+        markMissing(uids, results, i -> LOGGER.warn("UID {} not found in {} – nothing moved to {}", uids[i], srcPath, destPath));
+    }
+
+    /** Marks the instructions whose UID was just moved as succeeded, passing each of their indexes to {@code onMoved}. */
+    private static void markMoved(Set<MessageUid> moved, MessageUid[] uids, List<Outcome> results, IntConsumer onMoved) {
+        for (int i = 0; i < uids.length; i++) {
+            if (uids[i] != null && moved.contains(uids[i])) {
+                onMoved.accept(i);
+                results.set(i, Outcome.SUCCEEDED);
+            }
+        }
+    }
+
+    /** Once every range is moved, fails the instructions whose UID was not, passing each of their indexes to {@code onMissing}. */
+    private static void markMissing(MessageUid[] uids, List<Outcome> results, IntConsumer onMissing) {
+        for (int i = 0; i < uids.length; i++) {
+            if (uids[i] != null && results.get(i) == null) {
+                onMissing.accept(i);
+                results.set(i, Outcome.FAILED);
+            }
+        }
+    }
+
+    /**
+     * Moves the given UIDs using one {@code moveMessages} call per contiguous UID range, handing the source UIDs
+     * of each range to {@code onMoved} as soon as it is moved, so that a later range failing does not lose them.
+     * <p>
+     * {@code moveMessages} reports the ranges created in the destination, not which source UIDs were found,
+     * so when several UIDs are requested the ones actually present in the source are listed first; a
+     * single UID keeps the plain "something was moved" check.
+     */
+    private void moveUids(MailboxSession session,
+                          MailboxPath srcPath,
+                          MailboxPath destPath,
+                          MessageUid[] uids,
+                          Consumer<Set<MessageUid>> onMoved) throws MailboxException {
+        List<MessageUid> requested = Arrays.stream(uids)
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+        if (requested.isEmpty()) {
+            return;
+        }
+        if (requested.size() == 1) {
+            MessageUid uid = requested.get(0);
+            long moveStart = System.nanoTime();
+            List<MessageRange> moved = mailboxManager.moveMessages(MessageRange.one(uid), srcPath, destPath, session);
+            pipelineMetrics.record(Stage.MOVE_MESSAGES, moveStart);
+            if (!moved.isEmpty()) {
+                onMoved.accept(Set.of(uid));
+            }
+            return;
+        }
+
+        List<MessageUid> present = listPresentUids(session, srcPath, requested);
+        for (MessageRange range : MessageRange.toRanges(present)) {
+            long moveStart = System.nanoTime();
+            List<MessageRange> moved = mailboxManager.moveMessages(range, srcPath, destPath, session);
+            pipelineMetrics.record(Stage.MOVE_MESSAGES, moveStart);
+            long expected = range.getUidTo().asLong() - range.getUidFrom().asLong() + 1;
+            if (countUids(moved) == expected) {
+                onMoved.accept(present.stream().filter(range::includes).collect(Collectors.toSet()));
+            } else {
+                LOGGER.warn("Range {} of {} was only partially moved to {}; reporting it as failed", range, srcPath, destPath);
+            }
+        }
+    }
+
+    private List<MessageUid> listPresentUids(MailboxSession session,
+                                             MailboxPath srcPath,
+                                             List<MessageUid> requested) throws MailboxException {
         MessageManager srcMM = mailboxManager.getMailbox(srcPath, session);
+        List<MessageUid> present = new ArrayList<>(requested.size());
+        for (MessageRange range : MessageRange.toRanges(requested)) {
+            MessageResultIterator messages = srcMM.getMessages(range, FetchGroup.MINIMAL, session);
+            while (messages.hasNext()) {
+                present.add(messages.next().getUid());
+            }
+        }
+        return present;
+    }
 
-        List<MessageRange> moved = mailboxManager.moveMessages(MessageRange.one(uid), srcPath, destPath, session);
+    private static long countUids(List<MessageRange> ranges) {
+        return ranges.stream()
+                .mapToLong(range -> range.getUidTo().asLong() - range.getUidFrom().asLong() + 1)
+                .sum();
+    }
 
-        boolean success = !moved.isEmpty();
-        if (success) {
-            LOGGER.info("MOVE action (hashID: {}): Successfully moved UID {} from {} to {}.", hashID, uid, srcPath, destPath);
-            return true;
+    // ---------- reactive helpers ----------
+
+    /** Reactive counterpart of {@link #findMailboxAsAdmin}; a cache hit needs no session at all. */
+    private Mono<MailboxMetadata> resolveSourceReactive(MailboxId srcId) {
+        return timed(Stage.RESOLUTION, mailboxMetadataCache.getIfPresent(srcId)
+                .map(Mono::just)
+                .orElseGet(() -> sessionPool.executeReactive(ADMIN_USER,
+                        adminLookupSession -> loadMailboxReactive(srcId, adminLookupSession))));
+    }
+
+    private Mono<MailboxMetadata> resolveMailboxReactive(MailboxId mailboxId, MailboxSession session) {
+        return timed(Stage.RESOLUTION, mailboxMetadataCache.getIfPresent(mailboxId)
+                .map(Mono::just)
+                .orElseGet(() -> loadMailboxReactive(mailboxId, session)));
+    }
+
+    private Mono<MailboxMetadata> loadMailboxReactive(MailboxId mailboxId, MailboxSession session) {
+        return mapperFactory.getMailboxMapper(session)
+                .findMailboxById(mailboxId)
+                .switchIfEmpty(Mono.error(new MailboxNotFoundException(mailboxId)))
+                .map(MailboxMetadata::from)
+                .doOnNext(metadata -> mailboxMetadataCache.put(mailboxId, metadata));
+    }
+
+    private Mono<Boolean> trashMessageReactive(MailboxSession session, MailboxMetadata source, MessageUid uid, String hashID) {
+        Username owner = source.owner();
+        return resolveTrashReactive(session, owner, hashID)
+                .flatMap(trashPath -> moveUidReactive(session, source.path(), trashPath, uid)
+                        // same as the blocking path: a vanished Trash is recreated by the next instruction
+                        .doOnError(MailboxNotFoundException.class, e -> trashMailboxCache.invalidate(owner))
+                        .doOnNext(moved -> {
+                            if (moved) {
+                                LOGGER.info("TRASH action (hashID: {}): Successfully moved UID {} to Trash for user {}.", hashID, uid, owner);
+                            } else {
+                                LOGGER.warn("UID {} not found in {} – nothing trashed", uid, source.path());
+                            }
+                        }))
+                .defaultIfEmpty(Boolean.FALSE);
+    }
+
+    /** Reactive counterpart of {@link #resolveTrash}; completes empty when the Trash cannot be created. */
+    private Mono<MailboxPath> resolveTrashReactive(MailboxSession session, Username owner, String hashID) {
+        Optional<MailboxPath> cached = trashMailboxCache.get(owner);
+        if (cached.isPresent()) {
+            return Mono.just(cached.get());
+        }
+        MailboxPath trashPath = MailboxPath.forUser(owner, DEFAULT_TRASH_FOLDER_NAME);
+        return Mono.fromCallable(() -> mailboxManager.mailboxExists(trashPath, session))
+                .flatMap(Mono::from)
+                .flatMap(exists -> exists
+                        ? Mono.just(trashPath)
+                        : Mono.from(mailboxManager.createMailboxReactive(trashPath, MailboxManager.CreateOption.NONE, session))
+                                .doOnNext(id -> LOGGER.info("TRASH action (hashID: {}): Created Trash mailbox {} for user {}.", hashID, trashPath, owner))
+                                .map(id -> trashPath)
+                                .switchIfEmpty(Mono.fromRunnable(() -> LOGGER.error(
+                                        "TRASH action (hashID: {}): Failed to create Trash mailbox {} for user {}. UID not trashed.",
+                                        hashID, trashPath, owner))))
+                .doOnNext(path -> trashMailboxCache.put(owner, path));
+    }
+
+    private Mono<Boolean> moveMessageReactive(MailboxSession session, MailboxMetadata source, MessageUid uid, Instruction instruction) {
+        MailboxId destId = instruction.getDestinationMailboxId();
+        if (destId == null) {
+            LOGGER.error("Missing or malformed destinationMailboxID '{}' for MOVE – hashID={}",
+                    instruction.getPayload().getDestinationMailboxID(), instruction.getHashID());
+            return Mono.just(Boolean.FALSE);
+        }
+        MailboxPath srcPath = source.path();
+        return resolveMailboxReactive(destId, session)
+                .flatMap(destination -> {
+                    MailboxPath destPath = destination.path();
+                    if (!destination.owner().equals(source.owner())) {
+                        LOGGER.warn("Cross-user mailbox move initiated by source owner {}. " +
+                                        "Source Mailbox: {} (Owner: {}), Destination Mailbox: {} (Owner: {}). hashID={}",
+                                source.owner(), srcPath.getName(), source.owner(), destPath.getName(), destination.owner(), instruction.getHashID());
+                    }
+                    return moveUidReactive(session, srcPath, destPath, uid)
+                            .doOnNext(moved -> {
+                                if (moved) {
+                                    LOGGER.info("MOVE action (hashID: {}): Successfully moved UID {} from {} to {}.", instruction.getHashID(), uid, srcPath, destPath);
+                                } else {
+                                    LOGGER.warn("UID {} not found in {} – nothing moved to {}", uid, srcPath, destPath);
+                                }
+                            });
+                });
+    }
+
+    /** Reactive counterpart of {@link #resolveTarget}; empty when there is no target. */
+    private Mono<MailboxPath> resolveTargetReactive(MailboxSession session, MailboxMetadata source, IncomingMessagePayload payload) {
+        return switch (payload.getAction()) {
+            case IncomingMessagePayload.TRASH_RANGE_ACTION, IncomingMessagePayload.TRASH_QUERY_ACTION ->
+                    resolveTrashReactive(session, source.owner(), payload.getHashID());
+            case IncomingMessagePayload.MOVE_RANGE_ACTION, IncomingMessagePayload.MOVE_QUERY_ACTION -> {
+                if (payload.getDestinationMailboxID() == null || payload.getDestinationMailboxID().isBlank()) {
+                    LOGGER.error("Missing destinationMailboxID for {} – hashID={}", payload.getAction(), payload.getHashID());
+                    yield Mono.empty();
+                }
+                yield resolveMailboxReactive(mailboxIdFactory.fromString(payload.getDestinationMailboxID()), session)
+                        .map(MailboxMetadata::path);
+            }
+            default -> {
+                LOGGER.warn("Unknown action '{}' – hashID={}", payload.getAction(), payload.getHashID());
+                yield Mono.empty();
+            }
+        };
+    }
+
+    /** Reactive counterpart of {@link #resolveTargetIds}; empty when there is no target. */
+    private Mono<List<MailboxId>> resolveTargetIdsReactive(MailboxSession session, Username owner, Instruction instruction) {
+        if (instruction.getAction() == Instruction.Action.TRASH_BY_ID) {
+            return resolveTrashReactive(session, owner, instruction.getHashID())
+                    .flatMap(trashPath -> timed(Stage.RESOLUTION, Mono.fromCallable(() -> mailboxManager.getMailbox(trashPath, session).getId())))
+                    .map(List::of);
+        }
+        if (instruction.getDestinationMailboxIds() == null) {
+            LOGGER.error("Missing or malformed destinationMailboxIDs {} / destinationMailboxID '{}' for MoveById – hashID={}",
+                    instruction.getPayload().getDestinationMailboxIDs(), instruction.getPayload().getDestinationMailboxID(), instruction.getHashID());
+            return Mono.empty();
         }
-        LOGGER.warn("UID {} not found in {} – nothing moved to {}", uid, srcPath, destPath);
+        return Mono.just(instruction.getDestinationMailboxIds());
+    }
+
+    /** Reactive counterpart of {@link #setInMailboxes}; also reports the chunk to the circuit breaker. */
+    private Mono<Long> setInMailboxesReactive(MailboxSession session, List<MessageId> chunk, List<MailboxId> targets) {
+        return Mono.defer(() -> {
+            long chunkStart = System.nanoTime();
+            return Mono.<Set<MessageId>>fromCallable(() -> messageIdManager.accessibleMessages(chunk, session))
+                    .flatMapMany(accessible -> Flux.fromIterable(chunk)
+                            .filter(messageId -> isAccessible(accessible, messageId, targets)))
+                    .concatMap(messageId -> timed(Stage.MOVE_MESSAGES,
+                            Mono.from(messageIdManager.setInMailboxesReactive(messageId, targets, session)).thenReturn(messageId)))
+                    .count()
+                    .doOnNext(moved -> {
+                        pipelineMetrics.byIdMoved(moved);
+                        circuitBreaker.onSuccess(chunkStart);
+                    });
+        });
+    }
+
+    private Mono<RangeResult> moveRangeReactive(MailboxSession session, MailboxPath srcPath, MailboxPath destPath, MessageRange range) {
+        return timed(Stage.MOVE_MESSAGES, Flux.from(mailboxManager.moveMessagesReactive(range, srcPath, destPath, session))
+                .collectList())
+                .map(moved -> {
+                    long count = countUids(moved);
+                    pipelineMetrics.rangeMoved(count);
+                    return RangeResult.success(UidSet.describe(range), count);
+                });
+    }
+
+    private Mono<Long> moveChunkReactive(MailboxSession session, MailboxPath srcPath, MailboxPath destPath, List<MessageUid> chunk) {
+        return Mono.defer(() -> {
+            long chunkStart = System.nanoTime();
+            return Flux.fromIterable(MessageRange.toRanges(sorted(chunk)))
+                    .concatMap(range -> timed(Stage.MOVE_MESSAGES,
+                            Flux.from(mailboxManager.moveMessagesReactive(range, srcPath, destPath, session)).collectList()))
+                    .map(MailboxActionServiceImpl::countUids)
+                    .reduce(0L, Long::sum)
+                    .doOnNext(moved -> {
+                        pipelineMetrics.queryMoved(moved);
+                        circuitBreaker.onSuccess(chunkStart);
+                    });
+        });
+    }
+
+    private Mono<Boolean> moveUidReactive(MailboxSession session, MailboxPath srcPath, MailboxPath destPath, MessageUid uid) {
+        return timed(Stage.MOVE_MESSAGES, Flux.from(mailboxManager.moveMessagesReactive(MessageRange.one(uid), srcPath, destPath, session))
+                .hasElements());
+    }
 
+    /**
+     * Checked before each chunk of a reactive query or by-id action, as the blocking loops do: an opened breaker
+     * stops a long action partway through, and its report is then a failure.
+     */
+    private boolean permitsNextChunk(String action, String hashID, QueryCounts counts) {
+        if (circuitBreaker.permitsCalls()) {
+            return true;
+        }
+        LOGGER.warn("{} action (hashID: {}): circuit breaker opened after {} chunk(s) – stopping", action, hashID, counts.chunks);
+        counts.stopped = true;
         return false;
     }
-}
\ No newline at end of file
+
+    /** Running counts of a query or by-id action; updated by one chunk at a time, read by the status reports. */
+    private static final class QueryCounts {
+        private volatile long matched;
+        private volatile long moved;
+        private volatile int chunks;
+        private volatile boolean stopped;
+
+        private void chunkMoved(int chunkMatched, long chunkMoved) {
+            matched += chunkMatched;
+            moved += chunkMoved;
+            chunks++;
+        }
+
+        private ActionReport report(boolean success) {
+            return ActionReport.ofQuery(success, matched, moved, chunks);
+        }
+    }
+
+    /** Times {@code mono} from subscription to termination. */
+    private <T> Mono<T> timed(Stage stage, Mono<T> mono) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doFinally(signal -> pipelineMetrics.record(stage, start));
+        });
+    }
+}
@@ -0,0 +1,80 @@
+package com.integration.james.services.impl;
+
+import com.integration.james.dto.InstructionQuery;
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.Criterion;
+import org.apache.james.mailbox.model.SearchQuery.DateResolution;
+
+import javax.mail.Flags;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/** Maps the criteria of a query action onto a James {@link SearchQuery}, all criteria being and-ed. */
+final class QueryCriteria {
+
+    private static final Map<String, Flags.Flag> SYSTEM_FLAGS = Map.of(
+            "\\answered", Flags.Flag.ANSWERED,
+            "\\deleted", Flags.Flag.DELETED,
+            "\\draft", Flags.Flag.DRAFT,
+            "\\flagged", Flags.Flag.FLAGGED,
+            "\\recent", Flags.Flag.RECENT,
+            "\\seen", Flags.Flag.SEEN);
+
+    private QueryCriteria() {
+    }
+
+    /** @throws IllegalArgumentException if the query is missing or holds a malformed criterion. */
+    static SearchQuery toSearchQuery(InstructionQuery query) {
+        if (query == null) {
+            // matching a whole mailbox takes an explicit empty query, never a forgotten field
+            throw new IllegalArgumentException("Missing query");
+        }
+        List<Criterion> criteria = new ArrayList<>();
+        if (query.getReceivedBefore() != null) {
+            criteria.add(SearchQuery.internalDateBefore(parseDate(query.getReceivedBefore()), DateResolution.Second));
+        }
+        if (query.getReceivedAfter() != null) {
+            criteria.add(SearchQuery.internalDateAfter(parseDate(query.getReceivedAfter()), DateResolution.Second));
+        }
+        if (query.getFlagsSet() != null) {
+            query.getFlagsSet().forEach(flag -> criteria.add(flagCriterion(flag, true)));
+        }
+        if (query.getFlagsUnset() != null) {
+            query.getFlagsUnset().forEach(flag -> criteria.add(flagCriterion(flag, false)));
+        }
+        if (query.getHeaders() != null) {
+            query.getHeaders().forEach((name, value) -> criteria.add(SearchQuery.headerContains(name, value)));
+        }
+        if (criteria.isEmpty()) {
+            criteria.add(SearchQuery.all());
+        }
+        return SearchQuery.builder().andCriteria(criteria).build();
+    }
+
+    private static Date parseDate(String value) {
+        try {
+            return Date.from(Instant.parse(value));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Not an ISO-8601 instant: '" + value + "'", e);
+        }
+    }
+
+    private static Criterion flagCriterion(String flag, boolean set) {
+        if (flag == null || flag.isBlank()) {
+            throw new IllegalArgumentException("Empty flag");
+        }
+        if (flag.startsWith("\\")) {
+            Flags.Flag systemFlag = SYSTEM_FLAGS.get(flag.toLowerCase(Locale.ROOT));
+            if (systemFlag == null) {
+                throw new IllegalArgumentException("Unknown system flag: '" + flag + "'");
+            }
+            return set ? SearchQuery.flagIsSet(systemFlag) : SearchQuery.flagIsUnSet(systemFlag);
+        }
+        return set ? SearchQuery.flagIsSet(flag) : SearchQuery.flagIsUnSet(flag);
+    }
+}
@@ -0,0 +1,87 @@
+package com.integration.james.services.impl;
+
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.model.MessageRange;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Parses the UID set of a range action, in IMAP sequence-set syntax: comma-separated UIDs and {@code from:to}
+ * ranges, {@code *} standing for the highest UID ({@code "1:500,502,510:*"}).
+ * <p>
+ * The result is the minimal list of ranges covering the set: ranges are sorted, and overlapping or adjacent ones
+ * are merged, so each {@code moveMessages} call covers as much as possible.
+ */
+final class UidSet {
+
+    private static final String HIGHEST = "*";
+
+    private UidSet() {
+    }
+
+    /** @throws IllegalArgumentException if the set is empty or malformed. */
+    static List<MessageRange> parse(String set) {
+        if (set == null || set.isBlank()) {
+            throw new IllegalArgumentException("Empty UID set");
+        }
+        List<long[]> bounds = new ArrayList<>();
+        for (String part : set.split(",")) {
+            String item = part.trim();
+            int colon = item.indexOf(':');
+            long from = parseUid(colon < 0 ? item : item.substring(0, colon));
+            long to = colon < 0 ? from : parseUid(item.substring(colon + 1));
+            bounds.add(new long[] {Math.min(from, to), Math.max(from, to)});
+        }
+        bounds.sort(Comparator.comparingLong(b -> b[0]));
+
+        List<MessageRange> ranges = new ArrayList<>();
+        long[] current = bounds.get(0);
+        for (long[] next : bounds.subList(1, bounds.size())) {
+            if (current[1] == Long.MAX_VALUE || next[0] <= current[1] + 1) {
+                current[1] = Math.max(current[1], next[1]);
+            } else {
+                ranges.add(toRange(current));
+                current = next;
+            }
+        }
+        ranges.add(toRange(current));
+        return ranges;
+    }
+
+    /** The range in the syntax it was given in, for status reports. */
+    static String describe(MessageRange range) {
+        long from = range.getUidFrom().asLong();
+        if (range.getType() == MessageRange.Type.FROM) {
+            return from + ":" + HIGHEST;
+        }
+        long to = range.getUidTo().asLong();
+        return from == to ? String.valueOf(from) : from + ":" + to;
+    }
+
+    private static long parseUid(String uid) {
+        String value = uid.trim();
+        if (HIGHEST.equals(value)) {
+            return Long.MAX_VALUE;
+        }
+        long parsed;
+        try {
+            parsed = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a UID: '" + value + "'", e);
+        }
+        if (parsed < 1) {
+            throw new IllegalArgumentException("Not a UID: '" + value + "'");
+        }
+        return parsed;
+    }
+
+    private static MessageRange toRange(long[] bounds) {
+        MessageUid from = MessageUid.of(bounds[0]);
+        if (bounds[1] == Long.MAX_VALUE) {
+            return MessageRange.from(from);
+        }
+        return bounds[0] == bounds[1] ? MessageRange.one(from) : MessageRange.range(from, MessageUid.of(bounds[1]));
+    }
+}
@@ -0,0 +1,25 @@
+package com.integration.james.webadmin;
+
+import com.integration.james.services.PipelineSettings;
+
+/** The body of {@code PATCH /rabbitmq/pipeline/settings}: absent fields keep their current value. */
+public record PipelineSettingsRequest(Integer prefetch,
+                                      Integer interactivePrefetch,
+                                      Integer concurrency,
+                                      Long confirmTimeoutMs,
+                                      Long reconnectInitialDelayMs,
+                                      Long reconnectMaxDelayMs,
+                                      Boolean paused) {
+
+    /** @throws IllegalArgumentException when the merged settings are out of range */
+    public PipelineSettings applyTo(PipelineSettings current) {
+        return new PipelineSettings(
+                prefetch != null ? prefetch : current.prefetch(),
+                interactivePrefetch != null ? interactivePrefetch : current.interactivePrefetch(),
+                concurrency != null ? concurrency : current.concurrency(),
+                confirmTimeoutMs != null ? confirmTimeoutMs : current.confirmTimeoutMs(),
+                reconnectInitialDelayMs != null ? reconnectInitialDelayMs : current.reconnectInitialDelayMs(),
+                reconnectMaxDelayMs != null ? reconnectMaxDelayMs : current.reconnectMaxDelayMs(),
+                paused != null ? paused : current.paused());
+    }
+}
@@ -0,0 +1,75 @@
+package com.integration.james.webadmin;
+
+import com.google.inject.Inject;
+import com.integration.james.services.PipelineSettings;
+import com.integration.james.services.RabbitMqIntegrationService;
+import org.apache.james.webadmin.Routes;
+import org.apache.james.webadmin.utils.ErrorResponder;
+import org.apache.james.webadmin.utils.JsonExtractException;
+import org.apache.james.webadmin.utils.JsonExtractor;
+import org.apache.james.webadmin.utils.JsonTransformer;
+import org.eclipse.jetty.http.HttpStatus;
+import spark.Request;
+import spark.Response;
+import spark.Service;
+
+import java.io.IOException;
+
+/**
+ * WebAdmin routes of the running pipeline, loaded through {@code extensions.routes} in {@code webadmin.properties}:
+ * <ul>
+ *     <li>{@code GET /rabbitmq/pipeline}: connection and consumer status, in-flight counts, throughput and the
+ *     latency percentiles of the last minute;</li>
+ *     <li>{@code GET /rabbitmq/pipeline/settings}: the settings in effect;</li>
+ *     <li>{@code PATCH /rabbitmq/pipeline/settings}: changes some of them, atomically and without reconnecting.</li>
+ * </ul>
+ */
+public class RabbitMqPipelineRoutes implements Routes {
+
+    public static final String BASE_PATH = "/rabbitmq/pipeline";
+    public static final String SETTINGS_PATH = BASE_PATH + "/settings";
+
+    private final RabbitMqIntegrationService integrationService;
+    private final JsonTransformer jsonTransformer;
+    private final JsonExtractor<PipelineSettingsRequest> jsonExtractor;
+
+    @Inject
+    public RabbitMqPipelineRoutes(RabbitMqIntegrationService integrationService, JsonTransformer jsonTransformer) {
+        this.integrationService = integrationService;
+        this.jsonTransformer = jsonTransformer;
+        this.jsonExtractor = new JsonExtractor<>(PipelineSettingsRequest.class);
+    }
+
+    @Override
+    public String getBasePath() {
+        return BASE_PATH;
+    }
+
+    @Override
+    public void define(Service service) {
+        service.get(BASE_PATH, (request, response) -> integrationService.stats(), jsonTransformer);
+        service.get(SETTINGS_PATH, (request, response) -> integrationService.getSettings(), jsonTransformer);
+        service.patch(SETTINGS_PATH, this::tune, jsonTransformer);
+    }
+
+    private PipelineSettings tune(Request request, Response response) {
+        try {
+            PipelineSettingsRequest changes = jsonExtractor.parse(request.body());
+            return integrationService.tune(changes::applyTo);
+        } catch (JsonExtractException | IllegalArgumentException e) {
+            throw ErrorResponder.builder()
+                    .statusCode(HttpStatus.BAD_REQUEST_400)
+                    .type(ErrorResponder.ErrorType.INVALID_ARGUMENT)
+                    .message("Invalid pipeline settings: " + e.getMessage())
+                    .cause(e)
+                    .haltError();
+        } catch (IOException e) {
+            throw ErrorResponder.builder()
+                    .statusCode(HttpStatus.INTERNAL_SERVER_ERROR_500)
+                    .type(ErrorResponder.ErrorType.SERVER_ERROR)
+                    .message("The broker refused the pipeline settings, the previous ones were restored: " + e.getMessage())
+                    .cause(e)
+                    .haltError();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.integration.james.cache;
+
+import org.apache.james.metrics.api.NoopGaugeRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IdempotencyCacheTest {
+
+    // a single bucket: every hashID competes for the same 8 slots
+    private static final int ONE_BUCKET = 8;
+    private static final long TTL_SECONDS = 10;
+
+    private final AtomicLong nanoTime = new AtomicLong(TimeUnit.DAYS.toNanos(3));
+
+    @Test
+    void returnsTheRecordedOutcome() {
+        IdempotencyCache cache = cache(1024);
+
+        cache.record("ok", true);
+        cache.record("ko", false);
+
+        assertEquals(Optional.of(true), cache.lookup("ok"));
+        assertEquals(Optional.of(false), cache.lookup("ko"));
+        assertEquals(Optional.empty(), cache.lookup("unknown"));
+    }
+
+    @Test
+    void ignoresMissingHashIDs() {
+        IdempotencyCache cache = cache(1024);
+
+        cache.record(null, true);
+
+        assertEquals(Optional.empty(), cache.lookup(null));
+    }
+
+    @Test
+    void recordingAgainUpdatesInPlace() {
+        IdempotencyCache cache = cache(ONE_BUCKET);
+        for (int i = 0; i < ONE_BUCKET; i++) {
+            cache.record("id-" + i, true);
+        }
+
+        cache.record("id-0", false);
+        cache.record("id-0", false);
+
+        assertEquals(Optional.of(false), cache.lookup("id-0"));
+        for (int i = 1; i < ONE_BUCKET; i++) {
+            assertEquals(Optional.of(true), cache.lookup("id-" + i), "id-" + i);
+        }
+    }
+
+    @Test
+    void evictsTheOldestEntryOfAFullBucket() {
+        IdempotencyCache cache = cache(ONE_BUCKET);
+
+        for (int i = 0; i <= ONE_BUCKET; i++) {
+            cache.record("id-" + i, true);
+        }
+
+        assertEquals(Optional.empty(), cache.lookup("id-0"));
+        for (int i = 1; i <= ONE_BUCKET; i++) {
+            assertEquals(Optional.of(true), cache.lookup("id-" + i), "id-" + i);
+        }
+    }
+
+    @Test
+    void forgetsOutcomesOlderThanTheTtl() {
+        IdempotencyCache cache = cache(1024);
+        cache.record("id", true);
+
+        advanceSeconds(TTL_SECONDS);
+        assertEquals(Optional.of(true), cache.lookup("id"));
+
+        advanceSeconds(1);
+        assertEquals(Optional.empty(), cache.lookup("id"));
+    }
+
+    @Test
+    void recordingAgainRestartsTheTtl() {
+        IdempotencyCache cache = cache(1024);
+        cache.record("id", true);
+
+        advanceSeconds(TTL_SECONDS - 1);
+        cache.record("id", false);
+        advanceSeconds(TTL_SECONDS - 1);
+
+        assertEquals(Optional.of(false), cache.lookup("id"));
+    }
+
+    private IdempotencyCache cache(int capacity) {
+        return new IdempotencyCache(new NoopGaugeRegistry(), capacity, TTL_SECONDS, nanoTime::get);
+    }
+
+    private void advanceSeconds(long seconds) {
+        nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
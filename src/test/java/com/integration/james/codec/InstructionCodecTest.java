@@ -0,0 +1,248 @@
+package com.integration.james.codec;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.InstructionQuery;
+import com.integration.james.dto.StatusPayload;
+import com.integration.james.publisher.StatusMessage;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MessageId;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class InstructionCodecTest {
+
+    private static final IncomingMessagePayload QUERY_PAYLOAD = new IncomingMessagePayload(
+            IncomingMessagePayload.TRASH_QUERY_ACTION, "42", null, null, "query-1", "bulk",
+            new InstructionQuery("2024-01-01T00:00:00Z", null, List.of("\\Seen"), List.of("\\Flagged"),
+                    Map.of("From", "newsletter@example.com")));
+    private static final IncomingMessagePayload BY_ID_PAYLOAD = new IncomingMessagePayload(
+            IncomingMessagePayload.MOVE_BY_ID_ACTION, "42", null, null, "by-id-1", "interactive", null,
+            List.of("m1", "m2"), List.of("43", "44"));
+
+    private final MailboxId.Factory mailboxIdFactory = mock(MailboxId.Factory.class);
+    private final MessageId.Factory messageIdFactory = mock(MessageId.Factory.class);
+
+    @Test
+    void payloadsRoundTripInEveryFormat() throws Exception {
+        InstructionCodec codec = codec("request", false);
+        IncomingMessagePayload trash = new IncomingMessagePayload("Trash", "42", "7", null, "trash-1");
+
+        for (WireFormat format : WireFormat.values()) {
+            for (IncomingMessagePayload payload : List.of(trash, QUERY_PAYLOAD, BY_ID_PAYLOAD)) {
+                assertEquals(payload, decodeOne(codec, format, codec.encode(format, payload)), format.name());
+            }
+        }
+    }
+
+    @Test
+    void readsAnArrayOrASequenceOfDocumentsOneAtATime() throws Exception {
+        InstructionCodec codec = codec("request", false);
+        String first = "{\"action\":\"Trash\",\"sourceMailboxID\":\"42\",\"sourceMessageID\":\"1\",\"hashID\":\"a\"}";
+        String second = "{\"action\":\"Trash\",\"sourceMailboxID\":\"42\",\"sourceMessageID\":\"2\",\"hashID\":\"b\"}";
+
+        assertEquals(List.of("a", "b"), hashIDs(codec.readValues(WireFormat.JSON, json("[" + first + "," + second + "]"))));
+        assertEquals(List.of("a", "b"), hashIDs(codec.readValues(WireFormat.JSON, json(first + "\n" + second))));
+    }
+
+    @Test
+    void singleAndBulkStatusesRoundTripInEveryFormat() throws Exception {
+        InstructionCodec codec = codec("request", false);
+        StatusPayload succeeded = new StatusPayload("a", "succeeded", 10L, 9L, 1, null);
+        StatusPayload rejected = StatusPayload.rejected("b", "Unsupported content type");
+
+        for (WireFormat format : WireFormat.values()) {
+            StatusMessage single = codec.decodeStatus(format, codec.encode(StatusMessage.single(succeeded, format)));
+            assertFalse(single.isBulk());
+            assertEquals(List.of(succeeded), single.getStatuses());
+
+            StatusMessage bulk = codec.decodeStatus(format, codec.encode(StatusMessage.bulk(List.of(succeeded, rejected), format)));
+            assertTrue(bulk.isBulk());
+            assertEquals(List.of(succeeded, rejected), bulk.getStatuses());
+            assertEquals(format, bulk.getFormat());
+        }
+    }
+
+    @Test
+    void encodingReusesNoBytesOfThePreviousMessage() throws Exception {
+        InstructionCodec codec = codec("request", false);
+        byte[] longer = codec.encode(WireFormat.JSON, QUERY_PAYLOAD);
+        byte[] shorter = codec.encode(WireFormat.JSON, new IncomingMessagePayload("Trash", "42", "7", null, "t"));
+
+        assertArrayEquals(longer, codec.encode(WireFormat.JSON, QUERY_PAYLOAD));
+        assertEquals(new IncomingMessagePayload("Trash", "42", "7", null, "t"), decodeOne(codec, WireFormat.JSON, shorter));
+    }
+
+    @Test
+    void lenientModeReadsUnknownContentTypesAsJson() {
+        InstructionCodec codec = codec("request", false);
+
+        assertEquals(Optional.of(WireFormat.JSON), codec.formatOf(null));
+        assertEquals(Optional.of(WireFormat.JSON), codec.formatOf("text/plain"));
+        assertEquals(Optional.of(WireFormat.JSON), codec.formatOf("application/octet-stream"));
+        assertEquals(Optional.of(WireFormat.SMILE), codec.formatOf("application/x-jackson-smile"));
+        assertEquals(Optional.of(WireFormat.CBOR), codec.formatOf("application/cbor"));
+    }
+
+    @Test
+    void strictModeRejectsUnknownContentTypes() {
+        InstructionCodec codec = codec("request", true);
+
+        assertEquals(Optional.empty(), codec.formatOf("text/plain"));
+        assertEquals(Optional.empty(), codec.formatOf("application/octet-stream"));
+        assertEquals(Optional.of(WireFormat.JSON), codec.formatOf(null));
+        assertEquals(Optional.of(WireFormat.JSON), codec.formatOf("Application/JSON; charset=utf-8"));
+        assertEquals(Optional.of(WireFormat.JSON), codec.formatOf("application/vnd.instruction+json"));
+        assertEquals(Optional.of(WireFormat.SMILE), codec.formatOf("application/smile"));
+    }
+
+    @Test
+    void statusesFollowTheRequestUnlessAFormatIsConfigured() {
+        assertEquals(WireFormat.SMILE, codec("request", false).statusFormat(WireFormat.SMILE));
+        assertEquals(WireFormat.CBOR, codec(" cbor ", false).statusFormat(WireFormat.JSON));
+        assertEquals("application/cbor", codec("request", false).statusProperties(WireFormat.CBOR).getContentType());
+        assertEquals("corr-1", codec("request", false).replyProperties(WireFormat.JSON, "corr-1").getCorrelationId());
+    }
+
+    @Test
+    void unknownStatusFormatIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> codec("xml", false));
+    }
+
+    @Test
+    void bodyNotInTheDeclaredFormatFailsToDecode() throws Exception {
+        InstructionCodec codec = codec("request", false);
+        byte[] smile = codec.encode(WireFormat.SMILE, QUERY_PAYLOAD);
+
+        assertThrows(IOException.class, () -> codec.readValues(WireFormat.JSON, json("not json")).nextValue());
+        assertThrows(IOException.class, () -> codec.readValues(WireFormat.JSON, json("{\"action\": ")).nextValue());
+        assertThrows(IOException.class, () -> codec.readValues(WireFormat.JSON, smile).nextValue());
+        assertThrows(IOException.class, () -> codec.readValues(WireFormat.CBOR, json("{\"action\":\"Trash\"}")).nextValue());
+    }
+
+    @Test
+    void compileParsesTheFieldsOfASingleMessageAction() {
+        MailboxId source = mailboxId("42");
+        MailboxId destination = mailboxId("43");
+
+        Instruction instruction = codec("request", false).compile(new IncomingMessagePayload("Move", "42", "7", "43", "move-1"));
+
+        assertEquals(Instruction.Action.MOVE, instruction.getAction());
+        assertTrue(instruction.hasUid());
+        assertEquals(7, instruction.getUid());
+        assertEquals(source, instruction.requireSourceMailboxId());
+        assertEquals(destination, instruction.getDestinationMailboxId());
+        assertNull(instruction.getMessageIds());
+        assertEquals("move-1", instruction.getHashID());
+    }
+
+    @Test
+    void compileLeavesMalformedFieldsAbsent() {
+        when(mailboxIdFactory.fromString("not-an-id")).thenThrow(new IllegalArgumentException("not-an-id"));
+        InstructionCodec codec = codec("request", false);
+
+        Instruction instruction = codec.compile(new IncomingMessagePayload("Delete", "not-an-id", "abc", " ", "bad-1"));
+
+        assertEquals(Instruction.Action.UNKNOWN, instruction.getAction());
+        assertFalse(instruction.hasUid());
+        assertNull(instruction.getSourceMailboxId());
+        assertNull(instruction.getDestinationMailboxId());
+        assertThrows(IllegalArgumentException.class, instruction::requireSourceMailboxId);
+        for (String uid : new String[] {"0", "-3", null, "1:5"}) {
+            assertEquals(Instruction.NO_UID, codec.compile(new IncomingMessagePayload("Trash", "42", uid, null, "t")).getUid(), uid);
+        }
+    }
+
+    @Test
+    void multiMessageActionsCarryNoUid() {
+        InstructionCodec codec = codec("request", false);
+
+        Instruction range = codec.compile(new IncomingMessagePayload(IncomingMessagePayload.TRASH_RANGE_ACTION, "42", "3", null, "r"));
+        Instruction query = codec.compile(QUERY_PAYLOAD);
+
+        assertEquals(Instruction.Action.TRASH_RANGE, range.getAction());
+        assertTrue(range.getAction().isMultiMessage());
+        assertFalse(range.hasUid());
+        assertEquals(Instruction.Action.TRASH_QUERY, query.getAction());
+        assertFalse(query.getAction().isById());
+    }
+
+    @Test
+    void compileParsesTheIdsOfAByIdAction() {
+        MessageId m1 = messageId("m1");
+        MessageId m2 = messageId("m2");
+        MailboxId first = mailboxId("43");
+        MailboxId second = mailboxId("44");
+        InstructionCodec codec = codec("request", false);
+
+        Instruction byId = codec.compile(BY_ID_PAYLOAD);
+
+        assertEquals(Instruction.Action.MOVE_BY_ID, byId.getAction());
+        assertEquals(List.of(m1, m2), byId.getMessageIds());
+        assertEquals(List.of(first, second), byId.getDestinationMailboxIds());
+        // a single destination stands for the list
+        Instruction single = codec.compile(new IncomingMessagePayload(IncomingMessagePayload.MOVE_BY_ID_ACTION, "42", null,
+                "43", "by-id-2", null, null, List.of("m1"), null));
+        assertEquals(List.of(first), single.getDestinationMailboxIds());
+    }
+
+    @Test
+    void oneMalformedIdVoidsTheWholeList() {
+        messageId("m1");
+        mailboxId("43");
+        InstructionCodec codec = codec("request", false);
+
+        Instruction instruction = codec.compile(new IncomingMessagePayload(IncomingMessagePayload.MOVE_BY_ID_ACTION, "42", null,
+                null, "by-id-3", null, null, List.of("m1", "unknown"), List.of("43", "")));
+
+        assertNull(instruction.getMessageIds());
+        assertNull(instruction.getDestinationMailboxIds());
+        assertNull(codec.compile(new IncomingMessagePayload(IncomingMessagePayload.TRASH_BY_ID_ACTION, "42", null,
+                null, "by-id-4", null, null, List.of(), null)).getMessageIds());
+    }
+
+    private InstructionCodec codec(String statusFormat, boolean strictContentType) {
+        return new InstructionCodec(mailboxIdFactory, messageIdFactory, statusFormat, strictContentType);
+    }
+
+    private MailboxId mailboxId(String serialized) {
+        MailboxId id = mock(MailboxId.class);
+        when(mailboxIdFactory.fromString(serialized)).thenReturn(id);
+        return id;
+    }
+
+    private MessageId messageId(String serialized) {
+        MessageId id = mock(MessageId.class);
+        when(messageIdFactory.fromString(serialized)).thenReturn(id);
+        return id;
+    }
+
+    private static IncomingMessagePayload decodeOne(InstructionCodec codec, WireFormat format, byte[] body) throws IOException {
+        MappingIterator<IncomingMessagePayload> items = codec.readValues(format, body);
+        IncomingMessagePayload payload = items.nextValue();
+        assertFalse(items.hasNextValue());
+        return payload;
+    }
+
+    private static List<String> hashIDs(MappingIterator<IncomingMessagePayload> items) throws IOException {
+        return items.readAll().stream().map(IncomingMessagePayload::getHashID).toList();
+    }
+
+    private static byte[] json(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,189 @@
+package com.integration.james.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AckCoalescerTest {
+
+    private static final long LONG_LINGER_MS = 60_000;
+
+    private final List<Ack> acks = new ArrayList<>();
+    private final ManualScheduler scheduler = new ManualScheduler();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void immediateModeAcksEveryCompletionOnItsOwn() {
+        AckCoalescer coalescer = new AckCoalescer(AckCoalescer.Mode.IMMEDIATE, LONG_LINGER_MS, 10, this::record, scheduler);
+        coalescer.register(1);
+        coalescer.register(2);
+
+        coalescer.completed(2);
+        coalescer.completed(1);
+
+        assertEquals(List.of(new Ack(2, false, 1), new Ack(1, false, 1)), acks);
+        assertEquals(0, coalescer.getWaitingCount());
+        assertTrue(scheduler.tasks.isEmpty());
+    }
+
+    @Test
+    void outOfOrderCompletionsAreCoveredByOneMultipleAck() {
+        AckCoalescer coalescer = coalesced(3);
+        register(coalescer, 1, 2, 3);
+
+        coalescer.completed(3);
+        coalescer.completed(1);
+        assertTrue(acks.isEmpty());
+        coalescer.completed(2);
+
+        assertEquals(List.of(new Ack(3, true, 3)), acks);
+        assertEquals(0, coalescer.getWaitingCount());
+    }
+
+    @Test
+    void lingerAcksTheCompletedPrefixOnly() {
+        AckCoalescer coalescer = coalesced(10);
+        register(coalescer, 1, 2, 3);
+        coalescer.completed(1);
+        coalescer.completed(3);
+
+        scheduler.runScheduled();
+
+        // 3 sits behind the pending 2 and has not waited a full linger yet
+        assertEquals(List.of(new Ack(1, false, 1)), acks);
+        assertEquals(1, coalescer.getWaitingCount());
+        assertEquals(1, scheduler.tasks.size());
+    }
+
+    @Test
+    void stragglerBehindAPendingTagIsAckedAloneAfterALinger() throws Exception {
+        AckCoalescer coalescer = new AckCoalescer(AckCoalescer.Mode.COALESCED, 1, 10, this::record, scheduler);
+        register(coalescer, 1, 2);
+        coalescer.completed(2);
+
+        Thread.sleep(5);
+        scheduler.runScheduled();
+
+        assertEquals(List.of(new Ack(2, false, 1)), acks);
+        assertEquals(0, coalescer.getWaitingCount());
+        assertTrue(scheduler.tasks.isEmpty());
+    }
+
+    @Test
+    void flushAcksEveryCompletedDelivery() {
+        AckCoalescer coalescer = coalesced(10);
+        register(coalescer, 1, 2, 3, 4);
+        coalescer.completed(1);
+        coalescer.completed(2);
+        coalescer.completed(4);
+
+        coalescer.flush();
+
+        assertEquals(List.of(new Ack(2, true, 2), new Ack(4, false, 1)), acks);
+        assertEquals(0, coalescer.getWaitingCount());
+    }
+
+    @Test
+    void forgottenDeliveryNoLongerHoldsBackTheMultipleAck() {
+        AckCoalescer coalescer = coalesced(10);
+        register(coalescer, 1, 2, 3);
+        coalescer.completed(1);
+        coalescer.completed(3);
+
+        // 2 was nacked
+        coalescer.forget(2);
+        coalescer.flush();
+
+        assertEquals(List.of(new Ack(3, true, 2)), acks);
+    }
+
+    @Test
+    void forgettingACompletedDeliveryWithdrawsItsAck() {
+        AckCoalescer coalescer = coalesced(10);
+        register(coalescer, 1, 2);
+        coalescer.completed(1);
+        coalescer.completed(2);
+
+        coalescer.forget(2);
+        coalescer.flush();
+
+        assertEquals(List.of(new Ack(1, false, 1)), acks);
+        assertEquals(0, coalescer.getWaitingCount());
+    }
+
+    @Test
+    void unregisteredDeliveryIsAckedOnItsOwn() {
+        AckCoalescer coalescer = coalesced(10);
+        register(coalescer, 1);
+
+        coalescer.completed(7);
+
+        assertEquals(List.of(new Ack(7, false, 1)), acks);
+        assertEquals(0, coalescer.getWaitingCount());
+    }
+
+    @Test
+    void failingSinkDoesNotBreakTheCoalescer() {
+        AckCoalescer coalescer = new AckCoalescer(AckCoalescer.Mode.COALESCED, LONG_LINGER_MS, 1,
+                (deliveryTag, multiple, count) -> {
+                    throw new IOException("channel closed");
+                }, scheduler);
+        register(coalescer, 1, 2);
+
+        coalescer.completed(1);
+        coalescer.completed(2);
+
+        assertEquals(0, coalescer.getWaitingCount());
+    }
+
+    private AckCoalescer coalesced(int batchSize) {
+        return new AckCoalescer(AckCoalescer.Mode.COALESCED, LONG_LINGER_MS, batchSize, this::record, scheduler);
+    }
+
+    private void record(long deliveryTag, boolean multiple, int count) {
+        acks.add(new Ack(deliveryTag, multiple, count));
+    }
+
+    private static void register(AckCoalescer coalescer, long... deliveryTags) {
+        for (long deliveryTag : deliveryTags) {
+            coalescer.register(deliveryTag);
+        }
+    }
+
+    private record Ack(long deliveryTag, boolean multiple, int count) {
+    }
+
+    /** Keeps scheduled tasks until the test runs them. */
+    private static class ManualScheduler extends ScheduledThreadPoolExecutor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        ManualScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            tasks.add(command);
+            return null;
+        }
+
+        void runScheduled() {
+            List<Runnable> due = List.copyOf(tasks);
+            tasks.clear();
+            due.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.integration.james.pipeline;
+
+import com.integration.james.pipeline.BackendCircuitBreaker.State;
+import org.apache.james.metrics.api.NoopGaugeRegistry;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackendCircuitBreakerTest {
+
+    private static final int WINDOW = 4;
+    private static final int RATE_THRESHOLD = 50;
+    private static final long SLOW_CALL_MS = 1_000;
+    private static final long NEVER_HALF_OPEN_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final List<String> transitions = new CopyOnWriteArrayList<>();
+    private final List<BackendCircuitBreaker> breakers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        breakers.forEach(BackendCircuitBreaker::dispose);
+    }
+
+    @Test
+    void staysClosedUntilTheMinimumNumberOfCalls() {
+        BackendCircuitBreaker breaker = breaker(true, NEVER_HALF_OPEN_MS, 1);
+
+        for (int i = 0; i < WINDOW - 1; i++) {
+            fail(breaker);
+        }
+        assertTrue(breaker.isClosed());
+
+        fail(breaker);
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.permitsCalls());
+        assertEquals(List.of("CLOSED->OPEN"), transitions);
+    }
+
+    @Test
+    void opensWhenTheFailureRateReachesTheThreshold() {
+        BackendCircuitBreaker breaker = breaker(true, NEVER_HALF_OPEN_MS, 1);
+
+        succeed(breaker);
+        succeed(breaker);
+        succeed(breaker);
+        fail(breaker);
+        assertTrue(breaker.isClosed());
+
+        fail(breaker);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void opensWhenTheSlowCallRateReachesTheThreshold() {
+        BackendCircuitBreaker breaker = breaker(true, NEVER_HALF_OPEN_MS, 1);
+
+        succeed(breaker);
+        succeed(breaker);
+        slow(breaker);
+        slow(breaker);
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void onlyTheLastWindowOfCallsCounts() {
+        BackendCircuitBreaker breaker = breaker(true, NEVER_HALF_OPEN_MS, 1);
+
+        fail(breaker);
+        for (int i = 0; i < WINDOW; i++) {
+            succeed(breaker);
+        }
+        // the first failure slid out: one failure out of four
+        fail(breaker);
+        assertTrue(breaker.isClosed());
+
+        fail(breaker);
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void callsEndingWhileOpenAreIgnored() {
+        BackendCircuitBreaker breaker = breaker(true, NEVER_HALF_OPEN_MS, 1);
+        open(breaker);
+
+        for (int i = 0; i < WINDOW; i++) {
+            succeed(breaker);
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(List.of("CLOSED->OPEN"), transitions);
+    }
+
+    @Test
+    void halfOpenBreakerClosesOnceEveryProbeSucceeded() throws Exception {
+        BackendCircuitBreaker breaker = breaker(true, 0, 2);
+        open(breaker);
+        awaitState(breaker, State.HALF_OPEN);
+        assertTrue(breaker.permitsCalls());
+
+        succeed(breaker);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        succeed(breaker);
+
+        assertTrue(breaker.isClosed());
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+    }
+
+    @Test
+    void closedBreakerStartsFromAnEmptyWindow() throws Exception {
+        BackendCircuitBreaker breaker = breaker(true, 0, 1);
+        open(breaker);
+        awaitState(breaker, State.HALF_OPEN);
+        succeed(breaker);
+
+        for (int i = 0; i < WINDOW - 1; i++) {
+            fail(breaker);
+        }
+
+        assertTrue(breaker.isClosed());
+    }
+
+    @Test
+    void failedProbeOpensTheBreakerAgain() throws Exception {
+        BackendCircuitBreaker breaker = breaker(true, 0, 2);
+        open(breaker);
+        awaitState(breaker, State.HALF_OPEN);
+
+        succeed(breaker);
+        fail(breaker);
+
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN"), transitions.subList(0, 3));
+    }
+
+    @Test
+    void slowProbeOpensTheBreakerAgain() throws Exception {
+        BackendCircuitBreaker breaker = breaker(true, 0, 2);
+        open(breaker);
+        awaitState(breaker, State.HALF_OPEN);
+
+        slow(breaker);
+
+        assertEquals("HALF_OPEN->OPEN", transitions.get(2));
+    }
+
+    @Test
+    void halfOpenBreakerClosesWithoutProbesToHandOut() throws Exception {
+        BackendCircuitBreaker breaker = breaker(true, 0, 3);
+        open(breaker);
+        awaitState(breaker, State.HALF_OPEN);
+
+        breaker.expectProbes(1);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.expectProbes(0);
+
+        assertTrue(breaker.isClosed());
+    }
+
+    @Test
+    void disabledBreakerNeverOpens() {
+        BackendCircuitBreaker breaker = breaker(false, NEVER_HALF_OPEN_MS, 1);
+
+        for (int i = 0; i < 2 * WINDOW; i++) {
+            fail(breaker);
+        }
+
+        assertTrue(breaker.isClosed());
+        assertTrue(transitions.isEmpty());
+    }
+
+    private BackendCircuitBreaker breaker(boolean enabled, long openDurationMs, int halfOpenProbes) {
+        BackendCircuitBreaker breaker = new BackendCircuitBreaker(new NoopMetricFactory(), new NoopGaugeRegistry(), enabled,
+                WINDOW, WINDOW, RATE_THRESHOLD, SLOW_CALL_MS, RATE_THRESHOLD, openDurationMs, halfOpenProbes);
+        breaker.addListener((from, to, reason) -> transitions.add(from + "->" + to));
+        breakers.add(breaker);
+        return breaker;
+    }
+
+    private static void open(BackendCircuitBreaker breaker) {
+        for (int i = 0; i < WINDOW; i++) {
+            fail(breaker);
+        }
+        assertFalse(breaker.isClosed());
+    }
+
+    private static void succeed(BackendCircuitBreaker breaker) {
+        breaker.onSuccess(System.nanoTime());
+    }
+
+    private static void fail(BackendCircuitBreaker breaker) {
+        breaker.onFailure(System.nanoTime());
+    }
+
+    private static void slow(BackendCircuitBreaker breaker) {
+        breaker.onSuccess(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(2 * SLOW_CALL_MS));
+    }
+
+    /** The half-open transition happens on the breaker's timer thread. */
+    private static void awaitState(BackendCircuitBreaker breaker, State state) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (breaker.getState() != state && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(state, breaker.getState());
+    }
+}
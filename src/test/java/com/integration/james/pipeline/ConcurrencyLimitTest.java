@@ -0,0 +1,146 @@
+package com.integration.james.pipeline;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitTest {
+
+    private final List<String> results = new CopyOnWriteArrayList<>();
+
+    @Test
+    void acquireBlocksAtTheLimitUntilASlotIsReleased() throws Exception {
+        ConcurrencyLimit limit = new ConcurrencyLimit(1);
+        limit.acquire();
+        Thread lane = acquiringThread(limit);
+
+        lane.start();
+        lane.join(200);
+        assertTrue(lane.isAlive());
+
+        limit.release();
+        lane.join(5_000);
+        assertFalse(lane.isAlive());
+        assertEquals(1, limit.getActive());
+    }
+
+    @Test
+    void raisingTheLimitWakesBlockedLanes() throws Exception {
+        ConcurrencyLimit limit = new ConcurrencyLimit(2);
+        limit.setLimit(1);
+        limit.acquire();
+        Thread lane = acquiringThread(limit);
+
+        lane.start();
+        lane.join(200);
+        assertTrue(lane.isAlive());
+
+        limit.setLimit(2);
+        lane.join(5_000);
+        assertFalse(lane.isAlive());
+        assertEquals(2, limit.getActive());
+    }
+
+    @Test
+    void limitOutsideItsBoundsIsRejected() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(4);
+
+        assertThrows(IllegalArgumentException.class, () -> limit.setLimit(0));
+        assertThrows(IllegalArgumentException.class, () -> limit.setLimit(5));
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    void reactiveWorkWaitsForASlotWithoutBlocking() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(1);
+        Sinks.One<String> first = Sinks.one();
+        AtomicInteger secondSubscriptions = new AtomicInteger();
+
+        limit.limit(first.asMono()).subscribe(results::add);
+        limit.limit(Mono.fromCallable(() -> {
+            secondSubscriptions.incrementAndGet();
+            return "second";
+        })).subscribe(results::add);
+
+        assertEquals(0, secondSubscriptions.get());
+        assertEquals(1, limit.getActive());
+
+        first.tryEmitValue("first");
+
+        assertEquals(List.of("first", "second"), results);
+        assertEquals(0, limit.getActive());
+    }
+
+    @Test
+    void loweringTheLimitLetsRunningWorkFinish() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(2);
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+        limit.limit(first.asMono()).subscribe(results::add);
+        limit.limit(second.asMono()).subscribe(results::add);
+
+        limit.setLimit(1);
+        limit.limit(Mono.just("third")).subscribe(results::add);
+        assertEquals(2, limit.getActive());
+
+        first.tryEmitValue("first");
+        // one slot is still taken: the limit is back to one
+        assertEquals(List.of("first"), results);
+
+        second.tryEmitValue("second");
+        assertEquals(List.of("first", "second", "third"), results);
+        assertEquals(0, limit.getActive());
+    }
+
+    @Test
+    void waiterCancelledBeforeItsTurnNeverRuns() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(1);
+        Sinks.One<String> first = Sinks.one();
+        AtomicInteger secondSubscriptions = new AtomicInteger();
+        limit.limit(first.asMono()).subscribe(results::add);
+        Disposable second = limit.limit(Mono.fromCallable(() -> {
+            secondSubscriptions.incrementAndGet();
+            return "second";
+        })).subscribe(results::add);
+
+        second.dispose();
+        first.tryEmitValue("first");
+
+        assertEquals(List.of("first"), results);
+        assertEquals(0, secondSubscriptions.get());
+        assertEquals(0, limit.getActive());
+    }
+
+    @Test
+    void cancellingRunningWorkGivesBackItsSlot() {
+        ConcurrencyLimit limit = new ConcurrencyLimit(1);
+        Disposable running = limit.limit(Sinks.<String>one().asMono()).subscribe(results::add);
+        assertEquals(1, limit.getActive());
+
+        running.dispose();
+
+        assertEquals(0, limit.getActive());
+        limit.limit(Mono.just("next")).subscribe(results::add);
+        assertEquals(List.of("next"), results);
+    }
+
+    private static Thread acquiringThread(ConcurrencyLimit limit) {
+        return new Thread(() -> {
+            try {
+                limit.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+}
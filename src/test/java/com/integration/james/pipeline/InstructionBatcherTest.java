@@ -0,0 +1,127 @@
+package com.integration.james.pipeline;
+
+import com.integration.james.codec.Instruction;
+import com.integration.james.codec.InstructionCodec;
+import com.integration.james.dto.IncomingMessagePayload;
+import com.integration.james.dto.Outcome;
+import com.integration.james.services.MailboxActionService;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MessageId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class InstructionBatcherTest {
+
+    private static final long LINGER_MS = 300;
+
+    private final InstructionCodec codec =
+            new InstructionCodec(mock(MailboxId.Factory.class), mock(MessageId.Factory.class), "request", false);
+    private final MailboxActionService mailboxActionService = mock(MailboxActionService.class);
+    // one entry per call to the mailbox action service: the hashIDs it was given
+    private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+    private final Map<String, Outcome> outcomes = new ConcurrentHashMap<>();
+    private InstructionBatcher batcher;
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.dispose();
+        }
+    }
+
+    @Test
+    void groupsInstructionsSharingActionAndMailboxesIntoOneCall() throws Exception {
+        succeedEveryGroup();
+        batcher = batcher(3);
+        CountDownLatch done = new CountDownLatch(3);
+
+        batcher.submit(pending("Move", "inbox", "1", "archive", "m1", done));
+        batcher.submit(pending("Trash", "inbox", "2", null, "t1", done));
+        batcher.submit(pending("Move", "inbox", "3", "archive", "m2", done));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("m1", "m2"), List.of("t1")), calls);
+        assertEquals(Map.of("m1", Outcome.SUCCEEDED, "m2", Outcome.SUCCEEDED, "t1", Outcome.SUCCEEDED), outcomes);
+    }
+
+    @Test
+    void secondInstructionOnTheSameMessageStartsANewBatch() throws Exception {
+        succeedEveryGroup();
+        batcher = batcher(10);
+        CountDownLatch done = new CountDownLatch(2);
+
+        batcher.submit(pending("Move", "inbox", "1", "archive", "first", done));
+        batcher.submit(pending("Move", "inbox", "1", "spam", "second", done));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("first"), List.of("second")), calls);
+    }
+
+    @Test
+    void rangeActionRunsOnItsOwn() throws Exception {
+        succeedEveryGroup();
+        when(mailboxActionService.processRangeAction(any())).thenAnswer(invocation -> {
+            calls.add(List.of(invocation.<IncomingMessagePayload>getArgument(0).getHashID()));
+            return List.of();
+        });
+        batcher = batcher(10);
+        CountDownLatch done = new CountDownLatch(3);
+
+        batcher.submit(pending("Trash", "inbox", "1", null, "t1", done));
+        batcher.submit(pending(IncomingMessagePayload.TRASH_RANGE_ACTION, "inbox", "2:9", null, "range", done));
+        batcher.submit(pending("Trash", "inbox", "10", null, "t2", done));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("t1"), List.of("range"), List.of("t2")), calls);
+    }
+
+    @Test
+    void failedGroupFailsEachOfItsInstructions() throws Exception {
+        when(mailboxActionService.processMessageActions(anyList())).thenThrow(new MailboxException("backend down"));
+        batcher = batcher(2);
+        CountDownLatch done = new CountDownLatch(2);
+
+        batcher.submit(pending("Trash", "inbox", "1", null, "t1", done));
+        batcher.submit(pending("Trash", "inbox", "2", null, "t2", done));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Map.of("t1", Outcome.FAILED, "t2", Outcome.FAILED), outcomes);
+    }
+
+    private InstructionBatcher batcher(int batchSize) {
+        return new InstructionBatcher("test-lane", mailboxActionService, batchSize, LINGER_MS, 16, 2, new ConcurrencyLimit(1));
+    }
+
+    private void succeedEveryGroup() throws MailboxException {
+        when(mailboxActionService.processMessageActions(anyList())).thenAnswer(invocation -> {
+            List<Instruction> group = invocation.getArgument(0);
+            calls.add(group.stream().map(Instruction::getHashID).toList());
+            return Collections.nCopies(group.size(), Outcome.SUCCEEDED);
+        });
+    }
+
+    private PendingInstruction pending(String action, String mailbox, String messageID, String destination, String hashID,
+                                       CountDownLatch done) {
+        IncomingMessagePayload payload = new IncomingMessagePayload(action, mailbox, messageID, destination, hashID);
+        return new PendingInstruction(codec.compile(payload), Priority.BULK, (outcome, report) -> {
+            outcomes.put(hashID, outcome);
+            done.countDown();
+        });
+    }
+}
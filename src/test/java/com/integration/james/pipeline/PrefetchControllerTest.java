@@ -0,0 +1,193 @@
+package com.integration.james.pipeline;
+
+import org.apache.james.metrics.api.NoopGaugeRegistry;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrefetchControllerTest {
+
+    private static final int MIN = 10;
+    private static final int MAX = 120;
+    private static final int STEP = 15;
+    private static final long TARGET_LATENCY_MS = 100;
+
+    private final List<PrefetchController> controllers = new ArrayList<>();
+    private final FakeTarget target = new FakeTarget();
+
+    @AfterEach
+    void tearDown() {
+        controllers.forEach(PrefetchController::dispose);
+    }
+
+    @Test
+    void adaptivePrefetchStartsWithinItsBounds() {
+        assertEquals(MAX, adaptive(1_000).getPrefetch());
+        assertEquals(MIN, adaptive(1).getPrefetch());
+    }
+
+    @Test
+    void slowAcksShrinkThePrefetchMultiplicatively() {
+        PrefetchController controller = adaptive(100);
+
+        completeSlowly(controller);
+        controller.adjust(target);
+        assertEquals(75, controller.getPrefetch());
+
+        completeSlowly(controller);
+        controller.adjust(target);
+        assertEquals(56, controller.getPrefetch());
+        assertEquals(List.of(75, 56), target.applied);
+    }
+
+    @Test
+    void shrinkingStopsAtTheMinimum() {
+        PrefetchController controller = adaptive(12);
+
+        completeSlowly(controller);
+        controller.adjust(target);
+        completeSlowly(controller);
+        controller.adjust(target);
+
+        assertEquals(MIN, controller.getPrefetch());
+        assertEquals(List.of(MIN), target.applied);
+    }
+
+    @Test
+    void starvedConsumerGrowsThePrefetchByOneStep() {
+        PrefetchController controller = adaptive(100);
+        target.unacked = 95;
+        target.backlog = 1_000;
+
+        completeQuickly(controller);
+        controller.adjust(target);
+        assertEquals(115, controller.getPrefetch());
+
+        target.unacked = 115;
+        completeQuickly(controller);
+        controller.adjust(target);
+        assertEquals(MAX, controller.getPrefetch());
+        assertEquals(List.of(115, MAX), target.applied);
+    }
+
+    @Test
+    void prefetchIsLeftAloneWithoutPressure() {
+        PrefetchController controller = adaptive(100);
+
+        // window not full
+        target.unacked = 50;
+        target.backlog = 1_000;
+        completeQuickly(controller);
+        controller.adjust(target);
+
+        // window full, but nothing waiting in the queue
+        target.unacked = 100;
+        target.backlog = 0;
+        completeQuickly(controller);
+        controller.adjust(target);
+
+        // nothing completed
+        controller.adjust(target);
+
+        assertEquals(100, controller.getPrefetch());
+        assertTrue(target.applied.isEmpty());
+    }
+
+    @Test
+    void refusedAdjustmentKeepsThePrefetch() {
+        PrefetchController controller = adaptive(100);
+        target.refuse = true;
+
+        completeSlowly(controller);
+        controller.adjust(target);
+
+        assertEquals(100, controller.getPrefetch());
+    }
+
+    @Test
+    void runtimePrefetchMustStayWithinTheAdaptiveBounds() throws Exception {
+        PrefetchController controller = adaptive(100);
+
+        assertThrows(IllegalArgumentException.class, () -> controller.setPrefetch(MAX + 1, target));
+        assertThrows(IllegalArgumentException.class, () -> controller.setPrefetch(MIN - 1, target));
+        controller.setPrefetch(MIN, target);
+
+        assertEquals(MIN, controller.getPrefetch());
+        assertEquals(List.of(MIN), target.applied);
+    }
+
+    @Test
+    void staticPrefetchIgnoresTheAdaptiveBounds() throws Exception {
+        PrefetchController controller = controller("static", 500);
+        assertEquals(500, controller.getPrefetch());
+
+        controller.setPrefetch(1, target);
+
+        assertEquals(1, controller.getPrefetch());
+        assertThrows(IllegalArgumentException.class, () -> controller.setPrefetch(0, target));
+    }
+
+    @Test
+    void prefetchRefusedByTheBrokerIsNotRecorded() {
+        PrefetchController controller = adaptive(100);
+        target.refuse = true;
+
+        assertThrows(IOException.class, () -> controller.setPrefetch(50, target));
+
+        assertEquals(100, controller.getPrefetch());
+        assertTrue(target.applied.isEmpty());
+    }
+
+    private PrefetchController adaptive(int prefetch) {
+        return controller("adaptive", prefetch);
+    }
+
+    private PrefetchController controller(String mode, int prefetch) {
+        PrefetchController controller = new PrefetchController(new NoopMetricFactory(), new NoopGaugeRegistry(), mode,
+                prefetch, MIN, MAX, STEP, TARGET_LATENCY_MS, TimeUnit.HOURS.toMillis(1));
+        controllers.add(controller);
+        return controller;
+    }
+
+    private static void completeSlowly(PrefetchController controller) {
+        controller.recordCompletion(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10 * TARGET_LATENCY_MS));
+    }
+
+    private static void completeQuickly(PrefetchController controller) {
+        controller.recordCompletion(System.nanoTime());
+    }
+
+    private static class FakeTarget implements PrefetchController.QosTarget {
+        private final List<Integer> applied = new ArrayList<>();
+        private long backlog;
+        private int unacked;
+        private boolean refuse;
+
+        @Override
+        public void applyPrefetch(int prefetch) throws IOException {
+            if (refuse) {
+                throw new IOException("channel closed");
+            }
+            applied.add(prefetch);
+        }
+
+        @Override
+        public long backlog() {
+            return backlog;
+        }
+
+        @Override
+        public int unacked() {
+            return unacked;
+        }
+    }
+}
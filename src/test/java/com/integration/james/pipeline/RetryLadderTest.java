@@ -0,0 +1,118 @@
+package com.integration.james.pipeline;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BuiltinExchangeType;
+import com.rabbitmq.client.Channel;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class RetryLadderTest {
+
+    private static final String DELAY_HEADER = "x-retry-delay";
+
+    private final AMQP.BasicProperties original = new AMQP.BasicProperties.Builder()
+            .contentType("application/json")
+            .priority(5)
+            .expiration("60000")
+            .headers(Map.of("x-status-mode", "envelope"))
+            .build();
+
+    @Test
+    void attemptsAreReadFromTheHeader() {
+        assertEquals(0, RetryLadder.attempts(null));
+        assertEquals(0, RetryLadder.attempts(new AMQP.BasicProperties()));
+        assertEquals(0, RetryLadder.attempts(original));
+        assertEquals(2, RetryLadder.attempts(withAttempts(2)));
+        assertEquals(3, RetryLadder.attempts(withAttempts("3")));
+        assertEquals(0, RetryLadder.attempts(withAttempts("three")));
+    }
+
+    @Test
+    void eachAttemptGoesToTheDelayQueueOfItsRung() {
+        RetryLadder ladder = ladder(true, "1000, 5000,30000");
+
+        AMQP.BasicProperties first = ladder.nextAttempt(original, 0);
+        assertEquals(1, RetryLadder.attempts(first));
+        assertEquals("1000", first.getHeaders().get(DELAY_HEADER));
+
+        AMQP.BasicProperties second = ladder.nextAttempt(first, RetryLadder.attempts(first));
+        assertEquals(2, RetryLadder.attempts(second));
+        assertEquals("5000", second.getHeaders().get(DELAY_HEADER));
+        assertEquals(5000, ladder.delayOf(1));
+    }
+
+    @Test
+    void retriedDeliveryKeepsItsPropertiesButNotItsExpiration() {
+        AMQP.BasicProperties next = ladder(true, "1000").nextAttempt(original, 0);
+
+        assertEquals("application/json", next.getContentType());
+        assertEquals(Integer.valueOf(5), next.getPriority());
+        assertEquals("envelope", next.getHeaders().get("x-status-mode"));
+        // a per-message TTL would cut the delay short
+        assertNull(next.getExpiration());
+    }
+
+    @Test
+    void afterTheLastDelayTheDeliveryIsParked() {
+        RetryLadder ladder = ladder(true, "1000,5000,30000");
+
+        assertTrue(ladder.hasAttemptLeft(0));
+        assertTrue(ladder.hasAttemptLeft(2));
+        assertFalse(ladder.hasAttemptLeft(3));
+
+        AMQP.BasicProperties parked = ladder.lastAttempt(ladder.nextAttempt(original, 2), 3);
+        assertEquals(4, RetryLadder.attempts(parked));
+        // no delay queue matches it any more
+        assertFalse(parked.getHeaders().containsKey(DELAY_HEADER));
+        assertEquals("james.instruction.dead", ladder.getDeadLetterQueue());
+    }
+
+    @Test
+    void declaresOneDelayQueuePerRungDeadLetteringBackToTheDefaultExchange() throws Exception {
+        Channel channel = mock(Channel.class);
+
+        ladder(true, "1000,5000").declare(channel);
+
+        verify(channel).exchangeDeclare("james.instruction.retry", BuiltinExchangeType.HEADERS, true);
+        for (long delay : new long[] {1000, 5000}) {
+            String queue = "james.instruction.retry." + delay + "ms";
+            verify(channel).queueDeclare(queue, true, false, false, Map.of(
+                    "x-message-ttl", delay,
+                    "x-dead-letter-exchange", ""));
+            verify(channel).queueBind(queue, "james.instruction.retry", "",
+                    Map.of("x-match", "all", DELAY_HEADER, Long.toString(delay)));
+        }
+        verify(channel).queueDeclare("james.instruction.dead", true, false, false, null);
+    }
+
+    @Test
+    void disabledOrEmptyLadderRetriesNothing() {
+        assertFalse(ladder(false, "1000").hasAttemptLeft(0));
+        assertFalse(ladder(true, " ").isEnabled());
+        assertFalse(ladder(true, "").hasAttemptLeft(0));
+    }
+
+    @Test
+    void nonPositiveDelayIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ladder(true, "1000,0"));
+        assertThrows(IllegalArgumentException.class, () -> ladder(true, "-5"));
+    }
+
+    private static RetryLadder ladder(boolean enabled, String delaysMs) {
+        return new RetryLadder(new NoopMetricFactory(), enabled, delaysMs, " james.instruction.retry ", "james.instruction.dead");
+    }
+
+    private AMQP.BasicProperties withAttempts(Object attempts) {
+        return original.builder().headers(Map.of(RetryLadder.ATTEMPT_HEADER, attempts)).build();
+    }
+}
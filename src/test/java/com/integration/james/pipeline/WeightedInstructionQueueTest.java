@@ -0,0 +1,129 @@
+package com.integration.james.pipeline;
+
+import com.integration.james.codec.InstructionCodec;
+import com.integration.james.dto.IncomingMessagePayload;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MessageId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class WeightedInstructionQueueTest {
+
+    private static final int CAPACITY = 16;
+
+    private final InstructionCodec codec =
+            new InstructionCodec(mock(MailboxId.Factory.class), mock(MessageId.Factory.class), "request", false);
+
+    @Test
+    void keepsTheOrderWithinAPriority() throws Exception {
+        WeightedInstructionQueue queue = new WeightedInstructionQueue(CAPACITY, 2);
+        queue.put(bulk("a", "b1"));
+        queue.put(bulk("b", "b2"));
+        queue.put(bulk("a", "b3"));
+
+        assertEquals(List.of("b1", "b2", "b3"), takeAll(queue));
+    }
+
+    @Test
+    void servesInteractiveAheadOfBulkByWeight() throws Exception {
+        WeightedInstructionQueue queue = new WeightedInstructionQueue(CAPACITY, 2);
+        queue.put(bulk("a", "b1"));
+        queue.put(bulk("b", "b2"));
+        queue.put(interactive("c", "i1"));
+        queue.put(interactive("d", "i2"));
+        queue.put(interactive("e", "i3"));
+
+        assertEquals(List.of("i1", "i2", "b1", "i3", "b2"), takeAll(queue));
+    }
+
+    @Test
+    void interactiveNeverOvertakesAnEarlierBulkInstructionOfItsMailbox() throws Exception {
+        WeightedInstructionQueue queue = new WeightedInstructionQueue(CAPACITY, 2);
+        queue.put(bulk("a", "trash-a"));
+        queue.put(interactive("a", "move-a"));
+        queue.put(interactive("b", "move-b"));
+
+        // move-b overtakes, move-a waits behind trash-a
+        assertEquals(List.of("move-b", "trash-a", "move-a"), takeAll(queue));
+    }
+
+    @Test
+    void bulkNeverOvertakesAnEarlierInteractiveInstructionOfItsMailbox() throws Exception {
+        WeightedInstructionQueue queue = new WeightedInstructionQueue(CAPACITY, 1);
+        queue.put(interactive("a", "i1"));
+        queue.put(interactive("a", "i2"));
+        queue.put(bulk("a", "b1"));
+
+        // after i1 the round robin prefers bulk, but b1 came after i2
+        assertEquals(List.of("i1", "i2", "b1"), takeAll(queue));
+    }
+
+    @Test
+    void pollGivesUpOnAnEmptyQueue() throws Exception {
+        WeightedInstructionQueue queue = new WeightedInstructionQueue(CAPACITY, 2);
+
+        assertNull(queue.poll(0, TimeUnit.NANOSECONDS));
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void fullBulkQueueDoesNotHoldBackInteractiveSubmissions() throws Exception {
+        WeightedInstructionQueue queue = new WeightedInstructionQueue(1, 2);
+        queue.put(bulk("a", "b1"));
+        Thread producer = new Thread(() -> {
+            try {
+                queue.put(bulk("b", "b2"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+
+        queue.put(interactive("c", "i1"));
+        assertEquals(2, queue.size());
+
+        assertEquals("i1", hashID(queue.take()));
+        assertEquals("b1", hashID(queue.take()));
+        producer.join(5_000);
+        assertFalse(producer.isAlive());
+        assertEquals("b2", hashID(queue.take()));
+    }
+
+    private PendingInstruction bulk(String mailbox, String hashID) {
+        return pending(mailbox, hashID, Priority.BULK);
+    }
+
+    private PendingInstruction interactive(String mailbox, String hashID) {
+        return pending(mailbox, hashID, Priority.INTERACTIVE);
+    }
+
+    private PendingInstruction pending(String mailbox, String hashID, Priority priority) {
+        IncomingMessagePayload payload = new IncomingMessagePayload("Trash", mailbox, "1", null, hashID);
+        return new PendingInstruction(codec.compile(payload), priority, (outcome, report) -> { });
+    }
+
+    private static List<String> takeAll(WeightedInstructionQueue queue) throws InterruptedException {
+        List<String> hashIDs = new ArrayList<>();
+        PendingInstruction next;
+        while ((next = queue.poll(0, TimeUnit.NANOSECONDS)) != null) {
+            hashIDs.add(hashID(next));
+        }
+        return hashIDs;
+    }
+
+    private static String hashID(PendingInstruction instruction) {
+        return instruction.getPayload().getHashID();
+    }
+}
@@ -0,0 +1,135 @@
+package com.integration.james.publisher;
+
+import com.integration.james.codec.WireFormat;
+import com.integration.james.dto.StatusPayload;
+import com.integration.james.metrics.PipelineMetrics;
+import org.apache.james.metrics.api.NoopGaugeRegistry;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfirmTrackerTest {
+
+    private static final Duration LONG_TIMEOUT = Duration.ofMinutes(1);
+
+    private final List<StatusMessage> republished = new ArrayList<>();
+
+    @Test
+    void singleAckSettlesOnlyItsOwnPublish() {
+        ConfirmTracker tracker = tracker(10, LONG_TIMEOUT);
+        track(tracker, 1, 2, 3);
+
+        tracker.handleAck(2, false);
+
+        assertEquals(2, tracker.getInFlightCount());
+        assertEquals(List.of("1", "3"), hashIDs(tracker.drain()));
+    }
+
+    @Test
+    void multipleAckSettlesEveryPublishUpToItsTag() {
+        ConfirmTracker tracker = tracker(10, LONG_TIMEOUT);
+        track(tracker, 1, 2, 3);
+
+        tracker.handleAck(2, true);
+
+        assertEquals(1, tracker.getInFlightCount());
+        assertTrue(republished.isEmpty());
+        assertEquals(List.of("3"), hashIDs(tracker.drain()));
+    }
+
+    @Test
+    void nackedPublishesAreRepublished() {
+        ConfirmTracker tracker = tracker(10, LONG_TIMEOUT);
+        track(tracker, 1, 2, 3);
+
+        tracker.handleNack(2, true);
+        tracker.handleNack(3, false);
+
+        assertEquals(List.of("1", "2", "3"), hashIDs(republished));
+        assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test
+    void confirmsForUnknownTagsAreIgnored() {
+        ConfirmTracker tracker = tracker(10, LONG_TIMEOUT);
+        track(tracker, 5);
+
+        tracker.handleAck(4, true);
+        tracker.handleNack(7, false);
+
+        assertEquals(1, tracker.getInFlightCount());
+        assertTrue(republished.isEmpty());
+    }
+
+    @Test
+    void republishesOnlyPublishesUnconfirmedPastTheTimeout() {
+        ConfirmTracker tracker = tracker(10, LONG_TIMEOUT);
+        track(tracker, 1, 2);
+
+        tracker.republishExpired();
+        assertTrue(republished.isEmpty());
+
+        tracker.setConfirmTimeout(Duration.ZERO);
+        tracker.republishExpired();
+
+        assertEquals(List.of("1", "2"), hashIDs(republished));
+        assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test
+    void untrackForgetsAPublishThatNeverReachedTheBroker() {
+        ConfirmTracker tracker = tracker(10, LONG_TIMEOUT);
+        track(tracker, 1, 2);
+
+        tracker.untrack(1);
+        tracker.untrack(1);
+
+        assertEquals(1, tracker.getInFlightCount());
+        assertEquals(List.of("2"), hashIDs(tracker.drain()));
+        assertEquals(0, tracker.getInFlightCount());
+    }
+
+    @Test
+    void awaitCapacityBlocksAtTheHighWaterMarkUntilAConfirm() throws Exception {
+        ConfirmTracker tracker = tracker(2, LONG_TIMEOUT);
+        track(tracker, 1, 2);
+        Thread consumer = new Thread(() -> {
+            try {
+                tracker.awaitCapacity();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        consumer.start();
+        consumer.join(200);
+        assertTrue(consumer.isAlive());
+
+        tracker.handleAck(1, false);
+        consumer.join(5_000);
+        assertFalse(consumer.isAlive());
+    }
+
+    private ConfirmTracker tracker(int highWaterMark, Duration confirmTimeout) {
+        PipelineMetrics metrics = new PipelineMetrics(new NoopMetricFactory(), new NoopGaugeRegistry());
+        return new ConfirmTracker(highWaterMark, confirmTimeout, republished::add, metrics);
+    }
+
+    /** The hashID of each status is its sequence number. */
+    private static void track(ConfirmTracker tracker, long... sequenceNumbers) {
+        for (long sequenceNumber : sequenceNumbers) {
+            tracker.track(sequenceNumber, StatusMessage.single(new StatusPayload(String.valueOf(sequenceNumber), "success"), WireFormat.JSON));
+        }
+    }
+
+    private static List<String> hashIDs(List<StatusMessage> messages) {
+        return messages.stream().map(message -> message.getStatuses().get(0).getHashID()).toList();
+    }
+}
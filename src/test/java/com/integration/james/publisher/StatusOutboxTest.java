@@ -0,0 +1,226 @@
+package com.integration.james.publisher;
+
+import com.integration.james.codec.WireFormat;
+import com.integration.james.dto.StatusPayload;
+import org.apache.james.filesystem.api.FileSystem;
+import org.apache.james.metrics.api.NoopGaugeRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatusOutboxTest {
+
+    private static final int HEADER_BYTES = Integer.BYTES + 2;
+    // one status record per segment
+    private static final int SMALL_SEGMENT = 64;
+    private static final int LARGE_SEGMENT = 4096;
+
+    @TempDir
+    Path baseDirectory;
+
+    @Test
+    void drainsAppendedRecordsInOrderAndInBatches() throws Exception {
+        StatusOutbox outbox = outbox(LARGE_SEGMENT, 1 << 20);
+        append(outbox, "a", "b", "c");
+
+        List<List<String>> batches = new ArrayList<>();
+        outbox.drain(2, batch -> {
+            batches.add(hashIDs(batch));
+            return true;
+        });
+
+        assertEquals(List.of(List.of("a", "b"), List.of("c")), batches);
+        assertEquals(3, outbox.getPendingRecords());
+    }
+
+    @Test
+    void confirmedRecordsAreConsumedAndReleasedOnesDrainedAgain() throws Exception {
+        StatusOutbox outbox = outbox(LARGE_SEGMENT, 1 << 20);
+        append(outbox, "a", "b", "c");
+        List<StatusMessage> first = drainAll(outbox);
+
+        first.get(0).confirmed();
+        first.get(1).released();
+        // "c" is still in flight: not handed out twice
+
+        assertEquals(List.of("b"), hashIDs(drainAll(outbox)));
+        assertEquals(2, outbox.getPendingRecords());
+    }
+
+    @Test
+    void rotatesSegmentsAndDeletesThemOnceDrained() throws Exception {
+        StatusOutbox outbox = outbox(SMALL_SEGMENT, 1 << 20);
+        append(outbox, "a", "b", "c");
+        assertEquals(3, outbox.getSegmentCount());
+
+        drainAll(outbox).forEach(StatusMessage::confirmed);
+
+        // the segment being appended to is kept
+        assertEquals(0, outbox.getPendingRecords());
+        assertEquals(1, outbox.getSegmentCount());
+        assertEquals(1, segmentFiles().size());
+    }
+
+    @Test
+    void dropsRecordsBeyondMaxBytes() {
+        StatusOutbox outbox = outbox(SMALL_SEGMENT, 2 * SMALL_SEGMENT);
+
+        assertTrue(outbox.append(status("a")));
+        assertTrue(outbox.append(status("b")));
+        assertFalse(outbox.append(status("c")));
+        assertEquals(2, outbox.getPendingRecords());
+    }
+
+    @Test
+    void recoversPendingRecordsAfterRestart() throws Exception {
+        StatusOutbox outbox = outbox(SMALL_SEGMENT, 1 << 20);
+        append(outbox, "a", "b", "c");
+        List<StatusMessage> drained = drainAll(outbox);
+        drained.get(0).confirmed();
+        outbox.dispose();
+
+        StatusOutbox recovered = outbox(SMALL_SEGMENT, 1 << 20);
+
+        assertEquals(2, recovered.getPendingRecords());
+        assertEquals(List.of("b", "c"), hashIDs(drainAll(recovered)));
+    }
+
+    @Test
+    void ignoresATornAppendOnRecovery() throws Exception {
+        StatusOutbox outbox = outbox(LARGE_SEGMENT, 1 << 20);
+        append(outbox, "a", "b");
+        outbox.dispose();
+        // the body of a third record made it to disk, its length (written last) did not
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            file.seek(endOfRecords(file) + Integer.BYTES);
+            file.write(new byte[] {0, 0});
+            file.write("{\"hashID\":\"torn\",\"status\":\"success\"}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        StatusOutbox recovered = outbox(LARGE_SEGMENT, 1 << 20);
+        assertTrue(recovered.append(status("c")));
+
+        assertEquals(3, recovered.getPendingRecords());
+        assertEquals(List.of("a", "b", "c"), hashIDs(drainAll(recovered)));
+    }
+
+    @Test
+    void quarantinesACorruptRecordAndKeepsDraining() throws Exception {
+        StatusOutbox outbox = outbox(LARGE_SEGMENT, 1 << 20);
+        append(outbox, "a", "b", "c");
+        outbox.dispose();
+        Path segment = segmentFiles().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            int second = HEADER_BYTES + file.readInt();
+            file.seek(second);
+            byte[] garbage = new byte[file.readInt()];
+            Arrays.fill(garbage, (byte) '#');
+            file.seek(second + HEADER_BYTES);
+            file.write(garbage);
+        }
+
+        StatusOutbox recovered = outbox(LARGE_SEGMENT, 1 << 20);
+        List<StatusMessage> drained = drainAll(recovered);
+
+        // "b" cannot be read, "c" follows it in the same segment
+        assertEquals(List.of("a"), hashIDs(drained));
+        assertEquals(1, recovered.getPendingRecords());
+        assertTrue(Files.exists(segment.resolveSibling(segment.getFileName() + ".corrupt")));
+
+        drained.get(0).confirmed();
+        assertTrue(recovered.append(status("d")));
+        assertEquals(List.of("d"), hashIDs(drainAll(recovered)));
+        assertEquals(1, recovered.getSegmentCount());
+    }
+
+    @Test
+    void skipsStrayFilesNamedLikeSegments() throws Exception {
+        StatusOutbox outbox = outbox(LARGE_SEGMENT, 1 << 20);
+        append(outbox, "a");
+        outbox.dispose();
+        Path stray = baseDirectory.resolve("outbox").resolve("outbox-backup.seg");
+        Files.write(stray, "not a segment".getBytes(StandardCharsets.UTF_8));
+
+        StatusOutbox recovered = outbox(LARGE_SEGMENT, 1 << 20);
+
+        assertEquals(List.of("a"), hashIDs(drainAll(recovered)));
+        assertTrue(Files.exists(stray));
+    }
+
+    private StatusOutbox outbox(int segmentBytes, long maxBytes) {
+        return new StatusOutbox(fileSystem(), new NoopGaugeRegistry(), "file://var/outbox", segmentBytes, maxBytes);
+    }
+
+    private FileSystem fileSystem() {
+        return new FileSystem() {
+            @Override
+            public InputStream getResource(String url) throws IOException {
+                return Files.newInputStream(getFile(url).toPath());
+            }
+
+            @Override
+            public File getFile(String fileURL) {
+                return baseDirectory.resolve("outbox").toFile();
+            }
+
+            @Override
+            public File getBasedir() {
+                return baseDirectory.toFile();
+            }
+        };
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(baseDirectory.resolve("outbox"))) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+    }
+
+    /** The position right after the last complete record. */
+    private static long endOfRecords(RandomAccessFile file) throws IOException {
+        long position = 0;
+        file.seek(position);
+        int length = file.readInt();
+        while (length > 0) {
+            position += HEADER_BYTES + length;
+            file.seek(position);
+            length = file.readInt();
+        }
+        return position;
+    }
+
+    private static void append(StatusOutbox outbox, String... hashIDs) {
+        for (String hashID : hashIDs) {
+            assertTrue(outbox.append(status(hashID)));
+        }
+    }
+
+    private static StatusMessage status(String hashID) {
+        return StatusMessage.single(new StatusPayload(hashID, "success"), WireFormat.JSON);
+    }
+
+    private static List<StatusMessage> drainAll(StatusOutbox outbox) throws InterruptedException {
+        List<StatusMessage> drained = new ArrayList<>();
+        outbox.drain(100, drained::addAll);
+        return drained;
+    }
+
+    private static List<String> hashIDs(List<StatusMessage> messages) {
+        return messages.stream().map(message -> message.getStatuses().get(0).getHashID()).toList();
+    }
+}
@@ -0,0 +1,43 @@
+package com.integration.james.services.impl;
+
+import com.integration.james.dto.Outcome;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.exception.MailboxNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MailboxActionServiceImplTest {
+
+    @Test
+    void backendFailuresAreRetryable() {
+        assertEquals(Outcome.RETRYABLE, MailboxActionServiceImpl.failureOf(new MailboxException("backend down")));
+        assertEquals(Outcome.RETRYABLE, MailboxActionServiceImpl.failureOf(new TimeoutException("no answer")));
+        assertEquals(Outcome.RETRYABLE, MailboxActionServiceImpl.failureOf(new IOException("connection reset")));
+    }
+
+    @Test
+    void unknownMailboxIsPermanent() {
+        assertEquals(Outcome.FAILED, MailboxActionServiceImpl.failureOf(new MailboxNotFoundException("#private:alice:Trash")));
+    }
+
+    @Test
+    void failuresOfTheInstructionOrTheCodeArePermanent() {
+        assertEquals(Outcome.FAILED, MailboxActionServiceImpl.failureOf(new IllegalArgumentException("Missing query")));
+        assertEquals(Outcome.FAILED, MailboxActionServiceImpl.failureOf(new NullPointerException()));
+        assertEquals(Outcome.FAILED, MailboxActionServiceImpl.failureOf(new IllegalStateException("closed")));
+    }
+
+    @Test
+    void wrappedFailuresAreJudgedByTheirCause() {
+        // blocking on a Mono wraps checked exceptions into runtime ones
+        assertEquals(Outcome.RETRYABLE, MailboxActionServiceImpl.failureOf(new RuntimeException(new MailboxException("backend down"))));
+        assertEquals(Outcome.RETRYABLE, MailboxActionServiceImpl.failureOf(new UncheckedIOException(new IOException("reset"))));
+        assertEquals(Outcome.FAILED, MailboxActionServiceImpl.failureOf(new RuntimeException(new MailboxNotFoundException("Trash"))));
+        assertEquals(Outcome.FAILED, MailboxActionServiceImpl.failureOf(new RuntimeException(new IllegalStateException())));
+    }
+}
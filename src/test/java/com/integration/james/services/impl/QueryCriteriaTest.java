@@ -0,0 +1,89 @@
+package com.integration.james.services.impl;
+
+import com.integration.james.dto.InstructionQuery;
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.model.SearchQuery.Criterion;
+import org.apache.james.mailbox.model.SearchQuery.DateResolution;
+import org.junit.jupiter.api.Test;
+
+import javax.mail.Flags;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryCriteriaTest {
+
+    @Test
+    void emptyQueryMatchesTheWholeMailbox() {
+        assertEquals(List.of(SearchQuery.all()), criteria(new InstructionQuery(null, null, null, null, null)));
+        assertEquals(List.of(SearchQuery.all()), criteria(new InstructionQuery(null, null, List.of(), List.of(), Map.of())));
+    }
+
+    @Test
+    void missingQueryIsRejected() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> QueryCriteria.toSearchQuery(null));
+        assertEquals("Missing query", e.getMessage());
+    }
+
+    @Test
+    void datesAreInstantsComparedToTheInternalDate() {
+        Date before = Date.from(Instant.parse("2024-01-01T00:00:00Z"));
+        Date after = Date.from(Instant.parse("2023-06-15T12:30:00Z"));
+
+        assertEquals(List.of(SearchQuery.internalDateBefore(before, DateResolution.Second),
+                        SearchQuery.internalDateAfter(after, DateResolution.Second)),
+                criteria(new InstructionQuery("2024-01-01T00:00:00Z", "2023-06-15T12:30:00Z", null, null, null)));
+    }
+
+    @Test
+    void dateThatIsNotAnInstantIsRejected() {
+        for (String date : new String[] {"2024-01-01", "yesterday", ""}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> criteria(new InstructionQuery(date, null, null, null, null)));
+            assertTrue(e.getMessage().contains("ISO-8601"), e.getMessage());
+        }
+    }
+
+    @Test
+    void systemFlagsIgnoreTheirCase() {
+        assertEquals(List.of(SearchQuery.flagIsSet(Flags.Flag.SEEN),
+                        SearchQuery.flagIsSet(Flags.Flag.ANSWERED),
+                        SearchQuery.flagIsUnSet(Flags.Flag.FLAGGED)),
+                criteria(new InstructionQuery(null, null, List.of("\\Seen", "\\ANSWERED"), List.of("\\flagged"), null)));
+    }
+
+    @Test
+    void otherFlagsAreKeywords() {
+        assertEquals(List.of(SearchQuery.flagIsSet("$Important"), SearchQuery.flagIsUnSet("Seen")),
+                criteria(new InstructionQuery(null, null, List.of("$Important"), List.of("Seen"), null)));
+    }
+
+    @Test
+    void unknownSystemFlagOrBlankFlagIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> criteria(new InstructionQuery(null, null, List.of("\\Starred"), null, null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> criteria(new InstructionQuery(null, null, null, List.of(" "), null)));
+    }
+
+    @Test
+    void everyCriterionMustMatch() {
+        Date before = Date.from(Instant.parse("2024-01-01T00:00:00Z"));
+
+        assertEquals(List.of(SearchQuery.internalDateBefore(before, DateResolution.Second),
+                        SearchQuery.flagIsSet(Flags.Flag.SEEN),
+                        SearchQuery.flagIsUnSet(Flags.Flag.FLAGGED),
+                        SearchQuery.headerContains("From", "newsletter@example.com")),
+                criteria(new InstructionQuery("2024-01-01T00:00:00Z", null, List.of("\\Seen"), List.of("\\Flagged"),
+                        Map.of("From", "newsletter@example.com"))));
+    }
+
+    private static List<Criterion> criteria(InstructionQuery query) {
+        return QueryCriteria.toSearchQuery(query).getCriteria();
+    }
+}
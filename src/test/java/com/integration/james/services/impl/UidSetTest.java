@@ -0,0 +1,71 @@
+package com.integration.james.services.impl;
+
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.model.MessageRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UidSetTest {
+
+    @Test
+    void parsesSingleUidsAndRanges() {
+        assertEquals(List.of("3"), describe("3"));
+        assertEquals(List.of("3:9"), describe("3:9"));
+        assertEquals(List.of("1:2", "5", "10:12"), describe("1:2, 5 ,10:12"));
+    }
+
+    @Test
+    void sortsAndMergesOverlappingAndAdjacentRanges() {
+        assertEquals(List.of("1:7", "10"), describe("5:7,1:3,4,10"));
+        assertEquals(List.of("1:20"), describe("1:10,5:20,11"));
+        assertEquals(List.of("3"), describe("3,3,3"));
+    }
+
+    @Test
+    void doesNotMergeRangesWithAGap() {
+        assertEquals(List.of("1:3", "5:6"), describe("5:6,1:3"));
+    }
+
+    @Test
+    void normalisesReversedBounds() {
+        assertEquals(List.of("3:9"), describe("9:3"));
+    }
+
+    @Test
+    void openRangeAbsorbsEverythingAboveIt() {
+        assertEquals(List.of("5", "10:*"), describe("12,10:*,5,11:20"));
+        assertEquals(List.of("1:*"), describe("3:*,1:2"));
+    }
+
+    @Test
+    void buildsTheMatchingRangeTypes() {
+        List<MessageRange> ranges = UidSet.parse("1,3:4,6:*");
+
+        assertEquals(3, ranges.size());
+        assertRange(ranges.get(0), MessageRange.Type.ONE, 1, 1);
+        assertRange(ranges.get(1), MessageRange.Type.RANGE, 3, 4);
+        assertEquals(MessageRange.Type.FROM, ranges.get(2).getType());
+        assertEquals(MessageUid.of(6), ranges.get(2).getUidFrom());
+    }
+
+    @Test
+    void rejectsEmptyOrMalformedSets() {
+        for (String malformed : new String[] {null, "", "  ", "0", "-2", "abc", "1:x", "1,,2", "1:"}) {
+            assertThrows(IllegalArgumentException.class, () -> UidSet.parse(malformed), String.valueOf(malformed));
+        }
+    }
+
+    private static void assertRange(MessageRange range, MessageRange.Type type, long from, long to) {
+        assertEquals(type, range.getType());
+        assertEquals(MessageUid.of(from), range.getUidFrom());
+        assertEquals(MessageUid.of(to), range.getUidTo());
+    }
+
+    private static List<String> describe(String set) {
+        return UidSet.parse(set).stream().map(UidSet::describe).toList();
+    }
+}